@@ -103,6 +103,9 @@ public class Crossfold implements Command {
         if (!options.getBoolean("use_timestamps")) {
             cf.setWriteTimestamps(false);
         }
+        if (options.getBoolean("streaming")) {
+            cf.setStreaming(true);
+        }
         cf.setEntityType(EntityType.forName(options.getString("entity_type")));
 
         String method = options.get("crossfold_mode");
@@ -185,6 +188,10 @@ public class Crossfold implements Command {
               .setDefault(true)
               .dest("use_timestamps")
               .help("don't include timestamps in output");
+        parser.addArgument("--streaming")
+              .action(Arguments.storeTrue())
+              .dest("streaming")
+              .help("stream input through temporary files instead of loading it into memory");
         parser.addArgument("--entity-type")
               .metavar("TYPE")
               .setDefault("rating")
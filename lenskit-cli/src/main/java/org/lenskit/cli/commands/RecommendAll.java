@@ -0,0 +1,334 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.cli.commands;
+
+import com.google.auto.service.AutoService;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.lenskit.LenskitRecommender;
+import org.lenskit.LenskitRecommenderEngine;
+import org.lenskit.api.ItemRecommender;
+import org.lenskit.api.Result;
+import org.lenskit.api.ResultList;
+import org.lenskit.cli.Command;
+import org.lenskit.cli.LenskitCommandException;
+import org.lenskit.cli.util.InputData;
+import org.lenskit.cli.util.RecommenderLoader;
+import org.lenskit.cli.util.ScriptEnvironment;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.entities.CommonTypes;
+import org.lenskit.util.ProgressLogger;
+import org.lenskit.util.collections.LongUtils;
+import org.lenskit.util.io.CompressionMode;
+import org.lenskit.util.io.LKFileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+
+/**
+ * Generate Top-N recommendations for every user, in parallel, into sharded output files.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@AutoService(Command.class)
+public class RecommendAll implements Command {
+    private final Logger logger = LoggerFactory.getLogger(RecommendAll.class);
+
+    @Override
+    public String getName() {
+        return "recommend-all";
+    }
+
+    @Override
+    public String getHelp() {
+        return "generate recommendations for all users";
+    }
+
+    @Override
+    public void execute(Namespace opts) throws LenskitCommandException {
+        ScriptEnvironment env = new ScriptEnvironment(opts);
+        InputData input = new InputData(env, opts);
+        RecommenderLoader loader = new RecommenderLoader(input, env, opts);
+        LenskitRecommenderEngine engine;
+        try {
+            engine = loader.loadEngine();
+        } catch (IOException e) {
+            throw new LenskitCommandException("could not load engine", e);
+        }
+
+        try {
+            export(engine, input.getDAO(), opts);
+        } catch (IOException e) {
+            throw new LenskitCommandException("I/O error writing output", e);
+        }
+    }
+
+    /**
+     * Write recommendations for all users in the DAO.
+     *
+     * @param engine The recommender engine.
+     * @param dao The data access object.
+     * @param opts The command options.
+     * @return The number of shards written (excluding shards skipped when resuming).
+     */
+    int export(LenskitRecommenderEngine engine, DataAccessObject dao,
+               Namespace opts) throws IOException, LenskitCommandException {
+        File outputDir = opts.get("output_dir");
+        int shardCount = opts.getInt("shards");
+        int threadCount = opts.getInt("threads");
+        boolean resume = opts.getBoolean("resume");
+        Format format = new Format(opts.getInt("num_recs"),
+                                   opts.getString("format").equals("json"),
+                                   opts.getBoolean("gzip"));
+        if (shardCount <= 0 || threadCount <= 0) {
+            throw new LenskitCommandException("shard and thread counts must be positive");
+        }
+
+        try (LenskitRecommender rec = engine.createRecommender(dao)) {
+            if (rec.getItemRecommender() == null) {
+                throw new LenskitCommandException("recommender has no item recommender");
+            }
+        }
+
+        // sort the users so the shard boundaries are the same on every run over the same data
+        long[] users = LongUtils.packedSet(dao.getEntityIds(CommonTypes.USER)).toLongArray();
+        Files.createDirectories(outputDir.toPath());
+
+        Queue<Shard> pending = new ConcurrentLinkedQueue<>();
+        int pendingUsers = 0;
+        for (int i = 0; i < shardCount; i++) {
+            int start = (int) ((long) users.length * i / shardCount);
+            int end = (int) ((long) users.length * (i + 1) / shardCount);
+            File file = new File(outputDir, format.fileName(i, shardCount));
+            if (resume && file.exists()) {
+                logger.debug("skipping completed shard {}", file);
+            } else {
+                pending.add(new Shard(file, users, start, end));
+                pendingUsers += end - start;
+            }
+        }
+        int shardsToWrite = pending.size();
+        logger.info("recommending for {} of {} users in {} of {} shards",
+                    pendingUsers, users.length, shardsToWrite, shardCount);
+
+        ProgressLogger progress = ProgressLogger.create(logger)
+                                                .setCount(pendingUsers)
+                                                .setLabel("recommending")
+                                                .setPeriod(1000)
+                                                .start();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threadCount, Math.max(shardsToWrite, 1)));
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < threadCount && i < shardsToWrite; i++) {
+                workers.add(executor.submit(() -> {
+                    try (LenskitRecommender rec = engine.createRecommender(dao)) {
+                        // checked before starting the workers
+                        ItemRecommender irec = rec.getItemRecommender();
+                        assert irec != null;
+                        Shard shard;
+                        while ((shard = pending.poll()) != null) {
+                            shard.write(irec, format, progress);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker: workers) {
+                try {
+                    worker.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new LenskitCommandException("interrupted writing recommendations", e);
+                } catch (ExecutionException e) {
+                    pending.clear();
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else {
+                        throw new LenskitCommandException("error writing recommendations", cause);
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        progress.finish();
+        logger.info("wrote {} shards in {}", shardsToWrite, progress.elapsedTime());
+        return shardsToWrite;
+    }
+
+    public void configureArguments(ArgumentParser parser) {
+        parser.description("Generates recommendations for all users, writing them to sharded files.");
+        InputData.configureArguments(parser);
+        ScriptEnvironment.configureArguments(parser);
+        RecommenderLoader.configureArguments(parser);
+        parser.addArgument("-o", "--output-dir")
+              .type(File.class)
+              .required(true)
+              .metavar("DIR")
+              .help("write recommendation shards to DIR");
+        parser.addArgument("-n", "--num-recs")
+              .type(Integer.class)
+              .setDefault(10)
+              .metavar("N")
+              .help("generate up to N recommendations per user");
+        parser.addArgument("--format")
+              .choices("csv", "json")
+              .setDefault("csv")
+              .help("write CSV rows or JSON lines");
+        parser.addArgument("--gzip")
+              .action(Arguments.storeTrue())
+              .help("compress output files");
+        parser.addArgument("--shards")
+              .type(Integer.class)
+              .setDefault(16)
+              .metavar("N")
+              .help("split the users into N output files");
+        parser.addArgument("--threads")
+              .type(Integer.class)
+              .setDefault(Runtime.getRuntime().availableProcessors())
+              .metavar("N")
+              .help("recommend with N worker threads");
+        parser.addArgument("--resume")
+              .action(Arguments.storeTrue())
+              .help("skip shards whose output files already exist");
+    }
+
+    /**
+     * Output format settings.
+     */
+    private static class Format {
+        private final int listLength;
+        private final boolean json;
+        private final boolean gzip;
+
+        Format(int n, boolean json, boolean gzip) {
+            listLength = n;
+            this.json = json;
+            this.gzip = gzip;
+        }
+
+        String fileName(int shard, int count) {
+            return String.format("recs-%05d-of-%05d.%s%s", shard, count,
+                                 json ? "jsonl" : "csv", gzip ? ".gz" : "");
+        }
+
+        void writeHeader(Writer out) throws IOException {
+            if (!json) {
+                out.write("user,rank,item,score\n");
+            }
+        }
+
+        void writeUser(Writer out, long user, ResultList recs) throws IOException {
+            if (json) {
+                out.append("{\"user\":").append(Long.toString(user))
+                   .append(",\"recommendations\":[");
+                boolean first = true;
+                for (Result r: recs) {
+                    if (!first) {
+                        out.append(',');
+                    }
+                    out.append("{\"item\":").append(Long.toString(r.getId()))
+                       .append(",\"score\":").append(jsonNumber(r.getScore()))
+                       .append('}');
+                    first = false;
+                }
+                out.append("]}\n");
+            } else {
+                int rank = 1;
+                for (Result r: recs) {
+                    out.append(Long.toString(user)).append(',')
+                       .append(Integer.toString(rank)).append(',')
+                       .append(Long.toString(r.getId())).append(',')
+                       .append(Double.toString(r.getScore()))
+                       .append('\n');
+                    rank += 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Format a score as a JSON value.  JSON has no representation for NaN or infinite values, so they are
+     * written as {@code null}.
+     */
+    static String jsonNumber(double v) {
+        if (Double.isNaN(v) || Double.isInfinite(v)) {
+            return "null";
+        } else {
+            return Double.toString(v);
+        }
+    }
+
+    /**
+     * A contiguous range of the sorted user IDs, written to one output file.
+     */
+    private static class Shard {
+        private final File file;
+        private final long[] users;
+        private final int start;
+        private final int end;
+
+        Shard(File file, long[] users, int start, int end) {
+            this.file = file;
+            this.users = users;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Write the shard to a temporary file, and move it into place once it is complete so that an interrupted
+         * run never leaves a partial shard behind.
+         */
+        void write(ItemRecommender irec, Format format, ProgressLogger progress) throws IOException {
+            File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+            CompressionMode comp = format.gzip ? CompressionMode.GZIP : CompressionMode.NONE;
+            try (Writer out = new BufferedWriter(LKFileUtils.openOutput(tmp, StandardCharsets.UTF_8, comp), 1 << 16)) {
+                format.writeHeader(out);
+                for (int i = start; i < end; i++) {
+                    ResultList recs = irec.recommendWithDetails(users[i], format.listLength, null, null);
+                    format.writeUser(out, users[i], recs);
+                    progress.advance();
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
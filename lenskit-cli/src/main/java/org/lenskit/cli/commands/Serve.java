@@ -0,0 +1,126 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.cli.commands;
+
+import com.google.auto.service.AutoService;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.lenskit.LenskitRecommenderEngine;
+import org.lenskit.cli.Command;
+import org.lenskit.cli.LenskitCommandException;
+import org.lenskit.cli.util.InputData;
+import org.lenskit.cli.util.RecommenderLoader;
+import org.lenskit.cli.util.RecommenderServer;
+import org.lenskit.cli.util.ScriptEnvironment;
+import org.lenskit.data.dao.DataAccessObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Serve recommendations over HTTP.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@AutoService(Command.class)
+public class Serve implements Command {
+    private final Logger logger = LoggerFactory.getLogger(Serve.class);
+
+    @Override
+    public String getName() {
+        return "serve";
+    }
+
+    @Override
+    public String getHelp() {
+        return "serve recommendations over HTTP";
+    }
+
+    @Override
+    public void execute(Namespace opts) throws LenskitCommandException {
+        ScriptEnvironment env = new ScriptEnvironment(opts);
+        InputData input = new InputData(env, opts);
+        RecommenderLoader loader = new RecommenderLoader(input, env, opts);
+        LenskitRecommenderEngine engine;
+        try {
+            engine = loader.loadEngine();
+        } catch (IOException e) {
+            throw new LenskitCommandException("could not load engine", e);
+        }
+        DataAccessObject dao = input.getDAO();
+
+        InetSocketAddress address = new InetSocketAddress(opts.getString("host"), opts.getInt("port"));
+        final RecommenderServer server;
+        try {
+            server = new RecommenderServer(engine, dao, address,
+                                           opts.getInt("threads"), opts.getInt("queue_size"));
+        } catch (IOException e) {
+            throw new LenskitCommandException("could not start server on " + address, e);
+        }
+
+        final CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            logger.info("shutting down server");
+            server.close();
+            stopped.countDown();
+        }));
+        server.start();
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            server.close();
+        }
+    }
+
+    public void configureArguments(ArgumentParser parser) {
+        parser.description("Serves recommendations over HTTP.");
+        InputData.configureArguments(parser);
+        ScriptEnvironment.configureArguments(parser);
+        RecommenderLoader.configureArguments(parser);
+        parser.addArgument("--host")
+              .setDefault("localhost")
+              .metavar("HOST")
+              .help("listen on HOST");
+        parser.addArgument("-p", "--port")
+              .type(Integer.class)
+              .setDefault(8080)
+              .metavar("PORT")
+              .help("listen on PORT");
+        parser.addArgument("--threads")
+              .type(Integer.class)
+              .setDefault(Runtime.getRuntime().availableProcessors())
+              .metavar("N")
+              .help("handle requests with N worker threads");
+        parser.addArgument("--queue-size")
+              .type(Integer.class)
+              .setDefault(128)
+              .metavar("N")
+              .help("allow up to N requests to wait for a worker");
+    }
+}
@@ -63,6 +63,10 @@ public class Simulate implements Command {
               .metavar("FILE")
               .setDefault("extended-output.txt")
               .help("write extended output as JSON lines in FILE");
+        parser.addArgument("--summary-output")
+              .type(File.class)
+              .metavar("FILE")
+              .help("write build time and latency summary to FILE");
         parser.addArgument("-n", "--list-size")
               .type(Integer.class)
               .metavar("INTEGER")
@@ -111,6 +115,10 @@ public class Simulate implements Command {
         if (out != null) {
             eval.setExtendedOutputFile(out.toPath());
         }
+        out = ctx.getSummaryOutputFile();
+        if (out != null) {
+            eval.setSummaryOutputFile(out.toPath());
+        }
 
         List<AlgorithmInstance> algos = AlgorithmInstance.load(ctx.getConfigFile().toPath(), "algorithm",
                                                                environment.getClassLoader());
@@ -147,6 +155,10 @@ public class Simulate implements Command {
             return options.get("extended_output");
         }
 
+        File getSummaryOutputFile() {
+            return options.get("summary_output");
+        }
+
         File getConfigFile() {
             return options.get("config");
         }
@@ -0,0 +1,455 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.cli.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import net.jcip.annotations.ThreadSafe;
+import org.lenskit.LenskitRecommender;
+import org.lenskit.LenskitRecommenderEngine;
+import org.lenskit.api.*;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.util.collections.LongUtils;
+import org.lenskit.util.monitor.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Serve recommendations over HTTP with JSON requests and responses.  The server shares one engine and one DAO
+ * across all requests, and creates a fresh {@link LenskitRecommender} for each request.
+ *
+ * Each operation endpoint accepts a single query as a GET request with URL parameters (`user`, `items` as a
+ * comma-separated list, and `n`), or a batch of queries as a POST request whose body is a JSON array of objects with
+ * the same fields.  A batch is answered by one recommender with a JSON array of results, in order.  For
+ * `/recommend`, `items` optionally restricts the candidate set; `/related` uses it as the reference items.  The `/metrics`
+ * endpoint reports request counts, throughput, and latency percentiles (in milliseconds) for each operation.
+ *
+ * Requests are handled by a fixed-size worker pool with a bounded queue; when the queue is full, the server stops
+ * accepting connections until a worker frees up.
+ */
+@ThreadSafe
+public class RecommenderServer implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(RecommenderServer.class);
+    private static final int DEFAULT_N = 10;
+
+    private final LenskitRecommenderEngine engine;
+    private final DataAccessObject dao;
+    private final HttpServer server;
+    private final ThreadPoolExecutor executor;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final JsonFactory factory = mapper.getFactory();
+    private final Map<String, EndpointStats> stats;
+    private final long startNanos;
+
+    /**
+     * Create a new server.  The server is not started until {@link #start()} is called.
+     *
+     * @param engine The recommender engine.
+     * @param dao The data access object to share across requests.
+     * @param address The address to bind to.  Use port 0 to pick a free port.
+     * @param threads The number of worker threads.
+     * @param queueSize The number of requests that may wait for a worker.
+     * @throws IOException if the server cannot bind to its address.
+     */
+    public RecommenderServer(LenskitRecommenderEngine engine, DataAccessObject dao,
+                             InetSocketAddress address, int threads, int queueSize) throws IOException {
+        Preconditions.checkArgument(threads > 0, "thread count must be positive");
+        Preconditions.checkArgument(queueSize > 0, "queue size must be positive");
+        this.engine = engine;
+        this.dao = dao;
+
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                                          new ArrayBlockingQueue<>(queueSize),
+                                          new ThreadFactoryBuilder().setNameFormat("lenskit-server-%d")
+                                                                    .setDaemon(true)
+                                                                    .build(),
+                                          RecommenderServer::waitForQueue);
+
+        Map<String, EndpointStats> sm = new LinkedHashMap<>();
+        server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        addEndpoint(sm, "recommend", this::recommend);
+        addEndpoint(sm, "predict", this::predict);
+        addEndpoint(sm, "score", this::score);
+        addEndpoint(sm, "related", this::related);
+        stats = Collections.unmodifiableMap(sm);
+        server.createContext("/metrics", this::handleMetrics);
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Start serving requests.
+     */
+    public void start() {
+        server.start();
+        logger.info("serving recommendations on {}", getAddress());
+    }
+
+    /**
+     * Get the address the server is listening on.
+     * @return The server's address, with the actual port if it was bound to port 0.
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Stop the server and its workers.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    /**
+     * Rejection handler that blocks the accepting thread until the queue has room.
+     */
+    private static void waitForQueue(Runnable task, ThreadPoolExecutor exec) {
+        if (exec.isShutdown()) {
+            throw new RejectedExecutionException("server is shut down");
+        }
+        try {
+            exec.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("interrupted waiting for a worker", e);
+        }
+    }
+
+    private void addEndpoint(Map<String, EndpointStats> sm, String name, Operation op) {
+        EndpointStats es = new EndpointStats();
+        sm.put(name, es);
+        server.createContext("/" + name, ex -> handle(ex, op, es));
+    }
+
+    private void handle(HttpExchange ex, Operation op, EndpointStats es) throws IOException {
+        long start = System.nanoTime();
+        int status = 200;
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try {
+            List<Query> queries;
+            boolean batch;
+            switch (ex.getRequestMethod()) {
+            case "GET":
+                queries = Collections.singletonList(Query.fromParameters(ex.getRequestURI().getRawQuery()));
+                batch = false;
+                break;
+            case "POST":
+                queries = Query.fromJSON(mapper.readTree(ex.getRequestBody()));
+                batch = true;
+                break;
+            default:
+                throw new RequestException(405, "unsupported method " + ex.getRequestMethod());
+            }
+
+            try (LenskitRecommender rec = engine.createRecommender(dao);
+                 JsonGenerator gen = factory.createGenerator(buffer)) {
+                if (batch) {
+                    gen.writeStartArray();
+                }
+                for (Query q: queries) {
+                    op.apply(rec, q, gen);
+                }
+                if (batch) {
+                    gen.writeEndArray();
+                }
+            }
+            es.queries.add(queries.size());
+        } catch (RequestException e) {
+            status = e.status;
+            buffer = errorBody(e.getMessage());
+        } catch (IOException | IllegalArgumentException e) {
+            status = 400;
+            buffer = errorBody(e.getMessage());
+        } catch (Exception e) {
+            logger.error("error handling " + ex.getRequestURI(), e);
+            status = 500;
+            buffer = errorBody(e.toString());
+        }
+
+        es.record(System.nanoTime() - start, status);
+        sendResponse(ex, status, buffer.toByteArray());
+    }
+
+    private void handleMetrics(HttpExchange ex) throws IOException {
+        double uptime = (System.nanoTime() - startNanos) * 1.0e-9;
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (JsonGenerator gen = factory.createGenerator(buffer)) {
+            gen.writeStartObject();
+            gen.writeNumberField("uptime", uptime);
+            gen.writeNumberField("active_workers", executor.getActiveCount());
+            gen.writeNumberField("queued", executor.getQueue().size());
+            gen.writeObjectFieldStart("endpoints");
+            for (Map.Entry<String, EndpointStats> e: stats.entrySet()) {
+                gen.writeFieldName(e.getKey());
+                e.getValue().write(gen, uptime);
+            }
+            gen.writeEndObject();
+            gen.writeEndObject();
+        }
+        sendResponse(ex, 200, buffer.toByteArray());
+    }
+
+    private ByteArrayOutputStream errorBody(String message) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (JsonGenerator gen = factory.createGenerator(buffer)) {
+            gen.writeStartObject();
+            gen.writeStringField("error", message);
+            gen.writeEndObject();
+        }
+        return buffer;
+    }
+
+    private static void sendResponse(HttpExchange ex, int status, byte[] body) throws IOException {
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(status, body.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private void recommend(LenskitRecommender rec, Query q, JsonGenerator gen) throws IOException {
+        ItemRecommender irec = rec.getItemRecommender();
+        if (irec == null) {
+            throw new RequestException(501, "recommender has no item recommender");
+        }
+        ResultList recs = irec.recommendWithDetails(q.requireUser(), q.n,
+                                                    q.items == null ? null : LongUtils.packedSet(q.items),
+                                                    null);
+        gen.writeStartObject();
+        gen.writeNumberField("user", q.user);
+        writeResults(gen, "recommendations", recs);
+        gen.writeEndObject();
+    }
+
+    private void predict(LenskitRecommender rec, Query q, JsonGenerator gen) throws IOException {
+        RatingPredictor pred = rec.getRatingPredictor();
+        if (pred == null) {
+            throw new RequestException(501, "recommender has no rating predictor");
+        }
+        ResultMap preds = pred.predictWithDetails(q.requireUser(), q.requireItems());
+        gen.writeStartObject();
+        gen.writeNumberField("user", q.user);
+        writeResults(gen, "predictions", preds);
+        gen.writeEndObject();
+    }
+
+    private void score(LenskitRecommender rec, Query q, JsonGenerator gen) throws IOException {
+        ItemScorer scorer = rec.getItemScorer();
+        if (scorer == null) {
+            throw new RequestException(501, "recommender has no item scorer");
+        }
+        ResultMap scores = scorer.scoreWithDetails(q.requireUser(), q.requireItems());
+        gen.writeStartObject();
+        gen.writeNumberField("user", q.user);
+        writeResults(gen, "scores", scores);
+        gen.writeEndObject();
+    }
+
+    private void related(LenskitRecommender rec, Query q, JsonGenerator gen) throws IOException {
+        ItemBasedItemRecommender irec = rec.getItemBasedItemRecommender();
+        if (irec == null) {
+            throw new RequestException(501, "recommender has no item-based recommender");
+        }
+        ResultList recs = irec.recommendRelatedItemsWithDetails(LongUtils.packedSet(q.requireItems()),
+                                                                q.n, null, null);
+        gen.writeStartObject();
+        gen.writeArrayFieldStart("items");
+        for (long item: q.items) {
+            gen.writeNumber(item);
+        }
+        gen.writeEndArray();
+        writeResults(gen, "related", recs);
+        gen.writeEndObject();
+    }
+
+    private static void writeResults(JsonGenerator gen, String field, Iterable<Result> results) throws IOException {
+        gen.writeArrayFieldStart(field);
+        for (Result r: results) {
+            gen.writeStartObject();
+            gen.writeNumberField("item", r.getId());
+            gen.writeNumberField("score", r.getScore());
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+        void apply(LenskitRecommender rec, Query query, JsonGenerator gen) throws IOException;
+    }
+
+    /**
+     * A single query, from URL parameters or one element of a JSON batch.
+     */
+    static class Query {
+        Long user;
+        LongList items;
+        int n = DEFAULT_N;
+
+        long requireUser() {
+            if (user == null) {
+                throw new IllegalArgumentException("no user specified");
+            }
+            return user;
+        }
+
+        LongList requireItems() {
+            if (items == null || items.isEmpty()) {
+                throw new IllegalArgumentException("no items specified");
+            }
+            return items;
+        }
+
+        static Query fromParameters(String query) throws IOException {
+            Query q = new Query();
+            if (query == null) {
+                return q;
+            }
+            for (String param: Splitter.on('&').omitEmptyStrings().split(query)) {
+                int eq = param.indexOf('=');
+                String key = URLDecoder.decode(eq < 0 ? param : param.substring(0, eq), "UTF-8");
+                String value = eq < 0 ? "" : URLDecoder.decode(param.substring(eq + 1), "UTF-8");
+                switch (key) {
+                case "user":
+                    q.user = Long.parseLong(value);
+                    break;
+                case "items":
+                    q.items = new LongArrayList();
+                    for (String item: Splitter.on(',').trimResults().omitEmptyStrings().split(value)) {
+                        q.items.add(Long.parseLong(item));
+                    }
+                    break;
+                case "n":
+                    q.n = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown parameter " + key);
+                }
+            }
+            return q;
+        }
+
+        static List<Query> fromJSON(JsonNode node) {
+            if (node == null || !node.isArray()) {
+                throw new IllegalArgumentException("batch request must be a JSON array");
+            }
+            List<Query> queries = new ArrayList<>(node.size());
+            for (JsonNode qn: node) {
+                if (!qn.isObject()) {
+                    throw new IllegalArgumentException("batch entries must be JSON objects");
+                }
+                Query q = new Query();
+                JsonNode user = qn.get("user");
+                if (user != null) {
+                    q.user = user.asLong();
+                }
+                JsonNode items = qn.get("items");
+                if (items != null) {
+                    q.items = new LongArrayList(items.size());
+                    for (JsonNode item: items) {
+                        q.items.add(item.asLong());
+                    }
+                }
+                JsonNode n = qn.get("n");
+                if (n != null) {
+                    q.n = n.asInt();
+                }
+                queries.add(q);
+            }
+            return queries;
+        }
+    }
+
+    /**
+     * Statistics for a single endpoint.
+     */
+    private static class EndpointStats {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder queries = new LongAdder();
+
+        void record(long nanos, int status) {
+            latency.record(nanos);
+            if (status >= 400) {
+                errors.increment();
+            }
+        }
+
+        void write(JsonGenerator gen, double uptime) throws IOException {
+            long n = latency.getCount();
+            gen.writeStartObject();
+            gen.writeNumberField("requests", n);
+            gen.writeNumberField("queries", queries.sum());
+            gen.writeNumberField("errors", errors.sum());
+            gen.writeNumberField("requests_per_second", uptime > 0 ? n / uptime : 0);
+            gen.writeObjectFieldStart("latency");
+            if (n > 0) {
+                gen.writeNumberField("mean", latency.getMean() * 1.0e-6);
+            } else {
+                gen.writeNullField("mean");
+            }
+            gen.writeNumberField("p50", latency.getPercentile(50) * 1.0e-6);
+            gen.writeNumberField("p95", latency.getPercentile(95) * 1.0e-6);
+            gen.writeNumberField("p99", latency.getPercentile(99) * 1.0e-6);
+            gen.writeNumberField("max", latency.getMax() * 1.0e-6);
+            gen.writeEndObject();
+            gen.writeEndObject();
+        }
+    }
+
+    /**
+     * Exception for requests that cannot be served, carrying the HTTP status to report.
+     */
+    private static class RequestException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        private final int status;
+
+        RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.cli.commands
+
+import groovy.json.JsonSlurper
+import net.sourceforge.argparse4j.ArgumentParsers
+import net.sourceforge.argparse4j.inf.ArgumentParser
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.lenskit.LenskitConfiguration
+import org.lenskit.LenskitRecommenderEngine
+import org.lenskit.api.ItemRecommender
+import org.lenskit.api.ItemScorer
+import org.lenskit.baseline.ItemMeanRatingItemScorer
+import org.lenskit.cli.LenskitCommandException
+import org.lenskit.data.dao.DataAccessObject
+import org.lenskit.data.dao.file.StaticDataSource
+import org.lenskit.data.ratings.Rating
+
+import java.util.zip.GZIPInputStream
+
+import static org.hamcrest.Matchers.*
+import static org.junit.Assert.assertThat
+import static org.junit.Assert.fail
+
+class RecommendAllTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder()
+
+    ArgumentParser parser
+    RecommendAll command
+    DataAccessObject dao
+    LenskitRecommenderEngine engine
+
+    @Before
+    public void initialize() {
+        parser = ArgumentParsers.newArgumentParser("recommend-all")
+        command = new RecommendAll()
+        command.configureArguments(parser)
+
+        def ratings = []
+        for (long u = 1; u <= 20; u++) {
+            for (long i = 1; i <= 5; i++) {
+                if ((u + i) % 3 != 0) {
+                    ratings << Rating.create(u, 100 + i, (u * i) % 5 + 1)
+                }
+            }
+        }
+        dao = StaticDataSource.fromList(ratings).get()
+        def config = new LenskitConfiguration()
+        config.bind(ItemScorer).to(ItemMeanRatingItemScorer)
+        engine = LenskitRecommenderEngine.build(config, dao)
+    }
+
+    def export(String... args) {
+        def opts = parser.parseArgs((['-o', tmp.root.absolutePath] + args.toList()) as String[])
+        return command.export(engine, dao, opts)
+    }
+
+    @Test
+    public void testCSVShards() {
+        assertThat(export('--shards', '3', '--threads', '2', '-n', '2'), equalTo(3))
+        def files = tmp.root.listFiles()*.name.sort()
+        assertThat(files, contains('recs-00000-of-00003.csv',
+                                   'recs-00001-of-00003.csv',
+                                   'recs-00002-of-00003.csv'))
+
+        def users = []
+        for (name in files) {
+            def lines = new File(tmp.root, name).readLines()
+            assertThat(lines[0], equalTo('user,rank,item,score'))
+            def rows = lines.drop(1)*.split(',')
+            def shardUsers = rows.collect { it[0] as long }.unique()
+            // shards hold contiguous runs of the sorted users
+            assertThat(shardUsers, equalTo(shardUsers.sort(false)))
+            if (!users.isEmpty()) {
+                assertThat(shardUsers[0], greaterThan(users.last()))
+            }
+            users.addAll(shardUsers)
+            for (row in rows) {
+                assertThat(row[1] as int, isOneOf(1, 2))
+            }
+        }
+        assertThat(users, hasSize(20))
+    }
+
+    @Test
+    public void testCompressedJSON() {
+        assertThat(export('--shards', '2', '--format', 'json', '--gzip', '-n', '1'), equalTo(2))
+        def file = new File(tmp.root, 'recs-00001-of-00002.jsonl.gz')
+        assertThat(file.exists(), equalTo(true))
+        def lines = new GZIPInputStream(new FileInputStream(file)).withReader('UTF-8') { it.readLines() }
+        assertThat(lines, hasSize(10))
+        def first = new JsonSlurper().parseText(lines[0])
+        assertThat(first.user, equalTo(11))
+        assertThat(first.recommendations, hasSize(lessThanOrEqualTo(1)))
+    }
+
+    @Test
+    public void testResume() {
+        export('--shards', '4')
+        def done = new File(tmp.root, 'recs-00001-of-00004.csv')
+        done.text = 'marker\n'
+        assertThat(new File(tmp.root, 'recs-00002-of-00004.csv').delete(), equalTo(true))
+
+        assertThat(export('--shards', '4', '--resume'), equalTo(1))
+        assertThat(done.text, equalTo('marker\n'))
+        assertThat(new File(tmp.root, 'recs-00002-of-00004.csv').exists(), equalTo(true))
+        assertThat(tmp.root.listFiles()*.name.findAll { it.endsWith('.tmp') }, empty())
+
+        // without --resume, every shard is rewritten
+        assertThat(export('--shards', '4'), equalTo(4))
+        assertThat(done.text, startsWith('user,rank,item,score'))
+    }
+
+    @Test
+    public void testNoItemRecommender() {
+        def config = new LenskitConfiguration()
+        config.bind(ItemScorer).to(ItemMeanRatingItemScorer)
+        config.bind(ItemRecommender).toNull()
+        engine = LenskitRecommenderEngine.build(config, dao)
+        try {
+            export('--shards', '2')
+            fail('export without an item recommender should fail')
+        } catch (LenskitCommandException e) {
+            /* expected */
+        }
+        assertThat(tmp.root.listFiles(), emptyArray())
+    }
+
+    @Test
+    public void testJSONNumbers() {
+        assertThat(RecommendAll.jsonNumber(3.5), equalTo('3.5'))
+        assertThat(RecommendAll.jsonNumber(Double.NaN), equalTo('null'))
+        assertThat(RecommendAll.jsonNumber(Double.POSITIVE_INFINITY), equalTo('null'))
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.cli.util
+
+import groovy.json.JsonOutput
+import groovy.json.JsonSlurper
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.lenskit.LenskitConfiguration
+import org.lenskit.LenskitRecommenderEngine
+import org.lenskit.api.ItemScorer
+import org.lenskit.baseline.ItemMeanRatingItemScorer
+import org.lenskit.data.dao.file.StaticDataSource
+import org.lenskit.data.ratings.Rating
+
+import static org.hamcrest.Matchers.*
+import static org.junit.Assert.assertThat
+
+class RecommenderServerTest {
+    RecommenderServer server
+    String base
+
+    @Before
+    public void startServer() {
+        def ratings = [Rating.create(1, 10, 4.0),
+                       Rating.create(1, 11, 3.0),
+                       Rating.create(2, 10, 5.0),
+                       Rating.create(2, 12, 2.0),
+                       Rating.create(3, 11, 4.0),
+                       Rating.create(3, 13, 3.0)]
+        def dao = StaticDataSource.fromList(ratings).get()
+        def config = new LenskitConfiguration()
+        config.bind(ItemScorer).to(ItemMeanRatingItemScorer)
+        def engine = LenskitRecommenderEngine.build(config, dao)
+
+        server = new RecommenderServer(engine, dao, new InetSocketAddress(InetAddress.loopbackAddress, 0), 2, 4)
+        server.start()
+        base = "http://localhost:${server.address.port}"
+    }
+
+    @After
+    public void stopServer() {
+        server.close()
+    }
+
+    def get(String path) {
+        return new JsonSlurper().parse(new URL(base + path))
+    }
+
+    def request(String path, String method, String body) {
+        HttpURLConnection conn = new URL(base + path).openConnection() as HttpURLConnection
+        conn.requestMethod = method
+        if (body != null) {
+            conn.doOutput = true
+            conn.outputStream.withWriter('UTF-8') { it << body }
+        }
+        def stream = conn.responseCode < 400 ? conn.inputStream : conn.errorStream
+        return [conn.responseCode, new JsonSlurper().parse(stream)]
+    }
+
+    @Test
+    public void testRecommend() {
+        def result = get('/recommend?user=1&n=2')
+        assertThat(result.user, equalTo(1))
+        // user 1 has rated 10 and 11; item 12 has mean 2.0 and 13 has mean 3.0
+        assertThat(result.recommendations*.item, contains(13, 12))
+    }
+
+    @Test
+    public void testRecommendCandidates() {
+        def result = get('/recommend?user=1&items=12')
+        assertThat(result.recommendations*.item, contains(12))
+    }
+
+    @Test
+    public void testPredictAndScore() {
+        def preds = get('/predict?user=3&items=10,12')
+        assertThat(preds.user, equalTo(3))
+        def pmap = preds.predictions.collectEntries { [it.item, it.score] }
+        assertThat(pmap[10], closeTo(4.5d, 1.0e-6d))
+        assertThat(pmap[12], closeTo(2.0d, 1.0e-6d))
+
+        def scores = get('/score?user=3&items=13')
+        assertThat(scores.scores*.item, contains(13))
+        assertThat(scores.scores[0].score, closeTo(3.0d, 1.0e-6d))
+    }
+
+    @Test
+    public void testBatch() {
+        def (status, result) = request('/recommend', 'POST',
+                                       JsonOutput.toJson([[user: 1, n: 1], [user: 2, n: 1]]))
+        assertThat(status, equalTo(200))
+        assertThat(result, hasSize(2))
+        assertThat(result*.user, contains(1, 2))
+        assertThat(result[0].recommendations*.item, contains(13))
+        assertThat(result[1].recommendations*.item, contains(11))
+    }
+
+    @Test
+    public void testBadRequests() {
+        def (status, result) = request('/predict?items=10', 'GET', null)
+        assertThat(status, equalTo(400))
+        assertThat(result.error, containsString('user'))
+
+        (status, result) = request('/recommend?user=bob', 'GET', null)
+        assertThat(status, equalTo(400))
+
+        (status, result) = request('/recommend', 'POST', '{"user": 1}')
+        assertThat(status, equalTo(400))
+
+        (status, result) = request('/recommend?user=1', 'DELETE', null)
+        assertThat(status, equalTo(405))
+    }
+
+    @Test
+    public void testMetrics() {
+        get('/recommend?user=1')
+        get('/recommend?user=2')
+        request('/predict?items=10', 'GET', null)
+        request('/score', 'POST', JsonOutput.toJson([[user: 1, items: [12]], [user: 2, items: [13]]]))
+
+        def metrics = get('/metrics')
+        assertThat(metrics.uptime as double, greaterThan(0.0d))
+        def rec = metrics.endpoints.recommend
+        assertThat(rec.requests, equalTo(2))
+        assertThat(rec.queries, equalTo(2))
+        assertThat(rec.errors, equalTo(0))
+        assertThat(rec.latency.max as double, greaterThan(0.0d))
+        assertThat(rec.latency.p50 as double, lessThanOrEqualTo(rec.latency.max as double))
+        assertThat(metrics.endpoints.predict.errors, equalTo(1))
+        assertThat(metrics.endpoints.score.requests, equalTo(1))
+        assertThat(metrics.endpoints.score.queries, equalTo(2))
+        assertThat(metrics.endpoints.related.requests, equalTo(0))
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import org.grouplens.grapht.Component;
+import org.grouplens.grapht.Dependency;
+import org.grouplens.grapht.InjectionException;
+import org.grouplens.grapht.graph.DAGEdge;
+import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.graph.DAGNodeBuilder;
+import org.grouplens.grapht.reflect.Satisfaction;
+import org.grouplens.grapht.reflect.Satisfactions;
+import org.grouplens.grapht.reflect.internal.InstanceSatisfaction;
+import org.lenskit.api.RecommenderBuildException;
+import org.lenskit.inject.GraphtUtils;
+import org.lenskit.inject.LazyInstanceSatisfaction;
+import org.lenskit.inject.NodeProcessors;
+import org.lenskit.inject.Shareable;
+import org.lenskit.util.io.CodecObjectOutputStream;
+import org.lenskit.util.io.CustomClassLoaderObjectInputStream;
+import org.lenskit.util.io.StagedWrite;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Read and write recommender engines in the component archive format.  An archive is a ZIP file
+ * containing the serialized graph skeleton in the {@link #GRAPH_ENTRY} entry, and each shareable
+ * component instance in its own separately-compressed entry.  On load, component instances are
+ * replaced with {@link LazyInstanceSatisfaction}s, so they are only deserialized when first used.
+ */
+final class EngineArchive {
+    private static final Logger logger = LoggerFactory.getLogger(EngineArchive.class);
+    static final String GRAPH_ENTRY = "graph.ser";
+    static final String COMPONENT_PREFIX = "components/";
+
+    private EngineArchive() {
+    }
+
+    /**
+     * Query whether a file is a component archive (a ZIP file).
+     * @param file The file.
+     * @return {@code true} if the file begins with the ZIP header.
+     * @throws IOException if there is an error reading the file.
+     */
+    static boolean isArchive(File file) throws IOException {
+        byte[] magic = new byte[4];
+        try (InputStream in = new FileInputStream(file)) {
+            int n = in.read(magic);
+            return n == 4 && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4;
+        }
+    }
+
+    /**
+     * Write a graph as a component archive.
+     *
+     * @param graph The graph to write.
+     * @param file The output file.
+     * @throws IOException if there is an error writing the archive.
+     */
+    static void write(DAGNode<Component, Dependency> graph, File file) throws IOException {
+        Stopwatch timer = Stopwatch.createStarted();
+        // components of an engine loaded from an archive are re-archived from their loaded instances
+        graph = materialize(graph);
+        List<DAGNode<Component, Dependency>> nodes = Lists.newArrayList();
+        for (DAGNode<Component, Dependency> node: graph.getSortedNodes()) {
+            Satisfaction sat = node.getLabel().getSatisfaction();
+            if (sat instanceof InstanceSatisfaction && isArchivable(((InstanceSatisfaction) sat).getInstance())) {
+                nodes.add(node);
+            }
+        }
+
+        try (StagedWrite stage = StagedWrite.begin(file.toPath())) {
+            try (OutputStream out = stage.openOutputStream();
+                 ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(out))) {
+                List<Object> instances = Lists.newArrayListWithCapacity(nodes.size());
+                DAGNode<Component, Dependency> skeleton;
+                try {
+                    skeleton = NodeProcessors.processNodes(graph, nodes, (node, original) -> {
+                        Satisfaction sat = node.getLabel().getSatisfaction();
+                        String entry = COMPONENT_PREFIX + instances.size() + ".ser";
+                        instances.add(((InstanceSatisfaction) sat).getInstance());
+                        Component label = Component.create(new LazyInstanceSatisfaction(sat.getErasedType(), entry),
+                                                           node.getLabel().getCachePolicy());
+                        DAGNodeBuilder<Component, Dependency> bld = DAGNode.newBuilder(label);
+                        for (DAGEdge<Component, Dependency> edge: node.getOutgoingEdges()) {
+                            bld.addEdge(edge.getTail(), edge.getLabel());
+                        }
+                        return bld.build();
+                    });
+                } catch (InjectionException e) {
+                    throw new IOException("cannot prepare graph skeleton", e);
+                }
+
+                zip.putNextEntry(new ZipEntry(GRAPH_ENTRY));
+                writeObject(zip, skeleton);
+                zip.closeEntry();
+
+                for (int i = 0; i < instances.size(); i++) {
+                    Object obj = instances.get(i);
+                    logger.debug("writing component {} as entry {}", obj, i);
+                    zip.putNextEntry(new ZipEntry(COMPONENT_PREFIX + i + ".ser"));
+                    writeObject(zip, obj);
+                    zip.closeEntry();
+                }
+            }
+            stage.commit();
+        }
+        timer.stop();
+        logger.info("wrote {} components to {} in {} ({})", nodes.size(), file, timer,
+                    LenskitRecommenderEngine.describeThroughput(file.length(), timer));
+    }
+
+    /**
+     * Read the graph skeleton from a component archive.
+     *
+     * @param file The archive file.
+     * @param loader The class loader.
+     * @return The graph, with lazy satisfactions attached to the archive.
+     * @throws IOException if there is an error reading the archive.
+     * @throws ClassNotFoundException if a class in the graph cannot be found.
+     */
+    @SuppressWarnings("unchecked")
+    static DAGNode<Component, Dependency> readGraph(File file, @Nullable ClassLoader loader) throws IOException, ClassNotFoundException {
+        DAGNode<Component, Dependency> graph;
+        try (ZipFile zip = new ZipFile(file)) {
+            ZipEntry entry = zip.getEntry(GRAPH_ENTRY);
+            if (entry == null) {
+                throw new IOException(file + " is not a LensKit component archive");
+            }
+            try (InputStream in = zip.getInputStream(entry);
+                 ObjectInputStream oin = new CustomClassLoaderObjectInputStream(new BufferedInputStream(in), loader)) {
+                graph = (DAGNode) oin.readObject();
+            }
+        }
+
+        for (LazyInstanceSatisfaction sat: getLazySatisfactions(graph)) {
+            sat.attach(file, loader);
+        }
+        return graph;
+    }
+
+    /**
+     * Replace the lazy satisfactions in a graph with instance satisfactions, loading their instances.  This
+     * detaches the graph from the archive it was loaded from, so it can be written again.
+     *
+     * @param graph The graph.
+     * @return The graph with all lazy components loaded, or {@code graph} if it has no lazy components.
+     * @throws IOException if a component cannot be loaded.
+     */
+    static DAGNode<Component, Dependency> materialize(DAGNode<Component, Dependency> graph) throws IOException {
+        List<DAGNode<Component, Dependency>> nodes = Lists.newArrayList();
+        for (DAGNode<Component, Dependency> node: graph.getReachableNodes()) {
+            if (node.getLabel().getSatisfaction() instanceof LazyInstanceSatisfaction) {
+                nodes.add(node);
+            }
+        }
+        if (nodes.isEmpty()) {
+            return graph;
+        }
+
+        try {
+            return NodeProcessors.processNodes(graph, nodes, (node, original) -> {
+                LazyInstanceSatisfaction sat = (LazyInstanceSatisfaction) node.getLabel().getSatisfaction();
+                Component label = Component.create(Satisfactions.instance(sat.getInstance()),
+                                                   node.getLabel().getCachePolicy());
+                DAGNodeBuilder<Component, Dependency> bld = DAGNode.newBuilder(label);
+                for (DAGEdge<Component, Dependency> edge: node.getOutgoingEdges()) {
+                    bld.addEdge(edge.getTail(), edge.getLabel());
+                }
+                return bld.build();
+            });
+        } catch (InjectionException | RecommenderBuildException e) {
+            throw new IOException("cannot load archived components", e);
+        }
+    }
+
+    /**
+     * Get the lazy satisfactions in a graph.
+     * @param graph The graph.
+     * @return The list of lazy satisfactions.
+     */
+    static List<LazyInstanceSatisfaction> getLazySatisfactions(DAGNode<Component, Dependency> graph) {
+        List<LazyInstanceSatisfaction> sats = Lists.newArrayList();
+        for (DAGNode<Component, Dependency> node: graph.getReachableNodes()) {
+            Satisfaction sat = node.getLabel().getSatisfaction();
+            if (sat instanceof LazyInstanceSatisfaction) {
+                sats.add((LazyInstanceSatisfaction) sat);
+            }
+        }
+        return sats;
+    }
+
+    /**
+     * Determine whether an instance should be stored in its own entry.  Only serializable instances of
+     * {@linkplain Shareable shareable} components are archived; configured values such as parameters and
+     * other instances stay in the graph skeleton.
+     */
+    private static boolean isArchivable(Object obj) {
+        if (!(obj instanceof Serializable)) {
+            return false;
+        }
+        for (Class<?> cls = obj.getClass(); cls != null; cls = cls.getSuperclass()) {
+            if (cls.isAnnotationPresent(Shareable.class)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void writeObject(OutputStream out, Object obj) throws IOException {
+        // do not close the object stream, that would close the zip file
+        ObjectOutputStream oout = new CodecObjectOutputStream(out);
+        oout.writeObject(obj);
+        oout.flush();
+    }
+}
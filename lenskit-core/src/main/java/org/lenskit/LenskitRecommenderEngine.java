@@ -25,6 +25,8 @@
 package org.lenskit;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import com.google.common.io.CountingOutputStream;
 import org.grouplens.grapht.Component;
 import org.grouplens.grapht.Dependency;
 import org.grouplens.grapht.ResolutionException;
@@ -33,11 +35,13 @@ import org.grouplens.grapht.reflect.Qualifiers;
 import org.grouplens.grapht.reflect.Satisfaction;
 import org.grouplens.grapht.reflect.internal.InstanceSatisfaction;
 import org.grouplens.grapht.solver.DependencySolver;
+import org.lenskit.util.io.CodecObjectOutputStream;
 import org.lenskit.util.io.CompressionMode;
 import org.lenskit.api.RecommenderBuildException;
 import org.lenskit.api.RecommenderEngine;
 import org.lenskit.data.dao.DataAccessObject;
 import org.lenskit.inject.GraphtUtils;
+import org.lenskit.inject.LazyInstanceSatisfaction;
 import org.lenskit.inject.RecommenderGraphBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,6 +51,7 @@ import javax.annotation.Nullable;
 import javax.annotation.WillClose;
 import javax.annotation.WillNotClose;
 import java.io.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * LensKit implementation of a recommender engine.  It uses containers set up by
@@ -70,6 +75,7 @@ public final class LenskitRecommenderEngine implements RecommenderEngine, Serial
 
     private final DAGNode<Component, Dependency> graph;
     private final boolean instantiable;
+    private transient volatile LenskitRecommenderFactory recommenderFactory;
 
     /**
      * Build an engine encapsulating a dependency graph.  You generally do not want to use this - use
@@ -170,16 +176,49 @@ public final class LenskitRecommenderEngine implements RecommenderEngine, Serial
      * Write the state of this recommender engine to the given stream so
      * that it can be recreated later using another DAOFactory. This uses
      * default object serialization so if the factory has session bindings
-     * containing non-serializable types, this will fail.
+     * containing non-serializable types, this will fail.  Components with a
+     * {@linkplain org.lenskit.util.io.ModelCodec model codec} are written with
+     * their codec instead.
      *
      * @param stream The file to write the rec engine to.
      * @throws IOException if there is an error serializing the engine.
      * @see #load(InputStream)
      */
     public void write(@Nonnull @WillClose OutputStream stream) throws IOException {
-        try (ObjectOutputStream out = new ObjectOutputStream(stream)) {
-            out.writeObject(graph);
+        Stopwatch timer = Stopwatch.createStarted();
+        CountingOutputStream counter = new CountingOutputStream(stream);
+        try (ObjectOutputStream out = new CodecObjectOutputStream(counter)) {
+            // components of an engine loaded from an archive are written from their loaded instances
+            out.writeObject(EngineArchive.materialize(graph));
         }
+        timer.stop();
+        logger.info("wrote recommender engine in {} ({})", timer,
+                    describeThroughput(counter.getCount(), timer));
+    }
+
+    /**
+     * Describe the throughput of reading or writing an engine, for logging.
+     * @param bytes The number of bytes transferred.
+     * @param timer The stopped timer.
+     * @return A description of the data size and rate.
+     */
+    static String describeThroughput(long bytes, Stopwatch timer) {
+        double secs = Math.max(timer.elapsed(TimeUnit.NANOSECONDS), 1) * 1.0e-9;
+        double mib = bytes / (1024.0 * 1024.0);
+        return String.format("%d bytes, %.2f MiB/s", bytes, mib / secs);
+    }
+
+    /**
+     * Write this recommender engine to a component archive.  The archive is a ZIP file in which
+     * each pre-built shareable component is stored in a separate, separately-compressed entry.
+     * When {@linkplain LenskitRecommenderEngineLoader#load(File) loaded}, only the graph structure
+     * is read eagerly; each component is deserialized the first time it is used.
+     *
+     * @param file The file to write the archive to.
+     * @throws IOException if there is an error serializing the engine.
+     */
+    public void writeArchive(@Nonnull File file) throws IOException {
+        EngineArchive.write(graph, file);
     }
 
     /**
@@ -209,17 +248,33 @@ public final class LenskitRecommenderEngine implements RecommenderEngine, Serial
     }
 
     /**
-     * Create a LensKit recommender.
+     * Create a LensKit recommender.  The graph rewrite needed to attach the DAO is cached by the
+     * engine's {@linkplain #newRecommenderFactory() recommender factory}, so creating many
+     * recommenders with different DAOs is cheap.
+     *
      * @param dao The data access object
      * @return The constructed recommender.
      */
     public LenskitRecommender createRecommender(@WillNotClose DataAccessObject dao) throws RecommenderBuildException {
-        LenskitConfiguration config = new LenskitConfiguration();
-        config.addComponent(dao);
-        return createRecommender(config);
+        LenskitRecommenderFactory factory = recommenderFactory;
+        if (factory == null) {
+            factory = newRecommenderFactory();
+            recommenderFactory = factory;
+        }
+        return factory.createRecommender(dao);
+    }
+
+    /**
+     * Create a factory for building recommenders from this engine.  The factory prepares the
+     * dependency graph once for each DAO class and reuses it for every recommender it creates.
+     *
+     * @return A new recommender factory.
+     */
+    public LenskitRecommenderFactory newRecommenderFactory() {
+        return new LenskitRecommenderFactory(this);
     }
 
-    private DAGNode<Component, Dependency> createRecommenderGraph(LenskitConfiguration config) throws RecommenderConfigurationException {
+    DAGNode<Component, Dependency> createRecommenderGraph(LenskitConfiguration config) throws RecommenderConfigurationException {
         Preconditions.checkNotNull(config, "extra configuration");
         final DAGNode<Component, Dependency> toBuild;
         RecommenderGraphBuilder rgb = new RecommenderGraphBuilder();
@@ -270,6 +325,8 @@ public final class LenskitRecommenderEngine implements RecommenderEngine, Serial
         Satisfaction sat = node.getLabel().getSatisfaction();
         if (sat instanceof InstanceSatisfaction) {
             return type.cast(((InstanceSatisfaction) sat).getInstance());
+        } else if (sat instanceof LazyInstanceSatisfaction) {
+            return type.cast(((LazyInstanceSatisfaction) sat).getInstance());
         } else {
             return null;
         }
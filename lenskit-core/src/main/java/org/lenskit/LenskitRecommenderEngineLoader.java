@@ -25,7 +25,9 @@
 package org.lenskit;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.Lists;
+import com.google.common.io.CountingInputStream;
 import org.grouplens.grapht.Component;
 import org.grouplens.grapht.Dependency;
 import org.grouplens.grapht.ResolutionException;
@@ -37,6 +39,7 @@ import org.lenskit.util.io.CompressionMode;
 import org.lenskit.util.io.CustomClassLoaderObjectInputStream;
 import org.lenskit.util.io.LKFileUtils;
 import org.lenskit.inject.GraphtUtils;
+import org.lenskit.inject.LazyInstanceSatisfaction;
 import org.lenskit.inject.RecommenderGraphBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,6 +60,7 @@ public class LenskitRecommenderEngineLoader {
     private List<LenskitConfiguration> configurations = Lists.newArrayList();
     private EngineValidationMode validationMode = EngineValidationMode.IMMEDIATE;
     private CompressionMode compressionMode = CompressionMode.AUTO;
+    private boolean preloadComponents = false;
 
     /**
      * Get the configured class loader.
@@ -112,6 +116,28 @@ public class LenskitRecommenderEngineLoader {
         return this;
     }
 
+    /**
+     * Query whether components will be preloaded from component archives.
+     * @return {@code true} if components will be preloaded.
+     */
+    public boolean getPreloadComponents() {
+        return preloadComponents;
+    }
+
+    /**
+     * Set whether to preload components when loading a component archive (written with
+     * {@link LenskitRecommenderEngine#writeArchive(File)}).  By default, components in an archive
+     * are only loaded on first use; if this option is set, they are all loaded in parallel before
+     * the engine is returned.  This option has no effect on engines written as a single object stream.
+     *
+     * @param preload {@code true} to preload components.
+     * @return The loader (for chaining).
+     */
+    public LenskitRecommenderEngineLoader setPreloadComponents(boolean preload) {
+        preloadComponents = preload;
+        return this;
+    }
+
     /**
      * Load a recommender engine from an input stream.
      * <p>
@@ -139,7 +165,8 @@ public class LenskitRecommenderEngineLoader {
     }
 
     /**
-     * Load a recommender from a file.
+     * Load a recommender from a file.  The file can either be a (possibly-compressed) object stream
+     * or a component archive; archives are detected automatically.
      *
      * @param file The recommender model file to load.
      * @return The recommender engine.
@@ -150,6 +177,9 @@ public class LenskitRecommenderEngineLoader {
      */
     public LenskitRecommenderEngine load(File file) throws IOException, RecommenderConfigurationException {
         logger.info("Loading recommender engine from {}", file);
+        if (EngineArchive.isArchive(file)) {
+            return loadArchive(file);
+        }
         try (FileInputStream input = new FileInputStream(file)) {
             CompressionMode effComp = compressionMode.getEffectiveCompressionMode(file.getName());
             logger.info("using {} compression", effComp);
@@ -187,8 +217,9 @@ public class LenskitRecommenderEngineLoader {
         DAGNode<Component, Dependency> graph;
 
         // And load the stream once we've wrapped it appropriately.
-        ObjectInputStream in = new CustomClassLoaderObjectInputStream(
-                LKFileUtils.transparentlyDecompress(stream), classLoader);
+        Stopwatch timer = Stopwatch.createStarted();
+        CountingInputStream counter = new CountingInputStream(LKFileUtils.transparentlyDecompress(stream));
+        ObjectInputStream in = new CustomClassLoaderObjectInputStream(counter, classLoader);
         try {
             ClassLoaderContext ctx = null;
             if (classLoader != null) {
@@ -207,7 +238,56 @@ public class LenskitRecommenderEngineLoader {
         } finally {
             in.close();
         }
+        timer.stop();
+        logger.info("read recommender engine in {} ({})", timer,
+                    LenskitRecommenderEngine.describeThroughput(counter.getCount(), timer));
+
+        return configureEngine(graph);
+    }
+
+    /**
+     * Load a recommender engine from a component archive.
+     *
+     * @param file The archive file.
+     * @return The recommender engine.
+     * @throws IOException If there is an I/O error reading the engine.
+     * @throws RecommenderConfigurationException If there is a configuration error.
+     */
+    private LenskitRecommenderEngine loadArchive(File file) throws IOException, RecommenderConfigurationException {
+        logger.info("reading component archive {}", file);
+        DAGNode<Component, Dependency> graph;
+        ClassLoaderContext ctx = null;
+        if (classLoader != null) {
+            ctx = ClassLoaders.pushContext(classLoader);
+        }
+        try {
+            graph = EngineArchive.readGraph(file, classLoader);
+        } catch (ClassNotFoundException e) {
+            throw new RecommenderConfigurationException(e);
+        } finally {
+            if (ctx != null) {
+                ctx.pop();
+            }
+        }
+
+        List<LazyInstanceSatisfaction> lazy = EngineArchive.getLazySatisfactions(graph);
+        logger.info("archive has {} lazily-loaded components", lazy.size());
+        if (preloadComponents) {
+            logger.info("preloading {} components", lazy.size());
+            lazy.parallelStream().forEach(LazyInstanceSatisfaction::getInstance);
+        }
+
+        return configureEngine(graph);
+    }
 
+    /**
+     * Apply configurations to a loaded graph and validate it.
+     *
+     * @param graph The loaded graph.
+     * @return The recommender engine.
+     * @throws RecommenderConfigurationException If there is a configuration error.
+     */
+    private LenskitRecommenderEngine configureEngine(DAGNode<Component, Dependency> graph) throws RecommenderConfigurationException {
         if (!configurations.isEmpty()) {
             logger.info("rewriting with {} configurations", configurations.size());
             RecommenderGraphBuilder rgb = new RecommenderGraphBuilder();
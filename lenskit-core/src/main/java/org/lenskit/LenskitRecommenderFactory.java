@@ -0,0 +1,174 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.grouplens.grapht.CachePolicy;
+import org.grouplens.grapht.Component;
+import org.grouplens.grapht.Dependency;
+import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.reflect.Satisfaction;
+import org.grouplens.grapht.reflect.Satisfactions;
+import org.grouplens.grapht.reflect.internal.InstanceSatisfaction;
+import org.lenskit.api.RecommenderBuildException;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.inject.PlaceholderSatisfaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.WillNotClose;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Factory for creating many recommenders from a single engine with different data access objects.
+ *
+ * Creating a recommender with {@link LenskitRecommenderEngine#createRecommender(LenskitConfiguration)}
+ * rewrites the engine's dependency graph with a dependency solver every time.  This factory does
+ * that rewrite once per DAO class, replaces the DAO with a placeholder, and caches the resulting
+ * graph.  Each subsequent recommender only needs to substitute its DAO for the placeholder, which
+ * rebuilds just the nodes that depend on the DAO.
+ *
+ * Instances of this class are thread-safe; a service can share one factory and create a recommender
+ * per request.
+ *
+ * @since 3.0
+ * @see LenskitRecommenderEngine#newRecommenderFactory()
+ */
+@ThreadSafe
+public final class LenskitRecommenderFactory {
+    private static final Logger logger = LoggerFactory.getLogger(LenskitRecommenderFactory.class);
+
+    private final LenskitRecommenderEngine engine;
+    private final Map<Class<?>, PreparedGraph> plans = new ConcurrentHashMap<>();
+
+    LenskitRecommenderFactory(@Nonnull LenskitRecommenderEngine engine) {
+        Preconditions.checkNotNull(engine, "recommender engine");
+        this.engine = engine;
+    }
+
+    /**
+     * Get the engine this factory creates recommenders from.
+     * @return The recommender engine.
+     */
+    public LenskitRecommenderEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Create a recommender using a data access object.
+     *
+     * @param dao The data access object.
+     * @return The recommender.
+     * @throws RecommenderBuildException if the recommender graph cannot be prepared.
+     */
+    public LenskitRecommender createRecommender(@WillNotClose DataAccessObject dao) throws RecommenderBuildException {
+        Preconditions.checkNotNull(dao, "data access object");
+        return new LenskitRecommender(prepareGraph(dao).instantiate(dao));
+    }
+
+    /**
+     * Prepare the graph for a DAO, caching the plan for the DAO's class.
+     */
+    private PreparedGraph prepareGraph(DataAccessObject dao) throws RecommenderConfigurationException {
+        Class<?> type = dao.getClass();
+        PreparedGraph plan = plans.get(type);
+        if (plan == null) {
+            logger.debug("preparing recommender graph for DAO {}", type);
+            LenskitConfiguration config = new LenskitConfiguration();
+            config.addComponent(dao);
+            DAGNode<Component, Dependency> graph = engine.createRecommenderGraph(config);
+            plan = PreparedGraph.create(graph, dao);
+            PreparedGraph existing = plans.putIfAbsent(type, plan);
+            if (existing != null) {
+                plan = existing;
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * A rewritten graph with placeholders in place of the DAO used to prepare it.
+     */
+    private static class PreparedGraph {
+        private final DAGNode<Component, Dependency> graph;
+        private final List<DAGNode<Component, Dependency>> slots;
+
+        private PreparedGraph(DAGNode<Component, Dependency> g, List<DAGNode<Component, Dependency>> ss) {
+            graph = g;
+            slots = ss;
+        }
+
+        /**
+         * Create a prepared graph, replacing the prototype DAO's nodes with placeholders so the plan
+         * does not retain the prototype.
+         *
+         * @param graph The rewritten graph.
+         * @param prototype The DAO used to rewrite the graph.
+         * @return The prepared graph.
+         */
+        static PreparedGraph create(DAGNode<Component, Dependency> graph, DataAccessObject prototype) {
+            Map<DAGNode<Component, Dependency>, DAGNode<Component, Dependency>> memory = new HashMap<>();
+            List<DAGNode<Component, Dependency>> slots = Lists.newArrayList();
+            DAGNode<Component, Dependency> result = graph;
+            for (DAGNode<Component, Dependency> node : graph.getReachableNodes()) {
+                Satisfaction sat = node.getLabel().getSatisfaction();
+                if (sat instanceof InstanceSatisfaction && ((InstanceSatisfaction) sat).getInstance() == prototype) {
+                    Component label = Component.create(new PlaceholderSatisfaction(sat.getErasedType()),
+                                                       node.getLabel().getCachePolicy());
+                    DAGNode<Component, Dependency> slot = DAGNode.newBuilder(label).build();
+                    result = result.replaceNode(node, slot, memory);
+                    slots.add(slot);
+                }
+            }
+            return new PreparedGraph(result, slots);
+        }
+
+        /**
+         * Create a graph with a DAO substituted for the placeholders.
+         * @param dao The DAO.
+         * @return The instantiable graph.
+         */
+        DAGNode<Component, Dependency> instantiate(DataAccessObject dao) {
+            if (slots.isEmpty()) {
+                return graph;
+            }
+            Map<DAGNode<Component, Dependency>, DAGNode<Component, Dependency>> memory = new HashMap<>();
+            DAGNode<Component, Dependency> result = graph;
+            for (DAGNode<Component, Dependency> slot : slots) {
+                CachePolicy policy = slot.getLabel().getCachePolicy();
+                Component label = Component.create(Satisfactions.instance(dao), policy);
+                DAGNode<Component, Dependency> node = DAGNode.newBuilder(label).build();
+                result = result.replaceNode(slot, node, memory);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.basic;
+
+import org.grouplens.grapht.annotation.DefaultProvider;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.inject.Shareable;
+import org.lenskit.util.keys.LongSortedArraySet;
+import org.lenskit.util.keys.SortedKeyIndex;
+
+import javax.annotation.Nonnull;
+import java.io.Serializable;
+
+/**
+ * The universe of items known to the data access object, indexed once so that recommenders can share it.
+ * A {@link TopNItemRecommender} constructed with a universe draws its candidates from it.
+ *
+ * Since it is shareable, the universe is fixed when the recommender is built; items added to the data
+ * afterwards are not candidates until the model is rebuilt.  Recommenders therefore only use a universe
+ * when one is explicitly supplied; by default they use the items in the runtime DAO.
+ *
+ * @since 3.0
+ */
+@Shareable
+@DefaultProvider(ItemUniverseProvider.class)
+public class ItemUniverse implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final SortedKeyIndex index;
+
+    /**
+     * Construct a new item universe.
+     * @param idx The item index.
+     */
+    public ItemUniverse(@Nonnull SortedKeyIndex idx) {
+        index = idx;
+    }
+
+    /**
+     * Create an item universe from a DAO.
+     * @param dao The data access object.
+     * @return The universe of the DAO's items.
+     */
+    public static ItemUniverse create(DataAccessObject dao) {
+        return new ItemUniverseProvider(dao).get();
+    }
+
+    /**
+     * Get the item index.
+     * @return The index of all items.
+     */
+    @Nonnull
+    public SortedKeyIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Get the set of all items.
+     * @return The set of items, backed by {@link #getIndex()}.
+     */
+    @Nonnull
+    public LongSortedArraySet getItems() {
+        return index.keySet();
+    }
+
+    /**
+     * Get the number of items.
+     * @return The number of items in the universe.
+     */
+    public int size() {
+        return index.size();
+    }
+}
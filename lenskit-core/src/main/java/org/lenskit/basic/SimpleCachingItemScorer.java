@@ -59,7 +59,7 @@ public class SimpleCachingItemScorer extends AbstractItemScorer {
         if(cachedId == user && cachedScores != null) {
             LongSet cachedItems = LongUtils.asLongSet(cachedScores.keySet());
             if (!cachedItems.containsAll(LongUtils.asLongCollection(items))) {
-                LongSet reqItems = LongUtils.packedSet(items);
+                LongSet reqItems = LongUtils.frozenSet(items);
                 LongSortedSet diffItems = LongUtils.setDifference(reqItems, cachedItems);
                 ResultMap newCache = scorer.scoreWithDetails(user, diffItems);
                 cachedScores = Results.newResultMap(Iterables.concat(cachedScores, newCache));
@@ -0,0 +1,118 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.basic;
+
+import org.lenskit.api.ItemScorer;
+import org.lenskit.api.Result;
+import org.lenskit.api.ResultMap;
+import org.lenskit.results.Results;
+
+import javax.annotation.Nonnull;
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An item scorer that can score items under several values of one of its integer parameters in a single pass.
+ * This lets evaluations of parameter sweeps (e.g. over neighborhood sizes) share the per-user work of scoring,
+ * such as fetching and normalizing ratings, instead of re-running it for each parameter value.
+ *
+ * A scorer implementing this interface should be built with a parameter value at least as large as any of the
+ * values it is asked to score with.  The scores for each value should match those of a scorer configured with
+ * that value; implementations that can only approximate this report it with {@link #isSweepExact()}.
+ *
+ * @since 3.0
+ */
+public interface SweepItemScorer extends ItemScorer {
+    /**
+     * Get the parameter that this scorer can sweep.
+     *
+     * @return The qualifier of the integer parameter that {@link #scoreSweep(long, Collection, int[])} varies.
+     */
+    @Nonnull
+    Class<? extends Annotation> getSweepParameter();
+
+    /**
+     * Score items for a user under several parameter values.
+     *
+     * @param user   The user ID.
+     * @param items  The items to score.
+     * @param values The parameter values to score with.
+     * @return A list with one score map per parameter value, in the same order as `values`.  Each map has the
+     * scores that {@link #score(long, Collection)} would return if the scorer were configured with that value.
+     */
+    @Nonnull
+    List<Map<Long, Double>> scoreSweep(long user, @Nonnull Collection<Long> items, int[] values);
+
+    /**
+     * Score items for a user under several parameter values, with details.  The default implementation wraps the
+     * results of {@link #scoreSweep(long, Collection, int[])} in basic results; scorers with detailed results
+     * override it.
+     *
+     * @param user   The user ID.
+     * @param items  The items to score.
+     * @param values The parameter values to score with.
+     * @return A list with one result map per parameter value, in the same order as `values`.  Each map has the
+     * results that {@link #scoreWithDetails(long, Collection)} would return if the scorer were configured with
+     * that value.
+     */
+    @Nonnull
+    default List<ResultMap> scoreSweepWithDetails(long user, @Nonnull Collection<Long> items, int[] values) {
+        List<Map<Long, Double>> scores = scoreSweep(user, items, values);
+        List<ResultMap> results = new ArrayList<>(scores.size());
+        for (Map<Long, Double> map: scores) {
+            List<Result> rs = new ArrayList<>(map.size());
+            for (Map.Entry<Long, Double> e: map.entrySet()) {
+                rs.add(Results.fromEntry(e));
+            }
+            results.add(Results.newResultMap(rs));
+        }
+        return results;
+    }
+
+    /**
+     * Query whether this scorer can score sweeps.  A scorer whose scoring has been customized in a way that
+     * {@link #scoreSweep(long, Collection, int[])} does not reflect (e.g. a subclass overriding how single items
+     * are scored) returns `false`, so that evaluations build and score each parameter value separately.
+     *
+     * @return `true` if sweep results match the scorer's own scores.
+     */
+    default boolean isSweepSupported() {
+        return true;
+    }
+
+    /**
+     * Query whether this scorer's sweep scores are exact.  A scorer whose sweep scores only approximate those of a
+     * scorer built with each value (e.g. because the model would be trained differently) returns `false`;
+     * evaluations then build each value separately unless approximate sweeps are explicitly allowed.
+     *
+     * @return `true` if the sweep scores for each value equal those of a scorer built with that value.
+     */
+    default boolean isSweepExact() {
+        return true;
+    }
+}
@@ -26,6 +26,7 @@ package org.lenskit.basic;
 
 
 import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
 import it.unimi.dsi.fastutil.longs.LongSet;
 import org.lenskit.api.ItemScorer;
 import org.lenskit.api.Result;
@@ -39,12 +40,17 @@ import org.lenskit.util.collections.Long2DoubleAccumulator;
 import org.lenskit.util.collections.LongUtils;
 import org.lenskit.util.collections.TopNLong2DoubleAccumulator;
 import org.lenskit.util.collections.UnlimitedLong2DoubleAccumulator;
+import org.lenskit.util.keys.LongSortedArraySet;
+import org.lenskit.util.keys.LongSortedBitmapSet;
+import org.lenskit.util.keys.SortedKeyIndex;
 import org.lenskit.util.math.Vectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.inject.Inject;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -56,6 +62,14 @@ import java.util.Map;
  *
  * <p>Recommendations are returned in descending order of score.
  *
+ * <p>When recommending from all predictable items and those items are a sorted array set (as the standard
+ * DAOs' item sets are), the recommender represents the effective candidates as a {@link LongSortedBitmapSet}
+ * over that set's index, clearing the excluded items' bits, so a request does not copy the item set.  Explicit
+ * candidate sets are still handled as sorted arrays, which is cheaper when they are sparse.
+ *
+ * <p>By default the predictable items are the items in the recommender's (runtime) DAO.  A recommender can
+ * instead be constructed with a fixed {@link ItemUniverse}; it then only recommends items in that universe.
+ *
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
  * @since 1.1
  */
@@ -63,17 +77,40 @@ public class TopNItemRecommender extends AbstractItemRecommender {
     private static final Logger logger = LoggerFactory.getLogger(TopNItemRecommender.class);
     protected final DataAccessObject dao;
     protected final ItemScorer scorer;
+    @Nullable
+    protected final ItemUniverse items;
 
     @Inject
     public TopNItemRecommender(DataAccessObject data, ItemScorer scorer) {
+        this(data, scorer, null);
+    }
+
+    /**
+     * Construct a new top-N recommender that draws its candidates from a fixed item universe, such as one
+     * shared with other recommenders.  Items in the DAO that are not in the universe are not recommended.
+     * @param data The data access object.
+     * @param scorer The item scorer.
+     * @param items The universe of items to recommend from, or {@code null} to use the DAO's items.
+     */
+    public TopNItemRecommender(DataAccessObject data, ItemScorer scorer, @Nullable ItemUniverse items) {
         dao = data;
         this.scorer = scorer;
+        this.items = items;
     }
     
     public ItemScorer getScorer() {
         return scorer;
     }
 
+    /**
+     * Get the fixed universe of items this recommender draws candidates from.
+     * @return The item universe, or {@code null} if the recommender uses the DAO's items.
+     */
+    @Nullable
+    public ItemUniverse getItemUniverse() {
+        return items;
+    }
+
     /**
      * Implement recommendation by calling {@link ItemScorer#score(long, Collection)} and sorting
      * the results by score.  This method uses {@link #getDefaultExcludes(long)} to get the default
@@ -119,7 +156,8 @@ public class TopNItemRecommender extends AbstractItemRecommender {
     }
 
     private LongSet getEffectiveCandidates(long user, LongSet candidates, LongSet exclude) {
-        if (candidates == null) {
+        boolean all = candidates == null;
+        if (all) {
             candidates = getPredictableItems(user);
         }
         if (exclude == null) {
@@ -127,10 +165,36 @@ public class TopNItemRecommender extends AbstractItemRecommender {
         }
         logger.debug("computing effective candidates for user {} from {} candidates and {} excluded items",
                      user, candidates.size(), exclude.size());
-        if (!exclude.isEmpty()) {
-            candidates = LongUtils.setDifference(candidates, exclude);
+        if (exclude.isEmpty()) {
+            return candidates;
+        }
+
+        SortedKeyIndex universe = null;
+        BitSet bits = null;
+        if (candidates instanceof LongSortedBitmapSet) {
+            LongSortedBitmapSet bitmap = (LongSortedBitmapSet) candidates;
+            universe = bitmap.getIndex();
+            bits = bitmap.copyBits();
+        } else if (all && candidates instanceof LongSortedArraySet) {
+            // candidates are all predictable items, exclude by clearing bits over their index
+            LongSortedArraySet set = (LongSortedArraySet) candidates;
+            universe = set.getIndex();
+            bits = new BitSet(universe.getUpperBound());
+            bits.set(universe.getLowerBound(), universe.getUpperBound());
+        }
+
+        if (bits != null) {
+            LongIterator iter = exclude.iterator();
+            while (iter.hasNext()) {
+                int i = universe.tryGetIndex(iter.nextLong());
+                if (i >= 0) {
+                    bits.clear(i);
+                }
+            }
+            return new LongSortedBitmapSet(universe, bits);
+        } else {
+            return LongUtils.setDifference(candidates, exclude);
         }
-        return candidates;
     }
 
     @Nonnull
@@ -158,13 +222,17 @@ public class TopNItemRecommender extends AbstractItemRecommender {
 
     /**
      * Determine the items for which predictions can be made for a certain user.
-     * This implementation is naive and asks the DAO for all items; subclasses
-     * should override it with something more efficient if practical.
+     * This implementation is naive and returns all items in the item universe, if there is one, and
+     * otherwise all items in the DAO; subclasses should override it with something more efficient if practical.
      *
      * @param user The user's ID.
      * @return All items for which predictions can be generated for the user.
      */
     protected LongSet getPredictableItems(long user) {
-        return dao.getEntityIds(CommonTypes.ITEM);
+        if (items != null) {
+            return items.getItems();
+        } else {
+            return dao.getEntityIds(CommonTypes.ITEM);
+        }
     }
 }
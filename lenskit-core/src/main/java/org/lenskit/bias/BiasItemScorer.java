@@ -71,7 +71,7 @@ public class BiasItemScorer extends AbstractItemScorer {
     @Nonnull
     @Override
     public ResultMap scoreWithDetails(long user, @Nonnull Collection<Long> items) {
-        List<Result> results = new ArrayList<>();
+        List<Result> results = new ArrayList<>(items.size());
         double base = model.getIntercept() + model.getUserBias(user);
         LongIterator iter = LongIterators.asLongIterator(items.iterator());
         while (iter.hasNext()) {
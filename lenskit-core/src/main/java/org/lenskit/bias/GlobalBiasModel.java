@@ -29,8 +29,13 @@ import it.unimi.dsi.fastutil.longs.Long2DoubleMaps;
 import it.unimi.dsi.fastutil.longs.LongSet;
 import org.grouplens.grapht.annotation.DefaultProvider;
 import org.lenskit.inject.Shareable;
+import org.lenskit.util.io.EncodedBy;
+import org.lenskit.util.io.ModelCodec;
 
 import net.jcip.annotations.Immutable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 
 /**
@@ -39,6 +44,7 @@ import java.io.Serializable;
 @Shareable
 @Immutable
 @DefaultProvider(GlobalAverageRatingBiasModelProvider.class)
+@EncodedBy(GlobalBiasModel.Codec.class)
 public class GlobalBiasModel implements BiasModel, Serializable {
     private static final long serialVersionUID = 1L;
 
@@ -86,4 +92,19 @@ public class GlobalBiasModel implements BiasModel, Serializable {
     public Long2DoubleMap getItemBiases() {
         return Long2DoubleMaps.EMPTY_MAP;
     }
+
+    /**
+     * Binary codec for global bias models.
+     */
+    public static class Codec implements ModelCodec<GlobalBiasModel> {
+        @Override
+        public void write(GlobalBiasModel model, DataOutput out) throws IOException {
+            out.writeDouble(model.intercept);
+        }
+
+        @Override
+        public GlobalBiasModel read(DataInput in) throws IOException {
+            return new GlobalBiasModel(in.readDouble());
+        }
+    }
 }
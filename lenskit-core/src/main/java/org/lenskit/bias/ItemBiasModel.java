@@ -28,8 +28,14 @@ import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
 import it.unimi.dsi.fastutil.longs.Long2DoubleMaps;
 import org.grouplens.grapht.annotation.DefaultProvider;
 import org.lenskit.inject.Shareable;
+import org.lenskit.util.io.EncodedBy;
+import org.lenskit.util.io.ModelCodec;
+import org.lenskit.util.io.ModelCodecs;
 
 import net.jcip.annotations.Immutable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * Bias model that provides global and item biases. The item biases are precomputed and are *not* updated based on
@@ -38,6 +44,7 @@ import net.jcip.annotations.Immutable;
 @Shareable
 @Immutable
 @DefaultProvider(ItemAverageRatingBiasModelProvider.class)
+@EncodedBy(ItemBiasModel.Codec.class)
 public class ItemBiasModel extends UserItemBiasModel {
     private static final long serialVersionUID = 1L;
 
@@ -49,4 +56,22 @@ public class ItemBiasModel extends UserItemBiasModel {
     public ItemBiasModel(double global, Long2DoubleMap items) {
         super(global, Long2DoubleMaps.EMPTY_MAP, items);
     }
+
+    /**
+     * Binary codec for item bias models.
+     */
+    public static class Codec implements ModelCodec<ItemBiasModel> {
+        @Override
+        public void write(ItemBiasModel model, DataOutput out) throws IOException {
+            out.writeDouble(model.getIntercept());
+            ModelCodecs.writeDoubleMap(out, model.getItemBiases());
+        }
+
+        @Override
+        public ItemBiasModel read(DataInput in) throws IOException {
+            double global = in.readDouble();
+            Long2DoubleMap items = ModelCodecs.readDoubleMap(in);
+            return new ItemBiasModel(global, items);
+        }
+    }
 }
@@ -24,25 +24,55 @@
  */
 package org.lenskit.bias;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
 import it.unimi.dsi.fastutil.longs.Long2DoubleMaps;
 import it.unimi.dsi.fastutil.longs.LongSet;
 import org.lenskit.data.ratings.RatingVectorPDAO;
+import org.lenskit.util.IdBox;
+import org.lenskit.util.io.ObjectStream;
 import org.lenskit.util.keys.Long2DoubleSortedArrayMap;
 import org.lenskit.util.keys.SortedKeyIndex;
 
 import javax.inject.Inject;
+import java.util.stream.IntStream;
 
 /**
  * Bias model that provides global, user, and item biases.  The global and item biases are precomputed and are *not*
  * refreshed based on user data added since the model build, but the user bias (mean rating from the rating DAO) is
  * recomputed live based on a {@link RatingVectorPDAO}.
  *
+ * User biases are memoized in a bounded cache for the life of the model, which is normally the life of the
+ * recommender that uses it.  Batch requests for a large fraction of the users read the ratings in a single pass
+ * over {@link RatingVectorPDAO#streamUsers()} instead of querying for each user; smaller batches query each
+ * uncached user.  The number of users comes from {@link RatingVectorPDAO#getUserCount()}, and is refined by each
+ * scan; if the DAO cannot count its users, batches are always queried user by user.
+ *
  * **Note:** The {@link #getUserBiases()} method will always return an empty map.
  */
 public final class LiveUserItemBiasModel implements BiasModel{
+    /**
+     * The maximum number of user biases to keep.
+     */
+    static final int MAX_CACHED_USERS = 10000;
+    /**
+     * The fraction of all users that must be uncached for batch computation to scan all users.
+     */
+    static final double SCAN_FRACTION = 0.1;
+    /**
+     * The minimum number of uncached users for batch computation to scan all users.
+     */
+    static final int MIN_SCAN_USERS = 256;
+
     private final ItemBiasModel delegate;
     private final RatingVectorPDAO dao;
+    private final Cache<Long, Double> userBiases;
+    /**
+     * The number of users seen by the last scan or reported by the DAO, or -1 if it is not yet known.
+     */
+    private volatile int userCount = -1;
 
     /**
      * Construct a new bias model.
@@ -53,6 +83,10 @@ public final class LiveUserItemBiasModel implements BiasModel{
     public LiveUserItemBiasModel(ItemBiasModel base, RatingVectorPDAO dao) {
         delegate = base;
         this.dao = dao;
+        userBiases = CacheBuilder.newBuilder()
+                                 .maximumSize(MAX_CACHED_USERS)
+                                 .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+                                 .build();
     }
 
     @Override
@@ -62,7 +96,16 @@ public final class LiveUserItemBiasModel implements BiasModel{
 
     @Override
     public double getUserBias(long user) {
-        Long2DoubleMap vec = dao.userRatingVector(user);
+        Double cached = userBiases.getIfPresent(user);
+        if (cached != null) {
+            return cached;
+        }
+        double bias = computeUserBias(dao.userRatingVector(user));
+        userBiases.put(user, bias);
+        return bias;
+    }
+
+    private double computeUserBias(Long2DoubleMap vec) {
         if (vec.isEmpty()) {
             return 0;
         } else {
@@ -86,13 +129,78 @@ public final class LiveUserItemBiasModel implements BiasModel{
         final int n = index.size();
         double[] values = new double[n];
 
+        IntArrayList missing = new IntArrayList();
         for (int i = 0; i < n; i++) {
-            values[i] = getUserBias(index.getKey(i));
+            Double cached = userBiases.getIfPresent(index.getKey(i));
+            if (cached != null) {
+                values[i] = cached;
+            } else {
+                missing.add(i);
+            }
+        }
+
+        if (shouldScan(missing.size())) {
+            scanUserBiases(index, missing, values);
+        } else {
+            for (int i: missing) {
+                values[i] = getUserBias(index.getKey(i));
+            }
         }
 
         return Long2DoubleSortedArrayMap.wrap(index, values);
     }
 
+    /**
+     * Decide whether to compute missing biases by scanning all users.
+     * @param missing The number of uncached users.
+     * @return {@code true} if the uncached users are enough of the user base to read all users.
+     */
+    boolean shouldScan(int missing) {
+        if (missing <= MIN_SCAN_USERS) {
+            return false;
+        }
+        int n = userCount;
+        if (n < 0) {
+            n = dao.getUserCount();
+            userCount = n;
+        }
+        return n > 0 && missing >= SCAN_FRACTION * n;
+    }
+
+    /**
+     * Compute biases for many users with one pass over the rating vectors.  Users with no ratings keep a bias of 0.
+     */
+    private void scanUserBiases(SortedKeyIndex index, IntArrayList missing, double[] values) {
+        boolean[] wanted = new boolean[index.size()];
+        for (int i: missing) {
+            wanted[i] = true;
+        }
+        Long2DoubleMap[] vectors = new Long2DoubleMap[index.size()];
+        int seen = 0;
+        try (ObjectStream<IdBox<Long2DoubleMap>> stream = dao.streamUsers()) {
+            for (IdBox<Long2DoubleMap> user: stream) {
+                seen += 1;
+                int i = index.tryGetIndex(user.getId());
+                if (i >= 0 && wanted[i]) {
+                    vectors[i] = user.getValue();
+                }
+            }
+        }
+        userCount = seen;
+
+        // the DAO is only read above, so the biases can be computed in parallel
+        IntStream.of(missing.toIntArray())
+                 .parallel()
+                 .forEach(i -> {
+                     if (vectors[i] != null) {
+                         values[i] = computeUserBias(vectors[i]);
+                     }
+                 });
+        for (int i: missing) {
+            userBiases.put(index.getKey(i), values[i]);
+        }
+    }
+
     @Override
     public Long2DoubleMap getItemBiases(LongSet items) {
         return delegate.getItemBiases(items);
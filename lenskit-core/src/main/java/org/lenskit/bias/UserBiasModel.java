@@ -28,8 +28,14 @@ import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
 import it.unimi.dsi.fastutil.longs.Long2DoubleMaps;
 import org.grouplens.grapht.annotation.DefaultProvider;
 import org.lenskit.inject.Shareable;
+import org.lenskit.util.io.EncodedBy;
+import org.lenskit.util.io.ModelCodec;
+import org.lenskit.util.io.ModelCodecs;
 
 import net.jcip.annotations.Immutable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * Bias model that provides global and user biases.  The user biases are precomputed and are *not* refreshed based
@@ -38,6 +44,7 @@ import net.jcip.annotations.Immutable;
 @Shareable
 @Immutable
 @DefaultProvider(UserAverageRatingBiasModelProvider.class)
+@EncodedBy(UserBiasModel.Codec.class)
 public class UserBiasModel extends UserItemBiasModel {
     private static final long serialVersionUID = 1L;
 
@@ -49,4 +56,22 @@ public class UserBiasModel extends UserItemBiasModel {
     public UserBiasModel(double global, Long2DoubleMap users) {
         super(global, users, Long2DoubleMaps.EMPTY_MAP);
     }
+
+    /**
+     * Binary codec for user bias models.
+     */
+    public static class Codec implements ModelCodec<UserBiasModel> {
+        @Override
+        public void write(UserBiasModel model, DataOutput out) throws IOException {
+            out.writeDouble(model.getIntercept());
+            ModelCodecs.writeDoubleMap(out, model.getUserBiases());
+        }
+
+        @Override
+        public UserBiasModel read(DataInput in) throws IOException {
+            double global = in.readDouble();
+            Long2DoubleMap users = ModelCodecs.readDoubleMap(in);
+            return new UserBiasModel(global, users);
+        }
+    }
 }
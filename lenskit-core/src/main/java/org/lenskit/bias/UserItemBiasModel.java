@@ -28,9 +28,15 @@ import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
 import it.unimi.dsi.fastutil.longs.LongSet;
 import org.grouplens.grapht.annotation.DefaultProvider;
 import org.lenskit.inject.Shareable;
+import org.lenskit.util.io.EncodedBy;
+import org.lenskit.util.io.ModelCodec;
+import org.lenskit.util.io.ModelCodecs;
 import org.lenskit.util.keys.Long2DoubleSortedArrayMap;
 
 import net.jcip.annotations.Immutable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 
 /**
@@ -40,6 +46,7 @@ import java.io.Serializable;
 @Shareable
 @Immutable
 @DefaultProvider(UserItemAverageRatingBiasModelProvider.class)
+@EncodedBy(UserItemBiasModel.Codec.class)
 public class UserItemBiasModel implements BiasModel, Serializable {
     private static final long serialVersionUID = 1L;
 
@@ -93,4 +100,24 @@ public class UserItemBiasModel implements BiasModel, Serializable {
     public Long2DoubleMap getItemBiases() {
         return itemBiases;
     }
+
+    /**
+     * Binary codec for user-item bias models.
+     */
+    public static class Codec implements ModelCodec<UserItemBiasModel> {
+        @Override
+        public void write(UserItemBiasModel model, DataOutput out) throws IOException {
+            out.writeDouble(model.intercept);
+            ModelCodecs.writeDoubleMap(out, model.userBiases);
+            ModelCodecs.writeDoubleMap(out, model.itemBiases);
+        }
+
+        @Override
+        public UserItemBiasModel read(DataInput in) throws IOException {
+            double global = in.readDouble();
+            Long2DoubleMap users = ModelCodecs.readDoubleMap(in);
+            Long2DoubleMap items = ModelCodecs.readDoubleMap(in);
+            return new UserItemBiasModel(global, users, items);
+        }
+    }
 }
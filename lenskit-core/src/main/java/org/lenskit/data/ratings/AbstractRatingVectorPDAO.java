@@ -28,6 +28,7 @@ import com.google.common.base.Function;
 import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
 import org.lenskit.data.dao.DataAccessObject;
 import org.lenskit.data.entities.CommonAttributes;
+import org.lenskit.data.entities.CommonTypes;
 import org.lenskit.data.entities.Entity;
 import org.lenskit.data.entities.EntityType;
 import org.lenskit.util.IdBox;
@@ -99,4 +100,16 @@ public abstract class AbstractRatingVectorPDAO implements RatingVectorPDAO {
             }
         });
     }
+
+    /**
+     * {@inheritDoc}
+     *
+     * This implementation counts the DAO's user entities, which are normally derived from the rating data;
+     * if there are none, the count is unknown.
+     */
+    @Override
+    public int getUserCount() {
+        int n = dao.getEntityIds(CommonTypes.USER).size();
+        return n > 0 ? n : -1;
+    }
 }
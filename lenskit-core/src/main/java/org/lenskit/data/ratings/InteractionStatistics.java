@@ -34,12 +34,18 @@ import org.lenskit.data.entities.Entity;
 import org.lenskit.data.entities.EntityType;
 import org.lenskit.inject.Shareable;
 import org.lenskit.inject.Transient;
+import org.lenskit.util.io.EncodedBy;
+import org.lenskit.util.io.ModelCodec;
+import org.lenskit.util.io.ModelCodecs;
 import org.lenskit.util.io.ObjectStream;
 import org.lenskit.util.keys.SortedKeyIndex;
 
 import net.jcip.annotations.Immutable;
 import javax.inject.Inject;
 import javax.inject.Provider;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 
 /**
@@ -49,6 +55,7 @@ import java.io.Serializable;
 @Shareable
 @Immutable
 @DefaultProvider(InteractionStatistics.ISProvider.class)
+@EncodedBy(InteractionStatistics.Codec.class)
 public class InteractionStatistics implements Serializable {
     private static final long serialVersionUID = 1L;
 
@@ -76,6 +83,13 @@ public class InteractionStatistics implements Serializable {
         itemList = LongArrayList.wrap(iarray);
     }
 
+    private InteractionStatistics(EntityType type, SortedKeyIndex items, int[] counts, LongArrayList popular) {
+        entityType = type;
+        this.items = items;
+        interactionCounts = counts;
+        itemList = popular;
+    }
+
     /**
      * Construct a new interaction statistics object.
      * @param dao The DAO.
@@ -133,6 +147,31 @@ public class InteractionStatistics implements Serializable {
         return LongLists.unmodifiable(itemList);
     }
 
+    /**
+     * Binary codec for interaction statistics.
+     */
+    public static class Codec implements ModelCodec<InteractionStatistics> {
+        @Override
+        public void write(InteractionStatistics model, DataOutput out) throws IOException {
+            out.writeUTF(model.entityType.getName());
+            ModelCodecs.writeSortedKeyIndex(out, model.items);
+            ModelCodecs.writeInts(out, model.interactionCounts, model.interactionCounts.length);
+            ModelCodecs.writeLongs(out, model.itemList.elements(), model.itemList.size());
+        }
+
+        @Override
+        public InteractionStatistics read(DataInput in) throws IOException {
+            EntityType type = EntityType.forName(in.readUTF());
+            SortedKeyIndex items = ModelCodecs.readSortedKeyIndex(in);
+            int[] counts = ModelCodecs.readInts(in);
+            long[] popular = ModelCodecs.readLongs(in);
+            if (counts.length != items.size() || popular.length != items.size()) {
+                throw new IOException("inconsistent interaction statistics arrays");
+            }
+            return new InteractionStatistics(type, items, counts, LongArrayList.wrap(popular));
+        }
+    }
+
     /**
      * Provider that counts item interactions.
      */
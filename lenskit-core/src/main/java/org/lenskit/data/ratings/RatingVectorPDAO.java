@@ -55,4 +55,13 @@ public interface RatingVectorPDAO {
      * @return A stream over the users in the data set.
      */
     ObjectStream<IdBox<Long2DoubleMap>> streamUsers();
+
+    /**
+     * Get the number of users in the data set, if it is available without reading their rating vectors.  The
+     * default implementation does not know the count.
+     * @return The number of users, or -1 if it is not cheaply available.
+     */
+    default int getUserCount() {
+        return -1;
+    }
 }
@@ -27,6 +27,7 @@ package org.lenskit.data.ratings;
 import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
 import org.lenskit.data.dao.DataAccessObject;
 import org.lenskit.data.entities.CommonAttributes;
+import org.lenskit.data.entities.CommonTypes;
 import org.lenskit.util.IdBox;
 import org.lenskit.util.io.ObjectStream;
 import org.lenskit.util.io.ObjectStreams;
@@ -80,4 +81,16 @@ public class StandardRatingVectorPDAO implements RatingVectorPDAO {
         return ObjectStreams.wrap(stream.map(u -> u.mapValue(Ratings::userRatingVector)),
                                   stream);
     }
+
+    /**
+     * {@inheritDoc}
+     *
+     * This implementation counts the DAO's user entities, which are normally derived from the rating data;
+     * if there are none, the count is unknown.
+     */
+    @Override
+    public int getUserCount() {
+        int n = dao.getEntityIds(CommonTypes.USER).size();
+        return n > 0 ? n : -1;
+    }
 }
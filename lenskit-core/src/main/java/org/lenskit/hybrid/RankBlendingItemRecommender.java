@@ -27,10 +27,12 @@ package org.lenskit.hybrid;
 import it.unimi.dsi.fastutil.longs.*;
 import org.grouplens.grapht.annotation.DefaultImplementation;
 import org.lenskit.api.ItemRecommender;
+import org.lenskit.api.Result;
 import org.lenskit.api.ResultList;
 import org.lenskit.basic.AbstractItemRecommender;
 import org.lenskit.basic.TopNItemRecommender;
 import org.lenskit.results.ResultAccumulator;
+import org.lenskit.results.Results;
 import org.lenskit.util.collections.LongUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,6 +41,9 @@ import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Qualifier;
 import java.lang.annotation.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Hybrid item recommender that blends the *ranks* produced by two recommenders.
@@ -50,6 +55,10 @@ import java.lang.annotation.*;
  *
  * The final ranking is done by linearly blending the sub-recommender rank scores using the specified blending weight.
  *
+ * If a {@linkplain BlendDepth blend depth} $D$ is set, ranks are instead scored against $D$, and the recommender
+ * requests bounded prefixes of the two lists, deepening them only until the blended top-$n$ is known (the threshold
+ * algorithm).  {@link WeightedRankBlendingItemRecommender} blends more than two recommenders.
+ *
  * This method was devised by Max Harper for use in MovieLens.
  */
 public class RankBlendingItemRecommender extends AbstractItemRecommender {
@@ -57,22 +66,49 @@ public class RankBlendingItemRecommender extends AbstractItemRecommender {
     private final ItemRecommender leftRecommender;
     private final ItemRecommender rightRecommender;
     private final double blendWeight;
+    private final ThresholdRankBlender blender;
+
+    /**
+     * Construct a new rank-blending recommender that blends complete lists.
+     * @param left The left recommender.
+     * @param right The right recommender.
+     * @param w The blending weight.
+     */
+    public RankBlendingItemRecommender(ItemRecommender left, ItemRecommender right, double w) {
+        this(left, right, w, 0);
+    }
 
     /**
      * Construct a new rank-blending recommender.
      * @param left The left recommender.
      * @param right The right recommender.
      * @param w The blending weight.
+     * @param depth The rank horizon, or 0 to blend complete lists.
      */
     @Inject
-    public RankBlendingItemRecommender(@Left ItemRecommender left, @Right ItemRecommender right, @BlendWeight double w) {
+    public RankBlendingItemRecommender(@Left ItemRecommender left, @Right ItemRecommender right,
+                                       @BlendWeight double w, @BlendDepth int depth) {
         leftRecommender = left;
         rightRecommender = right;
         blendWeight = w;
+        if (depth > 0) {
+            blender = new ThresholdRankBlender(Arrays.asList(left, right), new double[]{w, 1 - w}, depth);
+        } else {
+            blender = null;
+        }
     }
 
     @Override
     protected ResultList recommendWithDetails(long user, int n, @Nullable LongSet candidates, @Nullable LongSet exclude) {
+        if (blender != null) {
+            List<ThresholdRankBlender.Blended> items = blender.blend(user, n, candidates, exclude);
+            List<Result> results = new ArrayList<>(items.size());
+            for (ThresholdRankBlender.Blended b: items) {
+                results.add(new RankBlendResult(b.id, b.score, b.results[0], b.ranks[0], b.results[1], b.ranks[1]));
+            }
+            return Results.newResultList(results);
+        }
+
         ResultList left = leftRecommender.recommendWithDetails(user, -1, candidates, exclude);
         ResultList right = rightRecommender.recommendWithDetails(user, -1, candidates, exclude);
         logger.debug("recommending for user {} with {} left and {} right recommendations",
@@ -100,7 +136,7 @@ public class RankBlendingItemRecommender extends AbstractItemRecommender {
             double score = weight * s1 + (1.0-weight) * s2;
             accum.add(new RankBlendResult(item, score,
                                           rl >= 0 ? left.get(rl) : null, rl,
-                                          rr >= 0 ? right.get(rr) : null, rl));
+                                          rr >= 0 ? right.get(rr) : null, rr));
         }
         return accum.finish();
     }
@@ -0,0 +1,249 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.hybrid;
+
+import com.google.common.base.Preconditions;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.lenskit.api.ItemRecommender;
+import org.lenskit.api.Result;
+import org.lenskit.api.ResultList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Blends the ranks of several recommenders with the threshold algorithm.  Each recommender is asked for a prefix of
+ * its list; items are scored from the ranks seen so far, with upper bounds for the ranks not yet seen, and the
+ * prefixes are deepened until the top items are known exactly and no other item (seen or unseen) can beat them.
+ *
+ * With a positive horizon, ranks are scored against the horizon (see {@link BlendDepth}).  With no horizon, the
+ * complete lists are fetched and ranks are scored against each list's length, as in {@link RankBlendingItemRecommender}.
+ */
+class ThresholdRankBlender {
+    private static final Logger logger = LoggerFactory.getLogger(ThresholdRankBlender.class);
+
+    private final List<? extends ItemRecommender> recommenders;
+    private final double[] weights;
+    private final int horizon;
+
+    /**
+     * Create a blender.
+     * @param recs The recommenders.
+     * @param ws The blend weights, one per recommender; must be non-negative.
+     * @param h The rank horizon, or 0 to blend complete lists.
+     */
+    ThresholdRankBlender(List<? extends ItemRecommender> recs, double[] ws, int h) {
+        Preconditions.checkArgument(recs.size() == ws.length, "recommender and weight counts differ");
+        for (double w: ws) {
+            Preconditions.checkArgument(w >= 0, "blend weights must be non-negative");
+        }
+        Preconditions.checkArgument(h >= 0, "horizon must be non-negative");
+        recommenders = recs;
+        weights = ws.clone();
+        horizon = h;
+    }
+
+    /**
+     * Compute the rank score of an item against the horizon.
+     * @param rank The item's rank, or a negative value if it is unranked.
+     * @param depth The list length or horizon against which to score.
+     * @return The rank score.
+     */
+    static double rankScore(int rank, int depth) {
+        if (rank < 0 || rank >= depth) {
+            return 0;
+        } else if (depth == 1) {
+            return 1;
+        } else {
+            return 1.0 - rank / (depth - 1.0);
+        }
+    }
+
+    /**
+     * Blend the recommenders' lists.
+     * @return The blended items, in decreasing order of score, with at most `n` items if `n` is non-negative.
+     */
+    List<Blended> blend(long user, int n, @Nullable LongSet candidates, @Nullable LongSet exclude) {
+        final int k = recommenders.size();
+        if (n == 0) {
+            return new ArrayList<>();
+        }
+        if (horizon <= 0) {
+            return blendComplete(user, n, candidates, exclude);
+        }
+
+        int depth = horizon;
+        if (n > 0) {
+            depth = (int) Math.min(horizon, Math.max(2L * n, 10));
+        }
+        ResultList[] lists = new ResultList[k];
+        boolean[] complete = new boolean[k];
+
+        while (true) {
+            for (int j = 0; j < k; j++) {
+                if (lists[j] == null || !complete[j]) {
+                    lists[j] = recommenders.get(j).recommendWithDetails(user, depth, candidates, exclude);
+                    complete[j] = lists[j].size() < depth || depth >= horizon;
+                }
+            }
+
+            Long2ObjectMap<Blended> items = collect(lists, horizon);
+            // the most an item can get from lists where it has not been seen yet
+            double threshold = 0;
+            double[] unseen = new double[k];
+            for (int j = 0; j < k; j++) {
+                if (!complete[j]) {
+                    unseen[j] = weights[j] * rankScore(depth, horizon);
+                    threshold += unseen[j];
+                }
+            }
+
+            List<Blended> sorted = new ArrayList<>(items.values());
+            sorted.sort(Blended.ORDER);
+            if (threshold == 0 || n < 0) {
+                // every score is exact
+                return truncate(sorted, n);
+            }
+
+            if (sorted.size() >= n && isFinal(sorted, n, unseen, threshold)) {
+                logger.debug("blended top {} for user {} at depth {}", n, user, depth);
+                return truncate(sorted, n);
+            }
+
+            logger.debug("top {} for user {} not final at depth {}", n, user, depth);
+            depth = (int) Math.min(horizon, depth * 2L);
+        }
+    }
+
+    /**
+     * Check whether the top `n` items are final.  They are final if their scores are exact, and the `n`th score is at
+     * least the upper bound of every other item.
+     */
+    private boolean isFinal(List<Blended> sorted, int n, double[] unseen, double threshold) {
+        for (int i = 0; i < n; i++) {
+            if (sorted.get(i).slack(unseen) > 0) {
+                return false;
+            }
+        }
+        double nth = sorted.get(n - 1).score;
+        if (nth < threshold) {
+            return false;
+        }
+        for (int i = n; i < sorted.size(); i++) {
+            Blended b = sorted.get(i);
+            if (b.score + b.slack(unseen) > nth) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<Blended> blendComplete(long user, int n, @Nullable LongSet candidates, @Nullable LongSet exclude) {
+        ResultList[] lists = new ResultList[recommenders.size()];
+        for (int j = 0; j < lists.length; j++) {
+            lists[j] = recommenders.get(j).recommendWithDetails(user, -1, candidates, exclude);
+        }
+        List<Blended> sorted = new ArrayList<>(collect(lists, 0).values());
+        sorted.sort(Blended.ORDER);
+        return truncate(sorted, n);
+    }
+
+    /**
+     * Collect the items in the lists and compute their scores from the ranks seen.
+     * @param lists The lists.
+     * @param depth The horizon to score against, or 0 to score against each list's length.
+     */
+    private Long2ObjectMap<Blended> collect(ResultList[] lists, int depth) {
+        final int k = lists.length;
+        Long2ObjectMap<Blended> items = new Long2ObjectOpenHashMap<>();
+        for (int j = 0; j < k; j++) {
+            ResultList list = lists[j];
+            int d = depth > 0 ? depth : list.size();
+            for (int r = 0; r < list.size(); r++) {
+                Result res = list.get(r);
+                Blended b = items.get(res.getId());
+                if (b == null) {
+                    b = new Blended(res.getId(), k);
+                    items.put(res.getId(), b);
+                }
+                if (b.ranks[j] < 0) {
+                    b.ranks[j] = r;
+                    b.results[j] = res;
+                    b.score += weights[j] * rankScore(r, d);
+                }
+            }
+        }
+        return items;
+    }
+
+    private static List<Blended> truncate(List<Blended> sorted, int n) {
+        if (n >= 0 && sorted.size() > n) {
+            return new ArrayList<>(sorted.subList(0, n));
+        } else {
+            return sorted;
+        }
+    }
+
+    /**
+     * An item with its blended score and the ranks and results it had in each list.
+     */
+    static class Blended {
+        static final Comparator<Blended> ORDER =
+                Comparator.comparingDouble((Blended b) -> b.score).reversed()
+                          .thenComparingLong(b -> b.id);
+
+        final long id;
+        final int[] ranks;
+        final Result[] results;
+        double score;
+
+        Blended(long id, int k) {
+            this.id = id;
+            ranks = new int[k];
+            Arrays.fill(ranks, -1);
+            results = new Result[k];
+        }
+
+        /**
+         * Compute how much the score could still increase from lists in which the item has not been seen.
+         */
+        double slack(double[] unseen) {
+            double s = 0;
+            for (int j = 0; j < ranks.length; j++) {
+                if (ranks[j] < 0) {
+                    s += unseen[j];
+                }
+            }
+            return s;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.hybrid;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Doubles;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.lenskit.api.ItemRecommender;
+import org.lenskit.api.Result;
+import org.lenskit.api.ResultList;
+import org.lenskit.basic.AbstractItemRecommender;
+import org.lenskit.results.Results;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hybrid item recommender that blends the *ranks* produced by any number of recommenders.  Each recommender's rank
+ * scores are computed as in {@link RankBlendingItemRecommender}, and the final score is their weighted sum.
+ *
+ * With a positive depth, ranks are scored against that depth (see {@link BlendDepth}) and the recommender requests
+ * bounded prefixes of the lists, deepening them only until the blended top-$n$ is known.
+ *
+ * This recommender is not configured by dependency injection; construct it directly with its component recommenders.
+ */
+public class WeightedRankBlendingItemRecommender extends AbstractItemRecommender {
+    private final List<ItemRecommender> recommenders;
+    private final ThresholdRankBlender blender;
+
+    /**
+     * Construct a new weighted rank-blending recommender.
+     * @param recs The recommenders to blend.
+     * @param ws The blend weights, one per recommender; they must be non-negative.
+     * @param depth The rank horizon, or 0 to blend complete lists.
+     */
+    public WeightedRankBlendingItemRecommender(List<? extends ItemRecommender> recs, List<Double> ws, int depth) {
+        recommenders = ImmutableList.copyOf(recs);
+        blender = new ThresholdRankBlender(recommenders, Doubles.toArray(ws), depth);
+    }
+
+    /**
+     * Get the recommenders being blended.
+     * @return The component recommenders.
+     */
+    public List<ItemRecommender> getRecommenders() {
+        return recommenders;
+    }
+
+    @Override
+    protected ResultList recommendWithDetails(long user, int n, @Nullable LongSet candidates, @Nullable LongSet exclude) {
+        List<ThresholdRankBlender.Blended> items = blender.blend(user, n, candidates, exclude);
+        List<Result> results = new ArrayList<>(items.size());
+        for (ThresholdRankBlender.Blended b: items) {
+            results.add(Results.create(b.id, b.score));
+        }
+        return Results.newResultList(results);
+    }
+}
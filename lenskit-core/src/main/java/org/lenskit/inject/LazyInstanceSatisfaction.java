@@ -0,0 +1,265 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.inject;
+
+import org.grouplens.grapht.CachePolicy;
+import org.grouplens.grapht.Instantiator;
+import org.grouplens.grapht.LifecycleManager;
+import org.grouplens.grapht.reflect.Desire;
+import org.grouplens.grapht.reflect.Satisfaction;
+import org.grouplens.grapht.reflect.SatisfactionVisitor;
+import org.grouplens.grapht.util.ClassProxy;
+import org.lenskit.api.RecommenderBuildException;
+import org.lenskit.util.io.CustomClassLoaderObjectInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Provider;
+import java.io.*;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * An instance satisfaction whose instance is stored in an entry of a component archive, and only
+ * deserialized the first time it is needed.  These are created by the archive format of
+ * {@link org.lenskit.LenskitRecommenderEngine#writeArchive(File)}.
+ *
+ * @since 3.0
+ */
+public class LazyInstanceSatisfaction implements Satisfaction, Serializable {
+    private static final long serialVersionUID = -1L;
+    private static final Logger logger = LoggerFactory.getLogger(LazyInstanceSatisfaction.class);
+
+    private final Class<?> type;
+    private final String entryName;
+
+    private transient File archive;
+    @Nullable
+    private transient ClassLoader classLoader;
+    private transient volatile Object instance;
+
+    /**
+     * Create a new lazy instance satisfaction.  It must be {@linkplain #attach(File, ClassLoader) attached}
+     * to an archive before its instance can be loaded.
+     *
+     * @param type The type of the instance.
+     * @param entry The name of the archive entry containing the serialized instance.
+     */
+    public LazyInstanceSatisfaction(Class<?> type, String entry) {
+        this.type = type;
+        entryName = entry;
+    }
+
+    private Object writeReplace() {
+        return new SerialProxy(type, entryName);
+    }
+
+    /**
+     * Attach this satisfaction to the archive it was loaded from.
+     *
+     * @param file The archive file.
+     * @param loader The class loader to use when deserializing the instance.
+     */
+    public void attach(File file, @Nullable ClassLoader loader) {
+        archive = file;
+        classLoader = loader;
+    }
+
+    /**
+     * Get the name of the archive entry holding this satisfaction's instance.
+     * @return The entry name.
+     */
+    public String getEntryName() {
+        return entryName;
+    }
+
+    /**
+     * Query whether the instance has been loaded yet.
+     * @return {@code true} if the instance has been deserialized.
+     */
+    public boolean isLoaded() {
+        return instance != null;
+    }
+
+    /**
+     * Get the instance, loading it from the archive if necessary.
+     *
+     * @return The instance.
+     * @throws RecommenderBuildException if the instance cannot be loaded.
+     */
+    @Nonnull
+    public Object getInstance() {
+        Object obj = instance;
+        if (obj == null) {
+            synchronized (this) {
+                obj = instance;
+                if (obj == null) {
+                    obj = loadInstance();
+                    instance = obj;
+                }
+            }
+        }
+        return obj;
+    }
+
+    private Object loadInstance() {
+        if (archive == null) {
+            throw new IllegalStateException("lazy component " + entryName + " is not attached to an archive");
+        }
+        logger.debug("loading {} from {}", entryName, archive);
+        long start = System.nanoTime();
+        try (ZipFile zip = new ZipFile(archive)) {
+            ZipEntry entry = zip.getEntry(entryName);
+            if (entry == null) {
+                throw new RecommenderBuildException("archive " + archive + " has no entry " + entryName);
+            }
+            try (InputStream in = zip.getInputStream(entry);
+                 ObjectInputStream oin = new CustomClassLoaderObjectInputStream(new BufferedInputStream(in),
+                                                                                classLoader)) {
+                Object obj = type.cast(oin.readObject());
+                logger.info("loaded {} from {} ({} bytes) in {}ms", type.getSimpleName(), entryName,
+                            entry.getSize(), (System.nanoTime() - start) / 1000000);
+                return obj;
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            throw new RecommenderBuildException("error loading " + entryName + " from " + archive, e);
+        }
+    }
+
+    @Override
+    public List<Desire> getDependencies() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Type getType() {
+        return type;
+    }
+
+    @Override
+    public Class<?> getErasedType() {
+        return type;
+    }
+
+    @Override
+    public boolean hasInstance() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The satisfaction is presented to visitors as a provider instance, so that visiting a graph (to dump,
+     * hash, or rewrite it) does not load the component.  The instance is only loaded when the provider is
+     * invoked.
+     */
+    @Override
+    public <T> T visit(SatisfactionVisitor<T> visitor) {
+        return visitor.visitProviderInstance(new LazyProvider());
+    }
+
+    @Override
+    public CachePolicy getDefaultCachePolicy() {
+        return CachePolicy.MEMOIZE;
+    }
+
+    @Override
+    public Instantiator makeInstantiator(@Nonnull Map<Desire, Instantiator> dependencies, @Nullable LifecycleManager lm) {
+        return new Instantiator() {
+            @Override
+            public Object instantiate() {
+                return getInstance();
+            }
+
+            @Override
+            public Class getType() {
+                return type;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        LazyInstanceSatisfaction that = (LazyInstanceSatisfaction) o;
+        return type.equals(that.type) && entryName.equals(that.entryName);
+    }
+
+    @Override
+    public int hashCode() {
+        return type.hashCode() * 31 + entryName.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "lazy " + type.getName() + " from " + entryName;
+    }
+
+    /**
+     * Provider exposing the lazily-loaded instance to satisfaction visitors.
+     */
+    private class LazyProvider implements Provider<Object> {
+        @Shareable
+        @Override
+        public Object get() {
+            return getInstance();
+        }
+
+        @Override
+        public String toString() {
+            return LazyInstanceSatisfaction.this.toString();
+        }
+    }
+
+    private static class SerialProxy implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final ClassProxy type;
+        private final String entryName;
+
+        private SerialProxy(Class<?> type, String entry) {
+            this.type = ClassProxy.of(type);
+            entryName = entry;
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            try {
+                return new LazyInstanceSatisfaction(type.resolve(), entryName);
+            } catch (ClassNotFoundException e) {
+                InvalidObjectException ex = new InvalidObjectException("class not found");
+                ex.initCause(e);
+                throw ex;
+            }
+        }
+    }
+}
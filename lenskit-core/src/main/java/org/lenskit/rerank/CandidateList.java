@@ -0,0 +1,168 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.rerank;
+
+import com.google.common.base.Preconditions;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import org.lenskit.api.Result;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The remaining candidates for greedy re-ranking, in ranking order.  Candidates are kept in arrays linked in ranking
+ * order, so removing a candidate by ID takes constant time.  Positional access walks the links from the most recently
+ * accessed position, so scanning the list in order (as re-rank strategies do) takes constant time per element.
+ *
+ * Candidates with duplicate IDs are dropped after the first.  The list is not thread-safe.
+ */
+class CandidateList extends AbstractList<Result> {
+    private static final int END = -1;
+
+    private final Result[] results;
+    private final int[] next;
+    private final int[] prev;
+    private final Long2IntMap slots;
+    private int head = END;
+    private int size;
+
+    // cursor caching the last positional access
+    private int cursorPos = -1;
+    private int cursorSlot = END;
+
+    CandidateList(List<? extends Result> candidates) {
+        int n = candidates.size();
+        results = new Result[n];
+        next = new int[n];
+        prev = new int[n];
+        slots = new Long2IntOpenHashMap(n);
+        slots.defaultReturnValue(END);
+
+        int tail = END;
+        for (Result r: candidates) {
+            if (slots.containsKey(r.getId())) {
+                continue;
+            }
+            int slot = size;
+            results[slot] = r;
+            slots.put(r.getId(), slot);
+            prev[slot] = tail;
+            next[slot] = END;
+            if (tail == END) {
+                head = slot;
+            } else {
+                next[tail] = slot;
+            }
+            tail = slot;
+            size += 1;
+        }
+    }
+
+    /**
+     * Remove a candidate by ID.
+     * @param id The item ID.
+     * @return {@code true} if the candidate was present.
+     */
+    boolean removeId(long id) {
+        int slot = slots.remove(id);
+        if (slot == END) {
+            return false;
+        }
+
+        int p = prev[slot];
+        int nx = next[slot];
+        if (p == END) {
+            head = nx;
+        } else {
+            next[p] = nx;
+        }
+        if (nx != END) {
+            prev[nx] = p;
+        }
+        size -= 1;
+        // reset the cursor, its position may have shifted
+        cursorPos = -1;
+        cursorSlot = END;
+        return true;
+    }
+
+    @Override
+    public Result get(int index) {
+        Preconditions.checkElementIndex(index, size);
+        int pos, slot;
+        if (cursorSlot != END && index >= cursorPos) {
+            pos = cursorPos;
+            slot = cursorSlot;
+        } else if (cursorSlot != END && cursorPos - index < index) {
+            // closer to walk back from the cursor
+            pos = cursorPos;
+            slot = cursorSlot;
+            while (pos > index) {
+                slot = prev[slot];
+                pos -= 1;
+            }
+        } else {
+            pos = 0;
+            slot = head;
+        }
+        while (pos < index) {
+            slot = next[slot];
+            pos += 1;
+        }
+        cursorPos = pos;
+        cursorSlot = slot;
+        return results[slot];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<Result> iterator() {
+        return new Iterator<Result>() {
+            int slot = head;
+
+            @Override
+            public boolean hasNext() {
+                return slot != END;
+            }
+
+            @Override
+            public Result next() {
+                if (slot == END) {
+                    throw new NoSuchElementException();
+                }
+                Result r = results[slot];
+                slot = next[slot];
+                return r;
+            }
+        };
+    }
+}
@@ -24,8 +24,9 @@
  */
 package org.lenskit.rerank;
 
-import com.google.common.base.Predicate;
-import com.google.common.collect.Iterables;
+import it.unimi.dsi.fastutil.ints.IntComparator;
+import it.unimi.dsi.fastutil.ints.IntHeapPriorityQueue;
+import it.unimi.dsi.fastutil.ints.IntPriorityQueue;
 import it.unimi.dsi.fastutil.longs.LongSet;
 import org.lenskit.api.ItemRecommender;
 import org.lenskit.api.Result;
@@ -38,7 +39,6 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -51,44 +51,108 @@ import java.util.List;
  * and each candidate item. The item with the highest score is then added to the recommended list. This process repeates
  * until enough items are recommended.
  *
+ * The number of candidates taken from the baseline algorithm can be bounded with {@link CandidatePoolFactor}.  If the
+ * strategy is a {@link SubmodularGreedyRerankStrategy}, candidates are selected with lazy greedy evaluation.
+ *
  * @author Daniel Kluver
  */
 public class GreedyRerankingItemRecommender extends AbstractItemRecommender {
     private static final Logger logger = LoggerFactory.getLogger(GreedyRerankingItemRecommender.class);
     private final ItemRecommender baseRecommender;
     private final GreedyRerankStrategy strategy;
+    private final int poolFactor;
 
-    @Inject
     public GreedyRerankingItemRecommender(ItemRecommender baseRecommender, GreedyRerankStrategy strategy) {
+        this(baseRecommender, strategy, 0);
+    }
+
+    /**
+     * Construct a greedy re-ranking recommender.
+     * @param baseRecommender The recommender producing the initial ranking.
+     * @param strategy The re-ranking strategy.
+     * @param poolFactor The candidate pool depth, as a multiple of the number of recommendations; 0 for all candidates.
+     */
+    @Inject
+    public GreedyRerankingItemRecommender(ItemRecommender baseRecommender, GreedyRerankStrategy strategy,
+                                          @CandidatePoolFactor int poolFactor) {
         this.baseRecommender = baseRecommender;
         this.strategy = strategy;
+        this.poolFactor = poolFactor;
     }
 
-
     @Override
     protected ResultList recommendWithDetails(long user, int n, @Nullable LongSet candidateItems, @Nullable LongSet exclude) {
-        List<Result> candidates = baseRecommender.recommendWithDetails(user, -1, candidateItems, exclude);
-        //modifiable copy
-        candidates = new ArrayList<>(candidates);
+        int depth = -1;
+        if (n >= 0 && poolFactor > 0) {
+            depth = (int) Math.min((long) n * poolFactor, Integer.MAX_VALUE);
+        }
+        List<Result> base = baseRecommender.recommendWithDetails(user, depth, candidateItems, exclude);
         if (n<0) {
-            n = candidates.size();
+            n = base.size();
+        }
+        logger.debug("re-ranking {} candidates for {} items for user {}", base.size(), n, user);
+
+        if (strategy instanceof SubmodularGreedyRerankStrategy) {
+            return lazyRerank(user, n, base, (SubmodularGreedyRerankStrategy) strategy);
         }
 
-        List<Result> results = new ArrayList<>(n);
+        CandidateList candidates = new CandidateList(base);
+        List<Result> results = new ArrayList<>(Math.min(n, candidates.size()));
         for (int i = 0; i<n; i++) {
             final Result nextItem = strategy.nextItem(user, n, results, candidates);
             if (nextItem == null) {
                 break;
             } else {
-                Iterables.removeIf(candidates, new Predicate<Result>() {
-                    @Override
-                    public boolean apply(@Nullable Result input) {
-                        return input!= null && input.getId() == nextItem.getId();
-                    }
-                });
+                candidates.removeId(nextItem.getId());
                 results.add(nextItem);
             }
         }
         return Results.newResultList(results);
     }
+
+    /**
+     * Re-rank with lazy greedy evaluation.  Each candidate's last computed gain is an upper bound on its current gain,
+     * so a candidate whose gain is current and at least the bounds of all other candidates is the best choice.
+     */
+    private ResultList lazyRerank(long user, int n, List<Result> base, SubmodularGreedyRerankStrategy strat) {
+        final Result[] candidates = base.toArray(new Result[base.size()]);
+        final double[] bounds = new double[candidates.length];
+        final int[] stamps = new int[candidates.length];
+        List<Result> results = new ArrayList<>(Math.min(n, candidates.length));
+
+        // highest bound first, ties go to the earliest-ranked candidate
+        IntPriorityQueue heap = new IntHeapPriorityQueue(candidates.length, new IntComparator() {
+            @Override
+            public int compare(int i, int j) {
+                int cmp = Double.compare(bounds[j], bounds[i]);
+                return cmp != 0 ? cmp : Integer.compare(i, j);
+            }
+        });
+        for (int i = 0; i < candidates.length; i++) {
+            double gain = strat.marginalGain(user, n, results, candidates[i]);
+            if (!Double.isNaN(gain)) {
+                bounds[i] = gain;
+                heap.enqueue(i);
+            }
+        }
+
+        int evaluations = candidates.length;
+        while (results.size() < n && !heap.isEmpty()) {
+            int top = heap.dequeueInt();
+            if (stamps[top] == results.size()) {
+                results.add(Results.rescore(candidates[top], bounds[top]));
+            } else {
+                double gain = strat.marginalGain(user, n, results, candidates[top]);
+                evaluations += 1;
+                if (!Double.isNaN(gain)) {
+                    bounds[top] = gain;
+                    stamps[top] = results.size();
+                    heap.enqueue(top);
+                }
+            }
+        }
+        logger.debug("lazy greedy selected {} items with {} gain evaluations", results.size(), evaluations);
+
+        return Results.newResultList(results);
+    }
 }
@@ -0,0 +1,57 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.rerank;
+
+import org.lenskit.api.Result;
+
+import java.util.List;
+
+/**
+ * A greedy re-ranking strategy whose objective has diminishing returns, such as most diversity objectives.  For such
+ * strategies, {@link GreedyRerankingItemRecommender} uses <em>lazy greedy</em> selection: it keeps each candidate's
+ * most recent gain as an upper bound, and only re-scores the candidates whose bound could beat the best current gain,
+ * rather than re-scoring every candidate for every position.  This selects the same items as an eager scan that picks
+ * the first candidate (in ranking order) with the highest gain.
+ *
+ * {@link #nextItem(long, int, List, List)} is not called when the recommender runs lazy greedy selection, but should
+ * still implement the eager selection for other users of the strategy.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public interface SubmodularGreedyRerankStrategy extends GreedyRerankStrategy {
+    /**
+     * Compute the marginal gain of adding a candidate to the recommendation list.  The gain of a candidate must never
+     * increase as items are added to the list.
+     *
+     * @param userId the id of the user receiving these recommendation.
+     * @param n the total number of items that will be recommended.
+     * @param items the list of items already chosen for recommendation.
+     * @param candidate the candidate item.
+     * @return the gain of adding the candidate, with larger values considered better; or {@link Double#NaN} if the
+     * candidate cannot be added.  A candidate that cannot be added is discarded, so it must not become addable again
+     * as the list grows.
+     */
+    double marginalGain(long userId, int n, List<? extends Result> items, Result candidate);
+}
@@ -28,6 +28,7 @@ import com.google.common.base.Preconditions;
 import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
 import net.jcip.annotations.ThreadSafe;
 import org.lenskit.inject.Shareable;
+import org.lenskit.util.math.PackedVectors;
 import org.lenskit.util.math.Scalars;
 import org.lenskit.util.math.Vectors;
 
@@ -76,6 +77,19 @@ public class CosineVectorSimilarity implements VectorSimilarity, Serializable {
         }
     }
 
+    @Override
+    public double[] similarities(Long2DoubleMap vec, PackedVectors vectors, int[] rows) {
+        PackedVectors query = PackedVectors.of(vec);
+        final double norm = query.getNorm(0);
+        double[] sims = new double[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            final double dot = query.dotProduct(0, vectors, rows[i]);
+            final double denom = norm * vectors.getNorm(rows[i]) + dampingFactor;
+            sims[i] = Scalars.isZero(denom) ? 0 : dot / denom;
+        }
+        return sims;
+    }
+
     @Override
     public boolean isSparse() {
         return true;
@@ -31,6 +31,7 @@ import it.unimi.dsi.fastutil.longs.LongSortedSet;
 import net.jcip.annotations.ThreadSafe;
 import org.lenskit.inject.Shareable;
 import org.lenskit.util.collections.LongUtils;
+import org.lenskit.util.math.PackedVectors;
 
 import javax.inject.Inject;
 import java.io.Serializable;
@@ -125,6 +126,60 @@ public class PearsonCorrelation implements VectorSimilarity, Serializable {
         }
     }
 
+    @Override
+    public double[] similarities(Long2DoubleMap vec, PackedVectors vectors, int[] rows) {
+        PackedVectors query = PackedVectors.of(vec);
+        final long[] ks1 = query.getKeys();
+        final double[] vs1 = query.getValues();
+        final long[] ks2 = vectors.getKeys();
+        final double[] vs2 = vectors.getValues();
+        double[] sims = new double[rows.length];
+        for (int r = 0; r < rows.length; r++) {
+            final int lo2 = vectors.getRowStart(rows[r]);
+            final int hi2 = vectors.getRowEnd(rows[r]);
+
+            // same two passes as the pairwise version, merging the sorted key arrays
+            int n = 0;
+            double sum1 = 0;
+            double sum2 = 0;
+            for (int i = 0, j = lo2; i < ks1.length && j < hi2;) {
+                if (ks1[i] < ks2[j]) {
+                    i++;
+                } else if (ks2[j] < ks1[i]) {
+                    j++;
+                } else {
+                    sum1 += vs1[i++];
+                    sum2 += vs2[j++];
+                    n++;
+                }
+            }
+            if (n == 0) {
+                continue;
+            }
+
+            final double mu1 = sum1 / n;
+            final double mu2 = sum2 / n;
+            double var1 = 0;
+            double var2 = 0;
+            double dot = 0;
+            for (int i = 0, j = lo2; i < ks1.length && j < hi2;) {
+                if (ks1[i] < ks2[j]) {
+                    i++;
+                } else if (ks2[j] < ks1[i]) {
+                    j++;
+                } else {
+                    final double v1 = vs1[i++] - mu1;
+                    final double v2 = vs2[j++] - mu2;
+                    var1 += v1 * v1;
+                    var2 += v2 * v2;
+                    dot += v1 * v2;
+                }
+            }
+            sims[r] = dot / (sqrt(var1 * var2) + shrinkage);
+        }
+        return sims;
+    }
+
     @Override
     public boolean isSparse() {
         return true;
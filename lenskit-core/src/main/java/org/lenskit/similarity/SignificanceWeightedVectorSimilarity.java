@@ -28,6 +28,7 @@ import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
 import net.jcip.annotations.ThreadSafe;
 import org.lenskit.inject.Shareable;
 import org.lenskit.util.collections.LongUtils;
+import org.lenskit.util.math.PackedVectors;
 
 import javax.inject.Inject;
 import java.io.Serializable;
@@ -84,6 +85,17 @@ public class SignificanceWeightedVectorSimilarity implements VectorSimilarity, S
         return s / max(n, threshold);
     }
 
+    @Override
+    public double[] similarities(Long2DoubleMap vec, PackedVectors vectors, int[] rows) {
+        double[] sims = delegate.similarities(vec, vectors, rows);
+        PackedVectors query = PackedVectors.of(vec);
+        for (int i = 0; i < rows.length; i++) {
+            int n = query.countCommonKeys(0, vectors, rows[i]);
+            sims[i] = sims[i] * n / max(n, threshold);
+        }
+        return sims;
+    }
+
     @Override
     public boolean isSparse() {
         return delegate.isSparse();
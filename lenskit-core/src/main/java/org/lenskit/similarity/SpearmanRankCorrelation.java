@@ -26,11 +26,12 @@ package org.lenskit.similarity;
 
 import com.google.common.base.Preconditions;
 import com.google.common.primitives.Doubles;
+import it.unimi.dsi.fastutil.ints.IntArrays;
 import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
 import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
-import it.unimi.dsi.fastutil.longs.LongArrays;
 import net.jcip.annotations.ThreadSafe;
 import org.lenskit.inject.Shareable;
+import org.lenskit.util.math.PackedVectors;
 import org.lenskit.util.math.Scalars;
 
 import javax.inject.Inject;
@@ -60,39 +61,57 @@ public class SpearmanRankCorrelation implements VectorSimilarity, Serializable {
 
     static Long2DoubleMap rank(final Long2DoubleMap vec) {
         long[] ids = vec.keySet().toLongArray();
-        // sort ID set by value (decreasing)
-        LongArrays.quickSort(ids, (k1, k2) -> Doubles.compare(vec.get(k2), vec.get(k1)));
+        double[] values = new double[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            values[i] = vec.get(ids[i]);
+        }
 
-        final int n = ids.length;
-        final double[] values = new double[n];
-        Long2DoubleMap rank = new Long2DoubleOpenHashMap(n);
-        // assign ranks to each item
+        double[] ranks = rankValues(values, 0, ids.length);
+        Long2DoubleMap rank = new Long2DoubleOpenHashMap(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            rank.put(ids[i], ranks[i]);
+        }
+        return rank;
+    }
+
+    /**
+     * Compute the ranks of a range of values.
+     * @param values The values.
+     * @param lo The start of the range.
+     * @param hi The end of the range.
+     * @return The ranks of the values in the range, parallel to it.
+     */
+    static double[] rankValues(final double[] values, final int lo, final int hi) {
+        final int n = hi - lo;
+        int[] order = new int[n];
         for (int i = 0; i < n; i++) {
-            rank.put(ids[i], i+1);
-            values[i] = vec.get(ids[i]);
+            order[i] = i;
         }
+        // sort positions by value (decreasing)
+        IntArrays.quickSort(order, (i1, i2) -> Doubles.compare(values[lo + i2], values[lo + i1]));
 
-        // average ranks for items with same values
+        double[] ranks = new double[n];
+        // assign ranks to each value, averaging ranks for items with same values
         int i = 0;
         while (i < n) {
             int j;
             for (j = i + 1; j < n; j++) {
                 // compare difference to 0 with tolerance - more robust
-                if (!Scalars.isZero(values[j] - values[i])) {
+                if (!Scalars.isZero(values[lo + order[j]] - values[lo + order[i]])) {
                     break;
                 }
             }
+            double r = i + 1;
             if (j - i > 1) {
-                double r2 = (rank.get(ids[i]) + rank.get(ids[j - 1])) / (j - i);
-                for (int k = i; k < j; k++) {
-                    rank.put(ids[k], r2);
-                }
+                r = (double) (i + 1 + j) / (j - i);
+            }
+            for (int k = i; k < j; k++) {
+                ranks[order[k]] = r;
             }
             i = j;
         }
 
-        // Make a sparse vector out of it
-        return rank;
+        return ranks;
     }
 
     @Override
@@ -100,6 +119,27 @@ public class SpearmanRankCorrelation implements VectorSimilarity, Serializable {
         return pearson.similarity(rank(vec1), rank(vec2));
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * This ranks the query vector once and the requested rows into a compact block holding only those rows, and
+     * then computes their Pearson correlations in a batch.
+     */
+    @Override
+    public double[] similarities(Long2DoubleMap vec, PackedVectors vectors, int[] rows) {
+        PackedVectors selected = vectors.selectRows(rows);
+        double[] values = selected.getValues();
+        double[] ranks = new double[values.length];
+        int[] selectedRows = new int[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            int lo = selected.getRowStart(i);
+            int hi = selected.getRowEnd(i);
+            System.arraycopy(rankValues(values, lo, hi), 0, ranks, lo, hi - lo);
+            selectedRows[i] = i;
+        }
+        return pearson.similarities(rank(vec), selected.withValues(ranks), selectedRows);
+    }
+
     @Override
     public boolean isSparse() {
         return true;
@@ -27,6 +27,7 @@ package org.lenskit.similarity;
 
 import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
 import org.grouplens.grapht.annotation.DefaultImplementation;
+import org.lenskit.util.math.PackedVectors;
 
 /**
  * Compute the similarity between sparse vectors.
@@ -45,6 +46,26 @@ public interface VectorSimilarity {
      */
     double similarity(Long2DoubleMap vec1, Long2DoubleMap vec2);
 
+    /**
+     * Compute the similarity between one vector and several rows of a packed block.  The result must be the same
+     * as calling {@link #similarity(Long2DoubleMap, Long2DoubleMap)} with {@code vec} as the left vector and each
+     * row as the right vector; the default implementation does exactly that.  Implementations can override it to
+     * work directly on the packed arrays and precomputed norms.
+     *
+     * @param vec The left vector to compare.
+     * @param vectors The block of right vectors.
+     * @param rows The indexes of the rows in {@code vectors} to compare with {@code vec}.
+     * @return An array of similarities, parallel to {@code rows}.
+     * @since 3.0
+     */
+    default double[] similarities(Long2DoubleMap vec, PackedVectors vectors, int[] rows) {
+        double[] sims = new double[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            sims[i] = similarity(vec, vectors.row(rows[i]));
+        }
+        return sims;
+    }
+
     /**
      * Query whether this similarity function is sparse (returns 0 for vectors with
      * disjoint key sets).
@@ -28,6 +28,7 @@ import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
 import org.lenskit.api.ItemScorer;
 import org.lenskit.baseline.BaselineScorer;
 import org.lenskit.util.InvertibleFunction;
+import org.lenskit.util.collections.LongUtils;
 import org.lenskit.util.keys.Long2DoubleSortedArrayMap;
 import org.lenskit.util.keys.SortedKeyIndex;
 
@@ -104,6 +105,26 @@ public class BaselineSubtractingUserVectorNormalizer extends AbstractUserVectorN
             return Long2DoubleSortedArrayMap.wrap(idx, values);
         }
 
+        @Override
+        public void applyInPlace(long[] keys, double[] values, int start, int end) {
+            addBaselines(keys, values, start, end, -1);
+        }
+
+        @Override
+        public void unapplyInPlace(long[] keys, double[] values, int start, int end) {
+            addBaselines(keys, values, start, end, 1);
+        }
+
+        /**
+         * Score the baseline for the vector's keys once and add it, scaled, to the values in one pass.
+         */
+        private void addBaselines(long[] keys, double[] values, int start, int end, double scale) {
+            Map<Long,Double> base = baselineScorer.score(user, SortedKeyIndex.wrap(keys, start, end).keySet());
+            Long2DoubleMap baseMap = LongUtils.asLong2DoubleMap(base);
+            for (int i = start; i < end; i++) {
+                values[i] += scale * baseMap.get(keys[i]);
+            }
+        }
     }
 
     @Override
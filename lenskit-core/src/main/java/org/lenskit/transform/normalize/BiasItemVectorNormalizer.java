@@ -71,5 +71,19 @@ public class BiasItemVectorNormalizer extends AbstractItemVectorNormalizer {
             Long2DoubleMap biases = model.getUserBiases(input.keySet());
             return Vectors.combine(input, biases, -1.0, -itemBias);
         }
+
+        @Override
+        public void applyInPlace(long[] keys, double[] values, int start, int end) {
+            for (int i = start; i < end; i++) {
+                values[i] = values[i] - model.getUserBias(keys[i]) - itemBias;
+            }
+        }
+
+        @Override
+        public void unapplyInPlace(long[] keys, double[] values, int start, int end) {
+            for (int i = start; i < end; i++) {
+                values[i] = values[i] + model.getUserBias(keys[i]) + itemBias;
+            }
+        }
     }
 }
@@ -71,5 +71,19 @@ public class BiasUserVectorNormalizer extends AbstractUserVectorNormalizer {
             Long2DoubleMap biases = model.getItemBiases(input.keySet());
             return Vectors.combine(input, biases, -1.0, -userBias);
         }
+
+        @Override
+        public void applyInPlace(long[] keys, double[] values, int start, int end) {
+            for (int i = start; i < end; i++) {
+                values[i] = values[i] - model.getItemBias(keys[i]) - userBias;
+            }
+        }
+
+        @Override
+        public void unapplyInPlace(long[] keys, double[] values, int start, int end) {
+            for (int i = start; i < end; i++) {
+                values[i] = values[i] + model.getItemBias(keys[i]) + userBias;
+            }
+        }
     }
 }
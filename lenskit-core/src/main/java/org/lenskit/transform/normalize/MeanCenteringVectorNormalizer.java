@@ -71,6 +71,20 @@ public class MeanCenteringVectorNormalizer extends AbstractVectorNormalizer impl
             return Vectors.addScalar(input, mean);
         }
 
+        @Override
+        public void applyInPlace(long[] keys, double[] values, int start, int end) {
+            for (int i = start; i < end; i++) {
+                values[i] -= mean;
+            }
+        }
+
+        @Override
+        public void unapplyInPlace(long[] keys, double[] values, int start, int end) {
+            for (int i = start; i < end; i++) {
+                values[i] += mean;
+            }
+        }
+
 
     }
 }
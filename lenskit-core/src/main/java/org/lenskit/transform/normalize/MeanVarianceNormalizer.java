@@ -145,5 +145,19 @@ public class MeanVarianceNormalizer extends AbstractVectorNormalizer implements
             return Vectors.transform(input, (v) -> ((v - mean) / stdev));
         }
 
+        @Override
+        public void applyInPlace(long[] keys, double[] values, int start, int end) {
+            for (int i = start; i < end; i++) {
+                values[i] = (values[i] - mean) / stdev;
+            }
+        }
+
+        @Override
+        public void unapplyInPlace(long[] keys, double[] values, int start, int end) {
+            for (int i = start; i < end; i++) {
+                values[i] = mean + values[i] * stdev;
+            }
+        }
+
     }
 }
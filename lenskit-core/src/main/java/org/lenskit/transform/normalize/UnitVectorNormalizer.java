@@ -92,5 +92,20 @@ public class UnitVectorNormalizer extends AbstractVectorNormalizer implements Se
             return input == null ? null : Vectors.multiplyScalar(input, 1.0 / factor);
         }
 
+        @Override
+        public void applyInPlace(long[] keys, double[] values, int start, int end) {
+            final double scale = 1.0 / factor;
+            for (int i = start; i < end; i++) {
+                values[i] *= scale;
+            }
+        }
+
+        @Override
+        public void unapplyInPlace(long[] keys, double[] values, int start, int end) {
+            for (int i = start; i < end; i++) {
+                values[i] *= factor;
+            }
+        }
+
     }
 }
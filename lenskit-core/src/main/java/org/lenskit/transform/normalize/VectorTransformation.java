@@ -26,12 +26,80 @@ package org.lenskit.transform.normalize;
 
 import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
 import org.lenskit.util.InvertibleFunction;
+import org.lenskit.util.keys.Long2DoubleSortedArrayMap;
+import org.lenskit.util.keys.SortedKeyIndex;
 
 /**
  * Reversible in-place vector transformations.
  *
+ * Besides transforming maps, a transformation can be applied in place to a vector stored as a range of parallel
+ * key and value arrays, with the keys in sorted order.  The default implementations of the array methods go
+ * through the map methods; transformations whose parameters are computed up front (such as a mean or a bias)
+ * override them to rewrite the values in a single pass without allocating.
+ *
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
  */
 public interface VectorTransformation extends InvertibleFunction<Long2DoubleMap,Long2DoubleMap> {
+    /**
+     * Apply this transformation in place to a vector stored in arrays.
+     *
+     * @param keys The vector's keys, sorted within the range.
+     * @param values The vector's values; the values in the range are replaced with transformed values.
+     * @param start The start of the vector's range in the arrays.
+     * @param end The end of the vector's range in the arrays.
+     * @since 3.0
+     */
+    default void applyInPlace(long[] keys, double[] values, int start, int end) {
+        SortedKeyIndex index = SortedKeyIndex.wrap(keys, start, end);
+        Long2DoubleMap result = apply(Long2DoubleSortedArrayMap.wrap(index, values));
+        // read every result before writing, in case the result is a view of the value array
+        double[] copy = new double[end - start];
+        for (int i = start; i < end; i++) {
+            copy[i - start] = result.get(keys[i]);
+        }
+        System.arraycopy(copy, 0, values, start, copy.length);
+    }
+
+    /**
+     * Reverse this transformation in place on a vector stored in arrays.
+     *
+     * @param keys The vector's keys, sorted within the range.
+     * @param values The vector's values; the values in the range are replaced with un-transformed values.
+     * @param start The start of the vector's range in the arrays.
+     * @param end The end of the vector's range in the arrays.
+     * @since 3.0
+     */
+    default void unapplyInPlace(long[] keys, double[] values, int start, int end) {
+        SortedKeyIndex index = SortedKeyIndex.wrap(keys, start, end);
+        Long2DoubleMap result = unapply(Long2DoubleSortedArrayMap.wrap(index, values));
+        double[] copy = new double[end - start];
+        for (int i = start; i < end; i++) {
+            copy[i - start] = result.get(keys[i]);
+        }
+        System.arraycopy(copy, 0, values, start, copy.length);
+    }
+
+    /**
+     * Get a transformation as a vector transformation, so it can be applied in place.
+     *
+     * @param function A transformation, as returned by a normalizer.
+     * @return {@code function}, or a vector transformation that delegates to it.
+     * @since 3.0
+     */
+    static VectorTransformation of(InvertibleFunction<Long2DoubleMap,Long2DoubleMap> function) {
+        if (function instanceof VectorTransformation) {
+            return (VectorTransformation) function;
+        }
+        return new VectorTransformation() {
+            @Override
+            public Long2DoubleMap unapply(Long2DoubleMap input) {
+                return function.unapply(input);
+            }
 
+            @Override
+            public Long2DoubleMap apply(Long2DoubleMap input) {
+                return function.apply(input);
+            }
+        };
+    }
 }
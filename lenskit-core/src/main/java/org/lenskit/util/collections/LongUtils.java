@@ -30,6 +30,7 @@ import com.google.common.primitives.Doubles;
 import it.unimi.dsi.fastutil.longs.*;
 import org.lenskit.util.keys.Long2DoubleSortedArrayMap;
 import org.lenskit.util.keys.LongSortedArraySet;
+import org.lenskit.util.keys.LongSortedBitmapSet;
 import org.lenskit.util.keys.SortedKeyIndex;
 
 import javax.annotation.Nullable;
@@ -67,26 +68,34 @@ public final class LongUtils {
 
     /**
      * Create a frozen long set.  If the underlying collection is already an immutable sorted set (specifically, a
-     * {@link LongSortedArraySet}, it is used as-is. Otherwise, it is copied into a sorted array set.
+     * {@link LongSortedArraySet} or {@link LongSortedBitmapSet}), it is used as-is. Otherwise, it is copied into a
+     * sorted array set.
      *
-     * This is equivalent to {@link #packedSet(Collection)}.
+     * This is equivalent to {@link #packedSet(Collection)}, except that it does not copy bitmap sets.
      *
      * @param longs The collection.
      * @return The sorted array set.
      * @see #packedSet(Collection)
      */
     public static LongSortedSet frozenSet(Collection<Long> longs) {
-        return packedSet(longs);
+        if (longs instanceof LongSortedBitmapSet) {
+            return (LongSortedBitmapSet) longs;
+        } else {
+            return packedSet(longs);
+        }
     }
 
     /**
-     * Pack longs into a sorted set.
+     * Pack longs into a sorted set.  Bitmap sets are converted with {@link LongSortedBitmapSet#toArraySet()},
+     * which does not need to sort.
      * @param longs A collection of longs.
      * @return An efficient sorted set containing the numbers in {@code longs}.
      */
     public static LongSortedArraySet packedSet(Collection<Long> longs) {
         if (longs instanceof LongSortedArraySet) {
             return (LongSortedArraySet) longs;
+        } else if (longs instanceof LongSortedBitmapSet) {
+            return ((LongSortedBitmapSet) longs).toArraySet();
         } else {
             return SortedKeyIndex.fromCollection(longs).keySet();
         }
@@ -249,6 +258,11 @@ public final class LongUtils {
      * @return The elements of <var>items</var> that are not in <var>exclude</var>.
      */
     public static LongSortedSet setDifference(LongSet items, LongSet exclude) {
+        if (items instanceof LongSortedArraySet && exclude instanceof LongSortedArraySet) {
+            return sortedArrayDifference(((LongSortedArraySet) items).getIndex(),
+                                         ((LongSortedArraySet) exclude).getIndex());
+        }
+
         long[] data = new long[items.size()];
         final LongIterator iter = items.iterator();
         int i = 0;
@@ -268,6 +282,35 @@ public final class LongUtils {
         return SortedKeyIndex.wrap(data, i).keySet();
     }
 
+    /**
+     * Compute the difference of two sorted key sets by merging their key arrays.
+     * @param items The initial keys.
+     * @param exclude The keys to remove.
+     * @return The keys in {@code items} that are not in {@code exclude}.
+     */
+    private static LongSortedArraySet sortedArrayDifference(SortedKeyIndex items, SortedKeyIndex exclude) {
+        if (exclude.size() == 0) {
+            return items.keySet();
+        }
+        long[] data = new long[items.size()];
+        int i = 0;
+        int xi = exclude.getLowerBound();
+        final int xub = exclude.getUpperBound();
+        for (int ii = items.getLowerBound(), iub = items.getUpperBound(); ii < iub; ii++) {
+            final long x = items.getKey(ii);
+            while (xi < xub && exclude.getKey(xi) < x) {
+                xi++;
+            }
+            if (xi >= xub || exclude.getKey(xi) != x) {
+                data[i++] = x;
+            }
+        }
+        if (data.length * 2 > i * 3) {
+            data = Arrays.copyOf(data, i);
+        }
+        return SortedKeyIndex.wrap(data, i).keySet();
+    }
+
     /**
      * Compute the size of the intersection of two sets.
      * @param a The first set.
@@ -0,0 +1,81 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.util.io;
+
+import java.io.*;
+
+/**
+ * Serialization wrapper for a model written with its {@linkplain ModelCodec codec}.
+ * {@link CodecObjectOutputStream} substitutes this wrapper for models that have codecs, and it
+ * resolves back to the decoded model when read by any object input stream.  Client code should not
+ * need to use this class directly.
+ *
+ * @since 3.0
+ */
+public final class EncodedModel implements Externalizable {
+    private static final long serialVersionUID = 1L;
+
+    private Object model;
+
+    /**
+     * Construct an empty encoded model for deserialization.
+     */
+    public EncodedModel() {
+    }
+
+    /**
+     * Wrap a model for encoding.
+     * @param model The model.  Its class must have a codec.
+     */
+    EncodedModel(Object model) {
+        this.model = model;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void writeExternal(ObjectOutput out) throws IOException {
+        Class<Object> type = (Class<Object>) model.getClass();
+        ModelCodec<Object> codec = ModelCodecs.getCodec(type);
+        if (codec == null) {
+            throw new NotSerializableException(type.getName());
+        }
+        out.writeObject(type);
+        codec.write(model, out);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        Class<?> type = (Class<?>) in.readObject();
+        ModelCodec<?> codec = ModelCodecs.getCodec(type);
+        if (codec == null) {
+            throw new InvalidClassException(type.getName(), "class has no model codec");
+        }
+        model = type.cast(codec.read(in));
+    }
+
+    private Object readResolve() throws ObjectStreamException {
+        return model;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.util.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Compact binary encoding for a model class.  Model classes declare their codec with the
+ * {@link EncodedBy} annotation; when a model with a codec is written through a
+ * {@link CodecObjectOutputStream}, the codec is used in place of default Java serialization.  This
+ * allows models to write their primitive arrays directly, without class descriptors or per-object
+ * overhead, and makes the encoded form independent of the model's {@code serialVersionUID}.
+ *
+ * Codec implementations must have a public no-argument constructor.
+ *
+ * @param <T> The model type.
+ * @since 3.0
+ * @see ModelCodecs
+ */
+public interface ModelCodec<T> {
+    /**
+     * Write a model.
+     * @param model The model to write.
+     * @param out The output to write to.
+     * @throws IOException if there is an error writing the model.
+     */
+    void write(T model, DataOutput out) throws IOException;
+
+    /**
+     * Read a model.
+     * @param in The input to read from.
+     * @return The model.
+     * @throws IOException if there is an error reading the model.
+     */
+    T read(DataInput in) throws IOException;
+}
@@ -0,0 +1,352 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.util.io;
+
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import org.lenskit.util.keys.FrozenHashKeyIndex;
+import org.lenskit.util.keys.KeyIndex;
+import org.lenskit.util.keys.Long2DoubleSortedArrayMap;
+import org.lenskit.util.keys.SortedKeyIndex;
+
+import javax.annotation.Nullable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+
+/**
+ * Utilities for looking up {@linkplain ModelCodec model codecs} and for encoding the primitive
+ * arrays and key structures that models are built from.
+ *
+ * @since 3.0
+ */
+public final class ModelCodecs {
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final ClassValue<Optional<ModelCodec<?>>> codecs = new ClassValue<Optional<ModelCodec<?>>>() {
+        @Override
+        protected Optional<ModelCodec<?>> computeValue(Class<?> type) {
+            EncodedBy annot = type.getAnnotation(EncodedBy.class);
+            if (annot == null) {
+                return Optional.empty();
+            }
+            try {
+                return Optional.of(annot.value().newInstance());
+            } catch (InstantiationException | IllegalAccessException e) {
+                throw new IllegalStateException("cannot instantiate codec for " + type, e);
+            }
+        }
+    };
+
+    private ModelCodecs() {
+    }
+
+    /**
+     * Get the codec for a class.
+     * @param type The model class.
+     * @param <T> The model class.
+     * @return The codec, or {@code null} if the class does not declare one.
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public static <T> ModelCodec<T> getCodec(Class<T> type) {
+        return (ModelCodec<T>) codecs.get(type).orElse(null);
+    }
+
+    /**
+     * Query whether a class has a codec.
+     * @param type The class.
+     * @return {@code true} if objects of exactly {@code type} can be written with a codec.
+     */
+    public static boolean hasCodec(Class<?> type) {
+        return codecs.get(type).isPresent();
+    }
+
+    //region Arrays
+    /**
+     * Write an array of longs, preceded by its length.
+     * @param out The output.
+     * @param data The array.
+     * @param n The number of values to write.
+     * @throws IOException if there is an I/O error.
+     */
+    public static void writeLongs(DataOutput out, long[] data, int n) throws IOException {
+        out.writeInt(n);
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        for (int i = 0; i < n; i++) {
+            if (buf.remaining() < Long.BYTES) {
+                out.write(buf.array(), 0, buf.position());
+                buf.clear();
+            }
+            buf.putLong(data[i]);
+        }
+        out.write(buf.array(), 0, buf.position());
+    }
+
+    /**
+     * Read an array of longs written by {@link #writeLongs(DataOutput, long[], int)}.
+     * @param in The input.
+     * @return The array.
+     * @throws IOException if there is an I/O error.
+     */
+    public static long[] readLongs(DataInput in) throws IOException {
+        int n = in.readInt();
+        long[] data = new long[n];
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        int i = 0;
+        while (i < n) {
+            int m = Math.min(n - i, BUFFER_SIZE / Long.BYTES);
+            in.readFully(buf.array(), 0, m * Long.BYTES);
+            buf.clear();
+            buf.asLongBuffer().get(data, i, m);
+            i += m;
+        }
+        return data;
+    }
+
+    /**
+     * Write an array of doubles, preceded by its length.
+     * @param out The output.
+     * @param data The array.
+     * @param n The number of values to write.
+     * @throws IOException if there is an I/O error.
+     */
+    public static void writeDoubles(DataOutput out, double[] data, int n) throws IOException {
+        out.writeInt(n);
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        for (int i = 0; i < n; i++) {
+            if (buf.remaining() < Double.BYTES) {
+                out.write(buf.array(), 0, buf.position());
+                buf.clear();
+            }
+            buf.putDouble(data[i]);
+        }
+        out.write(buf.array(), 0, buf.position());
+    }
+
+    /**
+     * Read an array of doubles written by {@link #writeDoubles(DataOutput, double[], int)}.
+     * @param in The input.
+     * @return The array.
+     * @throws IOException if there is an I/O error.
+     */
+    public static double[] readDoubles(DataInput in) throws IOException {
+        int n = in.readInt();
+        double[] data = new double[n];
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        int i = 0;
+        while (i < n) {
+            int m = Math.min(n - i, BUFFER_SIZE / Double.BYTES);
+            in.readFully(buf.array(), 0, m * Double.BYTES);
+            buf.clear();
+            buf.asDoubleBuffer().get(data, i, m);
+            i += m;
+        }
+        return data;
+    }
+
+    /**
+     * Write an array of floats, preceded by its length.
+     * @param out The output.
+     * @param data The array.
+     * @param n The number of values to write.
+     * @throws IOException if there is an I/O error.
+     */
+    public static void writeFloats(DataOutput out, float[] data, int n) throws IOException {
+        out.writeInt(n);
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        for (int i = 0; i < n; i++) {
+            if (buf.remaining() < Float.BYTES) {
+                out.write(buf.array(), 0, buf.position());
+                buf.clear();
+            }
+            buf.putFloat(data[i]);
+        }
+        out.write(buf.array(), 0, buf.position());
+    }
+
+    /**
+     * Read an array of floats written by {@link #writeFloats(DataOutput, float[], int)}.
+     * @param in The input.
+     * @return The array.
+     * @throws IOException if there is an I/O error.
+     */
+    public static float[] readFloats(DataInput in) throws IOException {
+        int n = in.readInt();
+        float[] data = new float[n];
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        int i = 0;
+        while (i < n) {
+            int m = Math.min(n - i, BUFFER_SIZE / Float.BYTES);
+            in.readFully(buf.array(), 0, m * Float.BYTES);
+            buf.clear();
+            buf.asFloatBuffer().get(data, i, m);
+            i += m;
+        }
+        return data;
+    }
+
+    /**
+     * Write an array of ints, preceded by its length.
+     * @param out The output.
+     * @param data The array.
+     * @param n The number of values to write.
+     * @throws IOException if there is an I/O error.
+     */
+    public static void writeInts(DataOutput out, int[] data, int n) throws IOException {
+        out.writeInt(n);
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        for (int i = 0; i < n; i++) {
+            if (buf.remaining() < Integer.BYTES) {
+                out.write(buf.array(), 0, buf.position());
+                buf.clear();
+            }
+            buf.putInt(data[i]);
+        }
+        out.write(buf.array(), 0, buf.position());
+    }
+
+    /**
+     * Read an array of ints written by {@link #writeInts(DataOutput, int[], int)}.
+     * @param in The input.
+     * @return The array.
+     * @throws IOException if there is an I/O error.
+     */
+    public static int[] readInts(DataInput in) throws IOException {
+        int n = in.readInt();
+        int[] data = new int[n];
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        int i = 0;
+        while (i < n) {
+            int m = Math.min(n - i, BUFFER_SIZE / Integer.BYTES);
+            in.readFully(buf.array(), 0, m * Integer.BYTES);
+            buf.clear();
+            buf.asIntBuffer().get(data, i, m);
+            i += m;
+        }
+        return data;
+    }
+    //endregion
+
+    //region Key structures
+    /**
+     * Write a key index.  Sorted indexes are read back as sorted indexes, and other indexes as
+     * frozen hash indexes with the same key-to-index mapping.
+     *
+     * @param out The output.
+     * @param index The key index.  Its lower bound must be 0.
+     * @throws IOException if there is an I/O error, or the index cannot be encoded.
+     */
+    public static void writeKeyIndex(DataOutput out, KeyIndex index) throws IOException {
+        if (index.getLowerBound() != 0) {
+            throw new IOException("cannot encode key index with lower bound " + index.getLowerBound());
+        }
+        out.writeBoolean(index instanceof SortedKeyIndex);
+        LongList keys = index.getKeyList();
+        writeLongs(out, keys.toLongArray(), keys.size());
+    }
+
+    /**
+     * Read a key index written by {@link #writeKeyIndex(DataOutput, KeyIndex)}.
+     * @param in The input.
+     * @return The key index.
+     * @throws IOException if there is an I/O error.
+     */
+    public static KeyIndex readKeyIndex(DataInput in) throws IOException {
+        boolean sorted = in.readBoolean();
+        long[] keys = readLongs(in);
+        if (sorted) {
+            return SortedKeyIndex.wrap(keys, keys.length);
+        } else {
+            return FrozenHashKeyIndex.create(LongArrayList.wrap(keys));
+        }
+    }
+
+    /**
+     * Write a sorted key index.
+     * @param out The output.
+     * @param index The key index.
+     * @throws IOException if there is an I/O error.
+     */
+    public static void writeSortedKeyIndex(DataOutput out, SortedKeyIndex index) throws IOException {
+        // the index may be a view of a larger key array, so only write the keys within its bounds
+        int lb = index.getLowerBound();
+        int n = index.getUpperBound() - lb;
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = index.getKey(lb + i);
+        }
+        writeLongs(out, keys, n);
+    }
+
+    /**
+     * Read a sorted key index written by {@link #writeSortedKeyIndex(DataOutput, SortedKeyIndex)}.
+     * @param in The input.
+     * @return The key index.
+     * @throws IOException if there is an I/O error.
+     */
+    public static SortedKeyIndex readSortedKeyIndex(DataInput in) throws IOException {
+        long[] keys = readLongs(in);
+        return SortedKeyIndex.wrap(keys, keys.length);
+    }
+
+    /**
+     * Write a long-to-double map as sorted key and value arrays.
+     * @param out The output.
+     * @param map The map.
+     * @throws IOException if there is an I/O error.
+     */
+    public static void writeDoubleMap(DataOutput out, Long2DoubleMap map) throws IOException {
+        Long2DoubleSortedArrayMap sorted = Long2DoubleSortedArrayMap.create(map);
+        int n = sorted.size();
+        long[] keys = new long[n];
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = sorted.getKeyByIndex(i);
+            values[i] = sorted.getValueByIndex(i);
+        }
+        writeLongs(out, keys, n);
+        writeDoubles(out, values, n);
+    }
+
+    /**
+     * Read a map written by {@link #writeDoubleMap(DataOutput, Long2DoubleMap)}.
+     * @param in The input.
+     * @return The map.
+     * @throws IOException if there is an I/O error.
+     */
+    public static Long2DoubleSortedArrayMap readDoubleMap(DataInput in) throws IOException {
+        long[] keys = readLongs(in);
+        double[] values = readDoubles(in);
+        if (keys.length != values.length) {
+            throw new IOException("key and value arrays have different lengths");
+        }
+        return Long2DoubleSortedArrayMap.wrap(SortedKeyIndex.wrap(keys, keys.length), values);
+    }
+    //endregion
+}
@@ -238,11 +238,32 @@ public final class Long2DoubleSortedArrayMap extends AbstractLong2DoubleSortedMa
 
         if (toKeep instanceof LongSortedArraySet) {
             return fastSubMap((LongSortedArraySet) toKeep);
+        } else if (toKeep instanceof LongSortedBitmapSet) {
+            return bitmapSubMap((LongSortedBitmapSet) toKeep);
         } else {
             return slowSubMap(toKeep);
         }
     }
 
+    private Long2DoubleSortedArrayMap bitmapSubMap(LongSortedBitmapSet toKeep) {
+        SortedKeyIndex oks = toKeep.getIndex();
+        int n = Math.min(size(), toKeep.size());
+        long[] nks = new long[n];
+        double[] nvs = new double[n];
+        int ni = 0;
+        // the bitmap's members come out in key order, so the kept keys are already sorted
+        for (int oi = toKeep.nextIndex(oks.getLowerBound()); oi >= 0 && ni < n; oi = toKeep.nextIndex(oi + 1)) {
+            long k = oks.getKey(oi);
+            int ti = keys.tryGetIndex(k);
+            if (ti >= 0) {
+                nks[ni] = k;
+                nvs[ni] = values[ti];
+                ni++;
+            }
+        }
+        return wrap(SortedKeyIndex.wrap(nks, ni), nvs);
+    }
+
     private Long2DoubleSortedArrayMap slowSubMap(LongSet toKeep) {
         LongSortedSet kept = LongUtils.setIntersect(keySet(), toKeep);
         double[] nvs = new double[kept.size()];
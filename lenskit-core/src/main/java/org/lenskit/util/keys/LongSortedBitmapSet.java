@@ -0,0 +1,256 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.util.keys;
+
+import com.google.common.base.Preconditions;
+import it.unimi.dsi.fastutil.longs.AbstractLongSortedSet;
+import it.unimi.dsi.fastutil.longs.LongBidirectionalIterator;
+import it.unimi.dsi.fastutil.longs.LongComparator;
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
+import net.jcip.annotations.Immutable;
+
+import javax.annotation.Nonnull;
+import java.util.BitSet;
+import java.util.NoSuchElementException;
+
+/**
+ * A sorted set of longs implemented as a bitmap over the positions of a {@link SortedKeyIndex}.  It is
+ * the dense counterpart of {@link LongSortedArraySet}: a subset of a large key universe takes one bit per
+ * key in the universe, rather than 8 bytes per member, and removing keys from it does not copy the keys.
+ * Iteration walks the set bits in order, so it is fast when the set is a large fraction of the universe.
+ *
+ * Bitmap sets are immutable; the bit set they wrap must not be modified once the set has been created.
+ *
+ * @since 3.0
+ */
+@Immutable
+public class LongSortedBitmapSet extends AbstractLongSortedSet {
+    private final SortedKeyIndex keys;
+    private final BitSet bits;
+    private final int size;
+
+    /**
+     * Construct a new bitmap set.
+     * @param ks The universe of keys.
+     * @param bs The bit set, indexed by position in {@code ks}.  Bits outside the index's bounds are ignored.
+     *           It is wrapped, not copied.
+     */
+    public LongSortedBitmapSet(@Nonnull SortedKeyIndex ks, @Nonnull BitSet bs) {
+        keys = ks;
+        bits = bs;
+        int lb = ks.getLowerBound();
+        int ub = ks.getUpperBound();
+        if (lb == 0 && bs.length() <= ub) {
+            size = bs.cardinality();
+        } else {
+            size = bs.get(lb, ub).cardinality();
+        }
+    }
+
+    /**
+     * Create a bitmap set containing all keys in an index.
+     * @param ks The key index.
+     * @return A set containing all of the index's keys, with a fresh bit set.
+     */
+    public static LongSortedBitmapSet all(SortedKeyIndex ks) {
+        BitSet bs = new BitSet(ks.getUpperBound());
+        bs.set(ks.getLowerBound(), ks.getUpperBound());
+        return new LongSortedBitmapSet(ks, bs);
+    }
+
+    /**
+     * Get the key index this set is drawn from.
+     * @return The universe of keys.
+     */
+    public SortedKeyIndex getIndex() {
+        return keys;
+    }
+
+    /**
+     * Get a copy of the set's bits.  The copy can be modified and used to construct a new set over the same
+     * index, for example to remove further keys.
+     * @return A copy of the bit set, indexed by position in {@link #getIndex()}.
+     */
+    public BitSet copyBits() {
+        BitSet copy = (BitSet) bits.clone();
+        int lb = keys.getLowerBound();
+        int ub = keys.getUpperBound();
+        if (lb > 0) {
+            copy.clear(0, lb);
+        }
+        if (copy.length() > ub) {
+            copy.clear(ub, copy.length());
+        }
+        return copy;
+    }
+
+    /**
+     * Get the position of the first member at or after a position.
+     * @param idx The position in {@link #getIndex()} to start from.
+     * @return The position of the next member, or a negative value if there are no more members.  Scorers
+     * with index-aligned data can iterate positions with this method instead of looking up keys.
+     */
+    public int nextIndex(int idx) {
+        int next = bits.nextSetBit(Math.max(idx, keys.getLowerBound()));
+        return next >= 0 && next < keys.getUpperBound() ? next : -1;
+    }
+
+    /**
+     * Copy this set into a sorted array set.  This walks the set bits once, and the keys come out of the
+     * index already sorted, so it takes time linear in the size of the universe rather than sorting.
+     * @return An array set with the same members as this set.
+     */
+    public LongSortedArraySet toArraySet() {
+        long[] members = new long[size];
+        int n = 0;
+        for (int i = nextIndex(keys.getLowerBound()); i >= 0; i = nextIndex(i + 1)) {
+            members[n++] = keys.getKey(i);
+        }
+        assert n == size;
+        return SortedKeyIndex.wrap(members, n).keySet();
+    }
+
+    @Override
+    public LongComparator comparator() {
+        return null;
+    }
+
+    @Override
+    public long firstLong() {
+        int idx = nextIndex(keys.getLowerBound());
+        if (idx < 0) {
+            throw new NoSuchElementException();
+        }
+        return keys.getKey(idx);
+    }
+
+    @Override
+    public long lastLong() {
+        int ub = keys.getUpperBound();
+        int idx = ub > 0 ? bits.previousSetBit(ub - 1) : -1;
+        if (idx < keys.getLowerBound()) {
+            throw new NoSuchElementException();
+        }
+        return keys.getKey(idx);
+    }
+
+    @Override
+    public LongBidirectionalIterator iterator() {
+        return new BitIter(keys.getLowerBound());
+    }
+
+    @Override
+    public LongBidirectionalIterator iterator(long key) {
+        return new BitIter(keys.findUpperBound(key));
+    }
+
+    @Override
+    public LongSortedSet subSet(long startKey, long endKey) {
+        int start = keys.findLowerBound(startKey);
+        int end = Math.max(start, keys.findLowerBound(endKey));
+        return new LongSortedBitmapSet(keys.subIndex(start, end), bits);
+    }
+
+    @Override
+    public LongSortedSet headSet(long key) {
+        int start = keys.getLowerBound();
+        int end = keys.findLowerBound(key);
+        return new LongSortedBitmapSet(keys.subIndex(start, end), bits);
+    }
+
+    @Override
+    public LongSortedSet tailSet(long key) {
+        int start = keys.findLowerBound(key);
+        int end = keys.getUpperBound();
+        return new LongSortedBitmapSet(keys.subIndex(start, end), bits);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(long key) {
+        int idx = keys.tryGetIndex(key);
+        return idx >= keys.getLowerBound() && idx < keys.getUpperBound() && bits.get(idx);
+    }
+
+    /**
+     * Iterator over the set bits.
+     */
+    private class BitIter implements LongBidirectionalIterator {
+        /**
+         * The position of the next member, or -1 if there is none.
+         */
+        private int next;
+        /**
+         * The position of the previous member, or -1 if there is none.
+         */
+        private int prev;
+
+        BitIter(int start) {
+            Preconditions.checkElementIndex(start - keys.getLowerBound(), keys.size() + 1);
+            next = nextIndex(start);
+            prev = start > keys.getLowerBound() ? bits.previousSetBit(start - 1) : -1;
+            if (prev < keys.getLowerBound()) {
+                prev = -1;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next >= 0;
+        }
+
+        @Override
+        public long nextLong() {
+            if (next < 0) {
+                throw new NoSuchElementException();
+            }
+            prev = next;
+            next = nextIndex(next + 1);
+            return keys.getKey(prev);
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return prev >= 0;
+        }
+
+        @Override
+        public long previousLong() {
+            if (prev < 0) {
+                throw new NoSuchElementException();
+            }
+            next = prev;
+            prev = prev > keys.getLowerBound() ? bits.previousSetBit(prev - 1) : -1;
+            if (prev < keys.getLowerBound()) {
+                prev = -1;
+            }
+            return keys.getKey(next);
+        }
+    }
+}
@@ -57,6 +57,22 @@ public abstract class SortedKeyIndex implements KeyIndex, Serializable {
         return new FullSortedKeyIndex(keys, 0, size);
     }
 
+    /**
+     * Wrap a range of a key array into a key set.  The indexes of the resulting key set are positions in the
+     * array, so a {@link Long2DoubleSortedArrayMap} over it can share a value array covering the whole key array.
+     * @param keys The key array.  The range must be sorted and must not contain duplicates; as with
+     *             {@link #wrap(long[], int)}, this is only checked when assertions are enabled.
+     * @param lb The lower bound of the range (inclusive).
+     * @param ub The upper bound of the range (exclusive).
+     * @return The key set.
+     */
+    public static SortedKeyIndex wrap(long[] keys, int lb, int ub) {
+        Preconditions.checkArgument(lb >= 0 && lb <= ub, "invalid range");
+        Preconditions.checkArgument(ub <= keys.length, "upper bound too large");
+        assert MoreArrays.isSorted(keys, lb, ub);
+        return new FullSortedKeyIndex(keys, lb, ub);
+    }
+
     /**
      * Create a key set from a collection of keys.
      *
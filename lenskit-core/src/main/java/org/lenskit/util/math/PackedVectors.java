@@ -0,0 +1,312 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.util.math;
+
+import com.google.common.base.Preconditions;
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import net.jcip.annotations.Immutable;
+import org.lenskit.util.keys.Long2DoubleSortedArrayMap;
+import org.lenskit.util.keys.SortedKeyIndex;
+
+import java.io.Serializable;
+import java.util.function.IntFunction;
+
+/**
+ * A block of sparse vectors packed into compressed sparse row arrays.  Each row's keys are sorted, and the Euclidean
+ * norm of each row is computed when the block is packed.  This is the input format for
+ * {@linkplain org.lenskit.similarity.VectorSimilarity#similarities(Long2DoubleMap, PackedVectors, int[]) batch
+ * similarity computations}, which compare one vector against many rows without hash lookups.
+ *
+ * The arrays exposed by {@link #getKeys()} and {@link #getValues()} are the block's storage, and must not be modified.
+ *
+ * @since 3.0
+ */
+@Immutable
+public final class PackedVectors implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Ratio of row lengths above which the dot product gallops through the longer row instead of merging.
+     */
+    private static final int GALLOP_RATIO = 8;
+
+    private final int[] offsets;
+    private final long[] keys;
+    private final double[] values;
+    private final double[] norms;
+
+    private PackedVectors(int[] offsets, long[] keys, double[] values) {
+        Preconditions.checkArgument(keys.length == values.length, "key and value sizes mismatched");
+        this.offsets = offsets;
+        this.keys = keys;
+        this.values = values;
+        int n = offsets.length - 1;
+        norms = new double[n];
+        for (int i = 0; i < n; i++) {
+            double ssq = 0;
+            for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                ssq += values[k] * values[k];
+            }
+            norms[i] = Math.sqrt(ssq);
+        }
+    }
+
+    /**
+     * Pack a sequence of vectors.
+     * @param n The number of vectors.
+     * @param vectors A function returning the vector for each row; it is called twice for each row.
+     * @return The packed vectors.
+     */
+    public static PackedVectors pack(int n, IntFunction<? extends Long2DoubleMap> vectors) {
+        int[] offsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            offsets[i + 1] = offsets[i] + vectors.apply(i).size();
+        }
+        long[] keys = new long[offsets[n]];
+        double[] values = new double[offsets[n]];
+        for (int i = 0; i < n; i++) {
+            Long2DoubleSortedArrayMap vec = Long2DoubleSortedArrayMap.create(vectors.apply(i));
+            int pos = offsets[i];
+            for (int j = 0; j < vec.size(); j++) {
+                keys[pos + j] = vec.getKeyByIndex(j);
+                values[pos + j] = vec.getValueByIndex(j);
+            }
+        }
+        return new PackedVectors(offsets, keys, values);
+    }
+
+    /**
+     * Pack a single vector.
+     * @param vec The vector.
+     * @return A block containing {@code vec} as its only row.
+     */
+    public static PackedVectors of(Long2DoubleMap vec) {
+        return pack(1, i -> vec);
+    }
+
+    /**
+     * Create a block with the same rows and keys as this one but different values.  The keys are shared with this
+     * block, not copied.
+     * @param values The new values, parallel to {@link #getKeys()}; the block takes ownership of the array.
+     * @return The new block.
+     */
+    public PackedVectors withValues(double[] values) {
+        return new PackedVectors(offsets, keys, values);
+    }
+
+    /**
+     * Create a block containing some of this block's rows.
+     * @param rows The rows to select.
+     * @return A block whose row {@code i} is row {@code rows[i]} of this block, sized to hold only those rows.
+     */
+    public PackedVectors selectRows(int[] rows) {
+        int[] newOffsets = new int[rows.length + 1];
+        for (int i = 0; i < rows.length; i++) {
+            newOffsets[i + 1] = newOffsets[i] + getRowSize(rows[i]);
+        }
+        long[] newKeys = new long[newOffsets[rows.length]];
+        double[] newValues = new double[newOffsets[rows.length]];
+        for (int i = 0; i < rows.length; i++) {
+            int start = offsets[rows[i]];
+            int len = newOffsets[i + 1] - newOffsets[i];
+            System.arraycopy(keys, start, newKeys, newOffsets[i], len);
+            System.arraycopy(values, start, newValues, newOffsets[i], len);
+        }
+        return new PackedVectors(newOffsets, newKeys, newValues);
+    }
+
+    /**
+     * Get the number of rows.
+     * @return The number of rows in the block.
+     */
+    public int size() {
+        return norms.length;
+    }
+
+    /**
+     * Get a row as a map.  The map is a view of the block's storage.
+     * @param row The row index.
+     * @return The row's vector.
+     */
+    public Long2DoubleSortedArrayMap row(int row) {
+        return Long2DoubleSortedArrayMap.wrap(SortedKeyIndex.wrap(keys, offsets[row], offsets[row + 1]),
+                                              values);
+    }
+
+    /**
+     * Get the position of a row's first entry in the key and value arrays.
+     * @param row The row index.
+     * @return The row's start position.
+     */
+    public int getRowStart(int row) {
+        return offsets[row];
+    }
+
+    /**
+     * Get the position just past a row's last entry in the key and value arrays.
+     * @param row The row index.
+     * @return The row's end position.
+     */
+    public int getRowEnd(int row) {
+        return offsets[row + 1];
+    }
+
+    /**
+     * Get the number of entries in a row.
+     * @param row The row index.
+     * @return The row's size.
+     */
+    public int getRowSize(int row) {
+        return offsets[row + 1] - offsets[row];
+    }
+
+    /**
+     * Get the packed keys.
+     * @return The keys of all rows, in row order; must not be modified.
+     */
+    public long[] getKeys() {
+        return keys;
+    }
+
+    /**
+     * Get the packed values.
+     * @return The values of all rows, in row order; must not be modified.
+     */
+    public double[] getValues() {
+        return values;
+    }
+
+    /**
+     * Get the Euclidean norm of a row.
+     * @param row The row index.
+     * @return The row's Euclidean norm.
+     */
+    public double getNorm(int row) {
+        return norms[row];
+    }
+
+    /**
+     * Compute the dot product of a row with a row of another block.  The shorter row is merged with the longer one,
+     * galloping through the longer row when their lengths are very different.
+     * @param row The row index in this block.
+     * @param other The other block.
+     * @param orow The row index in {@code other}.
+     * @return The dot product of the two rows.
+     */
+    public double dotProduct(int row, PackedVectors other, int orow) {
+        int lo1 = offsets[row], hi1 = offsets[row + 1];
+        int lo2 = other.offsets[orow], hi2 = other.offsets[orow + 1];
+        if (hi1 - lo1 <= hi2 - lo2) {
+            return dotProduct(keys, values, lo1, hi1, other.keys, other.values, lo2, hi2);
+        } else {
+            return dotProduct(other.keys, other.values, lo2, hi2, keys, values, lo1, hi1);
+        }
+    }
+
+    /**
+     * Count the keys a row has in common with a row of another block.
+     * @param row The row index in this block.
+     * @param other The other block.
+     * @param orow The row index in {@code other}.
+     * @return The number of keys the two rows share.
+     */
+    public int countCommonKeys(int row, PackedVectors other, int orow) {
+        long[] ks1 = keys, ks2 = other.keys;
+        int i = offsets[row], end1 = offsets[row + 1];
+        int j = other.offsets[orow], end2 = other.offsets[orow + 1];
+        int n = 0;
+        while (i < end1 && j < end2) {
+            long k1 = ks1[i], k2 = ks2[j];
+            if (k1 < k2) {
+                i++;
+            } else if (k2 < k1) {
+                j++;
+            } else {
+                n++;
+                i++;
+                j++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Compute a dot product, where the first range is no longer than the second.
+     */
+    private static double dotProduct(long[] ks1, double[] vs1, int lo1, int hi1,
+                                     long[] ks2, double[] vs2, int lo2, int hi2) {
+        double dot = 0;
+        int j = lo2;
+        if ((long) (hi1 - lo1) * GALLOP_RATIO < hi2 - lo2) {
+            for (int i = lo1; i < hi1 && j < hi2; i++) {
+                j = gallop(ks2, j, hi2, ks1[i]);
+                if (j < hi2 && ks2[j] == ks1[i]) {
+                    dot += vs1[i] * vs2[j];
+                    j++;
+                }
+            }
+        } else {
+            int i = lo1;
+            while (i < hi1 && j < hi2) {
+                long k1 = ks1[i], k2 = ks2[j];
+                if (k1 < k2) {
+                    i++;
+                } else if (k2 < k1) {
+                    j++;
+                } else {
+                    dot += vs1[i] * vs2[j];
+                    i++;
+                    j++;
+                }
+            }
+        }
+        return dot;
+    }
+
+    /**
+     * Find the first position in a sorted range whose key is at least {@code key}, by exponential search from the
+     * start of the range.
+     */
+    private static int gallop(long[] ks, int lo, int hi, long key) {
+        int step = 1;
+        int bound = lo;
+        while (bound < hi && ks[bound] < key) {
+            lo = bound + 1;
+            bound += step;
+            step <<= 1;
+        }
+        hi = Math.min(bound, hi);
+        // binary search for the first key >= key in [lo, hi)
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ks[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
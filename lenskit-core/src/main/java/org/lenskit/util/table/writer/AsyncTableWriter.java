@@ -0,0 +1,263 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.util.table.writer;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import net.jcip.annotations.ThreadSafe;
+import org.lenskit.util.table.TableLayout;
+
+import javax.annotation.WillCloseWhenClosed;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Table writer that writes rows asynchronously in batches.  Each writing thread buffers rows in its
+ * own buffer, and full buffers are handed to a single background thread that writes them to the
+ * underlying writer.  Threads therefore do not contend on the underlying writer's lock for each row.
+ *
+ * Rows from a single thread are written in the order that thread wrote them, but rows from different
+ * threads may be interleaved in any order.  Buffered rows are written by {@link #flush()} and
+ * {@link #close()}.
+ *
+ * @since 3.0
+ */
+@ThreadSafe
+public class AsyncTableWriter extends AbstractTableWriter {
+    private static final List<Object[]> END_OF_OUTPUT = Collections.emptyList();
+    /**
+     * How long to wait for space in the queue before checking that the writer thread is still running.
+     */
+    private static final long OFFER_TIMEOUT_MS = 100;
+
+    private final TableWriter delegate;
+    private final int batchSize;
+    private final BlockingQueue<List<Object[]>> queue;
+    private final ConcurrentLinkedQueue<RowBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<RowBuffer> localBuffer;
+    final Thread writerThread;
+    private volatile Throwable error;
+    private volatile boolean closed;
+    private final Object progressLock = new Object();
+    private long batchesQueued;
+    private long batchesWritten;
+
+    /**
+     * Create a new asynchronous table writer.
+     * @param base The underlying writer.  It is closed when this writer is closed.
+     * @param batch The number of rows each thread buffers before handing them off for writing.
+     * @param depth The number of batches that may wait for writing before writing threads block.
+     */
+    public AsyncTableWriter(@WillCloseWhenClosed TableWriter base, int batch, int depth) {
+        Preconditions.checkArgument(batch > 0, "batch size must be positive");
+        Preconditions.checkArgument(depth > 0, "queue depth must be positive");
+        delegate = base;
+        batchSize = batch;
+        queue = new ArrayBlockingQueue<>(depth);
+        localBuffer = ThreadLocal.withInitial(() -> {
+            RowBuffer buf = new RowBuffer();
+            buffers.add(buf);
+            return buf;
+        });
+        writerThread = new Thread(this::writeBatches, "table-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @Override
+    public TableLayout getLayout() {
+        return delegate.getLayout();
+    }
+
+    @Override
+    public void writeRow(Object... row) throws IOException {
+        addRow(row.clone());
+    }
+
+    @Override
+    public void writeRow(List<?> row) throws IOException {
+        addRow(row.toArray());
+    }
+
+    private void addRow(Object[] row) throws IOException {
+        Preconditions.checkState(!closed, "writer has been closed");
+        checkError();
+        if (getLayout() != null) {
+            checkRowWidth(row.length);
+        }
+        RowBuffer buf = localBuffer.get();
+        List<Object[]> batch = null;
+        synchronized (buf) {
+            // only contended by flush and close
+            buf.rows.add(row);
+            if (buf.rows.size() >= batchSize) {
+                batch = buf.take();
+            }
+        }
+        if (batch != null) {
+            enqueue(batch);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * This writes all rows buffered by any thread, and waits for them to be written to the underlying
+     * writer before flushing it.
+     */
+    @Override
+    public void flush() throws IOException {
+        drainBuffers();
+        awaitWrites();
+        checkError();
+        delegate.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            drainBuffers();
+            closed = true;
+            if (writerThread.isAlive()) {
+                enqueue(END_OF_OUTPUT);
+                writerThread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted closing table writer");
+        } finally {
+            closed = true;
+            delegate.close();
+        }
+        checkError();
+    }
+
+    private void drainBuffers() throws IOException {
+        for (RowBuffer buf: buffers) {
+            List<Object[]> batch;
+            synchronized (buf) {
+                batch = buf.rows.isEmpty() ? null : buf.take();
+            }
+            if (batch != null) {
+                enqueue(batch);
+            }
+        }
+    }
+
+    private void enqueue(List<Object[]> batch) throws IOException {
+        synchronized (progressLock) {
+            batchesQueued += 1;
+        }
+        try {
+            // wait in slices, so a writer thread that has died cannot leave us blocked on a full queue
+            while (!queue.offer(batch, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                if (!writerThread.isAlive()) {
+                    checkError();
+                    throw new IOException("table writer thread has stopped");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted writing table rows");
+        }
+    }
+
+    private void awaitWrites() throws IOException {
+        synchronized (progressLock) {
+            while (batchesWritten < batchesQueued && error == null) {
+                try {
+                    progressLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted flushing table writer");
+                }
+            }
+        }
+    }
+
+    private void checkError() throws IOException {
+        Throwable th = error;
+        if (th instanceof InterruptedException) {
+            throw (IOException) new InterruptedIOException("table writer thread was interrupted").initCause(th);
+        } else if (th != null) {
+            Throwables.propagateIfInstanceOf(th, IOException.class);
+            throw Throwables.propagate(th);
+        }
+    }
+
+    /**
+     * Main loop of the writer thread.  After an error in the underlying writer, it keeps taking batches
+     * (discarding them) so producers do not block; if it is interrupted, it stops, and producers notice
+     * that it is no longer running.
+     */
+    private void writeBatches() {
+        try {
+            List<Object[]> batch;
+            while ((batch = queue.take()) != END_OF_OUTPUT) {
+                if (error == null) {
+                    try {
+                        for (Object[] row: batch) {
+                            delegate.writeRow(row);
+                        }
+                    } catch (Throwable th) {
+                        error = th;
+                    }
+                }
+                synchronized (progressLock) {
+                    batchesWritten += 1;
+                    progressLock.notifyAll();
+                }
+            }
+        } catch (InterruptedException e) {
+            error = e;
+            synchronized (progressLock) {
+                progressLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * A single thread's row buffer.
+     */
+    private class RowBuffer {
+        List<Object[]> rows = new ArrayList<>(batchSize);
+
+        List<Object[]> take() {
+            List<Object[]> batch = rows;
+            rows = new ArrayList<>(batchSize);
+            return batch;
+        }
+    }
+}
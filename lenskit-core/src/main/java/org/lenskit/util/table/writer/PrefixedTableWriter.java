@@ -29,6 +29,7 @@ import org.lenskit.util.table.TableLayout;
 import org.lenskit.util.table.TableLayoutBuilder;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -39,7 +40,7 @@ import java.util.List;
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
  */
 class PrefixedTableWriter extends AbstractTableWriter {
-    private ObjectArrayList<Object> rowData;
+    private List<Object> prefix;
     private int fixedColumns;
     private TableLayout layout;
     private TableWriter baseWriter;
@@ -59,8 +60,7 @@ class PrefixedTableWriter extends AbstractTableWriter {
             throw new IllegalArgumentException("Value array too wide");
         }
 
-        rowData = new ObjectArrayList<>(writer.getLayout().getColumnCount());
-        rowData.addAll(values);
+        prefix = new ArrayList<>(values);
 
         fixedColumns = values.size();
 
@@ -70,7 +70,7 @@ class PrefixedTableWriter extends AbstractTableWriter {
             bld.addColumn(h);
         }
         layout = bld.build();
-        assert layout.getColumnCount() + rowData.size() == writer.getLayout().getColumnCount();
+        assert layout.getColumnCount() + prefix.size() == writer.getLayout().getColumnCount();
     }
 
     @Override
@@ -79,20 +79,14 @@ class PrefixedTableWriter extends AbstractTableWriter {
     }
 
     @Override
-    public synchronized void writeRow(List<?> row) throws IOException {
+    public void writeRow(List<?> row) throws IOException {
         checkRowWidth(row.size());
 
-        // Add the data to the row
-        assert rowData.size() == fixedColumns;
-        rowData.addAll(row);
-
-        try {
-            // write the row
-            baseWriter.writeRow(rowData);
-        } finally {
-            // reset the row
-            rowData.removeElements(fixedColumns, rowData.size());
-        }
+        // build a fresh row, so concurrent writers do not contend on shared row storage
+        ObjectArrayList<Object> data = new ObjectArrayList<>(fixedColumns + row.size());
+        data.addAll(prefix);
+        data.addAll(row);
+        baseWriter.writeRow(data);
     }
 
     @Override
@@ -26,6 +26,7 @@ package org.lenskit.util.table.writer;
 
 import org.lenskit.util.table.TableLayout;
 
+import javax.annotation.WillCloseWhenClosed;
 import javax.annotation.WillNotClose;
 import java.util.Arrays;
 import java.util.List;
@@ -78,4 +79,16 @@ public final class TableWriters {
     public static TableWriter prefixed(@WillNotClose TableWriter base, Object... prefix) {
         return prefixed(base, Arrays.asList(prefix));
     }
+
+    /**
+     * Create a table writer that writes rows asynchronously in per-thread batches.
+     *
+     * @param base The underlying writer.  It is closed when the returned writer is closed.
+     * @return A table writer that buffers rows and writes them to {@code base} in a background thread.
+     * @see AsyncTableWriter
+     * @since 3.0
+     */
+    public static TableWriter async(@WillCloseWhenClosed TableWriter base) {
+        return new AsyncTableWriter(base, 256, 64);
+    }
 }
@@ -27,6 +27,7 @@ package org.lenskit
 import org.grouplens.grapht.Component
 import org.grouplens.grapht.Dependency
 import org.grouplens.grapht.graph.DAGNode
+import org.grouplens.grapht.reflect.AbstractSatisfactionVisitor
 import org.grouplens.grapht.reflect.Satisfaction
 import org.grouplens.grapht.reflect.internal.InstanceSatisfaction
 import org.grouplens.lenskit.transform.threshold.RealThreshold
@@ -39,10 +40,12 @@ import org.lenskit.api.ItemScorer
 import org.lenskit.api.RecommenderBuildException
 import org.lenskit.baseline.*
 import org.lenskit.basic.*
+import org.lenskit.bias.GlobalBiasModel
 import org.lenskit.data.dao.DataAccessObject
 import org.lenskit.data.dao.EntityCollectionDAO
 import org.lenskit.data.dao.file.StaticDataSource
 import org.lenskit.data.ratings.RatingMatrix
+import org.lenskit.inject.GraphtUtils
 import org.lenskit.inject.Shareable
 import org.lenskit.transform.normalize.MeanVarianceNormalizer
 import org.lenskit.transform.normalize.VectorNormalizer
@@ -379,6 +382,140 @@ public class LenskitRecommenderEngineTest {
         }
     }
 
+    @Test
+    public void testSerializeArchive() throws RecommenderBuildException, IOException, ClassNotFoundException {
+        def config = new LenskitConfiguration()
+        config.bind(ItemScorer).to(LeastSquaresItemScorer)
+
+        def engine = LenskitRecommenderEngine.newBuilder()
+                                             .addConfiguration(config)
+                                             .build(dao)
+
+        File tfile = File.createTempFile("lenskit", "engine.zip")
+        try {
+            engine.writeArchive(tfile)
+            def e2 = LenskitRecommenderEngine.newLoader()
+                                             .load(tfile)
+            def lazy = EngineArchive.getLazySatisfactions(e2.graph)
+            assertThat(lazy, hasSize(1))
+            assertThat(lazy[0].loaded, equalTo(false))
+
+            def rec = e2.createRecommender(dao)
+            try {
+                assertThat(rec.getItemScorer(), instanceOf(LeastSquaresItemScorer))
+                assertThat(lazy[0].loaded, equalTo(true))
+            } finally {
+                rec.close()
+            }
+        } finally {
+            tfile.delete()
+        }
+    }
+
+    @Test
+    public void testArchiveLoadsComponentsOnDemand() throws RecommenderBuildException, IOException, ClassNotFoundException {
+        def config = new LenskitConfiguration()
+        config.bind(ItemScorer).to(LeastSquaresItemScorer)
+        config.addRoot(GlobalBiasModel)
+
+        def engine = LenskitRecommenderEngine.newBuilder()
+                                             .addConfiguration(config)
+                                             .build(dao)
+
+        File tfile = File.createTempFile("lenskit", "engine.zip")
+        try {
+            engine.writeArchive(tfile)
+            def e2 = LenskitRecommenderEngine.newLoader()
+                                             .load(tfile)
+            def lazy = EngineArchive.getLazySatisfactions(e2.graph)
+            assertThat(lazy, hasSize(2))
+
+            // walking the graph, as dumping or hashing it does, must not load anything
+            def labels = []
+            for (node in e2.graph.reachableNodes) {
+                labels << node.label.satisfaction.visit(new AbstractSatisfactionVisitor<String>("other") {
+                    @Override
+                    String visitProviderInstance(Provider<?> provider) {
+                        return provider.toString()
+                    }
+                })
+                GraphtUtils.isShareable(node)
+            }
+            e2.graph.hashCode()
+            assertThat(labels.findAll { it.startsWith("lazy") }, hasSize(2))
+            assertThat(lazy.collect { it.loaded }, everyItem(equalTo(false)))
+
+            // requesting one component loads only that component
+            assertThat(e2.getComponent(GlobalBiasModel), notNullValue())
+            def loaded = lazy.findAll { it.loaded }
+            assertThat(loaded, hasSize(1))
+            assertThat(loaded[0].erasedType, equalTo((Object) GlobalBiasModel))
+        } finally {
+            tfile.delete()
+        }
+    }
+
+    @Test
+    public void testRewriteLoadedArchive() throws RecommenderBuildException, IOException, ClassNotFoundException {
+        def config = new LenskitConfiguration()
+        config.bind(ItemScorer).to(LeastSquaresItemScorer)
+
+        def engine = LenskitRecommenderEngine.newBuilder()
+                                             .addConfiguration(config)
+                                             .build(dao)
+
+        File archive = File.createTempFile("lenskit", "engine.zip")
+        File rearchive = File.createTempFile("lenskit", "engine2.zip")
+        File plain = File.createTempFile("lenskit", "engine.bin")
+        try {
+            engine.writeArchive(archive)
+            def loaded = LenskitRecommenderEngine.newLoader().load(archive)
+
+            // an engine loaded from an archive can be saved again in either format
+            loaded.writeArchive(rearchive)
+            loaded.write(plain)
+            archive.delete()
+
+            for (file in [rearchive, plain]) {
+                def e2 = LenskitRecommenderEngine.newLoader().load(file)
+                def rec = e2.createRecommender(dao)
+                try {
+                    assertThat(rec.getItemScorer(), instanceOf(LeastSquaresItemScorer))
+                } finally {
+                    rec.close()
+                }
+            }
+        } finally {
+            archive.delete()
+            rearchive.delete()
+            plain.delete()
+        }
+    }
+
+    @Test
+    public void testPreloadArchive() throws RecommenderBuildException, IOException, ClassNotFoundException {
+        def config = new LenskitConfiguration()
+        config.bind(ItemScorer).to(LeastSquaresItemScorer)
+
+        def engine = LenskitRecommenderEngine.newBuilder()
+                                             .addConfiguration(config)
+                                             .build(dao)
+
+        File tfile = File.createTempFile("lenskit", "engine.zip")
+        try {
+            engine.writeArchive(tfile)
+            def e2 = LenskitRecommenderEngine.newLoader()
+                                             .setPreloadComponents(true)
+                                             .load(tfile)
+            def lazy = EngineArchive.getLazySatisfactions(e2.graph)
+            assertThat(lazy, hasSize(1))
+            assertThat(lazy[0].loaded, equalTo(true))
+            assertThat(e2.getComponent(LeastSquaresItemScorer), notNullValue())
+        } finally {
+            tfile.delete()
+        }
+    }
+
     @Test
     public void testDeserializeValidate() throws RecommenderBuildException, IOException, ClassNotFoundException {
         LenskitConfiguration config = configureBasicRecommender()
@@ -485,6 +622,45 @@ public class LenskitRecommenderEngineTest {
         }
     }
 
+    /**
+     * Verify that recommenders from a factory get their own DAOs but share models.
+     */
+    @Test
+    public void testRecommenderFactory() throws RecommenderBuildException {
+        LenskitConfiguration config = new LenskitConfiguration()
+        config.addRoot(SubclassedDAODepComponent.class)
+        config.addRoot(RootComp.class)
+        config.bind(ByteBuffer.class)
+              .toProvider(BufferProvider.class)
+        config.bind(InputStream.class)
+              .toProvider(StreamProvider.class)
+        LenskitRecommenderEngine engine = LenskitRecommenderEngine.build(config, dao)
+        def factory = engine.newRecommenderFactory()
+
+        def source2 = new StaticDataSource()
+        source2.addSource(Collections.emptyList())
+        def dao2 = source2.get()
+        LenskitRecommender rec1 = null
+        LenskitRecommender rec2 = null
+        try {
+            rec1 = factory.createRecommender(dao)
+            rec2 = factory.createRecommender(dao2)
+
+            assertThat(rec1.get(SubclassedDAODepComponent.class).dao, sameInstance(dao))
+            assertThat(rec1.getDataAccessObject(), sameInstance(dao))
+            assertThat(rec2.get(SubclassedDAODepComponent.class).dao, sameInstance(dao2))
+            assertThat(rec2.getDataAccessObject(), sameInstance(dao2))
+
+            RootComp r1 = rec1.get(RootComp.class)
+            RootComp r2 = rec2.get(RootComp.class)
+            assertThat(r2.getBuffer(), sameInstance(r1.getBuffer()))
+            assertThat(r2.getStream(), not(sameInstance(r1.getStream())))
+        } finally {
+            rec1?.close()
+            rec2?.close()
+        }
+    }
+
     public static class SubclassedDAODepComponent {
         private final EntityCollectionDAO dao
 
@@ -27,14 +27,20 @@ package org.lenskit.basic;
 import com.google.common.collect.ImmutableList;
 import it.unimi.dsi.fastutil.longs.LongSets;
 import org.junit.Test;
+import org.lenskit.LenskitConfiguration;
+import org.lenskit.LenskitRecommender;
+import org.lenskit.LenskitRecommenderEngine;
 import org.lenskit.api.ItemRecommender;
 import org.lenskit.api.ItemScorer;
+import org.lenskit.api.RecommenderBuildException;
 import org.lenskit.api.ResultList;
 import org.lenskit.data.dao.DataAccessObject;
 import org.lenskit.data.dao.file.StaticDataSource;
 import org.lenskit.data.entities.CommonTypes;
 import org.lenskit.data.entities.Entities;
+import org.lenskit.data.ratings.Rating;
 import org.lenskit.results.Results;
+import org.lenskit.util.collections.LongUtils;
 
 import java.util.List;
 
@@ -116,4 +122,84 @@ public class TopNItemRecommenderTest {
         assertThat(details, hasSize(2));
         assertThat(details.idList(), contains(3L, 2L));
     }
+
+    @Test
+    public void testExcludeRatedItems() {
+        StaticDataSource source = new StaticDataSource();
+        source.addSource(ImmutableList.of(Entities.create(CommonTypes.ITEM, 3),
+                                          Entities.create(CommonTypes.ITEM, 2),
+                                          Entities.create(CommonTypes.ITEM, 7),
+                                          Entities.create(CommonTypes.ITEM, 9)));
+        source.addSource(ImmutableList.of(Rating.create(42, 3, 4.0),
+                                          Rating.create(42, 10, 2.0)));
+        DataAccessObject dao = source.get();
+        ItemScorer scorer = PrecomputedItemScorer.newBuilder()
+                                                 .addScore(42, 2, 3.0)
+                                                 .addScore(42, 7, 1.0)
+                                                 .addScore(42, 3, 3.5)
+                                                 .addScore(42, 9, 2.0)
+                                                 .build();
+        ItemRecommender rec = new TopNItemRecommender(dao, scorer);
+
+        // rated items are excluded
+        List<Long> recs = rec.recommend(42, -1, null, null);
+        assertThat(recs, contains(2L, 9L, 7L));
+
+        // repeated requests reuse the item index
+        ResultList details = rec.recommendWithDetails(42, 2, null, null);
+        assertThat(details.idList(), contains(2L, 9L));
+
+        // explicit candidates are honored
+        recs = rec.recommend(42, -1, LongUtils.packedSet(3, 7, 9), LongSets.singleton(9L));
+        assertThat(recs, contains(3L, 7L));
+    }
+
+    @Test
+    public void testSharedItemUniverse() {
+        StaticDataSource source = new StaticDataSource();
+        source.addSource(ImmutableList.of(Entities.create(CommonTypes.ITEM, 3),
+                                          Entities.create(CommonTypes.ITEM, 2),
+                                          Entities.create(CommonTypes.ITEM, 7)));
+        source.addSource(ImmutableList.of(Rating.create(42, 3, 4.0)));
+        DataAccessObject dao = source.get();
+        ItemUniverse items = ItemUniverse.create(dao);
+        assertThat(items.getItems(), contains(2L, 3L, 7L));
+
+        ItemScorer scorer = PrecomputedItemScorer.newBuilder()
+                                                 .addScore(42, 2, 3.0)
+                                                 .addScore(42, 7, 1.0)
+                                                 .addScore(42, 3, 3.5)
+                                                 .build();
+        TopNItemRecommender first = new TopNItemRecommender(dao, scorer, items);
+        TopNItemRecommender second = new TopNItemRecommender(dao, scorer, items);
+        assertThat(second.getItemUniverse(), sameInstance(first.getItemUniverse()));
+
+        assertThat(first.recommend(42, -1, null, null), contains(2L, 7L));
+        assertThat(second.recommendWithDetails(42, 1, null, null).idList(), contains(2L));
+    }
+
+    @Test
+    public void testRecommendRuntimeItems() throws RecommenderBuildException {
+        StaticDataSource source = new StaticDataSource();
+        source.addSource(ImmutableList.of(Entities.create(CommonTypes.ITEM, 3),
+                                          Entities.create(CommonTypes.ITEM, 2)));
+        source.addSource(ImmutableList.of(Rating.create(42, 3, 4.0)));
+        LenskitConfiguration config = new LenskitConfiguration();
+        config.addComponent(source.get());
+        config.bind(ItemScorer.class).to(ConstantItemScorer.class);
+        config.set(ConstantItemScorer.Value.class).to(Math.PI);
+        LenskitRecommenderEngine engine = LenskitRecommenderEngine.build(config);
+
+        // an item added after the engine was built is a candidate
+        StaticDataSource runtime = new StaticDataSource();
+        runtime.addSource(ImmutableList.of(Entities.create(CommonTypes.ITEM, 3),
+                                           Entities.create(CommonTypes.ITEM, 2),
+                                           Entities.create(CommonTypes.ITEM, 7)));
+        runtime.addSource(ImmutableList.of(Rating.create(42, 3, 4.0)));
+        try (LenskitRecommender rec = engine.createRecommender(runtime.get())) {
+            ItemRecommender irec = rec.getItemRecommender();
+            assertThat(irec, instanceOf(TopNItemRecommender.class));
+            assertThat(irec.recommend(42), containsInAnyOrder(2L, 7L));
+        }
+    }
 }
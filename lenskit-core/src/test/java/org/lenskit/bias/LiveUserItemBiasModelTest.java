@@ -25,17 +25,30 @@
 package org.lenskit.bias;
 
 import com.google.common.collect.Lists;
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import org.junit.Test;
 import org.lenskit.LenskitConfiguration;
 import org.lenskit.LenskitRecommender;
 import org.lenskit.LenskitRecommenderEngine;
 import org.lenskit.data.dao.EntityCollectionDAO;
+import org.lenskit.data.entities.CommonAttributes;
+import org.lenskit.data.entities.CommonTypes;
 import org.lenskit.data.entities.EntityFactory;
 import org.lenskit.data.ratings.Rating;
+import org.lenskit.data.ratings.RatingVectorPDAO;
+import org.lenskit.data.ratings.StandardRatingVectorPDAO;
+import org.lenskit.util.IdBox;
+import org.lenskit.util.io.ObjectStream;
 
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.*;
 
 /**
@@ -72,4 +85,163 @@ public class LiveUserItemBiasModelTest {
 
         assertThat(model.getUserBias(105), closeTo(0.9, 1.0e-3));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testMemoizeUserBias() {
+        EntityFactory efac = new EntityFactory();
+        List<Rating> ratings = Lists.newArrayList(efac.rating(100, 200, 3.0),
+                                                  efac.rating(100, 201, 4.0),
+                                                  efac.rating(101, 200, 5.0));
+        CountingPDAO pdao = new CountingPDAO(new StandardRatingVectorPDAO(EntityCollectionDAO.create(ratings)));
+        Long2DoubleMap items = new Long2DoubleOpenHashMap();
+        items.put(200, 0.5);
+        LiveUserItemBiasModel model = new LiveUserItemBiasModel(new ItemBiasModel(3.5, items), pdao);
+
+        assertThat(model.getUserBias(100), closeTo(-0.25, 1.0e-6));
+        assertThat(model.getUserBias(100), closeTo(-0.25, 1.0e-6));
+        assertThat(model.getUserBias(101), closeTo(1.0, 1.0e-6));
+        assertThat(pdao.vectorCount, equalTo(2));
+
+        // batches reuse cached biases
+        LongSet users = new LongOpenHashSet(new long[]{100, 101, 102});
+        Long2DoubleMap biases = model.getUserBiases(users);
+        assertThat(biases.get(100), closeTo(-0.25, 1.0e-6));
+        assertThat(biases.get(101), closeTo(1.0, 1.0e-6));
+        assertThat(biases.get(102), closeTo(0.0, 1.0e-6));
+        assertThat(pdao.vectorCount, equalTo(3));
+        assertThat(pdao.streamCount, equalTo(0));
+    }
+
+    @Test
+    public void testScanManyUserBiases() {
+        EntityFactory efac = new EntityFactory();
+        List<Rating> ratings = new ArrayList<>();
+        LongSet users = new LongOpenHashSet();
+        for (long u = 1; u <= LiveUserItemBiasModel.MIN_SCAN_USERS * 2; u++) {
+            users.add(u);
+            if (u % 7 == 0) {
+                // leave some users without ratings
+                continue;
+            }
+            for (long i = 1; i <= 4; i++) {
+                ratings.add(efac.rating(u, i, (u + i) % 5 + 1));
+            }
+        }
+        Long2DoubleMap items = new Long2DoubleOpenHashMap();
+        items.put(1, 0.25);
+        items.put(3, -0.5);
+        ItemBiasModel base = new ItemBiasModel(3.0, items);
+        RatingVectorPDAO standard = new StandardRatingVectorPDAO(withUsers(ratings));
+        CountingPDAO pdao = new CountingPDAO(standard);
+
+        LiveUserItemBiasModel model = new LiveUserItemBiasModel(base, pdao);
+        LiveUserItemBiasModel reference = new LiveUserItemBiasModel(base, standard);
+        Long2DoubleMap biases = model.getUserBiases(users);
+        assertThat(pdao.streamCount, equalTo(1));
+        assertThat(pdao.vectorCount, equalTo(0));
+        assertThat(biases.size(), equalTo(users.size()));
+        for (long u: users) {
+            assertThat(biases.get(u), closeTo(reference.getUserBias(u), 1.0e-6));
+        }
+
+        // the scanned biases are now cached
+        model.getUserBias(42);
+        assertThat(pdao.vectorCount, equalTo(0));
+    }
+
+    @Test
+    public void testScanFractionOfUsers() {
+        EntityFactory efac = new EntityFactory();
+        List<Rating> ratings = new ArrayList<>();
+        int nusers = LiveUserItemBiasModel.MIN_SCAN_USERS * 20;
+        for (long u = 1; u <= nusers; u++) {
+            ratings.add(efac.rating(u, 1, (u % 5) + 1));
+        }
+        RatingVectorPDAO standard = new StandardRatingVectorPDAO(withUsers(ratings));
+        CountingPDAO pdao = new CountingPDAO(standard);
+        LiveUserItemBiasModel model = new LiveUserItemBiasModel(new ItemBiasModel(3.0, new Long2DoubleOpenHashMap()),
+                                                                pdao);
+
+        // the user count comes from the DAO before any scan
+        assertThat(pdao.getUserCount(), equalTo(nusers));
+        assertThat(model.shouldScan(LiveUserItemBiasModel.MIN_SCAN_USERS), equalTo(false));
+        assertThat(model.shouldScan(LiveUserItemBiasModel.MIN_SCAN_USERS + 1), equalTo(false));
+        assertThat(model.shouldScan(nusers / 2), equalTo(true));
+
+        LongSet first = new LongOpenHashSet();
+        for (long u = 1; u <= nusers / 2; u++) {
+            first.add(u);
+        }
+        model.getUserBiases(first);
+        assertThat(pdao.streamCount, equalTo(1));
+
+        // a batch above the minimum but a small fraction of the users is queried user by user
+        int small = LiveUserItemBiasModel.MIN_SCAN_USERS + 10;
+        assertThat(small < LiveUserItemBiasModel.SCAN_FRACTION * nusers, equalTo(true));
+        assertThat(model.shouldScan(small), equalTo(false));
+        LongSet second = new LongOpenHashSet();
+        for (long u = nusers / 2 + 1; u <= nusers / 2 + small; u++) {
+            second.add(u);
+        }
+        Long2DoubleMap biases = model.getUserBiases(second);
+        assertThat(biases.size(), equalTo(small));
+        assertThat(pdao.streamCount, equalTo(1));
+        assertThat(pdao.vectorCount, equalTo(small));
+    }
+
+    @Test
+    public void testNoScanWithoutUserCount() {
+        EntityFactory efac = new EntityFactory();
+        List<Rating> ratings = new ArrayList<>();
+        LongSet users = new LongOpenHashSet();
+        for (long u = 1; u <= LiveUserItemBiasModel.MIN_SCAN_USERS * 2; u++) {
+            users.add(u);
+            ratings.add(efac.rating(u, 1, (u % 5) + 1));
+        }
+        // without user entities, the DAO cannot count its users
+        CountingPDAO pdao = new CountingPDAO(new StandardRatingVectorPDAO(EntityCollectionDAO.create(ratings)));
+        assertThat(pdao.getUserCount(), equalTo(-1));
+        LiveUserItemBiasModel model = new LiveUserItemBiasModel(new ItemBiasModel(3.0, new Long2DoubleOpenHashMap()),
+                                                                pdao);
+
+        Long2DoubleMap biases = model.getUserBiases(users);
+        assertThat(biases.size(), equalTo(users.size()));
+        assertThat(pdao.streamCount, equalTo(0));
+        assertThat(pdao.vectorCount, equalTo(users.size()));
+    }
+
+    private static EntityCollectionDAO withUsers(List<Rating> ratings) {
+        return EntityCollectionDAO.newBuilder()
+                                  .addEntities(ratings)
+                                  .deriveEntities(CommonTypes.USER, CommonTypes.RATING, CommonAttributes.USER_ID)
+                                  .build();
+    }
+
+    private static class CountingPDAO implements RatingVectorPDAO {
+        private final RatingVectorPDAO delegate;
+        int vectorCount;
+        int streamCount;
+
+        CountingPDAO(RatingVectorPDAO dao) {
+            delegate = dao;
+        }
+
+        @Nonnull
+        @Override
+        public Long2DoubleMap userRatingVector(long user) {
+            vectorCount += 1;
+            return delegate.userRatingVector(user);
+        }
+
+        @Override
+        public ObjectStream<IdBox<Long2DoubleMap>> streamUsers() {
+            streamCount += 1;
+            return delegate.streamUsers();
+        }
+
+        @Override
+        public int getUserCount() {
+            return delegate.getUserCount();
+        }
+    }
+}
@@ -24,10 +24,18 @@
  */
 package org.lenskit.hybrid;
 
+import com.google.common.primitives.Doubles;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import org.junit.Test;
+import org.lenskit.api.ItemRecommender;
+import org.lenskit.api.Result;
 import org.lenskit.api.ResultList;
+import org.lenskit.basic.AbstractItemRecommender;
 import org.lenskit.results.Results;
 
+import javax.annotation.Nullable;
+import java.util.*;
+
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 import static org.lenskit.hybrid.RankBlendingItemRecommender.merge;
@@ -61,4 +69,122 @@ public class RankBlendingItemRecommenderTest {
         assertThat(res.get(3).getScore(),
                    closeTo(0.0, 1.0e-6));
     }
+
+    /**
+     * Recommender that returns prefixes of a fixed list, and remembers the longest prefix requested.
+     */
+    private static class ListRecommender extends AbstractItemRecommender {
+        private final ResultList list;
+        int maxRequested = 0;
+
+        ListRecommender(List<Long> items) {
+            List<Result> results = new ArrayList<>();
+            for (int i = 0; i < items.size(); i++) {
+                results.add(Results.create(items.get(i), items.size() - i));
+            }
+            list = Results.newResultList(results);
+        }
+
+        @Override
+        protected ResultList recommendWithDetails(long user, int n, @Nullable LongSet candidates, @Nullable LongSet exclude) {
+            if (n < 0 || n >= list.size()) {
+                maxRequested = Integer.MAX_VALUE;
+                return list;
+            }
+            maxRequested = Math.max(maxRequested, n);
+            return Results.newResultList(list.subList(0, n));
+        }
+    }
+
+    private static List<Long> permutedItems(int n, int mult) {
+        List<Long> items = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            items.add((long) ((i * mult) % n));
+        }
+        return items;
+    }
+
+    /**
+     * Compute the blend of complete lists by brute force.
+     * @param depth The horizon, or 0 to score against list lengths.
+     */
+    private static List<Long> bruteForce(List<List<Long>> lists, double[] weights, int depth, int n,
+                                         Map<Long,Double> scores) {
+        for (int j = 0; j < lists.size(); j++) {
+            List<Long> list = lists.get(j);
+            int d = depth > 0 ? depth : list.size();
+            for (int r = 0; r < list.size(); r++) {
+                double s = r >= d ? 0 : (d == 1 ? 1 : 1 - r / (d - 1.0));
+                scores.put(list.get(r), scores.getOrDefault(list.get(r), 0.0) + weights[j] * s);
+            }
+        }
+        List<Long> ids = new ArrayList<>(scores.keySet());
+        ids.sort(Comparator.comparingDouble((Long i) -> scores.get(i)).reversed()
+                           .thenComparingLong(i -> i));
+        return ids.subList(0, n);
+    }
+
+    @Test
+    public void testBoundedBlend() {
+        List<Long> leftItems = permutedItems(200, 1);
+        List<Long> rightItems = permutedItems(200, 37);
+        ListRecommender left = new ListRecommender(leftItems);
+        ListRecommender right = new ListRecommender(rightItems);
+        RankBlendingItemRecommender rec = new RankBlendingItemRecommender(left, right, 0.6, 100);
+
+        ResultList res = rec.recommendWithDetails(42, 5, null, null);
+        Map<Long,Double> scores = new HashMap<>();
+        List<Long> expected = bruteForce(Arrays.asList(leftItems, rightItems), new double[]{0.6, 0.4},
+                                         100, 5, scores);
+        assertThat(res.idList(), equalTo(expected));
+        for (Result r: res) {
+            assertThat(r.getScore(), closeTo(scores.get(r.getId()), 1.0e-6));
+            RankBlendResult rbr = r.as(RankBlendResult.class);
+            assertThat(rbr, notNullValue());
+            if (rbr.getRight() != null) {
+                assertThat(rightItems.get(rbr.getRightRank()), equalTo(r.getId()));
+            }
+        }
+        // neither list should be fetched beyond the horizon
+        assertThat(left.maxRequested, lessThanOrEqualTo(100));
+        assertThat(right.maxRequested, lessThanOrEqualTo(100));
+    }
+
+    @Test
+    public void testBoundedBlendStopsEarly() {
+        // when the lists agree, the top items are known from short prefixes
+        List<Long> items = permutedItems(1000, 1);
+        ListRecommender left = new ListRecommender(items);
+        ListRecommender right = new ListRecommender(items);
+        RankBlendingItemRecommender rec = new RankBlendingItemRecommender(left, right, 0.5, 500);
+
+        ResultList res = rec.recommendWithDetails(42, 3, null, null);
+        assertThat(res.idList(), contains(0L, 1L, 2L));
+        assertThat(left.maxRequested, lessThan(500));
+        assertThat(right.maxRequested, lessThan(500));
+    }
+
+    @Test
+    public void testWeightedBlendMatchesBruteForce() {
+        List<List<Long>> lists = Arrays.asList(permutedItems(60, 1),
+                                               permutedItems(60, 7),
+                                               permutedItems(50, 13));
+        double[] weights = {0.5, 0.3, 0.2};
+        List<ItemRecommender> recs = new ArrayList<>();
+        for (List<Long> l: lists) {
+            recs.add(new ListRecommender(l));
+        }
+
+        for (int depth: new int[]{0, 20}) {
+            WeightedRankBlendingItemRecommender rec =
+                    new WeightedRankBlendingItemRecommender(recs, Doubles.asList(weights), depth);
+            ResultList res = rec.recommendWithDetails(42, 8, null, null);
+            Map<Long,Double> scores = new HashMap<>();
+            List<Long> expected = bruteForce(lists, weights, depth, 8, scores);
+            assertThat(res.idList(), equalTo(expected));
+            for (Result r: res) {
+                assertThat(r.getScore(), closeTo(scores.get(r.getId()), 1.0e-6));
+            }
+        }
+    }
 }
@@ -0,0 +1,108 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.rerank;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+import org.lenskit.api.Result;
+import org.lenskit.results.Results;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+public class CandidateListTest {
+    private List<Result> makeResults(int n) {
+        List<Result> results = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            results.add(Results.create(i, n - i));
+        }
+        return results;
+    }
+
+    private List<Long> ids(List<Result> results) {
+        List<Long> ids = new ArrayList<>();
+        for (Result r: results) {
+            ids.add(r.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testEmpty() {
+        CandidateList list = new CandidateList(new ArrayList<Result>());
+        assertThat(list, hasSize(0));
+        assertFalse(list.iterator().hasNext());
+        assertFalse(list.removeId(3));
+    }
+
+    @Test
+    public void testInitialOrder() {
+        List<Result> results = makeResults(5);
+        CandidateList list = new CandidateList(results);
+        assertThat(list, hasSize(5));
+        assertThat(list, equalTo(results));
+        for (int i = 0; i < 5; i++) {
+            assertThat(list.get(i), equalTo(results.get(i)));
+        }
+    }
+
+    @Test
+    public void testRemove() {
+        CandidateList list = new CandidateList(makeResults(6));
+        assertTrue(list.removeId(0));
+        assertTrue(list.removeId(3));
+        assertTrue(list.removeId(5));
+        assertFalse(list.removeId(3));
+        assertThat(list, hasSize(3));
+        assertThat(ids(list), contains(1L, 2L, 4L));
+        assertThat(ids(Lists.newArrayList(list.iterator())), contains(1L, 2L, 4L));
+        assertThat(list.get(2).getId(), equalTo(4L));
+        assertThat(list.get(0).getId(), equalTo(1L));
+    }
+
+    @Test
+    public void testRandomAccess() {
+        CandidateList list = new CandidateList(makeResults(10));
+        list.removeId(4);
+        assertThat(list.get(7).getId(), equalTo(8L));
+        assertThat(list.get(5).getId(), equalTo(6L));
+        assertThat(list.get(1).getId(), equalTo(1L));
+        assertThat(list.get(8).getId(), equalTo(9L));
+        assertThat(list.get(4).getId(), equalTo(5L));
+    }
+
+    @Test
+    public void testDuplicatesDropped() {
+        List<Result> results = makeResults(3);
+        results.add(Results.create(1, 0.5));
+        CandidateList list = new CandidateList(results);
+        assertThat(list, hasSize(3));
+        list.removeId(1);
+        assertThat(ids(list), contains(0L, 2L));
+    }
+}
@@ -240,4 +240,112 @@ public class GreedyRerankingItemRecommenderTest {
         ResultList result = gr.recommendWithDetails(0, 0, null, null);
         assertEquals(0, result.size());
     }
+
+    @Test
+    public void testCandidatePoolDepth() {
+        List<Result> results = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            results.add(Results.create(i, 10 - i));
+        }
+        final ResultList rl = Results.newResultList(results);
+        ItemRecommender ir = new AbstractItemRecommender() {
+            @Override
+            protected ResultList recommendWithDetails(long user, int n, @Nullable LongSet candidates, @Nullable LongSet exclude) {
+                assertEquals(6, n);
+                return rl;
+            }
+        };
+        GreedyRerankStrategy selector = new AbstractScoringGreedyRerankStrategy() {
+            @Override
+            protected double scoreCandidate(long userId, int n, List<? extends Result> items, Result candidate) {
+                return candidate.getScore();
+            }
+        };
+
+        GreedyRerankingItemRecommender gr = new GreedyRerankingItemRecommender(ir, selector, 3);
+        ResultList result = gr.recommendWithDetails(0, 2, null, null);
+        assertEquals(2, result.size());
+        assertEquals(0, result.get(0).getId());
+        assertEquals(1, result.get(1).getId());
+    }
+
+    /**
+     * Diversity strategy that penalizes items in the same category (ID mod 3) as already-selected items.
+     */
+    private static class CategoryDiversityStrategy extends AbstractScoringGreedyRerankStrategy {
+        int evaluations = 0;
+
+        @Override
+        protected double scoreCandidate(long userId, int n, List<? extends Result> items, Result candidate) {
+            evaluations += 1;
+            int same = 0;
+            for (Result r: items) {
+                if (r.getId() % 3 == candidate.getId() % 3) {
+                    same += 1;
+                }
+            }
+            return candidate.getScore() - 2.5 * same;
+        }
+    }
+
+    private static class LazyCategoryDiversityStrategy extends CategoryDiversityStrategy
+            implements SubmodularGreedyRerankStrategy {
+        @Override
+        public double marginalGain(long userId, int n, List<? extends Result> items, Result candidate) {
+            return scoreCandidate(userId, n, items, candidate);
+        }
+    }
+
+    @Test
+    public void testLazyGreedyMatchesEager() {
+        List<Result> results = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            // scores decrease with rank, with some ties
+            results.add(Results.create(i, 30 - i / 2));
+        }
+        ResultList rl = Results.newResultList(results);
+
+        CategoryDiversityStrategy eager = new CategoryDiversityStrategy();
+        ResultList eagerResult = new GreedyRerankingItemRecommender(preSeededItemRecommender(rl), eager)
+                .recommendWithDetails(0, 10, null, null);
+        LazyCategoryDiversityStrategy lazy = new LazyCategoryDiversityStrategy();
+        ResultList lazyResult = new GreedyRerankingItemRecommender(preSeededItemRecommender(rl), lazy)
+                .recommendWithDetails(0, 10, null, null);
+
+        assertEquals(10, lazyResult.size());
+        assertEquals(eagerResult.idList(), lazyResult.idList());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(eagerResult.get(i).getScore(), lazyResult.get(i).getScore(), 1.0e-6);
+        }
+        assertTrue("lazy evaluation should score fewer candidates",
+                   lazy.evaluations < eager.evaluations);
+    }
+
+    @Test
+    public void testLazyGreedyDiscardsUnaddable() {
+        List<Result> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            results.add(Results.create(i, 5 - i));
+        }
+        ResultList rl = Results.newResultList(results);
+        SubmodularGreedyRerankStrategy oddOnly = new SubmodularGreedyRerankStrategy() {
+            @Override
+            public double marginalGain(long userId, int n, List<? extends Result> items, Result candidate) {
+                return candidate.getId() % 2 == 1 ? candidate.getScore() : Double.NaN;
+            }
+
+            @Nullable
+            @Override
+            public Result nextItem(long userId, int n, List<? extends Result> items, List<? extends Result> candidates) {
+                fail("lazy greedy should not call nextItem");
+                return null;
+            }
+        };
+
+        ResultList result = new GreedyRerankingItemRecommender(preSeededItemRecommender(rl), oddOnly)
+                .recommendWithDetails(0, 4, null, null);
+        assertEquals(2, result.size());
+        assertEquals(1, result.get(0).getId());
+        assertEquals(3, result.get(1).getId());
+    }
 }
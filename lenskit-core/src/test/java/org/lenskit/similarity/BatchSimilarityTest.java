@@ -0,0 +1,145 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.similarity;
+
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleMaps;
+import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.lenskit.util.math.PackedVectors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Check that batch similarity computations agree with pairwise ones.
+ */
+public class BatchSimilarityTest {
+    private static final double EPSILON = 1.0e-6;
+    private List<Long2DoubleMap> vectors;
+    private PackedVectors packed;
+    private int[] rows;
+
+    @Before
+    public void createVectors() {
+        Random rng = new Random(42);
+        vectors = new ArrayList<>();
+        vectors.add(Long2DoubleMaps.EMPTY_MAP);
+        for (int i = 0; i < 50; i++) {
+            // a few long vectors so the dot product gallops
+            int n = i % 10 == 0 ? 400 : rng.nextInt(30) + 1;
+            Long2DoubleMap vec = new Long2DoubleOpenHashMap();
+            for (int j = 0; j < n; j++) {
+                vec.put(rng.nextInt(500), rng.nextDouble() * 4 + 1);
+            }
+            vectors.add(vec);
+        }
+        packed = PackedVectors.pack(vectors.size(), vectors::get);
+        rows = new int[vectors.size()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = rows.length - i - 1;
+        }
+    }
+
+    private void checkBatch(VectorSimilarity sim) {
+        for (Long2DoubleMap vec: vectors) {
+            double[] sims = sim.similarities(vec, packed, rows);
+            for (int i = 0; i < rows.length; i++) {
+                assertThat(sims[i], closeTo(sim.similarity(vec, vectors.get(rows[i])), EPSILON));
+            }
+        }
+    }
+
+    @Test
+    public void testCosine() {
+        checkBatch(new CosineVectorSimilarity());
+    }
+
+    @Test
+    public void testDampedCosine() {
+        checkBatch(new CosineVectorSimilarity(10));
+    }
+
+    @Test
+    public void testPearson() {
+        checkBatch(new PearsonCorrelation());
+    }
+
+    @Test
+    public void testDampedPearson() {
+        checkBatch(new PearsonCorrelation(5));
+    }
+
+    @Test
+    public void testSignificanceWeighted() {
+        checkBatch(new SignificanceWeightedVectorSimilarity(10, new PearsonCorrelation()));
+    }
+
+    @Test
+    public void testSpearman() {
+        checkBatch(new SpearmanRankCorrelation());
+    }
+
+    @Test
+    public void testSpearmanTies() {
+        // small integer values, so rows have many tied ranks
+        Random rng = new Random(17);
+        for (int i = 1; i < vectors.size(); i++) {
+            Long2DoubleMap vec = new Long2DoubleOpenHashMap();
+            for (long k: vectors.get(i).keySet()) {
+                vec.put(k, rng.nextInt(5) + 1);
+            }
+            vectors.set(i, vec);
+        }
+        packed = PackedVectors.pack(vectors.size(), vectors::get);
+        checkBatch(new SpearmanRankCorrelation(5));
+    }
+
+    @Test
+    public void testDefaultImplementation() {
+        final PearsonCorrelation pearson = new PearsonCorrelation();
+        checkBatch(new VectorSimilarity() {
+            @Override
+            public double similarity(Long2DoubleMap vec1, Long2DoubleMap vec2) {
+                return pearson.similarity(vec1, vec2);
+            }
+
+            @Override
+            public boolean isSparse() {
+                return true;
+            }
+
+            @Override
+            public boolean isSymmetric() {
+                return true;
+            }
+        });
+    }
+}
@@ -121,4 +121,4 @@ public class BaselineSubtractingUserVectorNormalizerTest {
         assertThat(out.get(2L), closeTo(-0.5 + 3.0 + 0.5 - 0.1, 0.0001));
         assertThat(out.get(3L), closeTo(0.2 + 3.0 + 0.5, 0.0001));
     }
-}
\ No newline at end of file
+}
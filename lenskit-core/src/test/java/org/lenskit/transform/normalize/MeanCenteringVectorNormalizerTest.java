@@ -56,4 +56,24 @@ public class MeanCenteringVectorNormalizerTest {
         out = tx.unapply(toRev);
         assertThat(out.get(4L), closeTo(5, 1.0e-5));
     }
+
+    @Test
+    public void testTransformInPlace() {
+        Long2DoubleMap reference = new Long2DoubleOpenHashMap();
+        reference.put(4L, 3.5);
+        reference.put(5L, 2.5);
+
+        VectorTransformation tx = VectorTransformation.of(norm.makeTransformation(reference));
+
+        long[] keys = {4L, 5L};
+        double[] values = {3.5, 2.5};
+        tx.applyInPlace(keys, values, 0, 2);
+        assertThat(values[0], closeTo(0.5, 1.0e-5));
+        assertThat(values[1], closeTo(-0.5, 1.0e-5));
+
+        values[0] = 2.0;
+        tx.unapplyInPlace(keys, values, 0, 2);
+        assertThat(values[0], closeTo(5, 1.0e-5));
+        assertThat(values[1], closeTo(2.5, 1.0e-5));
+    }
 }
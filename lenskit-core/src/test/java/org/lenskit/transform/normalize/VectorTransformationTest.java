@@ -0,0 +1,120 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.transform.normalize;
+
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleMaps;
+import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.lenskit.bias.BiasItemScorer;
+import org.lenskit.bias.BiasModel;
+import org.lenskit.bias.UserItemBiasModel;
+import org.lenskit.util.InvertibleFunction;
+import org.lenskit.util.keys.Long2DoubleSortedArrayMap;
+import org.lenskit.util.keys.SortedKeyIndex;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Check that in-place transformations agree with the map transformations.
+ */
+public class VectorTransformationTest {
+    private static final double EPSILON = 1.0e-6;
+    BiasModel model;
+
+    @Before
+    public void createModel() {
+        Long2DoubleMap users = new Long2DoubleOpenHashMap();
+        users.put(42L, 0.5);
+        users.put(37L, -0.2);
+        Long2DoubleMap items = new Long2DoubleOpenHashMap();
+        items.put(1L, 0.2);
+        items.put(2L, -0.1);
+        items.put(37L, 0.3);
+        model = new UserItemBiasModel(3.0, users, items);
+    }
+
+    /**
+     * Apply and reverse a transformation in place on the middle of some arrays, checking it against the map methods
+     * and checking that the surrounding entries are left alone.
+     */
+    private void checkInPlace(InvertibleFunction<Long2DoubleMap, Long2DoubleMap> function) {
+        VectorTransformation tx = VectorTransformation.of(function);
+        // the vector is {1: 3.0, 2: 3.5, 3: 4.0, 37: 2.0, 42: 5.0}, in positions 1-5
+        long[] keys = {0L, 1L, 2L, 3L, 37L, 42L, 50L};
+        double[] values = {9.0, 3.0, 3.5, 4.0, 2.0, 5.0, 9.0};
+        Long2DoubleMap vec = Long2DoubleSortedArrayMap.wrap(SortedKeyIndex.wrap(keys, 1, 6), values.clone());
+
+        Long2DoubleMap expected = tx.apply(vec);
+        tx.applyInPlace(keys, values, 1, 6);
+        assertThat(values[0], equalTo(9.0));
+        assertThat(values[6], equalTo(9.0));
+        for (int i = 1; i < 6; i++) {
+            assertThat(values[i], closeTo(expected.get(keys[i]), EPSILON));
+        }
+
+        tx.unapplyInPlace(keys, values, 1, 6);
+        for (int i = 1; i < 6; i++) {
+            assertThat(values[i], closeTo(vec.get(keys[i]), EPSILON));
+        }
+    }
+
+    @Test
+    public void testBiasUser() {
+        checkInPlace(new BiasUserVectorNormalizer(model).makeTransformation(42L, Long2DoubleMaps.EMPTY_MAP));
+    }
+
+    @Test
+    public void testBiasItem() {
+        checkInPlace(new BiasItemVectorNormalizer(model).makeTransformation(2L, Long2DoubleMaps.EMPTY_MAP));
+    }
+
+    @Test
+    public void testBaselineSubtracting() {
+        BaselineSubtractingUserVectorNormalizer norm =
+                new BaselineSubtractingUserVectorNormalizer(new BiasItemScorer(model));
+        checkInPlace(norm.makeTransformation(42L, Long2DoubleMaps.EMPTY_MAP));
+    }
+
+    @Test
+    public void testDefaultImplementation() {
+        InvertibleFunction<Long2DoubleMap, Long2DoubleMap> base =
+                new BiasUserVectorNormalizer(model).makeTransformation(37L, Long2DoubleMaps.EMPTY_MAP);
+        // hide the in-place overrides, so the default methods are used
+        checkInPlace(new InvertibleFunction<Long2DoubleMap, Long2DoubleMap>() {
+            @Override
+            public Long2DoubleMap unapply(Long2DoubleMap input) {
+                return base.unapply(input);
+            }
+
+            @Override
+            public Long2DoubleMap apply(Long2DoubleMap input) {
+                return base.apply(input);
+            }
+        });
+    }
+}
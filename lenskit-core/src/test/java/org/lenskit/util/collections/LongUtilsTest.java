@@ -38,6 +38,14 @@ import static org.lenskit.util.collections.LongUtils.*;
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
  */
 public class LongUtilsTest {
+    @Test
+    public void testSortedSetDifference() {
+        LongSortedSet diff = setDifference(packedSet(1, 3, 5, 7, 9), packedSet(0, 3, 4, 9, 12));
+        assertThat(diff, contains(1L, 5L, 7L));
+        assertThat(setDifference(packedSet(1, 3), packedSet()), contains(1L, 3L));
+        assertThat(setDifference(packedSet(1, 3), packedSet(1, 3)), hasSize(0));
+    }
+
     @Test
     public void testEmptyRanks() {
         assertThat(itemRanks(LongLists.EMPTY_LIST).size(),
@@ -0,0 +1,150 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.util.io;
+
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import org.junit.Test;
+import org.lenskit.bias.GlobalBiasModel;
+import org.lenskit.bias.UserItemBiasModel;
+import org.lenskit.bias.ZeroBiasModel;
+import org.lenskit.data.entities.CommonTypes;
+import org.lenskit.data.ratings.InteractionStatistics;
+import org.lenskit.util.keys.SortedKeyIndex;
+
+import java.io.*;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class ModelCodecsTest {
+    @SuppressWarnings("unchecked")
+    private static <T> T roundTrip(T obj) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new CodecObjectOutputStream(bytes)) {
+            out.writeObject(obj);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (T) in.readObject();
+        }
+    }
+
+    @Test
+    public void testFindCodec() {
+        assertThat(ModelCodecs.getCodec(GlobalBiasModel.class),
+                   instanceOf(GlobalBiasModel.Codec.class));
+        assertThat(ModelCodecs.getCodec(ZeroBiasModel.class),
+                   nullValue());
+        assertThat(ModelCodecs.getCodec(String.class),
+                   nullValue());
+    }
+
+    @Test
+    public void testArrays() throws IOException {
+        int n = 5000;
+        long[] longs = new long[n];
+        double[] doubles = new double[n];
+        int[] ints = new int[n];
+        for (int i = 0; i < n; i++) {
+            longs[i] = i * 37L - 10;
+            doubles[i] = Math.sqrt(i);
+            ints[i] = -i;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            ModelCodecs.writeLongs(out, longs, n);
+            ModelCodecs.writeDoubles(out, doubles, n);
+            ModelCodecs.writeInts(out, ints, n - 1);
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertThat(ModelCodecs.readLongs(in), equalTo(longs));
+            assertThat(ModelCodecs.readDoubles(in), equalTo(doubles));
+            int[] read = ModelCodecs.readInts(in);
+            assertThat(read.length, equalTo(n - 1));
+            assertThat(read[n - 2], equalTo(ints[n - 2]));
+        }
+    }
+
+    @Test
+    public void testGlobalBiasModel() throws IOException, ClassNotFoundException {
+        GlobalBiasModel model = roundTrip(new GlobalBiasModel(3.5));
+        assertThat(model.getIntercept(), equalTo(3.5));
+    }
+
+    @Test
+    public void testUserItemBiasModel() throws IOException, ClassNotFoundException {
+        Long2DoubleMap users = new Long2DoubleOpenHashMap();
+        users.put(42L, 0.5);
+        users.put(10L, -0.25);
+        Long2DoubleMap items = new Long2DoubleOpenHashMap();
+        items.put(7L, 1.0);
+        UserItemBiasModel model = roundTrip(new UserItemBiasModel(3.0, users, items));
+        assertThat(model.getIntercept(), equalTo(3.0));
+        assertThat(model.getUserBiases(), equalTo(users));
+        assertThat(model.getItemBiases(), equalTo(items));
+    }
+
+    @Test
+    public void testSharedReferences() throws IOException, ClassNotFoundException {
+        GlobalBiasModel model = new GlobalBiasModel(2.0);
+        Object[] pair = roundTrip(new Object[]{model, model});
+        assertThat(pair[0], instanceOf(GlobalBiasModel.class));
+        assertThat(pair[1], sameInstance(pair[0]));
+    }
+
+    @Test
+    public void testSortedKeyIndexView() throws IOException {
+        long[] keys = {1, 3, 5, 7, 9, 11};
+        SortedKeyIndex view = SortedKeyIndex.wrap(keys, 2, 5);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            ModelCodecs.writeSortedKeyIndex(out, view);
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            SortedKeyIndex read = ModelCodecs.readSortedKeyIndex(in);
+            assertThat(read.size(), equalTo(3));
+            assertThat(read.keySet(), contains(5L, 7L, 9L));
+        }
+    }
+
+    @Test
+    public void testInteractionStatistics() throws IOException, ClassNotFoundException {
+        Long2IntMap counts = new Long2IntOpenHashMap();
+        counts.put(10L, 3);
+        counts.put(5L, 7);
+        counts.put(42L, 1);
+        InteractionStatistics stats = new InteractionStatistics(CommonTypes.RATING, counts);
+        InteractionStatistics read = roundTrip(stats);
+        assertThat(read.getEntityType(), equalTo(CommonTypes.RATING));
+        assertThat(read.getKnownItems(), equalTo(stats.getKnownItems()));
+        assertThat(read.getItemsByPopularity(), equalTo(stats.getItemsByPopularity()));
+        for (long item: counts.keySet()) {
+            assertThat(read.getInteractionCount(item), equalTo(counts.get(item)));
+        }
+        assertThat(read.getInteractionCount(99L), equalTo(0));
+    }
+}
@@ -30,6 +30,7 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.junit.Test;
 import org.lenskit.util.collections.LongUtils;
 
+import java.util.BitSet;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
@@ -173,6 +174,23 @@ public class Long2DoubleSortedArrayMapTest {
         assertThat(sub, hasEntry(4L, 4.3));
     }
 
+    @Test
+    public void testSubMapBitmap() {
+        SortedKeyIndex idx = SortedKeyIndex.create(1, 2, 3, 4, 5);
+        double[] values = { 1.5, 2.4, -3.2, 4.3, -5.7 };
+        Long2DoubleSortedArrayMap map = new Long2DoubleSortedArrayMap(idx, values);
+
+        // bitmap over a different universe, including a key the map lacks
+        SortedKeyIndex universe = SortedKeyIndex.create(0, 2, 4, 10);
+        BitSet bits = new BitSet();
+        bits.set(1, 4);
+        Long2DoubleSortedMap sub = map.subMap(new LongSortedBitmapSet(universe, bits));
+        assertThat(sub.size(), equalTo(2));
+        assertThat(sub.keySet(), contains(2L, 4L));
+        assertThat(sub, hasEntry(2L, 2.4));
+        assertThat(sub, hasEntry(4L, 4.3));
+    }
+
     @Test
     public void testRandomMaps() {
         for (Map<Long,Double> map: someMaps(longs(), doubles())) {
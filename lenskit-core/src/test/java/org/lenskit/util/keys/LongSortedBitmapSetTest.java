@@ -0,0 +1,168 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.util.keys;
+
+import it.unimi.dsi.fastutil.longs.LongBidirectionalIterator;
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
+import org.junit.Test;
+import org.lenskit.util.collections.LongUtils;
+
+import java.util.BitSet;
+import java.util.NoSuchElementException;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+public class LongSortedBitmapSetTest {
+    private static final SortedKeyIndex UNIVERSE = SortedKeyIndex.create(1, 2, 4, 5, 6, 9);
+
+    /**
+     * Make the set {2, 5, 6} over the universe.
+     */
+    private LongSortedBitmapSet simpleSet() {
+        BitSet bits = new BitSet();
+        bits.set(1);
+        bits.set(3);
+        bits.set(4);
+        return new LongSortedBitmapSet(UNIVERSE, bits);
+    }
+
+    @Test
+    public void testEmptySet() {
+        LongSortedBitmapSet set = new LongSortedBitmapSet(UNIVERSE, new BitSet());
+        assertTrue(set.isEmpty());
+        assertEquals(0, set.size());
+        LongBidirectionalIterator iter = set.iterator();
+        assertFalse(iter.hasNext());
+        assertFalse(iter.hasPrevious());
+        assertFalse(set.contains(2));
+        try {
+            set.firstLong();
+            fail("first of empty set should fail");
+        } catch (NoSuchElementException e) {
+            /* expected */
+        }
+    }
+
+    @Test
+    public void testAll() {
+        LongSortedBitmapSet set = LongSortedBitmapSet.all(UNIVERSE);
+        assertThat(set, hasSize(6));
+        assertThat(set, contains(1L, 2L, 4L, 5L, 6L, 9L));
+        assertThat(set, equalTo((Object) UNIVERSE.keySet()));
+    }
+
+    @Test
+    public void testSimpleSet() {
+        LongSortedBitmapSet set = simpleSet();
+        assertEquals(3, set.size());
+        assertEquals(2, set.firstLong());
+        assertEquals(6, set.lastLong());
+        assertTrue(set.contains(2));
+        assertTrue(set.contains(5));
+        assertTrue(set.contains(6));
+        assertFalse(set.contains(1));
+        assertFalse(set.contains(3));
+        assertFalse(set.contains(42));
+        assertThat(set, contains(2L, 5L, 6L));
+        assertThat(set, equalTo((Object) new LongSortedArraySet(new long[]{2, 5, 6})));
+    }
+
+    @Test
+    public void testIterateBackwards() {
+        LongBidirectionalIterator iter = simpleSet().iterator(6);
+        assertFalse(iter.hasNext());
+        assertTrue(iter.hasPrevious());
+        assertEquals(6, iter.previousLong());
+        assertEquals(5, iter.previousLong());
+        assertEquals(2, iter.previousLong());
+        assertFalse(iter.hasPrevious());
+        assertEquals(2, iter.nextLong());
+    }
+
+    @Test
+    public void testIterateFrom() {
+        LongBidirectionalIterator iter = simpleSet().iterator(3);
+        assertTrue(iter.hasPrevious());
+        assertEquals(5, iter.nextLong());
+        assertEquals(6, iter.nextLong());
+        assertFalse(iter.hasNext());
+    }
+
+    @Test
+    public void testSubSets() {
+        LongSortedBitmapSet set = simpleSet();
+        LongSortedSet head = set.headSet(6);
+        assertThat(head, contains(2L, 5L));
+        assertThat(head.size(), equalTo(2));
+        assertFalse(head.contains(6));
+
+        LongSortedSet tail = set.tailSet(3);
+        assertThat(tail, contains(5L, 6L));
+        assertThat(tail.size(), equalTo(2));
+        assertFalse(tail.contains(2));
+
+        LongSortedSet sub = set.subSet(4, 6);
+        assertThat(sub, contains(5L));
+        assertThat(sub.size(), equalTo(1));
+        assertEquals(5, sub.lastLong());
+    }
+
+    @Test
+    public void testCopyBits() {
+        LongSortedBitmapSet set = simpleSet();
+        BitSet bits = set.copyBits();
+        bits.clear(3);
+        LongSortedBitmapSet smaller = new LongSortedBitmapSet(set.getIndex(), bits);
+        assertThat(smaller, contains(2L, 6L));
+        // the original is unchanged
+        assertThat(set, contains(2L, 5L, 6L));
+    }
+
+    @Test
+    public void testNextIndex() {
+        LongSortedBitmapSet set = simpleSet();
+        assertThat(set.nextIndex(0), equalTo(1));
+        assertThat(set.nextIndex(2), equalTo(3));
+        assertThat(set.nextIndex(5), equalTo(-1));
+    }
+
+    @Test
+    public void testToArraySet() {
+        LongSortedArraySet arr = simpleSet().toArraySet();
+        assertThat(arr, contains(2L, 5L, 6L));
+        assertThat(arr.getIndex().size(), equalTo(3));
+
+        LongSortedArraySet sub = ((LongSortedBitmapSet) simpleSet().tailSet(4)).toArraySet();
+        assertThat(sub, contains(5L, 6L));
+    }
+
+    @Test
+    public void testFrozenSetKeepsBitmap() {
+        LongSortedBitmapSet set = simpleSet();
+        assertThat(LongUtils.frozenSet(set), sameInstance((LongSortedSet) set));
+        assertThat(LongUtils.packedSet(set), contains(2L, 5L, 6L));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.util.math;
+
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleMaps;
+import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import org.junit.Test;
+import org.lenskit.util.collections.LongUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class PackedVectorsTest {
+    @Test
+    public void testPackRows() {
+        List<Long2DoubleMap> vecs = new ArrayList<>();
+        vecs.add(Long2DoubleMaps.singleton(5L, 2.0));
+        vecs.add(Long2DoubleMaps.EMPTY_MAP);
+        Long2DoubleMap v = new Long2DoubleOpenHashMap();
+        v.put(7L, 3.0);
+        v.put(2L, 4.0);
+        vecs.add(v);
+        PackedVectors packed = PackedVectors.pack(vecs.size(), vecs::get);
+
+        assertThat(packed.size(), equalTo(3));
+        for (int i = 0; i < 3; i++) {
+            assertThat(packed.row(i), equalTo(vecs.get(i)));
+            assertThat(packed.getRowSize(i), equalTo(vecs.get(i).size()));
+            assertThat(packed.getNorm(i), closeTo(Vectors.euclideanNorm(vecs.get(i)), 1.0e-6));
+        }
+        assertThat(packed.row(2).firstLongKey(), equalTo(2L));
+        assertThat(packed.getRowStart(2), equalTo(1));
+        assertThat(packed.getRowEnd(2), equalTo(3));
+    }
+
+    @Test
+    public void testSelectRows() {
+        List<Long2DoubleMap> vecs = new ArrayList<>();
+        vecs.add(Long2DoubleMaps.singleton(5L, 2.0));
+        vecs.add(Long2DoubleMaps.EMPTY_MAP);
+        Long2DoubleMap v = new Long2DoubleOpenHashMap();
+        v.put(7L, 3.0);
+        v.put(2L, 4.0);
+        vecs.add(v);
+        PackedVectors packed = PackedVectors.pack(vecs.size(), vecs::get);
+
+        PackedVectors selected = packed.selectRows(new int[]{2, 0});
+        assertThat(selected.size(), equalTo(2));
+        assertThat(selected.getKeys().length, equalTo(3));
+        assertThat(selected.row(0), equalTo(vecs.get(2)));
+        assertThat(selected.row(1), equalTo(vecs.get(0)));
+        assertThat(selected.getNorm(0), closeTo(packed.getNorm(2), 1.0e-6));
+    }
+
+    @Test
+    public void testDotProduct() {
+        Random rng = new Random(17);
+        List<Long2DoubleMap> vecs = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            // mix short and long rows to exercise both merging and galloping
+            int n = i % 4 == 0 ? 1000 : rng.nextInt(40);
+            Long2DoubleMap vec = new Long2DoubleOpenHashMap();
+            for (int j = 0; j < n; j++) {
+                vec.put(rng.nextInt(2000), rng.nextGaussian());
+            }
+            vecs.add(vec);
+        }
+        PackedVectors packed = PackedVectors.pack(vecs.size(), vecs::get);
+        for (int i = 0; i < vecs.size(); i++) {
+            for (int j = 0; j < vecs.size(); j++) {
+                Long2DoubleMap v1 = vecs.get(i), v2 = vecs.get(j);
+                assertThat(packed.dotProduct(i, packed, j),
+                           closeTo(Vectors.dotProduct(v1, v2), 1.0e-6));
+                assertThat(packed.countCommonKeys(i, packed, j),
+                           equalTo(LongUtils.intersectSize(v1.keySet(), v2.keySet())));
+            }
+        }
+    }
+}
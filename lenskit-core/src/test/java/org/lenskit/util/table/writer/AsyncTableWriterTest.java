@@ -0,0 +1,102 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.util.table.writer;
+
+import org.junit.Test;
+import org.lenskit.util.table.Table;
+import org.lenskit.util.table.TableBuilder;
+
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class AsyncTableWriterTest {
+    @Test
+    public void testWriteParallelRows() throws Exception {
+        TableBuilder builder = new TableBuilder(Arrays.asList("thread", "row"));
+        AsyncTableWriter writer = new AsyncTableWriter(builder, 7, 2);
+        IntStream.range(0, 1000)
+                 .parallel()
+                 .forEach(i -> {
+                     try {
+                         writer.writeRow("x", i);
+                     } catch (Exception e) {
+                         throw new RuntimeException(e);
+                     }
+                 });
+        writer.flush();
+        assertThat(builder.build().size(), equalTo(1000));
+        writer.writeRow("y", 1000);
+        writer.close();
+
+        Table table = builder.build();
+        assertThat(table.size(), equalTo(1001));
+        Set<Object> rows = new HashSet<>(table.column("row"));
+        assertThat(rows.size(), equalTo(1001));
+    }
+
+    @Test
+    public void testRowsAreCopied() throws Exception {
+        TableBuilder builder = new TableBuilder(Arrays.asList("a", "b"));
+        try (AsyncTableWriter writer = new AsyncTableWriter(builder, 10, 2)) {
+            Object[] row = {"a", 1};
+            writer.writeRow(row);
+            row[1] = 2;
+            writer.writeRow(row);
+        }
+        Table table = builder.build();
+        assertThat(table.column("b").get(0), equalTo((Object) 1));
+        assertThat(table.column("b").get(1), equalTo((Object) 2));
+    }
+
+    @Test(timeout = 10000)
+    public void testInterruptedWriterDoesNotBlock() throws Exception {
+        TableBuilder builder = new TableBuilder(Arrays.asList("a", "b"));
+        AsyncTableWriter writer = new AsyncTableWriter(builder, 1, 1);
+        writer.writerThread.interrupt();
+        writer.writerThread.join();
+        try {
+            // the queue holds one batch, so this blocks unless the writer notices the dead thread
+            for (int i = 0; i < 10; i++) {
+                writer.writeRow("a", i);
+            }
+            fail("writing to a stopped writer should fail");
+        } catch (InterruptedIOException e) {
+            /* expected */
+        }
+        try {
+            writer.close();
+            fail("closing a stopped writer should report its error");
+        } catch (InterruptedIOException e) {
+            /* expected */
+        }
+    }
+}
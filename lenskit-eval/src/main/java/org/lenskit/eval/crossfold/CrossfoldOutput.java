@@ -24,6 +24,7 @@
  */
 package org.lenskit.eval.crossfold;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.io.Closer;
 import org.lenskit.data.output.RatingWriter;
@@ -68,6 +69,27 @@ class CrossfoldOutput implements Closeable {
         // the constructor has succeeded - closing will be handled by the close method
     }
 
+    /**
+     * Create a crossfold output that sends its ratings to existing writers.
+     * @param train The training writers, one per partition.
+     * @param test The test writers, one per partition.
+     * @param rng The random number generator.
+     */
+    CrossfoldOutput(List<? extends RatingWriter> train, List<? extends RatingWriter> test, Random rng) {
+        Preconditions.checkArgument(train.size() == test.size(), "train and test partition counts differ");
+        random = rng;
+        closer = Closer.create();
+        count = train.size();
+        trainWriters = Lists.newArrayListWithCapacity(count);
+        testWriters = Lists.newArrayListWithCapacity(count);
+        for (RatingWriter w: train) {
+            trainWriters.add(closer.register(w));
+        }
+        for (RatingWriter w: test) {
+            testWriters.add(closer.register(w));
+        }
+    }
+
     /**
      * Get the RNG for this output.
      * @return The output's RNG.
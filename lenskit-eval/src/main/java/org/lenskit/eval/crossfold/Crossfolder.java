@@ -32,6 +32,7 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import it.unimi.dsi.fastutil.longs.LongSet;
@@ -42,11 +43,14 @@ import org.lenskit.data.dao.file.StaticDataSource;
 import org.lenskit.data.dao.file.TextEntitySource;
 import org.lenskit.data.entities.CommonAttributes;
 import org.lenskit.data.entities.CommonTypes;
+import org.lenskit.data.entities.Entities;
+import org.lenskit.data.entities.Entity;
 import org.lenskit.data.entities.EntityType;
 import org.lenskit.data.output.OutputFormat;
 import org.lenskit.data.output.RatingWriter;
 import org.lenskit.data.output.RatingWriters;
 import org.lenskit.eval.traintest.DataSet;
+import org.lenskit.util.keys.SortedKeyIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -70,6 +74,15 @@ import java.util.*;
  * - `partNN.test.csv` - a CSV file containing the test data for part *NN*
  * - `partNN.test.yaml` - a YAML manifest for the test data for part *NN*
  *
+ * Alternatively, the crossfolder can run {@linkplain #setVirtual(boolean) in memory}.  In this mode, it
+ * loads the source data once, records each partition's train and test data as bitmaps over the loaded
+ * entities, and exposes the partitions as data sets backed by views of the loaded data; no files are
+ * written.
+ *
+ * For large inputs, the crossfolder can also {@linkplain #setStreaming(boolean) stream} its input.  Streaming
+ * crossfolds of user or item partitions and samples spill the input to disk grouped by user (or item) in a single
+ * pass, and then crossfold the groups in parallel, so they do not need to load the data set into memory.
+ *
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
  */
 public class Crossfolder {
@@ -86,7 +99,10 @@ public class Crossfolder {
     private OutputFormat outputFormat = OutputFormat.CSV;
     private CrossfoldMethod method = CrossfoldMethods.partitionUsers(SortOrder.RANDOM, HistoryPartitions.holdout(10));
     private boolean writeTimestamps = true;
+    private boolean virtual = false;
+    private boolean streaming = false;
     private boolean executed = false;
+    private List<DataSet> virtualDataSets;
 
     public Crossfolder() {
         this(null);
@@ -236,6 +252,53 @@ public class Crossfolder {
         return writeTimestamps;
     }
 
+    /**
+     * Configure whether to crossfold in memory.  In-memory crossfolds keep the loaded source data and
+     * partition bitmaps in memory and do not write any output files; the output directory and format
+     * are ignored.  This uses the same crossfold method, and therefore the same partitioning, as
+     * file-based crossfolding.
+     *
+     * @param virt {@code true} to crossfold in memory, {@code false} to write partition files (the default).
+     * @return The crossfolder (for chaining).
+     */
+    public Crossfolder setVirtual(boolean virt) {
+        virtual = virt;
+        return this;
+    }
+
+    /**
+     * Query whether this crossfolder runs in memory.
+     * @return {@code true} if the crossfolder produces in-memory data sets without writing files.
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Configure whether to stream the input data.  Streaming crossfolds read the input once, spilling it
+     * to temporary files in the output directory grouped by user (or item), and then crossfold the groups
+     * in parallel; they work on inputs larger than the heap.  Streaming is only supported for user and
+     * item partitioning and sampling methods; other methods load the data into memory as usual.  Streaming
+     * crossfolds assign users to partitions the same way as in-memory crossfolds, but write ratings to
+     * the output files in a different order.  It is ignored for {@linkplain #setVirtual(boolean) virtual}
+     * crossfolds.
+     *
+     * @param stream {@code true} to stream the input, {@code false} to load it into memory (the default).
+     * @return The crossfolder (for chaining).
+     */
+    public Crossfolder setStreaming(boolean stream) {
+        streaming = stream;
+        return this;
+    }
+
+    /**
+     * Query whether this crossfolder streams its input.
+     * @return {@code true} if the crossfolder will stream its input.
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
     /**
      * Get the visible name of this crossfold split.
      *
@@ -272,19 +335,46 @@ public class Crossfolder {
      * Run the crossfold command. Write the partition files to the disk by reading in the source file.
      */
     public void execute() throws IOException {
+        if (virtual) {
+            createVirtualSplits(source);
+            executed = true;
+            return;
+        }
+
         logger.info("ensuring output directory {} exists", outputDir);
         Files.createDirectories(outputDir);
-        logger.info("making sure item list is available");
-        JsonNode itemDataInfo = writeItemFile(source);
-        logger.info("writing train-test split files");
-        createTTFiles(source);
+        JsonNode itemDataInfo;
+        if (streaming && method instanceof GroupedCrossfoldMethod) {
+            logger.info("writing train-test split files with streaming crossfold");
+            LongSet items = createStreamingTTFiles(source, (GroupedCrossfoldMethod) method);
+            logger.info("making sure item list is available");
+            itemDataInfo = writeItemFile(source, items);
+        } else {
+            if (streaming) {
+                logger.warn("crossfold method {} does not support streaming, loading data into memory", method);
+            }
+            logger.info("making sure item list is available");
+            itemDataInfo = writeItemFile(source, null);
+            logger.info("writing train-test split files");
+            createTTFiles(source);
+        }
         logger.info("writing manifests and specs");
+        Map<String,Object> metadata = getSourceMetadata(source);
+        writeManifests(source, metadata, itemDataInfo);
+        executed = true;
+    }
+
+    /**
+     * Get the metadata of the crossfolded sources.
+     * @param data The input data.
+     * @return The metadata to attach to crossfolded partitions.
+     */
+    private Map<String,Object> getSourceMetadata(StaticDataSource data) {
         Map<String,Object> metadata = new HashMap<>();
-        for (EntitySource src: source.getSourcesForType(entityType)) {
+        for (EntitySource src: data.getSourcesForType(entityType)) {
             metadata.putAll(src.getMetadata());
         }
-        writeManifests(source, metadata, itemDataInfo);
-        executed = true;
+        return metadata;
     }
 
     List<Path> getTrainingFiles() {
@@ -318,17 +408,22 @@ public class Crossfolder {
     /**
      * Write the items to a file.
      * @param data The input data.
+     * @param knownItems The item IDs, if they have already been collected; if {@code null}, they are
+     *                   read from the loaded data.
      * @return The JSON data to include in the manifest to describe the item file.
      * @throws IOException if there's a problem writing the file.
      */
     @Nullable
-    private JsonNode writeItemFile(StaticDataSource data) throws IOException {
+    private JsonNode writeItemFile(StaticDataSource data, @Nullable LongSet knownItems) throws IOException {
         List<EntitySource> itemSources = data.getSourcesForType(CommonTypes.ITEM);
         if (itemSources.isEmpty()) {
             logger.info("writing item IDs to {}", ITEM_FILE_NAME);
             Path itemFile = outputDir.resolve(ITEM_FILE_NAME);
-            DataAccessObject dao = data.get();
-            LongSet items = dao.getEntityIds(CommonTypes.ITEM);
+            LongSet items = knownItems;
+            if (items == null) {
+                DataAccessObject dao = data.get();
+                items = dao.getEntityIds(CommonTypes.ITEM);
+            }
             try (BufferedWriter writer = Files.newBufferedWriter(itemFile, Charsets.UTF_8)) {
                 for (Long item: items) { // escape analysis should elide allocations
                     writer.append(item.toString())
@@ -363,6 +458,38 @@ public class Crossfolder {
      * @param data The input data.
      */
     private void createTTFiles(StaticDataSource data) throws IOException {
+        checkSources(data);
+
+        try (CrossfoldOutput out = new CrossfoldOutput(this, rng)) {
+            logger.info("running crossfold method {}", method);
+            method.crossfold(data.get(), out, entityType);
+        }
+    }
+
+    /**
+     * Write train-test split files by streaming the input data.
+     *
+     * @param data The input data.
+     * @param meth The crossfold method.
+     * @return The item IDs in the input data.
+     * @throws IOException if there is an error reading the input or writing the files.
+     */
+    private LongSet createStreamingTTFiles(StaticDataSource data, GroupedCrossfoldMethod meth) throws IOException {
+        checkSources(data);
+
+        StreamingCrossfold scf = new StreamingCrossfold(meth, entityType, StreamingCrossfold.DEFAULT_BUCKET_COUNT);
+        try (CrossfoldOutput out = new CrossfoldOutput(this, rng)) {
+            logger.info("running crossfold method {} with streaming", meth);
+            scf.crossfold(data, out, outputDir.resolve(".spill"));
+        }
+        return scf.getItemIds();
+    }
+
+    /**
+     * Check the input sources, warning about data that crossfolding will not handle.
+     * @param data The input data.
+     */
+    private void checkSources(StaticDataSource data) {
         if (entityType != CommonTypes.RATING) {
             logger.warn("entity type is not 'rating', crossfolding may not work correctly");
             logger.warn("crossfolding non-rating data is a work in progress");
@@ -379,11 +506,80 @@ public class Crossfolder {
                             Sets.difference(types, ImmutableSet.of(entityType)));
             }
         }
+    }
 
-        try (CrossfoldOutput out = new CrossfoldOutput(this, rng)) {
+    /**
+     * Crossfold the data in memory, and build data sets that view the partitions.
+     *
+     * @param data The input data.
+     * @throws IOException if there is an error reading the input data.
+     */
+    private void createVirtualSplits(StaticDataSource data) throws IOException {
+        checkSources(data);
+
+        logger.info("loading {} for in-memory crossfold", data);
+        DataAccessObject dao = data.get();
+        SortedKeyIndex ids = SortedKeyIndex.fromCollection(dao.getEntityIds(entityType));
+        logger.info("crossfolding {} {} entities in memory", ids.size(), entityType);
+
+        List<PartitionMask> trainMasks = new ArrayList<>(partitionCount);
+        List<PartitionMask> testMasks = new ArrayList<>(partitionCount);
+        for (int i = 0; i < partitionCount; i++) {
+            trainMasks.add(new PartitionMask(ids));
+            testMasks.add(new PartitionMask(ids));
+        }
+        try (CrossfoldOutput out = new CrossfoldOutput(trainMasks, testMasks, rng)) {
             logger.info("running crossfold method {}", method);
-            method.crossfold(data.get(), out, entityType);
+            method.crossfold(dao, out, entityType);
+        }
+
+        Map<String,Object> metadata = getSourceMetadata(data);
+        List<EntitySource> cfSources = data.getSourcesForType(entityType);
+        EntitySource.Layout layout = cfSources.size() == 1 ? cfSources.get(0).getLayout() : null;
+
+        // the file-based crossfold writes an item list, so training data knows about all items
+        List<Entity> items = null;
+        if (data.getSourcesForType(CommonTypes.ITEM).isEmpty()) {
+            LongSet itemIds = dao.getEntityIds(CommonTypes.ITEM);
+            items = new ArrayList<>(itemIds.size());
+            for (long item: itemIds) {
+                items.add(Entities.create(CommonTypes.ITEM, item));
+            }
+        }
+
+        ImmutableList.Builder<DataSet> sets = ImmutableList.builder();
+        for (int i = 0; i < partitionCount; i++) {
+            int part = i + 1;
+            String dsName = String.format("%s[%d]", getName(), part);
+            PartitionMask trainMask = trainMasks.get(i);
+            PartitionMask testMask = testMasks.get(i);
+            logger.debug("partition {} has {} train and {} test entities",
+                         part, trainMask.size(), testMask.size());
+
+            StaticDataSource train = new StaticDataSource(dsName + ".train");
+            train.addSource(new PartitionEntitySource(dsName + ".train", entityType, dao, ids,
+                                                      trainMask.getPositions(), layout, metadata));
+            if (items != null) {
+                train.addSource(items);
+            }
+            for (EntitySource src: data.getSources()) {
+                if (!src.getTypes().contains(entityType)) {
+                    train.addSource(src);
+                }
+            }
+
+            StaticDataSource test = new StaticDataSource(dsName + ".test");
+            test.addSource(new PartitionEntitySource(dsName + ".test", entityType, dao, ids,
+                                                     testMask.getPositions(), layout, metadata));
+
+            sets.add(DataSet.newBuilder(dsName)
+                            .setAttribute("DataSet", getName())
+                            .setAttribute("Partition", part)
+                            .setTrain(train)
+                            .setTest(test)
+                            .build());
         }
+        virtualDataSets = sets.build();
     }
 
     private void writeManifests(StaticDataSource data, Map<String,Object> meta, JsonNode itemData) throws IOException {
@@ -463,6 +659,9 @@ public class Crossfolder {
      */
     public List<DataSet> getDataSets() {
         Preconditions.checkState(executed, "crossfolder has not been executed");
+        if (virtual) {
+            return virtualDataSets;
+        }
 
         Path dataSetFile = outputDir.resolve("datasets.yaml");
         try {
@@ -59,6 +59,26 @@ class GroupedCrossfoldMethod implements CrossfoldMethod {
         partition = pa;
     }
 
+    EntityType getGroupType() {
+        return groupType;
+    }
+
+    TypedName<Long> getGroupAttribute() {
+        return groupAttribute;
+    }
+
+    GroupEntitySplitter getEntitySplitter() {
+        return entitySplitter;
+    }
+
+    SortOrder getOrder() {
+        return order;
+    }
+
+    HistoryPartitionMethod getPartition() {
+        return partition;
+    }
+
     @Override
     public void crossfold(DataAccessObject input, CrossfoldOutput output, EntityType type) throws IOException {
         final int count = output.getCount();
@@ -0,0 +1,113 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.eval.crossfold;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.dao.file.EntitySource;
+import org.lenskit.data.entities.Entity;
+import org.lenskit.data.entities.EntityType;
+import org.lenskit.util.io.ObjectStream;
+import org.lenskit.util.io.ObjectStreams;
+import org.lenskit.util.keys.SortedKeyIndex;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Entity source that views one partition of an in-memory crossfold.  The entities are read from the
+ * crossfold's input DAO, so nothing is copied or re-parsed until a data source is built from it.
+ */
+class PartitionEntitySource implements EntitySource {
+    private final String name;
+    private final EntityType entityType;
+    private final DataAccessObject data;
+    private final SortedKeyIndex ids;
+    private final BitSet positions;
+    private final Layout layout;
+    private final Map<String, Object> metadata;
+
+    /**
+     * Create a new partition source.
+     * @param name The source name.
+     * @param type The entity type.
+     * @param dao The DAO containing the crossfolded entities.
+     * @param ids The IDs of the crossfolded entities.
+     * @param pos The positions (in {@code ids}) of the entities in this partition.
+     * @param layout The layout of the entities, if known.
+     * @param meta The source metadata.
+     */
+    PartitionEntitySource(String name, EntityType type, DataAccessObject dao,
+                          SortedKeyIndex ids, BitSet pos,
+                          @Nullable Layout layout, Map<String, Object> meta) {
+        this.name = name;
+        entityType = type;
+        data = dao;
+        this.ids = ids;
+        positions = pos;
+        this.layout = layout;
+        metadata = ImmutableMap.copyOf(meta);
+    }
+
+    @Nonnull
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Nonnull
+    @Override
+    public Set<EntityType> getTypes() {
+        return ImmutableSet.of(entityType);
+    }
+
+    @Nullable
+    @Override
+    public Layout getLayout() {
+        return layout;
+    }
+
+    @Nonnull
+    @Override
+    public ObjectStream<Entity> openStream() {
+        return ObjectStreams.wrap(positions.stream()
+                                           .mapToObj(i -> data.lookupEntity(entityType, ids.getKey(i))));
+    }
+
+    @Nonnull
+    @Override
+    public Map<String, Object> getMetadata() {
+        return metadata;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PartitionEntitySource(%s, %d entities)", name, positions.cardinality());
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.eval.crossfold;
+
+import org.lenskit.data.output.RatingWriter;
+import org.lenskit.data.ratings.Rating;
+import org.lenskit.util.keys.SortedKeyIndex;
+
+import java.util.BitSet;
+
+/**
+ * Rating writer that records the positions of the ratings written to it in a crossfold input,
+ * instead of writing the ratings out.  Used for in-memory crossfolding.
+ */
+class PartitionMask implements RatingWriter {
+    private final SortedKeyIndex ids;
+    private final BitSet positions;
+
+    /**
+     * Create a new partition mask.
+     * @param ids The IDs of the entities being crossfolded.
+     */
+    PartitionMask(SortedKeyIndex ids) {
+        this.ids = ids;
+        positions = new BitSet(ids.size());
+    }
+
+    @Override
+    public void writeRating(Rating r) {
+        int pos = ids.tryGetIndex(r.getId());
+        if (pos < 0) {
+            throw new IllegalArgumentException("rating " + r.getId() + " is not in the crossfold input");
+        }
+        positions.set(pos);
+    }
+
+    /**
+     * Get the positions of the ratings in this partition.
+     * @return The set of positions, indexes into the ID index.
+     */
+    BitSet getPositions() {
+        return positions;
+    }
+
+    /**
+     * Get the number of ratings in this partition.
+     * @return The rating count.
+     */
+    int size() {
+        return positions.cardinality();
+    }
+
+    @Override
+    public void close() {
+        /* nothing to close */
+    }
+}
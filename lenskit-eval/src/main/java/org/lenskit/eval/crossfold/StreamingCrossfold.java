@@ -0,0 +1,285 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.eval.crossfold;
+
+import com.google.common.io.Closer;
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.lenskit.data.dao.file.EntitySource;
+import org.lenskit.data.dao.file.StaticDataSource;
+import org.lenskit.data.entities.CommonAttributes;
+import org.lenskit.data.entities.Entities;
+import org.lenskit.data.entities.Entity;
+import org.lenskit.data.entities.EntityType;
+import org.lenskit.data.entities.TypedName;
+import org.lenskit.data.output.RatingWriter;
+import org.lenskit.data.ratings.Rating;
+import org.lenskit.util.collections.LongUtils;
+import org.lenskit.util.io.ObjectStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * External-memory implementation of a {@link GroupedCrossfoldMethod}.  It streams the input once,
+ * hash-partitioning the ratings by group (user or item) into binary spill files, and then processes the
+ * spill files in parallel, applying the sort order and history partition method to each group and
+ * writing the results to the crossfold output.  Only one spill file per worker is in memory at a time,
+ * so the input can be larger than the heap.
+ *
+ * Groups are assigned to partitions with the method's entity splitter over the sorted set of group
+ * IDs, so the assignment of groups to test partitions is the same as the in-memory crossfold given the
+ * same random seed.  The order of ratings within output files differs.
+ */
+class StreamingCrossfold {
+    private static final Logger logger = LoggerFactory.getLogger(StreamingCrossfold.class);
+    static final int DEFAULT_BUCKET_COUNT = 128;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final GroupedCrossfoldMethod method;
+    private final EntityType entityType;
+    private final int bucketCount;
+    private LongSet itemIds;
+
+    StreamingCrossfold(GroupedCrossfoldMethod meth, EntityType type, int nbuckets) {
+        method = meth;
+        entityType = type;
+        bucketCount = nbuckets;
+    }
+
+    /**
+     * Get the item IDs seen while crossfolding.  This includes items referenced by sources that are not
+     * crossfolded.
+     * @return The item IDs.
+     */
+    LongSet getItemIds() {
+        return itemIds;
+    }
+
+    /**
+     * Run the crossfold.
+     * @param data The input data.
+     * @param output The crossfold output.
+     * @param spillDir The directory in which to create spill files.  It is removed when the crossfold
+     *                 finishes.
+     * @throws IOException if there is an error reading input or writing output.
+     */
+    void crossfold(StaticDataSource data, CrossfoldOutput output, Path spillDir) throws IOException {
+        Files.createDirectories(spillDir);
+        List<Path> files = new ArrayList<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            files.add(spillDir.resolve(String.format("bucket%03d.bin", i)));
+        }
+        try {
+            int[] sizes = new int[bucketCount];
+            LongSet groups = spill(data, files, sizes);
+
+            final int count = output.getCount();
+            logger.info("splitting {} groups into {} partitions with method {}",
+                        groups.size(), count, method);
+            Long2IntMap splits = method.getEntitySplitter().splitEntities(groups, count, output.getRandom());
+            splits.defaultReturnValue(-1); // unpartitioned groups should only be trained
+
+            // draw the seeds up front so the output does not depend on thread scheduling
+            long[] seeds = new long[bucketCount];
+            for (int i = 0; i < bucketCount; i++) {
+                seeds[i] = output.getRandom().nextLong();
+            }
+
+            logger.info("processing {} spill files in parallel", bucketCount);
+            try {
+                IntStream.range(0, bucketCount).parallel().forEach(b -> {
+                    try {
+                        processBucket(b, files.get(b), sizes[b], new Random(seeds[b]), splits, output);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+        } finally {
+            for (Path file: files) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(spillDir);
+        }
+    }
+
+    /**
+     * Stream the input data into the spill files.
+     * @param data The input data.
+     * @param files The spill files.
+     * @param sizes An array to receive the number of ratings written to each spill file.
+     * @return The set of group IDs.
+     */
+    private LongSet spill(StaticDataSource data, List<Path> files, int[] sizes) throws IOException {
+        TypedName<Long> attr = method.getGroupAttribute();
+        LongSet groups = new LongOpenHashSet();
+        LongSet items = new LongOpenHashSet();
+        long n = 0;
+
+        try (Closer closer = Closer.create()) {
+            DataOutputStream[] outs = new DataOutputStream[bucketCount];
+            for (int i = 0; i < bucketCount; i++) {
+                OutputStream stream = new BufferedOutputStream(Files.newOutputStream(files.get(i)), BUFFER_SIZE);
+                outs[i] = closer.register(new DataOutputStream(stream));
+            }
+
+            for (EntitySource src: data.getSources()) {
+                boolean crossfolded = src.getTypes().contains(entityType);
+                logger.info("streaming {} ({})", src, crossfolded ? "crossfolding" : "scanning for items");
+                try (ObjectStream<Entity> stream = src.openStream()) {
+                    for (Entity e: stream) {
+                        if (!crossfolded || !e.getType().equals(entityType)) {
+                            Long item = e.maybeGet(CommonAttributes.ITEM_ID);
+                            if (item != null) {
+                                items.add(item);
+                            }
+                            continue;
+                        }
+
+                        Rating r = Entities.project(e, Rating.class);
+                        long key = r.getLong(attr);
+                        groups.add(key);
+                        items.add(r.getItemId());
+                        int b = bucket(key);
+                        writeRating(outs[b], r);
+                        sizes[b] += 1;
+                        n += 1;
+                    }
+                }
+            }
+        }
+
+        logger.info("spilled {} ratings from {} groups into {} files", n, groups.size(), bucketCount);
+        itemIds = LongUtils.packedSet(items);
+        return LongUtils.packedSet(groups);
+    }
+
+    private int bucket(long key) {
+        return (int) Math.floorMod(HashCommon.mix(key), (long) bucketCount);
+    }
+
+    /**
+     * Crossfold the ratings in a single spill file.
+     */
+    private void processBucket(int b, Path file, int size, Random rng,
+                               Long2IntMap splits, CrossfoldOutput output) throws IOException {
+        TypedName<Long> attr = method.getGroupAttribute();
+        List<Rating> ratings = new ArrayList<>(size);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            for (int i = 0; i < size; i++) {
+                ratings.add(readRating(in));
+            }
+        }
+        Files.delete(file);
+
+        // stable sort, so each group's ratings keep their input order
+        ratings.sort(Comparator.comparingLong(r -> r.getLong(attr)));
+
+        List<List<Rating>> groups = new ArrayList<>();
+        IntList folds = new IntArrayList();
+        IntList points = new IntArrayList();
+        int start = 0;
+        while (start < ratings.size()) {
+            long key = ratings.get(start).getLong(attr);
+            int end = start + 1;
+            while (end < ratings.size() && ratings.get(end).getLong(attr) == key) {
+                end++;
+            }
+            List<Rating> group = ratings.subList(start, end);
+            int fold = splits.get(key);
+            int p = group.size();
+            if (fold >= 0) {
+                method.getOrder().apply(group, rng);
+                p = method.getPartition().partition(group);
+            }
+            groups.add(group);
+            folds.add(fold);
+            points.add(p);
+            start = end;
+        }
+
+        // rotate the starting partition so workers tend to contend for different writers
+        final int count = output.getCount();
+        for (int j = 0; j < count; j++) {
+            int f = (b + j) % count;
+            RatingWriter train = output.getTrainWriter(f);
+            synchronized (train) {
+                for (int g = 0; g < groups.size(); g++) {
+                    List<Rating> group = groups.get(g);
+                    int p = folds.getInt(g) == f ? points.getInt(g) : group.size();
+                    for (int k = 0; k < p; k++) {
+                        train.writeRating(group.get(k));
+                    }
+                }
+            }
+            RatingWriter test = output.getTestWriter(f);
+            synchronized (test) {
+                for (int g = 0; g < groups.size(); g++) {
+                    if (folds.getInt(g) != f) {
+                        continue;
+                    }
+                    List<Rating> group = groups.get(g);
+                    for (int k = points.getInt(g); k < group.size(); k++) {
+                        test.writeRating(group.get(k));
+                    }
+                }
+            }
+        }
+        logger.debug("crossfolded {} ratings from {} groups in spill file {}", size, groups.size(), b);
+    }
+
+    private static void writeRating(DataOutput out, Rating r) throws IOException {
+        out.writeLong(r.getId());
+        out.writeLong(r.getUserId());
+        out.writeLong(r.getItemId());
+        out.writeDouble(r.getValue());
+        out.writeLong(r.getTimestamp());
+    }
+
+    private static Rating readRating(DataInput in) throws IOException {
+        return Rating.newBuilder()
+                     .setId(in.readLong())
+                     .setUserId(in.readLong())
+                     .setItemId(in.readLong())
+                     .setRating(in.readDouble())
+                     .setTimestamp(in.readLong())
+                     .build();
+    }
+}
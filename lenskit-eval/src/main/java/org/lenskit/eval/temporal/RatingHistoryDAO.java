@@ -0,0 +1,191 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.eval.temporal;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Ordering;
+import it.unimi.dsi.fastutil.longs.*;
+import org.lenskit.data.dao.AbstractDataAccessObject;
+import org.lenskit.data.dao.EntityQuery;
+import org.lenskit.data.entities.*;
+import org.lenskit.data.ratings.Rating;
+import org.lenskit.util.io.ObjectStream;
+import org.lenskit.util.io.ObjectStreams;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Append-only DAO over a growing prefix of a rating stream.  It exposes the ratings and the users and items they
+ * reference, indexed by ID, user and item, so the temporal evaluator can make ratings visible without rebuilding a
+ * static data source.
+ *
+ * ID sets returned by this DAO are live views.  Ratings must not be added while a stream from it is open.
+ */
+class RatingHistoryDAO extends AbstractDataAccessObject {
+    private static final Set<EntityType> TYPES =
+            ImmutableSet.of(CommonTypes.RATING, CommonTypes.USER, CommonTypes.ITEM);
+
+    private final List<Rating> ratings = new ArrayList<>();
+    private final Long2ObjectMap<Rating> ratingsById = new Long2ObjectOpenHashMap<>();
+    private final Long2ObjectMap<List<Rating>> userRatings = new Long2ObjectOpenHashMap<>();
+    private final Long2ObjectMap<List<Rating>> itemRatings = new Long2ObjectOpenHashMap<>();
+    private final LongList itemList = new LongArrayList();
+
+    /**
+     * Add a rating to the history.
+     * @param r The rating to add.
+     */
+    void add(Rating r) {
+        ratings.add(r);
+        if (!ratingsById.containsKey(r.getId())) {
+            ratingsById.put(r.getId(), r);
+        }
+        List<Rating> ur = userRatings.get(r.getUserId());
+        if (ur == null) {
+            ur = new ArrayList<>();
+            userRatings.put(r.getUserId(), ur);
+        }
+        ur.add(r);
+        List<Rating> ir = itemRatings.get(r.getItemId());
+        if (ir == null) {
+            ir = new ArrayList<>();
+            itemRatings.put(r.getItemId(), ir);
+            itemList.add(r.getItemId());
+        }
+        ir.add(r);
+    }
+
+    /**
+     * Get the number of ratings in the history.
+     * @return The number of ratings added.
+     */
+    int size() {
+        return ratings.size();
+    }
+
+    /**
+     * Get the items in the history, for random access.
+     * @return The IDs of the items rated so far, in order of first rating.
+     */
+    LongList getItemList() {
+        return LongLists.unmodifiable(itemList);
+    }
+
+    @Override
+    public Set<EntityType> getEntityTypes() {
+        return TYPES;
+    }
+
+    @Override
+    public LongSet getEntityIds(EntityType type) {
+        if (type.equals(CommonTypes.USER)) {
+            return LongSets.unmodifiable(userRatings.keySet());
+        } else if (type.equals(CommonTypes.ITEM)) {
+            return LongSets.unmodifiable(itemRatings.keySet());
+        } else if (type.equals(CommonTypes.RATING)) {
+            return LongSets.unmodifiable(ratingsById.keySet());
+        } else {
+            return LongSets.EMPTY_SET;
+        }
+    }
+
+    @Nullable
+    @Override
+    public Entity lookupEntity(EntityType type, long id) {
+        if (type.equals(CommonTypes.USER)) {
+            return userRatings.containsKey(id) ? Entities.create(type, id) : null;
+        } else if (type.equals(CommonTypes.ITEM)) {
+            return itemRatings.containsKey(id) ? Entities.create(type, id) : null;
+        } else if (type.equals(CommonTypes.RATING)) {
+            return ratingsById.get(id);
+        }
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public <E extends Entity> E lookupEntity(EntityType type, long id, Class<E> view) {
+        Entity entity = lookupEntity(type, id);
+        return entity != null ? Entities.project(entity, view) : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <E extends Entity> ObjectStream<E> streamEntities(EntityQuery<E> query) {
+        EntityType type = query.getEntityType();
+        List<? extends Entity> data;
+        if (type.equals(CommonTypes.RATING)) {
+            data = findRatings(query.getFilterFields());
+        } else if (type.equals(CommonTypes.USER) || type.equals(CommonTypes.ITEM)) {
+            LongSet ids = getEntityIds(type);
+            List<Entity> entities = new ArrayList<>(ids.size());
+            LongIterator iter = ids.iterator();
+            while (iter.hasNext()) {
+                entities.add(Entities.create(type, iter.nextLong()));
+            }
+            data = entities;
+        } else {
+            return ObjectStreams.empty();
+        }
+
+        ObjectStream<Entity> stream = ObjectStreams.wrap(data);
+        if (!query.getFilterFields().isEmpty()) {
+            stream = ObjectStreams.filter(stream, query);
+        }
+        ObjectStream<E> result = query.getViewType().equals(Entity.class)
+                ? (ObjectStream<E>) stream
+                : ObjectStreams.transform(stream, Entities.projection(query.getViewType()));
+
+        Ordering<Entity> ord = query.getOrdering();
+        if (ord == null) {
+            return result;
+        }
+        try {
+            return ObjectStreams.wrap(ord.immutableSortedCopy(result));
+        } finally {
+            result.close();
+        }
+    }
+
+    /**
+     * Find the ratings that may match a set of filters, using the user or item index if possible.
+     */
+    private List<Rating> findRatings(List<Attribute<?>> filters) {
+        for (Attribute<?> attr: filters) {
+            if (attr.getTypedName().equals(CommonAttributes.USER_ID)) {
+                List<Rating> found = userRatings.get(((Long) attr.getValue()).longValue());
+                return found != null ? found : Collections.<Rating>emptyList();
+            } else if (attr.getTypedName().equals(CommonAttributes.ITEM_ID)) {
+                List<Rating> found = itemRatings.get(((Long) attr.getValue()).longValue());
+                return found != null ? found : Collections.<Rating>emptyList();
+            }
+        }
+        return ratings;
+    }
+}
@@ -29,20 +29,25 @@ import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SequenceWriter;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
+import it.unimi.dsi.fastutil.longs.LongList;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
 import org.lenskit.LenskitConfiguration;
 import org.lenskit.LenskitRecommenderEngine;
+import org.lenskit.LenskitRecommenderEngineBuilder;
 import org.lenskit.api.*;
 import org.lenskit.data.dao.DataAccessObject;
 import org.lenskit.data.dao.file.StaticDataSource;
 import org.lenskit.data.entities.CommonAttributes;
 import org.lenskit.data.entities.CommonTypes;
-import org.lenskit.data.entities.Entity;
 import org.lenskit.data.ratings.Rating;
 import org.lenskit.eval.traintest.AlgorithmInstance;
+import org.lenskit.util.ProgressLogger;
 import org.lenskit.util.collections.LongUtils;
 import org.lenskit.util.io.CompressionMode;
+import org.lenskit.util.io.ObjectStream;
+import org.lenskit.util.monitor.LatencyHistogram;
 import org.lenskit.util.table.TableLayout;
 import org.lenskit.util.table.TableLayoutBuilder;
 import org.lenskit.util.table.writer.CSVWriter;
@@ -68,6 +73,7 @@ public class TemporalEvaluator {
     private DataAccessObject dataSource;
     private File outputFile;
     private File extendedOutputFile;
+    private Path summaryOutputFile;
     private long rebuildPeriod;
     private int listSize;
 
@@ -156,6 +162,26 @@ public class TemporalEvaluator {
         return this;
     }
 
+    /**
+     * Get the output file for the run summary.
+     * @return The summary output file, or `null` if no summary is written.
+     */
+    @Nullable
+    public Path getSummaryOutputFile() {
+        return summaryOutputFile;
+    }
+
+    /**
+     * Set the output file for the run summary: a one-row CSV file with the number of builds, total build time,
+     * final TARMSE, and percentiles of the per-rating evaluation latency (in milliseconds).
+     * @param file The output file name.
+     * @return The evaluator (for chaining).
+     */
+    public TemporalEvaluator setSummaryOutputFile(@Nullable Path file) {
+        summaryOutputFile = file;
+        return this;
+    }
+
     /**
      * @param time The time to rebuild
      * @param unit Unit of time set
@@ -214,7 +240,11 @@ public class TemporalEvaluator {
 
     /**
      * During the evaluation, it will replay the ratings, try to predict each one, and
-     * write the prediction, TARMSE and the rating to the output file
+     * write the prediction, TARMSE and the rating to the output file.
+     *
+     * Ratings are streamed in time order and appended to an in-memory history as the clock advances; each
+     * rating is predicted from the ratings with earlier timestamps.  When a rebuild is due, the model is retrained
+     * from the history.
      */
     public void execute() throws IOException, RecommenderBuildException {
         loadInputs();
@@ -222,66 +252,69 @@ public class TemporalEvaluator {
         //Initialize recommender engine and recommender
         LenskitRecommenderEngine lre = null;
         Recommender recommender = null;
+        RatingHistoryDAO history = new RatingHistoryDAO();
+        LatencyHistogram latency = new LatencyHistogram();
 
         //Start try block -- will try to write output on file
         try (TableWriter tableWriter = openOutput();
-             SequenceWriter extWriter = openExtendedOutput()) {
-            // FIXME Don't keep this whole list in (second) memory.
-            List<Rating> ratings = dataSource.query(Rating.class)
-                                             .orderBy(CommonAttributes.TIMESTAMP)
-                                             .get();
-
-            DataAccessObject limitedDao = StaticDataSource.fromList(Collections.<Entity>emptyList()).get();
-            long limitTimestamp = 0;
+             SequenceWriter extWriter = openExtendedOutput();
+             ObjectStream<Rating> ratings = dataSource.query(Rating.class)
+                                                      .orderBy(CommonAttributes.TIMESTAMP)
+                                                      .stream()) {
+            // ratings at the current timestamp, added to the history when the clock advances
+            List<Rating> pending = new ArrayList<>();
+            long now = 0;
 
             //Initialize local variables, will use to calculate RMSE
             double sse = 0;
             int n = 0;
+            double rmse = 0.0;
             // Initialize build parameters
             long buildTime = 0L;
             int buildsCount = 0;
-            int ratingsSinceLastBuild = 0;
+            int builtSize = 0;
+            double buildSeconds = 0;
+            double totalBuildSeconds = 0;
+            long nratings = 0;
 
             //Loop through ratings
-            ListIterator<Rating> riter = ratings.listIterator();
-            while (riter.hasNext()) {
-                int ridx = riter.nextIndex();
-                Rating r = riter.next();
-                Map<String,Object> json = new HashMap<>();
-                json.put("userId", r.getUserId());
-                json.put("itemId", r.getItemId());
-                json.put("timestamp", r.getTimestamp());
-                json.put("rating", r.getValue());
-
-                if (recommender == null || (r.getTimestamp() > 0 && limitTimestamp < r.getTimestamp())) {
-                    limitedDao = StaticDataSource.fromList(ratings.subList(0, ridx)).get();
+            for (Rating r: ratings) {
+                if (recommender == null || (r.getTimestamp() > 0 && now < r.getTimestamp())) {
+                    for (Rating p: pending) {
+                        history.add(p);
+                    }
+                    pending.clear();
+                    now = r.getTimestamp();
 
                     //rebuild recommender system if its older then rebuild period set or null
                     if ((r.getTimestamp() - buildTime >= rebuildPeriod) || lre == null) {
                         buildTime = r.getTimestamp();
+                        Stopwatch timer = Stopwatch.createStarted();
                         buildsCount++;
-
                         logger.info("building model {} at time {}, {} ratings since last build",
-                                    buildsCount, buildTime, ratingsSinceLastBuild);
-
-                        Stopwatch timer = Stopwatch.createStarted();
-                        lre = LenskitRecommenderEngine.newBuilder()
-                                                      .addConfiguration(algorithm.getConfigurations().get(0))
-                                                      .build(limitedDao);
+                                    buildsCount, buildTime, history.size() - builtSize);
+                        lre = buildEngine(history);
                         timer.stop();
                         logger.info("built model {} in {}", buildsCount, timer);
-
-                        ratingsSinceLastBuild = 0;
+                        builtSize = history.size();
+                        buildSeconds = timer.elapsed(TimeUnit.MILLISECONDS) * 0.001;
+                        totalBuildSeconds += buildSeconds;
                     }
                     if (recommender != null) {
                         recommender.close();
                     }
-                    recommender = lre.createRecommender(limitedDao);
+                    recommender = lre.createRecommender(history);
                 }
-                ratingsSinceLastBuild += 1;
+                nratings += 1;
 
+                Map<String,Object> json = new HashMap<>();
+                json.put("userId", r.getUserId());
+                json.put("itemId", r.getItemId());
+                json.put("timestamp", r.getTimestamp());
+                json.put("rating", r.getValue());
                 json.put("modelAge", r.getTimestamp() - buildTime);
 
+                long start = System.nanoTime();
                 // get rating prediction if available
                 Double predict = null;
                 RatingPredictor predictor = recommender.getRatingPredictor();
@@ -298,31 +331,40 @@ public class TemporalEvaluator {
                     json.put("prediction", null);
                 }
 
+                // Compute recommendations
+                Integer rank = null;
+                ItemRecommender irec = recommender.getItemRecommender();
+                if (irec != null) {
+                    rank = getRecommendationRank(history, r, json, irec);
+                }
+                long elapsed = System.nanoTime() - start;
+                latency.record(elapsed);
+
                 /***calculate Time Averaged RMSE***/
-                double rmse = 0.0;
+                double rowRmse = 0.0;
                 if (predict != null && !Double.isNaN(predict)) {
                     double err = predict - r.getValue();
                     sse += err * err;
                     n++;
                     rmse = sqrt(sse / n);
-                }
-
-                // Compute recommendations
-                Integer rank = null;
-                ItemRecommender irec = recommender.getItemRecommender();
-                if (irec != null) {
-                    rank = getRecommendationRank(limitedDao, r, json, irec);
-
+                    rowRmse = rmse;
                 }
 
                 /**writes the Prediction Score, Rank and TARMSE on file.**/
                 tableWriter.writeRow(r.getUserId(), r.getItemId(), r.getValue(), r.getTimestamp(),
-                                     predict, rmse, r.getTimestamp() - buildTime, rank, buildsCount);
+                                     predict, rowRmse, r.getTimestamp() - buildTime, rank,
+                                     buildsCount, buildSeconds, elapsed * 1.0e-6);
                 if (extWriter != null) {
                     extWriter.write(json);
                 }
+                pending.add(r);
             } // loop ratings
 
+            logger.info("replayed {} ratings with {} builds ({}); latency p50={}ms, p99={}ms",
+                        nratings, buildsCount, ProgressLogger.formatElapsedTime(totalBuildSeconds),
+                        String.format("%.3f", latency.getPercentile(50) * 1.0e-6),
+                        String.format("%.3f", latency.getPercentile(99) * 1.0e-6));
+            writeSummary(nratings, buildsCount, totalBuildSeconds, rmse, latency);
         } finally {
             if (recommender != null) {
                 recommender.close();
@@ -330,16 +372,24 @@ public class TemporalEvaluator {
         }
     }
 
+    private LenskitRecommenderEngine buildEngine(DataAccessObject dao) throws RecommenderBuildException {
+        LenskitRecommenderEngineBuilder builder = LenskitRecommenderEngine.newBuilder();
+        for (LenskitConfiguration config: algorithm.getConfigurations()) {
+            builder.addConfiguration(config);
+        }
+        return builder.build(dao);
+    }
+
     /**
      * Get the rank of the recommended item.
-     * @param dao The limited DAO.
+     * @param dao The rating history.
      * @param rating The rating.
      * @param json The JSON object being built.
      * @param irec The item recommender.
      * @return The rank, or `null` if the item is not recommended.
      */
     @Nullable
-    private Integer getRecommendationRank(DataAccessObject dao, Rating rating, Map<String, Object> json, ItemRecommender irec) {
+    private Integer getRecommendationRank(RatingHistoryDAO dao, Rating rating, Map<String, Object> json, ItemRecommender irec) {
         Integer rank; /***calculate recommendation rank***/
                     /* set of candidates that includes current item +
                        listsize-1 random values from (items from dao - items rated by user) */
@@ -357,8 +407,7 @@ public class TemporalEvaluator {
                            .valueSet(CommonAttributes.ITEM_ID));
 
         // Add a random set of decoy items
-        candidates.addAll(LongUtils.randomSubset(dao.getEntityIds(CommonTypes.ITEM),
-                                                 listSize - 1, excludes, rng));
+        candidates.addAll(sampleDecoys(dao, listSize - 1, excludes));
 
         // get list of recommendations
         List<Long> recs = irec.recommend(rating.getUserId(), listSize, candidates, null);
@@ -373,6 +422,57 @@ public class TemporalEvaluator {
         return rank;
     }
 
+    /**
+     * Sample random decoy items.  When most items are eligible this samples by rejection, so it does not scan
+     * the item set for every rating.
+     * @param dao The rating history.
+     * @param num The number of items to sample.
+     * @param excludes The items to exclude.
+     * @return The sampled items.
+     */
+    private LongSet sampleDecoys(RatingHistoryDAO dao, int num, LongSet excludes) {
+        LongList items = dao.getItemList();
+        int nitems = items.size();
+        if (num <= 0) {
+            return LongSets.EMPTY_SET;
+        } else if (excludes.size() * 2 >= nitems || num * 2 > nitems) {
+            return LongUtils.randomSubset(dao.getEntityIds(CommonTypes.ITEM), num, excludes, rng);
+        }
+        LongSet selected = new LongOpenHashSet(num);
+        while (selected.size() < num) {
+            long item = items.getLong(rng.nextInt(nitems));
+            if (!excludes.contains(item)) {
+                selected.add(item);
+            }
+        }
+        return selected;
+    }
+
+    private void writeSummary(long nratings, int builds, double buildSeconds, double rmse,
+                              LatencyHistogram latency) throws IOException {
+        if (summaryOutputFile == null) {
+            return;
+        }
+        TableLayoutBuilder tlb = new TableLayoutBuilder();
+        tlb.addColumn("Ratings")
+           .addColumn("Rebuilds")
+           .addColumn("BuildTime")
+           .addColumn("TARMSE")
+           .addColumn("Latency.Mean")
+           .addColumn("Latency.P50")
+           .addColumn("Latency.P95")
+           .addColumn("Latency.P99")
+           .addColumn("Latency.Max");
+        try (TableWriter writer = CSVWriter.open(summaryOutputFile.toFile(), tlb.build(), CompressionMode.AUTO)) {
+            writer.writeRow(nratings, builds, buildSeconds, rmse,
+                            latency.getMean() * 1.0e-6,
+                            latency.getPercentile(50) * 1.0e-6,
+                            latency.getPercentile(95) * 1.0e-6,
+                            latency.getPercentile(99) * 1.0e-6,
+                            latency.getMax() * 1.0e-6);
+        }
+    }
+
     @Nullable
     private TableWriter openOutput() throws IOException {
         TableLayoutBuilder tlb = new TableLayoutBuilder();
@@ -385,7 +485,9 @@ public class TemporalEvaluator {
            .addColumn("TARMSE")
            .addColumn("ModelAge")
            .addColumn("Rank")
-           .addColumn("Rebuilds");
+           .addColumn("Rebuilds")
+           .addColumn("BuildTime")
+           .addColumn("Latency");
 
         TableLayout layout = tlb.build();
 
@@ -25,6 +25,7 @@
 package org.lenskit.eval.traintest;
 
 import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import org.lenskit.LenskitConfiguration;
@@ -37,6 +38,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -53,6 +55,9 @@ public class AlgorithmInstance {
     private final List<LenskitConfiguration> configurations;
     @Nonnull
     private final Map<String, Object> attributes;
+    private final long memoryEstimate;
+    @Nullable
+    private final ParameterSweep sweep;
 
     /**
      * Construct a new algorithm instance.
@@ -71,9 +76,37 @@ public class AlgorithmInstance {
      * @param attrs The attributes for this algorithm instance.
      */
     public AlgorithmInstance(String name, List<LenskitConfiguration> configs, Map<String, Object> attrs) {
+        this(name, configs, attrs, 0);
+    }
+
+    /**
+     * Construct a new algorithm instance.
+     * @param name The algorithm name.
+     * @param configs The algorithm configurations.
+     * @param attrs The attributes for this algorithm instance.
+     * @param memEst The estimated peak heap use (in bytes) of evaluating this algorithm, or 0 if unknown.
+     */
+    public AlgorithmInstance(String name, List<LenskitConfiguration> configs, Map<String, Object> attrs,
+                             long memEst) {
+        this(name, configs, attrs, memEst, null);
+    }
+
+    /**
+     * Construct a new algorithm instance.
+     * @param name The algorithm name.
+     * @param configs The algorithm configurations.
+     * @param attrs The attributes for this algorithm instance.
+     * @param memEst The estimated peak heap use (in bytes) of evaluating this algorithm, or 0 if unknown.
+     * @param sweep The parameter sweep, or `null` to evaluate the algorithm as configured.
+     */
+    public AlgorithmInstance(String name, List<LenskitConfiguration> configs, Map<String, Object> attrs,
+                             long memEst, @Nullable ParameterSweep sweep) {
+        Preconditions.checkArgument(memEst >= 0, "memory estimate cannot be negative");
         algoName = name;
         configurations = ImmutableList.copyOf(configs);
         attributes = ImmutableMap.copyOf(attrs);
+        memoryEstimate = memEst;
+        this.sweep = sweep;
     }
 
 
@@ -97,6 +130,59 @@ public class AlgorithmInstance {
         return attributes;
     }
 
+    /**
+     * Get the declared estimate of this algorithm's peak heap use.  The memory-aware scheduler uses this for
+     * jobs that have not been measured in a previous run.
+     *
+     * @return The estimated peak heap use of a job evaluating this algorithm, in bytes, or 0 if unknown.
+     * @see TrainTestExperiment#setMemoryBudget(long)
+     */
+    public long getMemoryEstimate() {
+        return memoryEstimate;
+    }
+
+    /**
+     * Get the parameter sweep for this algorithm.
+     * @return The parameter sweep, or `null` if the algorithm is evaluated as configured.
+     */
+    @Nullable
+    public ParameterSweep getSweep() {
+        return sweep;
+    }
+
+    /**
+     * Get the algorithm instances for each point in this algorithm's sweep.  Each instance binds the swept
+     * parameter to one value and records that value as an attribute.
+     *
+     * @return The sweep's algorithm instances, or a list containing only this instance if there is no sweep.
+     */
+    public List<AlgorithmInstance> getSweepInstances() {
+        if (sweep == null) {
+            return Collections.singletonList(this);
+        }
+        ImmutableList.Builder<AlgorithmInstance> points = ImmutableList.builder();
+        for (int v: sweep.getValues()) {
+            List<LenskitConfiguration> cfgs = new ArrayList<>(configurations);
+            cfgs.add(sweep.configure(v));
+            Map<String, Object> attrs = new LinkedHashMap<>(attributes);
+            attrs.put(sweep.getAttribute(), v);
+            points.add(new AlgorithmInstance(algoName, cfgs, attrs, memoryEstimate));
+        }
+        return points.build();
+    }
+
+    /**
+     * Get the algorithm instance from which all points of this algorithm's sweep are scored.
+     *
+     * @return An instance binding the swept parameter to its {@linkplain ParameterSweep#getBuildValue() build value}.
+     */
+    AlgorithmInstance getSweepBase() {
+        Preconditions.checkState(sweep != null, "algorithm has no sweep");
+        List<LenskitConfiguration> cfgs = new ArrayList<>(configurations);
+        cfgs.add(sweep.configure(sweep.getBuildValue()));
+        return new AlgorithmInstance(algoName, cfgs, attributes, memoryEstimate);
+    }
+
     /**
      * Get the recommender configurations.
      * @return
@@ -154,6 +240,9 @@ public class AlgorithmInstance {
                   .appendTo(sb, subAttrs);
             sb.append("]");
         }
+        if (sweep != null) {
+            sb.append(" with ").append(sweep);
+        }
         return sb.toString();
     }
 }
@@ -31,6 +31,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -47,6 +48,8 @@ public class AlgorithmInstanceBuilder implements Builder<AlgorithmInstance> {
     private LenskitConfiguration config;
     private String name;
     private Map<String, Object> attributes = new LinkedHashMap<>();
+    private long memoryEstimate;
+    private ParameterSweep sweep;
 
     /**
      * Construct a new algorithm instance builder.
@@ -139,6 +142,58 @@ public class AlgorithmInstanceBuilder implements Builder<AlgorithmInstance> {
         return result;
     }
 
+    /**
+     * Set the estimated peak heap use of evaluating this algorithm.
+     *
+     * @param bytes The estimated peak heap use, in bytes, or 0 to inherit the parent's estimate.
+     * @return The builder (for chaining).
+     * @see AlgorithmInstance#getMemoryEstimate()
+     */
+    public AlgorithmInstanceBuilder setMemoryEstimate(long bytes) {
+        Preconditions.checkArgument(bytes >= 0, "memory estimate cannot be negative");
+        memoryEstimate = bytes;
+        return this;
+    }
+
+    /**
+     * Get the estimated peak heap use of evaluating this algorithm.
+     *
+     * @return The estimated peak heap use, in bytes, or 0 if unknown.
+     */
+    public long getMemoryEstimate() {
+        if (memoryEstimate == 0 && parent != null) {
+            return parent.getMemoryEstimate();
+        } else {
+            return memoryEstimate;
+        }
+    }
+
+    /**
+     * Set a parameter sweep for this algorithm.
+     *
+     * @param sw The parameter sweep, or `null` to inherit the parent's sweep.
+     * @return The builder (for chaining).
+     * @see AlgorithmInstance#getSweep()
+     */
+    public AlgorithmInstanceBuilder setSweep(@Nullable ParameterSweep sw) {
+        sweep = sw;
+        return this;
+    }
+
+    /**
+     * Get the parameter sweep for this algorithm.
+     *
+     * @return The parameter sweep, or `null` if there is none.
+     */
+    @Nullable
+    public ParameterSweep getSweep() {
+        if (sweep == null && parent != null) {
+            return parent.getSweep();
+        } else {
+            return sweep;
+        }
+    }
+
     /**
      * Get the LensKit configuration.
      * @return The LensKit configuration.
@@ -185,6 +240,7 @@ public class AlgorithmInstanceBuilder implements Builder<AlgorithmInstance> {
 
     @Override
     public AlgorithmInstance build() {
-        return new AlgorithmInstance(getName(), getConfigurations(), getAllAttributes());
+        return new AlgorithmInstance(getName(), getConfigurations(), getAllAttributes(), getMemoryEstimate(),
+                                     getSweep());
     }
 }
@@ -40,6 +40,7 @@ import org.lenskit.inject.GraphtUtils;
 import org.lenskit.inject.NodeInstantiator;
 import org.lenskit.inject.NodeProcessor;
 import org.lenskit.util.describe.*;
+import org.lenskit.util.io.CodecObjectOutputStream;
 import org.lenskit.util.io.CustomClassLoaderObjectInputStream;
 import org.lenskit.util.io.StagedWrite;
 import org.lenskit.util.parallel.Blockers;
@@ -299,7 +300,7 @@ class ComponentCache implements NodeProcessor {
             try (StagedWrite stage = StagedWrite.begin(cacheFile)) {
                 try (OutputStream out = stage.openOutputStream();
                      OutputStream gzOut = new GZIPOutputStream(out);
-                     ObjectOutputStream objOut = new ObjectOutputStream(gzOut)) {
+                     ObjectOutputStream objOut = new CodecObjectOutputStream(gzOut)) {
                     objOut.writeObject(obj);
                 }
                 // now we commit, after closing the output files
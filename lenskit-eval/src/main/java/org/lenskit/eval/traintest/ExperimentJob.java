@@ -24,8 +24,10 @@
  */
 package org.lenskit.eval.traintest;
 
+import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
-import com.google.common.collect.Lists;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Closer;
 import net.jcip.annotations.ThreadSafe;
 import org.grouplens.grapht.Component;
 import org.grouplens.grapht.Dependency;
@@ -36,6 +38,7 @@ import org.lenskit.LenskitConfiguration;
 import org.lenskit.LenskitRecommender;
 import org.lenskit.LenskitRecommenderEngine;
 import org.lenskit.LenskitRecommenderEngineBuilder;
+import org.lenskit.api.Recommender;
 import org.lenskit.api.RecommenderBuildException;
 import org.lenskit.data.dao.DataAccessObject;
 import org.lenskit.data.dao.file.StaticDataSource;
@@ -46,9 +49,12 @@ import org.lenskit.data.entities.EntityType;
 import org.lenskit.inject.GraphtUtils;
 import org.lenskit.inject.NodeProcessors;
 import org.lenskit.util.ProgressLogger;
+import org.lenskit.util.monitor.HeapMonitor;
+import org.lenskit.util.monitor.LatencyHistogram;
 import org.lenskit.util.monitor.TrackedJob;
 import org.lenskit.util.parallel.Blockers;
 import org.lenskit.util.table.RowBuilder;
+import org.lenskit.util.table.writer.MultiplexedTableWriter;
 import org.lenskit.util.table.writer.TableWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,21 +62,27 @@ import org.tukaani.xz.UnsupportedOptionsException;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 /**
- * Individual job evaluating a single experimental condition.
+ * Individual job evaluating one or more experimental conditions from a single recommender model.  A job normally
+ * evaluates a single algorithm; a job for a {@linkplain ParameterSweep parameter sweep} evaluates every value of
+ * the sweep from a model trained once.
  */
 class ExperimentJob extends RecursiveAction {
     private static final Logger logger = LoggerFactory.getLogger(ExperimentJob.class);
@@ -85,6 +97,9 @@ class ExperimentJob extends RecursiveAction {
 
     private final TrainTestExperiment experiment;
     private final AlgorithmInstance algorithm;
+    @Nullable
+    private final ParameterSweep sweep;
+    private final List<Condition> conditions;
     private final DataSet dataSet;
     private final LenskitConfiguration sharedConfig;
 
@@ -93,37 +108,94 @@ class ExperimentJob extends RecursiveAction {
     private final MergePool<Component, Dependency> mergePool;
     private final TrackedJob tracker;
     private final Semaphore limitSemaphore;
+    @Nullable
+    private final MemoryScheduler memoryScheduler;
+    private volatile long heapPeak;
 
+    /**
+     * Create a new experiment job.
+     * @param exp The experiment.
+     * @param algo The algorithm to build.
+     * @param sw The parameter sweep to score from the built algorithm, or `null` to evaluate it as built.
+     * @param conds The conditions to measure.  Without a sweep, this must be a single condition.
+     */
     ExperimentJob(TrainTestExperiment exp,
                   @Nonnull AlgorithmInstance algo,
+                  @Nullable ParameterSweep sw,
+                  @Nonnull List<Condition> conds,
                   @Nonnull DataSet ds,
                   LenskitConfiguration shared,
                   @Nullable ComponentCache cache,
                   @Nullable MergePool<Component, Dependency> pool,
-                  TrackedJob tj, @Nullable Semaphore limit) {
+                  TrackedJob tj, @Nullable Semaphore limit,
+                  @Nullable MemoryScheduler msched) {
+        Preconditions.checkArgument(!conds.isEmpty(), "no conditions to evaluate");
+        Preconditions.checkArgument(sw != null || conds.size() == 1, "multiple conditions require a sweep");
         experiment = exp;
         algorithm = algo;
+        sweep = sw;
+        conditions = ImmutableList.copyOf(conds);
         dataSet = ds;
         sharedConfig = shared;
         this.cache = cache;
         mergePool = pool;
         tracker = tj;
         limitSemaphore = limit;
+        memoryScheduler = msched;
+    }
+
+    DataSet getDataSet() {
+        return dataSet;
+    }
+
+    AlgorithmInstance getAlgorithm() {
+        return algorithm;
+    }
+
+    List<Condition> getConditions() {
+        return conditions;
+    }
+
+    /**
+     * Create a copy of this job that evaluates only some of its conditions.
+     * @param conds The conditions to evaluate, a subset of this job's conditions.
+     * @return The restricted job.
+     */
+    ExperimentJob withConditions(List<Condition> conds) {
+        Preconditions.checkArgument(conditions.containsAll(conds), "conditions are not part of this job");
+        return new ExperimentJob(experiment, algorithm, sweep, conds, dataSet, sharedConfig,
+                                 cache, mergePool, tracker, limitSemaphore, memoryScheduler);
     }
 
     @Override
     protected void compute() {
-        if (limitSemaphore != null) {
-            try {
+        long reservation = 0;
+        try {
+            if (limitSemaphore != null) {
                 Blockers.acquireSemaphore(limitSemaphore);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new EvaluationException("Evaluation interrupted", e);
             }
+            if (memoryScheduler != null) {
+                try {
+                    reservation = memoryScheduler.acquire(memoryScheduler.estimate(dataSet, algorithm));
+                } catch (InterruptedException e) {
+                    if (limitSemaphore != null) {
+                        limitSemaphore.release();
+                    }
+                    throw e;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EvaluationException("Evaluation interrupted", e);
         }
         try {
             tracker.start();
+            long heapBase = HeapMonitor.retainedHeap();
+            heapPeak = heapBase;
             doEvaluate();
+            if (memoryScheduler != null) {
+                memoryScheduler.record(dataSet, algorithm, heapPeak - heapBase);
+            }
             tracker.finish();
         } catch (Exception th) {
             if (Thread.interrupted()) {
@@ -141,6 +213,9 @@ class ExperimentJob extends RecursiveAction {
                 throw new EvaluationException("Error running evaluation", th);
             }
         } finally {
+            if (memoryScheduler != null) {
+                memoryScheduler.release(reservation);
+            }
             if (limitSemaphore != null) {
                 limitSemaphore.release();
             }
@@ -148,62 +223,112 @@ class ExperimentJob extends RecursiveAction {
     }
 
     /**
-     * Inner helper to control the evaluation.
+     * Sample the retained heap to track this job's peak memory use.  Samples are taken while the job's models are
+     * live, so growth in the heap surviving collection approximates the models' footprint.
+     */
+    private void sampleHeap() {
+        long used = HeapMonitor.retainedHeap();
+        if (used > heapPeak) {
+            heapPeak = used;
+        }
+    }
+
+    /**
+     * Inner helper to control the evaluation, opening (and closing) the output for each condition.
      */
     private void doEvaluate() {
+        try (Closer closer = Closer.create()) {
+            List<ConditionRun> runs = new ArrayList<>(conditions.size());
+            for (Condition cond: conditions) {
+                runs.add(closer.register(new ConditionRun(cond)));
+            }
+            doEvaluate(runs);
+        } catch (IOException e) {
+            throw new EvaluationException("error writing output for " + algorithm + " on " + dataSet, e);
+        }
+    }
+
+    /**
+     * Run the evaluation.
+     * @param runs The conditions to evaluate.
+     */
+    private void doEvaluate(List<ConditionRun> runs) throws IOException {
         TrackedJob setup = tracker.makeChild(SETUP_JOB_TYPE);
         TrackedJob train = tracker.makeChild(TRAIN_JOB_TYPE);
         TrackedJob test = tracker.makeChild(TEST_JOB_TYPE);
 
         setup.start();
-        ExperimentOutputLayout layout = experiment.getOutputLayout();
-        TableWriter globalOutput = layout.prefixTable(experiment.getGlobalOutput(),
-                                                      dataSet, algorithm);
-        TableWriter userOutput = layout.prefixTable(experiment.getUserOutput(),
-                                                    dataSet, algorithm);
-        RowBuilder outputRow = globalOutput.getLayout().newRowBuilder();
-
         logger.info("fetching training data");
         DataAccessObject trainData = dataSet.getTrainingData().get();
 
         StaticDataSource rt = dataSet.getRuntimeData();
         DataAccessObject runtimeData = rt != null ? rt.get() : null;
+        DataAccessObject testData = dataSet.getTestData().get();
         setup.finish();
 
-        train.start();
-        logger.info("Building {} on {}", algorithm, dataSet);
-        Stopwatch buildTimer = Stopwatch.createStarted();
-        LenskitRecommenderEngine engine;
         try {
-             engine = buildRecommenderEngine(trainData);
-        } catch (Throwable th) {
-            outputRow.add("Succeeded", "N");
-            try {
-                globalOutput.writeRow(outputRow.buildList());
-            } catch (Throwable e) {
-                th.addSuppressed(e);
+            train.start();
+            logger.info("Building {} on {}", algorithm, dataSet);
+            Stopwatch buildTimer = Stopwatch.createStarted();
+            LenskitRecommenderEngine engine = buildRecommenderEngine(algorithm, trainData);
+            buildTimer.stop();
+            sampleHeap();
+
+            boolean sweeping = false;
+            if (sweep != null) {
+                try (LenskitRecommender rec = buildRecommender(engine, trainData, runtimeData)) {
+                    sweeping = SweepRecommender.supports(rec, sweep.getParameter(),
+                                                         experiment.getApproximateSweeps());
+                }
             }
-            throw th;
-        }
-        buildTimer.stop();
-        train.finish();
-        logger.info("Built {} in {}", algorithm.getName(), buildTimer);
-        outputRow.add("BuildTime", buildTimer.elapsed(TimeUnit.MILLISECONDS) * 0.001);
-        logger.info("Measuring {} on {}", algorithm.getName(), dataSet.getName());
-
-        List<ConditionEvaluator> accumulators = Lists.newArrayList();
-
-        for (EvalTask task : experiment.getTasks()) {
-            ConditionEvaluator ce = task.createConditionEvaluator(algorithm, dataSet, engine);
-            if (ce != null) {
-                accumulators.add(ce);
+            train.finish();
+            logger.info("Built {} in {}", algorithm.getName(), buildTimer);
+
+            final int nusers = testData.query(CommonTypes.USER).count();
+            if (sweep == null || sweeping) {
+                test.start(nusers);
+                testConditions(engine, runs, sweeping, buildTimer, test,
+                               trainData, runtimeData, testData);
             } else {
-                logger.warn("Could not instantiate task {} for algorithm {} on data set {}",
-                            task, algorithm, dataSet);
+                logger.warn("{} cannot score an exact sweep of {}, building each value separately",
+                            algorithm, sweep.getParameter().getSimpleName());
+                // release the shared model, it is not used to score the points
+                engine = null;
+                test.start(nusers * runs.size());
+                for (ConditionRun run: runs) {
+                    Stopwatch timer = Stopwatch.createStarted();
+                    LenskitRecommenderEngine pointEngine = buildRecommenderEngine(run.getAlgorithm(), trainData);
+                    timer.stop();
+                    sampleHeap();
+                    testConditions(pointEngine, Collections.singletonList(run), false, timer, test,
+                                   trainData, runtimeData, testData);
+                }
+            }
+            test.finish();
+        } catch (Throwable th) {
+            for (ConditionRun run: runs) {
+                run.fail(th);
             }
+            throw th;
         }
+    }
 
-        DataAccessObject testData = dataSet.getTestData().get();
+    /**
+     * Measure conditions over the test users.
+     * @param engine The recommender engine.
+     * @param runs The conditions to measure.
+     * @param sweeping `true` to measure each condition with a sweep view of the engine's recommenders.
+     * @param buildTimer The timer for building the engine.
+     */
+    private void testConditions(LenskitRecommenderEngine engine, List<ConditionRun> runs,
+                                boolean sweeping, Stopwatch buildTimer, TrackedJob test,
+                                DataAccessObject trainData, @Nullable DataAccessObject runtimeData,
+                                DataAccessObject testData) throws IOException {
+        double buildTime = buildTimer.elapsed(TimeUnit.MILLISECONDS) * 0.001;
+        for (ConditionRun run: runs) {
+            run.start(engine, buildTime);
+        }
+        String label = runs.size() == 1 ? runs.get(0).getAlgorithm().toString() : algorithm.toString();
 
         Stopwatch testTimer = Stopwatch.createStarted();
 
@@ -211,8 +336,7 @@ class ExperimentJob extends RecursiveAction {
         pctFormat.setMaximumFractionDigits(2);
         pctFormat.setMinimumFractionDigits(2);
         final int nusers = testData.query(CommonTypes.USER).count();
-        test.start(nusers);
-        logger.info("Testing {} on {} ({} users)", algorithm, dataSet, nusers);
+        logger.info("Testing {} on {} ({} users)", label, dataSet, nusers);
         ProgressLogger progress = ProgressLogger.create(logger)
                                                 .setCount(nusers)
                                                 .setLabel(String.format("testing users from %s on %s",
@@ -232,45 +356,33 @@ class ExperimentJob extends RecursiveAction {
             userStream = users.stream();
         }
 
-        UserEvaluator eval = new UserEvaluator(test, userOutput, trainData, runtimeData, engine, accumulators, testData, progress, entityTypes);
-        try {
-            userStream.forEach(eval);
-        } catch (Throwable th) {
-            outputRow.add("Succeeded", "N");
-            try {
-                globalOutput.writeRow(outputRow.buildList());
-            } catch (Throwable e) {
-                th.addSuppressed(e);
-            }
-            throw th;
+        UserEvaluator eval = new UserEvaluator(test, runs, sweeping, trainData, runtimeData, engine, testData, progress, entityTypes);
+        userStream.forEach(eval);
+
+        sampleHeap();
+
+        for (ConditionRun run: runs) {
+            run.flushUsers();
         }
 
-        test.finish();
         progress.finish();
         testTimer.stop();
-        logger.info("Tested {} in {}", algorithm.getName(), testTimer);
-        outputRow.add("TestTime", testTimer.elapsed(TimeUnit.MILLISECONDS) * 0.001);
-        outputRow.add("Succeeded", "Y");
-        for (ConditionEvaluator ce : accumulators) {
-            outputRow.addAll(ce.finish());
-        }
-
-        try {
-            globalOutput.writeRow(outputRow.buildList());
-            globalOutput.flush();
-        } catch (IOException e) {
-            throw new EvaluationException("error writing output row", e);
+        logger.info("Tested {} in {}", label, testTimer);
+        double testTime = testTimer.elapsed(TimeUnit.MILLISECONDS) * 0.001;
+        for (ConditionRun run: runs) {
+            run.finish(testTime);
         }
     }
 
-    private LenskitRecommenderEngine buildRecommenderEngine(DataAccessObject train) throws RecommenderBuildException {
+    private LenskitRecommenderEngine buildRecommenderEngine(AlgorithmInstance algo,
+                                                            DataAccessObject train) throws RecommenderBuildException {
         logger.debug("Starting recommender build");
 
         LenskitRecommenderEngineBuilder builder = new EvalEngineBuilder();
         builder.addConfiguration(sharedConfig);
         builder.addConfiguration(dataSet.getExtraConfiguration());
 
-        for (LenskitConfiguration cfg: algorithm.getConfigurations()) {
+        for (LenskitConfiguration cfg: algo.getConfigurations()) {
             builder.addConfiguration(cfg);
         }
 
@@ -338,25 +450,260 @@ class ExperimentJob extends RecursiveAction {
         }
     }
 
+    /**
+     * An experimental condition measured by a job.
+     */
+    static class Condition {
+        private final AlgorithmInstance algorithm;
+        @Nullable
+        private final JobCheckpoint checkpoint;
+        private final int sweepValue;
+
+        /**
+         * Create a condition.
+         * @param algo The algorithm instance, with its attributes, for output.
+         * @param ckpt The checkpoint recording the condition's results, or `null` if not checkpointed.
+         * @param value The condition's value of the job's parameter sweep (ignored if there is no sweep).
+         */
+        Condition(AlgorithmInstance algo, @Nullable JobCheckpoint ckpt, int value) {
+            algorithm = algo;
+            checkpoint = ckpt;
+            sweepValue = value;
+        }
+
+        AlgorithmInstance getAlgorithm() {
+            return algorithm;
+        }
+
+        @Nullable
+        JobCheckpoint getCheckpoint() {
+            return checkpoint;
+        }
+
+        int getSweepValue() {
+            return sweepValue;
+        }
+    }
+
+    /**
+     * The output and measurement state of a condition within a running job.
+     */
+    private class ConditionRun implements Closeable {
+        private final Condition condition;
+        private final TableWriter globalOutput;
+        private final TableWriter userOutput;
+        @Nullable
+        private final JobCheckpoint.Recorder recorder;
+        private final RowBuilder outputRow;
+        private final List<ConditionEvaluator> evaluators = new ArrayList<>();
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder allocatedBytes = new LongAdder();
+        private final AtomicInteger measuredUsers = new AtomicInteger();
+        private volatile long recordStartNanos;
+        private volatile boolean allocationCounted = true;
+        private boolean finished;
+
+        ConditionRun(Condition cond) throws IOException {
+            condition = cond;
+            AlgorithmInstance algo = cond.getAlgorithm();
+            ExperimentOutputLayout layout = experiment.getOutputLayout();
+            TableWriter global = layout.prefixTable(experiment.getGlobalOutput(), dataSet, algo);
+            TableWriter user = layout.prefixTable(experiment.getUserOutput(), dataSet, algo);
+            JobCheckpoint ckpt = cond.getCheckpoint();
+            if (ckpt != null) {
+                recorder = ckpt.record(global.getLayout(),
+                                       experiment.getUserOutputFile() != null ? user.getLayout() : null);
+                global = new MultiplexedTableWriter(global.getLayout(), global, recorder.getGlobalTable());
+                if (recorder.getUserTable() != null) {
+                    user = new MultiplexedTableWriter(user.getLayout(), user, recorder.getUserTable());
+                }
+            } else {
+                recorder = null;
+            }
+            globalOutput = global;
+            userOutput = user;
+            outputRow = globalOutput.getLayout().newRowBuilder();
+        }
+
+        AlgorithmInstance getAlgorithm() {
+            return condition.getAlgorithm();
+        }
+
+        /**
+         * Prepare to measure this condition.
+         * @param engine The recommender engine.
+         * @param buildTime The time taken to build the engine.
+         */
+        void start(LenskitRecommenderEngine engine, double buildTime) {
+            AlgorithmInstance algo = condition.getAlgorithm();
+            outputRow.add("BuildTime", buildTime);
+            recordStartNanos = System.nanoTime();
+            logger.info("Measuring {} on {}", algo, dataSet.getName());
+            for (EvalTask task : experiment.getTasks()) {
+                ConditionEvaluator ce = task.createConditionEvaluator(algo, dataSet, engine);
+                if (ce != null) {
+                    evaluators.add(ce);
+                } else {
+                    logger.warn("Could not instantiate task {} for algorithm {} on data set {}",
+                                task, algo, dataSet);
+                }
+            }
+        }
+
+        /**
+         * Measure a test user.
+         * @param rec The recommender for this condition.
+         * @param testUser The test user.
+         * @param stats `true` to record the user's latency and allocation in this condition's statistics.
+         */
+        void measure(Recommender rec, TestUser testUser, boolean stats) {
+            RowBuilder userRow = userOutput.getLayout().newRowBuilder();
+            userRow.add("User", testUser.getUserId());
+            userRow.add("TestItems", testUser.getTestItems().size());
+
+            long allocStart = stats ? HeapMonitor.threadAllocatedBytes() : -1;
+            Stopwatch userTimer = Stopwatch.createStarted();
+
+            for (ConditionEvaluator eval : evaluators) {
+                Map<String, Object> ures = eval.measureUser(rec, testUser);
+                userRow.addAll(ures);
+            }
+            userTimer.stop();
+            long nanos = userTimer.elapsed(TimeUnit.NANOSECONDS);
+            if (stats) {
+                long allocEnd = allocStart >= 0 ? HeapMonitor.threadAllocatedBytes() : -1;
+                recordLatency(nanos, allocEnd >= 0 ? allocEnd - allocStart : -1);
+            }
+
+            userRow.add("TestTime", nanos * 1.0e-9);
+            try {
+                userOutput.writeRow(userRow.buildList());
+            } catch (IOException e) {
+                throw new EvaluationException("error writing user row", e);
+            }
+        }
+
+        /**
+         * Record a user's latency and allocation in the condition's statistics, unless it is a warmup user.
+         * @param nanos The time taken to measure the user.
+         * @param allocated The bytes allocated while measuring the user, or -1 if unavailable.
+         */
+        private void recordLatency(long nanos, long allocated) {
+            int n = measuredUsers.incrementAndGet();
+            int warmup = experiment.getLatencyWarmup();
+            if (n <= warmup) {
+                if (n == warmup) {
+                    recordStartNanos = System.nanoTime();
+                }
+                return;
+            }
+
+            latency.record(nanos);
+            if (allocated >= 0) {
+                allocatedBytes.add(allocated);
+            } else {
+                allocationCounted = false;
+            }
+        }
+
+        void flushUsers() throws IOException {
+            userOutput.flush();
+        }
+
+        /**
+         * Write this condition's results and commit its checkpoint.
+         * @param testTime The time taken to test the condition.
+         */
+        void finish(double testTime) throws IOException {
+            outputRow.add("TestTime", testTime);
+            outputRow.add("Succeeded", "Y");
+            if (experiment.getLatencyStatistics()) {
+                addLatencyStatistics();
+            }
+            for (ConditionEvaluator ce : evaluators) {
+                outputRow.addAll(ce.finish());
+            }
+            globalOutput.writeRow(outputRow.buildList());
+            globalOutput.flush();
+            if (recorder != null) {
+                recorder.commit();
+            }
+            finished = true;
+        }
+
+        private void addLatencyStatistics() {
+            long count = latency.getCount();
+            if (count == 0) {
+                logger.warn("no users measured for {} after {} warmup users, not reporting latency",
+                            condition.getAlgorithm(), experiment.getLatencyWarmup());
+                return;
+            }
+            double seconds = (System.nanoTime() - recordStartNanos) * 1.0e-9;
+            outputRow.add("Latency.Mean", latency.getMean() * 1.0e-6);
+            outputRow.add("Latency.P50", latency.getPercentile(50) * 1.0e-6);
+            outputRow.add("Latency.P95", latency.getPercentile(95) * 1.0e-6);
+            outputRow.add("Latency.P99", latency.getPercentile(99) * 1.0e-6);
+            outputRow.add("Latency.Max", latency.getMax() * 1.0e-6);
+            outputRow.add("UsersPerSecond", count / seconds);
+            if (allocationCounted) {
+                outputRow.add("AllocPerUser", allocatedBytes.sum() / (double) count);
+            }
+            logger.info("{} on {}: latency p50={}ms, p99={}ms over {} users",
+                        condition.getAlgorithm(), dataSet.getName(),
+                        String.format("%.3f", latency.getPercentile(50) * 1.0e-6),
+                        String.format("%.3f", latency.getPercentile(99) * 1.0e-6),
+                        count);
+        }
+
+        /**
+         * Record the failure of this condition, if it has not finished.
+         * @param th The error that caused the failure.
+         */
+        void fail(Throwable th) {
+            if (finished) {
+                return;
+            }
+            outputRow.add("Succeeded", "N");
+            try {
+                globalOutput.writeRow(outputRow.buildList());
+            } catch (Throwable e) {
+                th.addSuppressed(e);
+            }
+            finished = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (recorder != null) {
+                recorder.close();
+            }
+        }
+    }
+
     @ThreadSafe
     private class UserEvaluator implements Consumer<Entity> {
         private TrackedJob test;
-        private TableWriter userOutput;
+        private List<ConditionRun> runs;
+        private int[] sweepValues;
         private DataAccessObject trainData;
         private DataAccessObject runtimeData;
         private LenskitRecommenderEngine engine;
-        private List<ConditionEvaluator> accumulators;
         private DataAccessObject testData;
         private ProgressLogger progress;
         private List<EntityType> entityTypes;
 
-        public UserEvaluator(TrackedJob test, TableWriter userOutput, DataAccessObject trainData, DataAccessObject runtimeData, LenskitRecommenderEngine engine, List<ConditionEvaluator> accumulators, DataAccessObject testData, ProgressLogger progress, List<EntityType> entityTypes) {
+        public UserEvaluator(TrackedJob test, List<ConditionRun> runs, boolean sweeping, DataAccessObject trainData, DataAccessObject runtimeData, LenskitRecommenderEngine engine, DataAccessObject testData, ProgressLogger progress, List<EntityType> entityTypes) {
             this.test = test;
-            this.userOutput = userOutput;
+            this.runs = runs;
+            if (sweeping) {
+                sweepValues = new int[runs.size()];
+                for (int i = 0; i < sweepValues.length; i++) {
+                    sweepValues[i] = runs.get(i).condition.getSweepValue();
+                }
+            }
             this.trainData = trainData;
             this.runtimeData = runtimeData;
             this.engine = engine;
-            this.accumulators = accumulators;
             this.testData = testData;
             this.progress = progress;
             this.entityTypes = entityTypes;
@@ -366,8 +713,6 @@ class ExperimentJob extends RecursiveAction {
         public void accept(Entity user) {
             try (LenskitRecommender rec = buildRecommender(engine, trainData, runtimeData)) {
                 long uid = user.getId();
-                RowBuilder userRow = userOutput.getLayout().newRowBuilder();
-                userRow.add("User", uid);
 
                 List<Entity> userTrainHistory = new ArrayList<>();
                 List<Entity> userTestHistory = new ArrayList<>();
@@ -387,24 +732,24 @@ class ExperimentJob extends RecursiveAction {
                 }
 
                 TestUser testUser = new TestUser(user, userTrainHistory, userTestHistory);
-                userRow.add("TestItems", testUser.getTestItems().size());
-
-                Stopwatch userTimer = Stopwatch.createStarted();
 
-                for (ConditionEvaluator eval : accumulators) {
-                    Map<String, Object> ures = eval.measureUser(rec, testUser);
-                    userRow.addAll(ures);
+                boolean stats = experiment.getLatencyStatistics();
+                if (sweepValues == null) {
+                    for (ConditionRun run: runs) {
+                        run.measure(rec, testUser, stats);
+                    }
+                } else {
+                    SweepRecommender views = new SweepRecommender(rec, sweep.getParameter(),
+                                                                  runtimeData != null ? runtimeData : trainData,
+                                                                  sweepValues);
+                    // each view is timed on its own; the shared scoring is charged to the view that triggers it
+                    for (int i = 0; i < runs.size(); i++) {
+                        runs.get(i).measure(views.getView(i), testUser, stats);
+                    }
                 }
-                userTimer.stop();
-
-                userRow.add("TestTime", userTimer.elapsed(TimeUnit.MILLISECONDS) * 0.001);
-                try {
-                    userOutput.writeRow(userRow.buildList());
-                    userOutput.flush();
-                } catch (IOException e) {
-                    throw new EvaluationException("error writing user row", e);
+                if (memoryScheduler != null) {
+                    sampleHeap();
                 }
-                userRow.clear();
 
                 test.finishStep();
                 progress.advance();
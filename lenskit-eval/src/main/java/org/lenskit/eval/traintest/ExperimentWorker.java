@@ -0,0 +1,89 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.eval.traintest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Entry point for worker processes of a multi-process train-test experiment.  This is started by the experiment
+ * coordinator, and is not intended to be run directly.
+ *
+ * Arguments: the experiment specification file, the checkpoint directory, the worker's inbox directory, the
+ * worker ID, and the number of threads.
+ *
+ * @see TrainTestExperiment#setWorkerCount(int)
+ */
+public final class ExperimentWorker {
+    private static final Logger logger = LoggerFactory.getLogger(ExperimentWorker.class);
+
+    private ExperimentWorker() {}
+
+    public static void main(String[] args) {
+        if (args.length != 5) {
+            System.err.println("usage: ExperimentWorker SPEC CHECKPOINT_DIR INBOX WORKER_ID THREADS");
+            System.exit(2);
+        }
+        String workerId = args[3];
+        watchCoordinator(workerId);
+
+        try {
+            TrainTestExperiment exp = TrainTestExperiment.load(Paths.get(args[0]));
+            exp.setCheckpointDirectory(Paths.get(args[1]));
+            exp.setWorkerCount(0);
+            exp.setMemoryBudget(0);
+            exp.setThreadCount(Integer.parseInt(args[4]));
+            logger.info("worker {} ready", workerId);
+            exp.runWorker(Paths.get(args[2]), workerId);
+        } catch (Throwable th) {
+            logger.error("worker " + workerId + " failed", th);
+            System.exit(1);
+        }
+        logger.info("worker {} finished", workerId);
+        System.exit(0);
+    }
+
+    /**
+     * Exit if the coordinator goes away.  The coordinator holds our standard input open for as long as it runs.
+     */
+    private static void watchCoordinator(String workerId) {
+        Thread watcher = new Thread(() -> {
+            try {
+                while (System.in.read() >= 0) {
+                    // ignore input
+                }
+            } catch (IOException e) {
+                /* treat errors as the coordinator going away */
+            }
+            logger.error("coordinator of worker {} has exited, stopping", workerId);
+            System.exit(3);
+        }, "coordinator-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.eval.traintest;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.grouplens.grapht.ResolutionException;
+import org.lenskit.LenskitConfiguration;
+import org.lenskit.inject.RecommenderGraphBuilder;
+import org.lenskit.util.io.StagedWrite;
+import org.lenskit.util.table.TableLayout;
+import org.lenskit.util.table.writer.AbstractTableWriter;
+import org.lenskit.util.table.writer.TableWriter;
+import org.lenskit.util.table.writer.TableWriters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Durable record of the results of a single experiment job.  A checkpoint file holds the job's global
+ * output row and, if per-user output is enabled, its per-user rows.  It is written with a {@link StagedWrite},
+ * so the file only exists once the job has completed successfully.
+ *
+ * Checkpoints are keyed by the attributes of the data set and algorithm and by a description of the algorithm's
+ * resolved configuration graph, so changing an algorithm's configuration causes its jobs to be re-run.  Changes to
+ * the data files themselves are not detected; the checkpoint directory must be cleared if they change.
+ * Output written directly by tasks (e.g. prediction or recommendation files) is not checkpointed.
+ */
+class JobCheckpoint {
+    private static final Logger logger = LoggerFactory.getLogger(JobCheckpoint.class);
+    private static final int FORMAT_VERSION = 1;
+    private static final byte END = 0;
+    private static final byte USER_ROW = 1;
+    private static final byte GLOBAL_ROW = 2;
+
+    private final Path file;
+
+    /**
+     * Create a checkpoint for a job.
+     * @param dir The checkpoint directory.
+     * @param data The job's data set.
+     * @param algo The job's algorithm.
+     */
+    JobCheckpoint(Path dir, DataSet data, AlgorithmInstance algo) {
+        file = dir.resolve(makeFileName(data, algo));
+    }
+
+    /**
+     * Get the file storing this checkpoint.
+     * @return The checkpoint file.
+     */
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * Query whether the checkpoint file exists.
+     * @return `true` if the job has a completed checkpoint.
+     */
+    boolean exists() {
+        return Files.exists(file);
+    }
+
+    /**
+     * Replay a completed checkpoint into output tables.  Nothing is written if the checkpoint does not exist or
+     * was written with a different table layout.
+     *
+     * @param global The global output table (prefixed for this job's condition).
+     * @param user The user output table, or `null` if per-user output is not being written.
+     * @return `true` if the checkpoint was replayed, `false` if the job must be re-run.
+     * @throws IOException if there is an error reading the checkpoint.
+     */
+    boolean replay(@Nonnull TableWriter global, @Nullable TableWriter user) throws IOException {
+        if (!exists()) {
+            return false;
+        }
+
+        try (ObjectInputStream in = new ObjectInputStream(new GZIPInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                logger.info("checkpoint {} has an unknown format, ignoring", file);
+                return false;
+            }
+            List<?> globalColumns = (List<?>) in.readObject();
+            List<?> userColumns = (List<?>) in.readObject();
+            if (!global.getLayout().getColumns().equals(globalColumns)) {
+                logger.info("checkpoint {} has different global columns, ignoring", file);
+                return false;
+            }
+            if (user != null && !user.getLayout().getColumns().equals(userColumns)) {
+                logger.info("checkpoint {} has different user columns, ignoring", file);
+                return false;
+            }
+
+            byte tag;
+            while ((tag = in.readByte()) != END) {
+                int n = in.readInt();
+                List<Object> row = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) {
+                    row.add(in.readObject());
+                }
+                if (tag == GLOBAL_ROW) {
+                    global.writeRow(row);
+                } else if (tag == USER_ROW && user != null) {
+                    user.writeRow(row);
+                }
+            }
+            return true;
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("invalid checkpoint file " + file, e);
+        }
+    }
+
+    /**
+     * Start recording a checkpoint.
+     * @param globalLayout The layout of the job's global output row.
+     * @param userLayout The layout of the job's user output rows, or `null` to skip recording user output.
+     * @return A recorder for the job's results.
+     * @throws IOException if there is an error opening the checkpoint file.
+     */
+    Recorder record(TableLayout globalLayout, @Nullable TableLayout userLayout) throws IOException {
+        Files.createDirectories(file.getParent());
+        return new Recorder(globalLayout, userLayout);
+    }
+
+    /**
+     * Compute the file name identifying an algorithm on a data set.
+     */
+    static String makeFileName(DataSet data, AlgorithmInstance algo) {
+        Hasher hasher = Hashing.sha1().newHasher();
+        hashAttributes(hasher, data.getAttributes());
+        hashAttributes(hasher, algo.getAttributes());
+        hasher.putString(configFingerprint(algo), Charsets.UTF_8);
+        String label = algo.getName() + "-" + data.getName();
+        return label.replaceAll("[^a-zA-Z0-9._-]+", "_")
+                + "-" + hasher.hash().toString().substring(0, 12) + ".ckpt";
+    }
+
+    /**
+     * Compute a fingerprint of an algorithm's configuration by describing its resolved component graph.
+     * Components bound to objects that are neither describable nor serializable get a per-object key, so
+     * jobs using them are never resumed from a checkpoint written by another run.
+     *
+     * @param algo The algorithm.
+     * @return The configuration fingerprint.
+     */
+    static String configFingerprint(AlgorithmInstance algo) {
+        RecommenderGraphBuilder rgb = new RecommenderGraphBuilder();
+        for (LenskitConfiguration cfg: algo.getConfigurations()) {
+            rgb.addConfiguration(cfg);
+        }
+        try {
+            return ComponentCache.makeNodeKey(rgb.buildGraph());
+        } catch (ResolutionException e) {
+            // the job will fail to build, and failed jobs are not checkpointed
+            logger.debug("cannot resolve configuration of {}: {}", algo, e.toString());
+            return "unresolved";
+        }
+    }
+
+    private static void hashAttributes(Hasher hasher, Map<String, Object> attrs) {
+        for (Map.Entry<String, Object> e: new TreeMap<>(attrs).entrySet()) {
+            hasher.putString(e.getKey(), Charsets.UTF_8)
+                  .putByte((byte) 0)
+                  .putString(String.valueOf(e.getValue()), Charsets.UTF_8)
+                  .putByte((byte) 0);
+        }
+        hasher.putByte((byte) 1);
+    }
+
+    /**
+     * Records results into a staged checkpoint file.
+     */
+    class Recorder implements Closeable {
+        private final StagedWrite stage;
+        private final ObjectOutputStream output;
+        private final TableWriter globalTable;
+        private final TableWriter userTable;
+        private boolean committed;
+
+        private Recorder(TableLayout globalLayout, @Nullable TableLayout userLayout) throws IOException {
+            stage = StagedWrite.begin(file);
+            boolean opened = false;
+            try {
+                output = new ObjectOutputStream(new GZIPOutputStream(new BufferedOutputStream(stage.openOutputStream())));
+                output.writeInt(FORMAT_VERSION);
+                output.writeObject(new ArrayList<>(globalLayout.getColumns()));
+                output.writeObject(userLayout != null ? new ArrayList<>(userLayout.getColumns()) : null);
+                opened = true;
+            } finally {
+                if (!opened) {
+                    stage.close();
+                }
+            }
+            globalTable = new RowSink(globalLayout, GLOBAL_ROW);
+            // user rows come from many threads; buffer them so recording does not serialize the workers
+            userTable = userLayout != null ? TableWriters.async(new RowSink(userLayout, USER_ROW)) : null;
+        }
+
+        /**
+         * Get the table to record the global row.
+         * @return The table writer for recording the job's global output row.
+         */
+        TableWriter getGlobalTable() {
+            return globalTable;
+        }
+
+        /**
+         * Get the table to record user rows.
+         * @return The table writer for recording user rows, or `null` if user rows are not recorded.
+         */
+        @Nullable
+        TableWriter getUserTable() {
+            return userTable;
+        }
+
+        /**
+         * Finish the checkpoint, making it visible to future runs.
+         * @throws IOException if there is an error writing the checkpoint.
+         */
+        void commit() throws IOException {
+            if (userTable != null) {
+                userTable.close();
+            }
+            synchronized (output) {
+                output.writeByte(END);
+                output.close();
+            }
+            stage.commit();
+            committed = true;
+            logger.debug("wrote checkpoint {}", file);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (!committed) {
+                    if (userTable != null) {
+                        userTable.close();
+                    }
+                    output.close();
+                }
+            } finally {
+                stage.close();
+            }
+        }
+
+        private class RowSink extends AbstractTableWriter {
+            private final TableLayout layout;
+            private final byte tag;
+
+            RowSink(TableLayout layout, byte tag) {
+                this.layout = layout;
+                this.tag = tag;
+            }
+
+            @Override
+            public TableLayout getLayout() {
+                return layout;
+            }
+
+            @Override
+            public void writeRow(List<?> row) throws IOException {
+                checkRowWidth(row.size());
+                synchronized (output) {
+                    output.writeByte(tag);
+                    output.writeInt(row.size());
+                    for (Object val: row) {
+                        if (val == null || val instanceof Number || val instanceof String || val instanceof Boolean) {
+                            output.writeObject(val);
+                        } else {
+                            output.writeObject(val.toString());
+                        }
+                    }
+                    // rows are independent, don't let the handle table grow
+                    output.reset();
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                /* rows are only durable once the checkpoint is committed */
+            }
+
+            @Override
+            public void close() throws IOException {
+                /* the recorder owns the output stream */
+            }
+        }
+    }
+}
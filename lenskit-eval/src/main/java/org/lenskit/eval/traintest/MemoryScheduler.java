@@ -0,0 +1,306 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.eval.traintest;
+
+import net.jcip.annotations.GuardedBy;
+import org.lenskit.util.io.StagedWrite;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admits experiment jobs based on their estimated peak heap use.  Jobs are admitted while their combined estimates
+ * fit within a memory budget; a job is always admitted if nothing else is running, so a job whose estimate exceeds
+ * the budget runs by itself.
+ *
+ * A job's estimate is the larger of:
+ *
+ * - The peak retained heap growth observed for the same algorithm and data set in a previous run, stored in the history
+ *   file (usually in the experiment's cache directory).
+ * - The estimate declared on the {@link AlgorithmInstance}.
+ *
+ * If neither is available, the estimate is an even share of the budget for each worker thread.
+ *
+ * Observed heap growth is the growth of the JVM's tenured heap after collection while the job's models are live (see
+ * {@link org.lenskit.util.monitor.HeapMonitor#retainedHeap()}).  It is measured against the whole JVM, so it
+ * over-estimates jobs that run concurrently with others; this errs on the side of admitting fewer jobs.
+ */
+class MemoryScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(MemoryScheduler.class);
+    static final String HISTORY_FILE_NAME = "job-memory.properties";
+
+    private final long budget;
+    private final long defaultEstimate;
+    @Nullable
+    private final Path historyFile;
+    private final Properties history = new Properties();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    @GuardedBy("lock")
+    private long reserved;
+    @GuardedBy("lock")
+    private int running;
+    @GuardedBy("lock")
+    private long peakReserved;
+    @GuardedBy("lock")
+    private int peakRunning;
+    @GuardedBy("lock")
+    private double reservedIntegral;
+    @GuardedBy("lock")
+    private long startNanos = -1;
+    @GuardedBy("lock")
+    private long lastNanos;
+
+    /**
+     * Create a memory scheduler.
+     * @param budget The heap budget, in bytes.
+     * @param nthreads The number of worker threads (used to compute the default estimate).
+     * @param history The file storing observed estimates from previous runs, or `null` to not keep history.
+     * @throws IOException if there is an error reading the history file.
+     */
+    MemoryScheduler(long budget, int nthreads, @Nullable Path history) throws IOException {
+        this.budget = budget;
+        defaultEstimate = budget / Math.max(nthreads, 1);
+        historyFile = history;
+        if (historyFile != null && Files.exists(historyFile)) {
+            try (InputStream in = Files.newInputStream(historyFile)) {
+                this.history.load(in);
+            }
+            logger.debug("loaded {} job memory estimates from {}", this.history.size(), historyFile);
+        }
+    }
+
+    /**
+     * Get the memory budget.
+     * @return The memory budget, in bytes.
+     */
+    long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Estimate the peak heap use of a job.
+     * @param ds The data set.
+     * @param algo The algorithm.
+     * @return The estimated peak heap use, in bytes.
+     */
+    long estimate(DataSet ds, AlgorithmInstance algo) {
+        String prior;
+        synchronized (history) {
+            prior = history.getProperty(jobKey(ds, algo));
+        }
+        long measured = 0;
+        if (prior != null) {
+            try {
+                measured = Long.parseLong(prior);
+            } catch (NumberFormatException e) {
+                logger.warn("invalid memory estimate {} for {} on {}", prior, algo, ds);
+            }
+        }
+        long estimate = Math.max(measured, algo.getMemoryEstimate());
+        return estimate > 0 ? estimate : defaultEstimate;
+    }
+
+    /**
+     * Record the observed peak heap use of a job.
+     * @param ds The data set.
+     * @param algo The algorithm.
+     * @param bytes The observed peak heap use, in bytes.  Non-positive values (e.g. when a collection during the
+     *              job freed more than it allocated) are not meaningful estimates, and are ignored.
+     */
+    void record(DataSet ds, AlgorithmInstance algo, long bytes) {
+        if (bytes <= 0) {
+            logger.debug("ignoring non-positive memory use {} for {} on {}", bytes, algo, ds);
+            return;
+        }
+        String key = jobKey(ds, algo);
+        synchronized (history) {
+            // keep the largest value, since data set partitions share a key
+            String prior = history.getProperty(key);
+            if (prior == null || parseOrZero(prior) < bytes) {
+                history.setProperty(key, Long.toString(bytes));
+            }
+        }
+    }
+
+    /**
+     * Save the estimate history for future runs.
+     * @throws IOException if there is an error writing the history file.
+     */
+    void saveHistory() throws IOException {
+        if (historyFile == null) {
+            return;
+        }
+        Files.createDirectories(historyFile.getParent());
+        try (StagedWrite stage = StagedWrite.begin(historyFile)) {
+            try (OutputStream out = stage.openOutputStream()) {
+                synchronized (history) {
+                    history.store(out, "peak heap use of train-test jobs, in bytes");
+                }
+            }
+            stage.commit();
+        }
+    }
+
+    /**
+     * Reserve memory for a job, blocking (in cooperation with the fork-join pool) until it can be admitted.
+     * @param bytes The memory to reserve.
+     * @return The amount actually reserved, to pass to {@link #release(long)}.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    long acquire(long bytes) throws InterruptedException {
+        long need = Math.min(Math.max(bytes, 0), budget);
+        ReservationBlocker blocker = new ReservationBlocker(need);
+        ForkJoinPool.managedBlock(blocker);
+        return need;
+    }
+
+    /**
+     * Release memory reserved by a job.
+     * @param bytes The amount reserved.
+     */
+    void release(long bytes) {
+        lock.lock();
+        try {
+            accumulate();
+            reserved -= bytes;
+            running -= 1;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @GuardedBy("lock")
+    private boolean tryAdmit(long need) {
+        if (running == 0 || reserved + need <= budget) {
+            accumulate();
+            reserved += need;
+            running += 1;
+            peakReserved = Math.max(peakReserved, reserved);
+            peakRunning = Math.max(peakRunning, running);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    @GuardedBy("lock")
+    private void accumulate() {
+        long now = System.nanoTime();
+        if (startNanos < 0) {
+            startNanos = now;
+        } else {
+            reservedIntegral += (double) reserved * (now - lastNanos);
+        }
+        lastNanos = now;
+    }
+
+    /**
+     * Log the utilization of the memory budget.
+     */
+    void logUtilization() {
+        lock.lock();
+        try {
+            if (startNanos < 0) {
+                return;
+            }
+            accumulate();
+            long elapsed = lastNanos - startNanos;
+            double mean = elapsed > 0 ? reservedIntegral / elapsed : reserved;
+            logger.info("memory scheduler: budget {}MiB, peak {}MiB ({}%) with {} jobs, mean {}MiB ({}%)",
+                        budget >> 20, peakReserved >> 20,
+                        String.format("%.1f", peakReserved * 100.0 / budget),
+                        peakRunning, Math.round(mean) >> 20,
+                        String.format("%.1f", mean * 100.0 / budget));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static long parseOrZero(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String jobKey(DataSet ds, AlgorithmInstance algo) {
+        Object dsName = ds.getAttributes().get("DataSet");
+        if (dsName == null) {
+            dsName = ds.getName();
+        }
+        return algo + "@" + dsName;
+    }
+
+    private class ReservationBlocker implements ForkJoinPool.ManagedBlocker {
+        private final long need;
+        private boolean admitted;
+
+        ReservationBlocker(long need) {
+            this.need = need;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            lock.lockInterruptibly();
+            try {
+                while (!admitted) {
+                    admitted = tryAdmit(need);
+                    if (!admitted) {
+                        released.await();
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            if (!admitted && lock.tryLock()) {
+                try {
+                    admitted = tryAdmit(need);
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return admitted;
+        }
+    }
+}
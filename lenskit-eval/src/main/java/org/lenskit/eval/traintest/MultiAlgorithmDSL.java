@@ -29,6 +29,7 @@ import groovy.lang.Closure;
 import org.lenskit.config.ConfigurationLoader;
 import org.lenskit.config.LenskitConfigDSL;
 
+import java.lang.annotation.Annotation;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -61,6 +62,44 @@ public class MultiAlgorithmDSL extends LenskitConfigDSL {
         return builder.getAttributes();
     }
 
+    /**
+     * Get the estimated peak heap use of this algorithm.
+     * @return The estimated peak heap use, in bytes, or 0 if unknown.
+     */
+    public long getMemoryEstimate() {
+        return builder.getMemoryEstimate();
+    }
+
+    /**
+     * Declare the estimated peak heap use of this algorithm, for memory-aware scheduling.
+     * @param bytes The estimated peak heap use, in bytes.
+     */
+    public void setMemoryEstimate(long bytes) {
+        builder.setMemoryEstimate(bytes);
+    }
+
+    /**
+     * Sweep an integer parameter, evaluating the algorithm once per value.  The values are recorded under the
+     * parameter's simple name.
+     *
+     * @param param The parameter to sweep.
+     * @param values The values to evaluate.
+     */
+    public void sweep(Class<? extends Annotation> param, List<Integer> values) {
+        builder.setSweep(new ParameterSweep(param, values));
+    }
+
+    /**
+     * Sweep an integer parameter, evaluating the algorithm once per value.
+     *
+     * @param attr The attribute under which to record the parameter value.
+     * @param param The parameter to sweep.
+     * @param values The values to evaluate.
+     */
+    public void sweep(String attr, Class<? extends Annotation> param, List<Integer> values) {
+        builder.setSweep(new ParameterSweep(attr, param, values.stream().mapToInt(Integer::intValue).toArray()));
+    }
+
     public void algorithm(Closure<?> block) {
         algorithm(null, block);
     }
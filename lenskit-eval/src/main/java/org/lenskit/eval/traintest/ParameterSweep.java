@@ -0,0 +1,134 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.eval.traintest;
+
+import com.google.common.base.Preconditions;
+import org.lenskit.LenskitConfiguration;
+import org.lenskit.basic.SweepItemScorer;
+
+import javax.annotation.Nonnull;
+import java.lang.annotation.Annotation;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A sweep over the values of an integer parameter, such as a neighborhood size or feature count.  An algorithm with
+ * a sweep is evaluated once for each value; if its item scorer implements {@link SweepItemScorer} for the swept
+ * parameter, the experiment trains a single model and scores every value from it.
+ *
+ * Each value is recorded in the output under the sweep's attribute name.
+ *
+ * @see AlgorithmInstance#getSweep()
+ * @see TrainTestExperiment#setSweepEvaluation(boolean)
+ */
+public class ParameterSweep {
+    private final Class<? extends Annotation> parameter;
+    private final String attribute;
+    private final int[] values;
+
+    /**
+     * Create a new parameter sweep.
+     * @param attr The attribute name for the parameter values.
+     * @param param The parameter qualifier.
+     * @param vals The values to sweep.
+     */
+    public ParameterSweep(@Nonnull String attr, @Nonnull Class<? extends Annotation> param, @Nonnull int[] vals) {
+        Preconditions.checkNotNull(attr, "attribute name");
+        Preconditions.checkNotNull(param, "parameter");
+        Preconditions.checkArgument(vals.length > 0, "no values to sweep");
+        attribute = attr;
+        parameter = param;
+        values = vals.clone();
+    }
+
+    /**
+     * Create a new parameter sweep, using the parameter's simple name as the attribute name.
+     * @param param The parameter qualifier.
+     * @param vals The values to sweep.
+     */
+    public ParameterSweep(@Nonnull Class<? extends Annotation> param, @Nonnull List<Integer> vals) {
+        this(param.getSimpleName(), param, vals.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * Get the swept parameter.
+     * @return The parameter qualifier.
+     */
+    @Nonnull
+    public Class<? extends Annotation> getParameter() {
+        return parameter;
+    }
+
+    /**
+     * Get the attribute name under which parameter values are recorded.
+     * @return The attribute name.
+     */
+    @Nonnull
+    public String getAttribute() {
+        return attribute;
+    }
+
+    /**
+     * Get the values to sweep.
+     * @return The parameter values, in sweep order.
+     */
+    @Nonnull
+    public int[] getValues() {
+        return values.clone();
+    }
+
+    /**
+     * Get the parameter value with which to train the shared model.  This is the largest value, or 0 (which
+     * sweepable components treat as unlimited) if any value is non-positive.
+     *
+     * @return The value to use for the shared model.
+     */
+    public int getBuildValue() {
+        int max = 0;
+        for (int v: values) {
+            if (v <= 0) {
+                return 0;
+            }
+            max = Math.max(max, v);
+        }
+        return max;
+    }
+
+    /**
+     * Create a configuration setting the parameter to a value.
+     * @param value The parameter value.
+     * @return A configuration binding the parameter.
+     */
+    public LenskitConfiguration configure(int value) {
+        LenskitConfiguration config = new LenskitConfiguration();
+        config.set(parameter).to(value);
+        return config;
+    }
+
+    @Override
+    public String toString() {
+        return "Sweep(" + attribute + "=" + Arrays.toString(values) + ")";
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.eval.traintest;
+
+import org.lenskit.api.*;
+import org.lenskit.basic.*;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.util.collections.LongUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.annotation.Annotation;
+import java.util.*;
+
+/**
+ * Views of a recommender at each value of a parameter sweep.  Each view replaces the recommender's
+ * {@link SweepItemScorer} with a scorer for one value, and rebuilds the standard rating predictor and item
+ * recommender around it.  Views of the same recommender share sweep results, so each set of items is scored once
+ * for all values.
+ *
+ * This class is not thread-safe; create one for each test user.
+ */
+class SweepRecommender {
+    private final Recommender recommender;
+    private final Class<? extends Annotation> parameter;
+    private final DataAccessObject dao;
+    private final int[] values;
+    private final Map<SweepItemScorer, Map<Set<Long>, List<Map<Long, Double>>>> cache = new IdentityHashMap<>();
+    private final Map<SweepItemScorer, Map<Set<Long>, List<ResultMap>>> detailCache = new IdentityHashMap<>();
+
+    /**
+     * Create views of a recommender.
+     * @param rec The recommender.
+     * @param param The swept parameter.
+     * @param dao The data access object the recommender uses.
+     * @param vals The parameter values for the views.
+     */
+    SweepRecommender(Recommender rec, Class<? extends Annotation> param, DataAccessObject dao, int[] vals) {
+        recommender = rec;
+        parameter = param;
+        this.dao = dao;
+        values = vals;
+    }
+
+    /**
+     * Query whether views of a recommender can be built for a parameter.  This requires its item scorer to be a
+     * {@link SweepItemScorer} for the parameter (possibly with a fallback) that
+     * {@linkplain SweepItemScorer#isSweepSupported() supports sweeping} and, unless approximate sweeps are allowed,
+     * whose {@linkplain SweepItemScorer#isSweepExact() sweeps are exact}; and its rating predictor and item
+     * recommender (if present) to be the standard implementations built on such a scorer.
+     *
+     * @param rec The recommender.
+     * @param param The swept parameter.
+     * @param approximate `true` to allow scorers whose sweeps are approximate.
+     * @return `true` if the recommender can be swept.
+     */
+    static boolean supports(Recommender rec, Class<? extends Annotation> param, boolean approximate) {
+        if (findSweepScorer(rec.getItemScorer(), param, approximate) == null) {
+            return false;
+        }
+        RatingPredictor pred = rec.getRatingPredictor();
+        if (pred != null) {
+            if (pred.getClass() != SimpleRatingPredictor.class
+                    || findSweepScorer(((SimpleRatingPredictor) pred).getItemScorer(), param, approximate) == null) {
+                return false;
+            }
+        }
+        ItemRecommender irec = rec.getItemRecommender();
+        if (irec != null) {
+            if (irec.getClass() != TopNItemRecommender.class
+                    || findSweepScorer(((TopNItemRecommender) irec).getScorer(), param, approximate) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Nullable
+    private static SweepItemScorer findSweepScorer(@Nullable ItemScorer scorer, Class<? extends Annotation> param,
+                                                   boolean approximate) {
+        if (scorer instanceof SweepItemScorer) {
+            SweepItemScorer sweep = (SweepItemScorer) scorer;
+            return sweep.getSweepParameter().equals(param) && sweep.isSweepSupported()
+                    && (approximate || sweep.isSweepExact()) ? sweep : null;
+        } else if (scorer instanceof FallbackItemScorer) {
+            return findSweepScorer(((FallbackItemScorer) scorer).getPrimaryScorer(), param, approximate);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Get the view for a value.
+     * @param index The index of the value in this sweep's values.
+     * @return A recommender using the value.
+     */
+    Recommender getView(int index) {
+        return new View(index);
+    }
+
+    private List<Map<Long, Double>> scoreSweep(SweepItemScorer scorer, long user, Collection<Long> items) {
+        Map<Set<Long>, List<Map<Long, Double>>> scores = cache.get(scorer);
+        if (scores == null) {
+            scores = new HashMap<>();
+            cache.put(scorer, scores);
+        }
+        Set<Long> key = LongUtils.frozenSet(items);
+        List<Map<Long, Double>> result = scores.get(key);
+        if (result == null) {
+            result = scorer.scoreSweep(user, key, values);
+            scores.put(key, result);
+        }
+        return result;
+    }
+
+    private List<ResultMap> scoreSweepWithDetails(SweepItemScorer scorer, long user, Collection<Long> items) {
+        Map<Set<Long>, List<ResultMap>> results = detailCache.get(scorer);
+        if (results == null) {
+            results = new HashMap<>();
+            detailCache.put(scorer, results);
+        }
+        Set<Long> key = LongUtils.frozenSet(items);
+        List<ResultMap> result = results.get(key);
+        if (result == null) {
+            result = scorer.scoreSweepWithDetails(user, key, values);
+            results.put(key, result);
+        }
+        return result;
+    }
+
+    private class View implements Recommender {
+        private final int index;
+        private ItemScorer scorer;
+        private RatingPredictor predictor;
+        private ItemRecommender itemRecommender;
+
+        View(int idx) {
+            index = idx;
+        }
+
+        private ItemScorer wrap(ItemScorer s) {
+            if (s instanceof SweepItemScorer && ((SweepItemScorer) s).getSweepParameter().equals(parameter)) {
+                return new PointScorer((SweepItemScorer) s, index);
+            } else if (s instanceof FallbackItemScorer) {
+                FallbackItemScorer fb = (FallbackItemScorer) s;
+                return new FallbackItemScorer(wrap(fb.getPrimaryScorer()), fb.getBaselineScorer());
+            } else {
+                return s;
+            }
+        }
+
+        @Nullable
+        @Override
+        public ItemScorer getItemScorer() {
+            if (scorer == null) {
+                ItemScorer s = recommender.getItemScorer();
+                scorer = s != null ? wrap(s) : null;
+            }
+            return scorer;
+        }
+
+        @Nullable
+        @Override
+        public RatingPredictor getRatingPredictor() {
+            if (predictor == null) {
+                SimpleRatingPredictor pred = (SimpleRatingPredictor) recommender.getRatingPredictor();
+                if (pred != null) {
+                    predictor = new SimpleRatingPredictor(wrap(pred.getItemScorer()), pred.getPreferenceDomain());
+                }
+            }
+            return predictor;
+        }
+
+        @Nullable
+        @Override
+        public ItemRecommender getItemRecommender() {
+            if (itemRecommender == null) {
+                TopNItemRecommender irec = (TopNItemRecommender) recommender.getItemRecommender();
+                if (irec != null) {
+                    itemRecommender = new TopNItemRecommender(dao, wrap(irec.getScorer()), irec.getItemUniverse());
+                }
+            }
+            return itemRecommender;
+        }
+
+        @Nullable
+        @Override
+        public ItemBasedItemScorer getItemBasedItemScorer() {
+            return null;
+        }
+
+        @Nullable
+        @Override
+        public ItemBasedItemRecommender getItemBasedItemRecommender() {
+            return null;
+        }
+
+        @Override
+        public void close() {
+            /* the underlying recommender is closed by its owner */
+        }
+    }
+
+    /**
+     * Item scorer returning the scores for one value of the sweep.
+     */
+    private class PointScorer extends AbstractItemScorer {
+        private final SweepItemScorer delegate;
+        private final int index;
+
+        PointScorer(SweepItemScorer s, int idx) {
+            delegate = s;
+            index = idx;
+        }
+
+        @Nonnull
+        @Override
+        public Map<Long, Double> score(long user, @Nonnull Collection<Long> items) {
+            return scoreSweep(delegate, user, items).get(index);
+        }
+
+        @Nonnull
+        @Override
+        public ResultMap scoreWithDetails(long user, @Nonnull Collection<Long> items) {
+            return scoreSweepWithDetails(delegate, user, items).get(index);
+        }
+    }
+}
@@ -30,7 +30,7 @@ import com.google.common.base.Predicate;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
-import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.longs.LongSet;
 import org.lenskit.data.entities.CommonAttributes;
 import org.lenskit.data.entities.CommonTypes;
@@ -38,6 +38,8 @@ import org.lenskit.data.entities.Entities;
 import org.lenskit.data.entities.Entity;
 import org.lenskit.data.ratings.Rating;
 import org.lenskit.data.ratings.Ratings;
+import org.lenskit.util.collections.LongUtils;
+import org.lenskit.util.keys.LongSortedArraySet;
 
 import java.util.List;
 
@@ -100,16 +102,14 @@ public class TestUser {
         return trainHistory;
     }
 
+    /**
+     * Get the items in the user's training history.
+     * @return The set of training items, as a sorted array set.
+     */
     public LongSet getTrainItems() {
-
         LongSet items = trainItems;
         if (items == null) {
-            items = new LongOpenHashSet();
-            for (Entity e : trainHistory) {
-                if(e.hasAttribute(CommonAttributes.ITEM_ID)) {
-                    items.add(e.getLong(CommonAttributes.ITEM_ID));
-                }
-            }
+            items = itemSet(trainHistory);
             trainItems = items;
         }
         return items;
@@ -124,29 +124,40 @@ public class TestUser {
         return testHistory;
     }
 
+    /**
+     * Get the items in the user's test history.
+     * @return The set of test items, as a sorted array set.
+     */
     public LongSet getTestItems() {
         LongSet items = testItems;
         if (items == null) {
-            items = new LongOpenHashSet();
-            for (Entity e : testHistory) {
-                if(e.hasAttribute(CommonAttributes.ITEM_ID)) {
-                    items.add(e.getLong(CommonAttributes.ITEM_ID));
-                }
-            }
+            items = itemSet(testHistory);
             testItems = items;
         }
         return items;
     }
 
+    /**
+     * Get the sorted set of items referenced by a history.  Sorted array sets let evaluation code
+     * compute candidate sets by merging rather than hashing.
+     */
+    private static LongSortedArraySet itemSet(List<Entity> history) {
+        LongArrayList items = new LongArrayList(history.size());
+        for (Entity e : history) {
+            if(e.hasAttribute(CommonAttributes.ITEM_ID)) {
+                items.add(e.getLong(CommonAttributes.ITEM_ID));
+            }
+        }
+        return LongUtils.packedSet(items);
+    }
+
     /**
      * The set of items this user has *seen* in either training or test.
      * @return The set of all seen items (training and test).
      */
     public LongSet getSeenItems() {
         if (seenItems == null) {
-            LongSet items = new LongOpenHashSet(getTrainItems());
-            items.addAll(getTestItems());
-            seenItems = items;
+            seenItems = LongUtils.setUnion(getTrainItems(), getTestItems());
         }
         return seenItems;
     }
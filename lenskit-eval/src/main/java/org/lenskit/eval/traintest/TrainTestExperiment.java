@@ -93,9 +93,19 @@ public class TrainTestExperiment {
     private Path outputFile;
     private Path userOutputFile;
     private Path cacheDir;
+    private Path checkpointDir;
     private boolean shareModelComponents = true;
+    private boolean sweepEvaluation = true;
+    private boolean approximateSweeps = false;
+    private boolean latencyStatistics = false;
+    private int latencyWarmup = 0;
     private int threadCount = 0;
     private int parallelTasks = 0;
+    private long memoryBudget = 0;
+    private int workerCount = 0;
+    private String workerHeapSize;
+    private Path specFile;
+    private boolean workerMode = false;
     private boolean continueAfterError = false;
     private ClassLoader classLoader = ClassLoaders.inferDefault(TrainTestExperiment.class);
 
@@ -110,6 +120,7 @@ public class TrainTestExperiment {
     private ExperimentOutputLayout outputLayout;
     private List<ExperimentJob> allJobs;
     private TaskGroup rootJob;
+    private MemoryScheduler memoryScheduler;
 
     /**
      * Set the primary output file.
@@ -243,6 +254,113 @@ public class TrainTestExperiment {
         shareModelComponents = shares;
     }
 
+    /**
+     * Query whether parameter sweeps are evaluated from a shared model.
+     *
+     * @return {@code true} if sweeps share a model.
+     * @see #setSweepEvaluation(boolean)
+     */
+    public boolean getSweepEvaluation() {
+        return sweepEvaluation;
+    }
+
+    /**
+     * Control whether parameter sweeps are evaluated from a shared model.  When enabled (the default), an algorithm
+     * with a {@linkplain AlgorithmInstance#getSweep() sweep} is trained once and, if its item scorer supports
+     * {@link org.lenskit.basic.SweepItemScorer sweep scoring}, every value is measured from that model in a single
+     * pass over the test users.  When disabled, or when the scorer does not support sweeping, each value is built
+     * and evaluated as a separate algorithm.  With a shared model, the build and test times reported for each
+     * value are those of the shared model and the whole pass over the test users.
+     *
+     * Scorers whose sweep scores only {@linkplain org.lenskit.basic.SweepItemScorer#isSweepExact() approximate}
+     * separately-built models are built separately for each value unless
+     * {@linkplain #setApproximateSweeps(boolean) approximate sweeps} are allowed.
+     *
+     * @param sweep `true` to evaluate sweeps from a shared model.
+     */
+    public void setSweepEvaluation(boolean sweep) {
+        sweepEvaluation = sweep;
+    }
+
+    /**
+     * Query whether sweeps are evaluated from a shared model when the scorer's sweep scores are approximate.
+     *
+     * @return {@code true} if approximate sweeps are allowed.
+     * @see #setApproximateSweeps(boolean)
+     */
+    public boolean getApproximateSweeps() {
+        return approximateSweeps;
+    }
+
+    /**
+     * Control whether {@linkplain #setSweepEvaluation(boolean) sweep evaluation} uses scorers whose sweep scores
+     * are not {@linkplain org.lenskit.basic.SweepItemScorer#isSweepExact() exact}, such as FunkSVD's scores for
+     * smaller feature counts.  This is off by default, so such scorers are built separately for each value.
+     *
+     * @param approx `true` to allow approximate sweeps.
+     */
+    public void setApproximateSweeps(boolean approx) {
+        approximateSweeps = approx;
+    }
+
+    /**
+     * Query whether per-user latency statistics are reported.
+     *
+     * @return {@code true} if latency statistics are reported.
+     * @see #setLatencyStatistics(boolean)
+     */
+    public boolean getLatencyStatistics() {
+        return latencyStatistics;
+    }
+
+    /**
+     * Control whether per-user latency statistics are reported.  When enabled, the evaluator times the measurement
+     * of each test user (all eval tasks' work for that user) with a nanosecond clock, and adds the following columns
+     * to the aggregate output:
+     *
+     * `Latency.Mean`, `Latency.P50`, `Latency.P95`, `Latency.P99`, `Latency.Max`
+     * :   The distribution of per-user latencies, in milliseconds.
+     *
+     * `UsersPerSecond`
+     * :   The throughput of testing, measured over wall-clock time (so it includes the benefit of parallel testing).
+     *
+     * `AllocPerUser`
+     * :   The mean number of bytes allocated while measuring a user, if the JVM supports per-thread allocation
+     *     counting.
+     *
+     * With a shared sweep model, the item scorer scores every value of the sweep at once.  Each condition's view is
+     * still timed separately, so the cost of that shared scoring is charged to the condition whose measurement
+     * triggers it (usually the first value of the sweep), and the other conditions are charged only for their own
+     * evaluation work; throughput is measured over the whole pass over the test users.  Disable
+     * {@linkplain #setSweepEvaluation(boolean) sweep evaluation} to measure each value's latency separately.
+     *
+     * @param stats `true` to report latency statistics.
+     * @see #setLatencyWarmup(int)
+     */
+    public void setLatencyStatistics(boolean stats) {
+        latencyStatistics = stats;
+    }
+
+    /**
+     * Get the number of warmup users excluded from latency statistics.
+     * @return The number of warmup users.
+     */
+    public int getLatencyWarmup() {
+        return latencyWarmup;
+    }
+
+    /**
+     * Set the number of users to measure for each condition before recording latency statistics, so that they
+     * do not reflect class loading, JIT compilation, or cold caches.  The warmup users are still measured for all
+     * other outputs.
+     *
+     * @param n The number of warmup users (default 0).
+     */
+    public void setLatencyWarmup(int n) {
+        Preconditions.checkArgument(n >= 0, "warmup count must be non-negative");
+        latencyWarmup = n;
+    }
+
     /**
      * Get the cache directory for model components.
      * @return The directory where model components will be cached.
@@ -259,6 +377,28 @@ public class TrainTestExperiment {
         cacheDir = dir;
     }
 
+    /**
+     * Get the checkpoint directory for completed jobs.
+     * @return The directory where completed job results are checkpointed, or `null` if checkpointing is disabled.
+     */
+    public Path getCheckpointDirectory() {
+        return checkpointDir;
+    }
+
+    /**
+     * Set the checkpoint directory for completed jobs.  When set, the global and per-user results of each
+     * (algorithm, data set) job are written to a file in this directory once the job completes.  If the
+     * experiment is re-run, completed jobs are skipped and their stored results are merged into the output.
+     *
+     * Checkpoints are identified by data set and algorithm attributes; clear the directory if algorithm
+     * configurations change.
+     *
+     * @param dir The directory for job checkpoints, or `null` to disable checkpointing.
+     */
+    public void setCheckpointDirectory(Path dir) {
+        checkpointDir = dir;
+    }
+
     /**
      * Get the number of threads that the experiment may use.
      *
@@ -310,6 +450,81 @@ public class TrainTestExperiment {
         parallelTasks = pt;
     }
 
+    /**
+     * Get the heap budget for memory-aware job scheduling.
+     *
+     * @return The heap budget in bytes, or 0 if memory-aware scheduling is disabled.
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Set the heap budget for memory-aware job scheduling.  When set, jobs are only started while the sum of the
+     * estimated peak heap use of running jobs fits within the budget, and larger jobs are started first.  Estimates
+     * come from the peak heap growth measured in previous runs (stored in the cache directory, if one is set),
+     * falling back to {@link AlgorithmInstance#getMemoryEstimate()} and then to an even share of the budget for each
+     * thread.  This works in addition to the {@linkplain #setParallelTasks(int) parallel task limit}.
+     *
+     * @param bytes The heap budget in bytes, 0 to disable memory-aware scheduling, or a negative value to use
+     *              that many bytes less than the JVM's maximum heap size.
+     */
+    public void setMemoryBudget(long bytes) {
+        memoryBudget = bytes;
+    }
+
+    /**
+     * Get the number of worker processes.
+     * @return The number of worker JVMs to run jobs in, or 0 to run jobs in this JVM.
+     */
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    /**
+     * Set the number of worker processes.  If positive, jobs are not run in this JVM; instead, the experiment
+     * starts this many worker JVMs on the local machine, assigns jobs to them one at a time, and merges their
+     * results into its output as they finish.  Jobs from workers that die are reassigned.  The thread count is
+     * divided among the workers.
+     *
+     * Multi-process execution requires that the experiment was {@linkplain #load(Path) loaded from a file} (so the
+     * workers can load it too) and that a checkpoint or cache directory be configured: workers report results
+     * through {@linkplain #setCheckpointDirectory(Path) job checkpoints} and share the cache directory.  Per-task
+     * output files (such as prediction output) are written separately by each worker, with the worker ID added
+     * to the file name.
+     *
+     * @param n The number of worker JVMs, or 0 to run jobs in this JVM.
+     */
+    public void setWorkerCount(int n) {
+        Preconditions.checkArgument(n >= 0, "worker count cannot be negative");
+        workerCount = n;
+    }
+
+    /**
+     * Get the maximum heap size for worker processes.
+     * @return The worker heap size (as passed to `-Xmx`), or `null` to use the JVM default.
+     */
+    public String getWorkerHeapSize() {
+        return workerHeapSize;
+    }
+
+    /**
+     * Set the maximum heap size for worker processes.
+     * @param size The worker heap size, in the format of the `-Xmx` option (e.g. `8g`), or `null` to use the JVM
+     *             default.
+     */
+    public void setWorkerHeapSize(String size) {
+        workerHeapSize = size;
+    }
+
+    /**
+     * Get the file this experiment was loaded from.
+     * @return The specification file, or `null` if the experiment was configured programmatically.
+     */
+    Path getSpecFile() {
+        return specFile;
+    }
+
     /**
      * Query whether this task will continue in the face of an error.
      * @return `true` if the experiment will keep going if a segment fails.
@@ -418,7 +633,12 @@ public class TrainTestExperiment {
                 logger.debug("gathering jobs");
                 buildJobGraph();
                 int nthreads = getThreadCount();
-                if (nthreads > 1) {
+                if (rootJob == null) {
+                    logger.info("all jobs restored from checkpoints");
+                } else if (workerCount > 0) {
+                    logger.info("running in {} worker processes", workerCount);
+                    runWorkerProcesses();
+                } else if (nthreads > 1) {
                     logger.info("running with {} threads", nthreads);
                     runJobGraph(nthreads);
                 } else {
@@ -426,6 +646,11 @@ public class TrainTestExperiment {
                     runJobList();
                 }
 
+                if (memoryScheduler != null) {
+                    memoryScheduler.logUtilization();
+                    memoryScheduler.saveHistory();
+                }
+
                 logger.info("train-test evaluation complete");
                 // done before closing, but that is ok
                 return resultBuilder.build();
@@ -433,6 +658,7 @@ public class TrainTestExperiment {
                 throw resultCloser.rethrow(th);
             } finally {
                 outputLayout = null;
+                memoryScheduler = null;
                 // FIXME Handle exceptions in task shutdown cleanly
                 for (EvalTask task: tasks) {
                     task.finish();
@@ -445,6 +671,78 @@ public class TrainTestExperiment {
         }
     }
 
+    /**
+     * Run as a worker process of a multi-process experiment, evaluating the jobs assigned through a work queue.
+     *
+     * @param inbox The directory in which the coordinator places job assignments.
+     * @param workerId The worker identifier.
+     * @see #setWorkerCount(int)
+     */
+    void runWorker(Path inbox, String workerId) {
+        Preconditions.checkState(getJobCheckpointDirectory() != null, "workers require a checkpoint directory");
+        workerMode = true;
+        for (EvalTask task: tasks) {
+            renameWorkerOutputs(task, workerId);
+        }
+        try {
+            try {
+                resultCloser = Closer.create();
+                ExperimentOutputLayout layout = makeExperimentOutputLayout();
+                openOutputs(layout);
+                for (EvalTask task: tasks) {
+                    task.start(layout);
+                }
+                buildJobGraph();
+                Map<String, ExperimentJob> jobs = new HashMap<>();
+                for (ExperimentJob job: allJobs) {
+                    jobs.put(WorkerPool.jobName(job), job);
+                }
+                ForkJoinPool pool = new ForkJoinPool(getThreadCount());
+                try {
+                    new WorkerPool.Inbox(inbox).process(jobs, pool);
+                } finally {
+                    pool.shutdown();
+                }
+            } catch (Throwable th) { //NOSONAR using closer
+                throw resultCloser.rethrow(th);
+            } finally {
+                outputLayout = null;
+                memoryScheduler = null;
+                for (EvalTask task: tasks) {
+                    task.finish();
+                }
+                resultBuilder = null;
+                resultCloser.close();
+            }
+        } catch (IOException ex) {
+            throw new EvaluationException("I/O error in evaluation", ex);
+        }
+    }
+
+    private static void renameWorkerOutputs(EvalTask task, String workerId) {
+        if (task instanceof PredictEvalTask) {
+            PredictEvalTask pt = (PredictEvalTask) task;
+            pt.setOutputFile(workerFile(pt.getOutputFile(), workerId));
+        } else if (task instanceof RecommendEvalTask) {
+            RecommendEvalTask rt = (RecommendEvalTask) task;
+            rt.setOutputFile(workerFile(rt.getOutputFile(), workerId));
+            rt.setItemOutputFile(workerFile(rt.getItemOutputFile(), workerId));
+        }
+    }
+
+    private static Path workerFile(Path file, String workerId) {
+        if (file == null) {
+            return null;
+        }
+        String name = file.getFileName().toString();
+        int dot = name.indexOf('.');
+        if (dot < 0) {
+            return file.resolveSibling(name + "." + workerId);
+        } else {
+            return file.resolveSibling(name.substring(0, dot) + "." + workerId + name.substring(dot));
+        }
+    }
+
     public ExperimentOutputLayout getOutputLayout() {
         Preconditions.checkState(outputLayout != null, "experiment is not started");
         return outputLayout;
@@ -458,6 +756,9 @@ public class TrainTestExperiment {
         }
         for (AlgorithmInstance ai: getAlgorithms()) {
             algoColumns.addAll(ai.getAttributes().keySet());
+            if (ai.getSweep() != null) {
+                algoColumns.add(ai.getSweep().getAttribute());
+            }
         }
         return new ExperimentOutputLayout(dataColumns, algoColumns);
     }
@@ -465,6 +766,13 @@ public class TrainTestExperiment {
     private void openOutputs(ExperimentOutputLayout eol) throws IOException {
         TableLayout globalLayout = makeGlobalResultLayout(eol);
         resultBuilder = resultCloser.register(new TableBuilder(globalLayout));
+        if (workerMode) {
+            // workers report results through job checkpoints
+            globalOutput = resultBuilder;
+            userOutput = TableWriters.noop(makeUserResultLayout(eol));
+            outputLayout = eol;
+            return;
+        }
         if (outputFile != null) {
             TableWriter csvw = resultCloser.register(CSVWriter.open(outputFile.toFile(), globalLayout, CompressionMode.AUTO));
             globalOutput = resultCloser.register(new MultiplexedTableWriter(globalLayout, resultBuilder, csvw));
@@ -474,7 +782,7 @@ public class TrainTestExperiment {
 
         TableLayout ul = makeUserResultLayout(eol);
         if (userOutputFile != null) {
-            userOutput = resultCloser.register(CSVWriter.open(userOutputFile.toFile(), ul, CompressionMode.AUTO));
+            userOutput = resultCloser.register(TableWriters.async(CSVWriter.open(userOutputFile.toFile(), ul, CompressionMode.AUTO)));
         } else {
             userOutput = TableWriters.noop(ul);
         }
@@ -486,6 +794,15 @@ public class TrainTestExperiment {
         tlb.addColumn("Succeeded")
            .addColumn("BuildTime")
            .addColumn("TestTime");
+        if (latencyStatistics) {
+            tlb.addColumn("Latency.Mean")
+               .addColumn("Latency.P50")
+               .addColumn("Latency.P95")
+               .addColumn("Latency.P99")
+               .addColumn("Latency.Max")
+               .addColumn("UsersPerSecond")
+               .addColumn("AllocPerUser");
+        }
         for (EvalTask task: tasks) {
             tlb.addColumns(task.getGlobalColumns());
         }
@@ -517,10 +834,13 @@ public class TrainTestExperiment {
             cache = new ComponentCache(cacheDir, classLoader);
         }
         Map<UUID,TaskGroup> groups = new HashMap<>();
+        int nrestored = 0;
         Semaphore limit = null;
         if (parallelTasks > 0) {
             limit = new Semaphore(parallelTasks);
         }
+        memoryScheduler = workerMode ? null : makeMemoryScheduler();
+        Path ckptDir = getJobCheckpointDirectory();
 
         // set up the roots
         LenskitConfiguration config = new LenskitConfiguration();
@@ -534,21 +854,64 @@ public class TrainTestExperiment {
         for (DataSet ds: getDataSets()) {
             // TODO support global isolation
             UUID gid = ds.getIsolationGroup();
-            TaskGroup group = groups.get(gid);
-            if (group == null) {
-                group = new TaskGroup(true);
-                groups.put(gid, group);
-                group.setContinueAterError(continueAfterError);
-            }
             MergePool<Component,Dependency> pool = null;
             if (cache != null) {
                 pool = MergePool.create();
             }
-            for (AlgorithmInstance ai: getAlgorithms()) {
-                TrackedJob j = tracker.makeChild(ExperimentJob.JOB_TYPE, "evaluate " + ai + " on " + ds);
-                ExperimentJob job = new ExperimentJob(this, ai, ds, config, cache, pool, j, limit);
-                allJobs.add(job);
-                group.addTask(job);
+            for (AlgorithmInstance ai: orderAlgorithms(ds)) {
+                ParameterSweep sweep = ai.getSweep();
+                List<AlgorithmInstance> points = ai.getSweepInstances();
+                List<ExperimentJob.Condition> conditions = new ArrayList<>();
+                for (int i = 0; i < points.size(); i++) {
+                    AlgorithmInstance point = points.get(i);
+                    JobCheckpoint ckpt = null;
+                    if (ckptDir != null) {
+                        ckpt = new JobCheckpoint(ckptDir, ds, point);
+                        // workers run whatever they are assigned, the coordinator restores completed jobs
+                        if (!workerMode && restoreCheckpoint(ckpt, ds, point)) {
+                            nrestored += 1;
+                            continue;
+                        }
+                    }
+                    conditions.add(new ExperimentJob.Condition(point, ckpt,
+                                                               sweep != null ? sweep.getValues()[i] : 0));
+                }
+                if (conditions.isEmpty()) {
+                    continue;
+                }
+
+                TaskGroup group = groups.get(gid);
+                if (group == null) {
+                    group = new TaskGroup(true);
+                    groups.put(gid, group);
+                    group.setContinueAterError(continueAfterError);
+                }
+                if (sweep != null && sweepEvaluation) {
+                    // one job scores every remaining point of the sweep from a shared model
+                    TrackedJob j = tracker.makeChild(ExperimentJob.JOB_TYPE, "evaluate " + ai + " on " + ds);
+                    ExperimentJob job = new ExperimentJob(this, ai.getSweepBase(), sweep, conditions, ds, config,
+                                                          cache, pool, j, limit, memoryScheduler);
+                    allJobs.add(job);
+                    group.addTask(job);
+                } else {
+                    for (ExperimentJob.Condition cond: conditions) {
+                        AlgorithmInstance point = cond.getAlgorithm();
+                        TrackedJob j = tracker.makeChild(ExperimentJob.JOB_TYPE,
+                                                         "evaluate " + point + " on " + ds);
+                        ExperimentJob job = new ExperimentJob(this, point, null, Collections.singletonList(cond),
+                                                              ds, config, cache, pool, j, limit, memoryScheduler);
+                        allJobs.add(job);
+                        group.addTask(job);
+                    }
+                }
+            }
+        }
+
+        if (nrestored > 0) {
+            logger.info("restored {} completed jobs from {}", nrestored, ckptDir);
+            if (groups.isEmpty()) {
+                rootJob = null;
+                return;
             }
         }
 
@@ -567,6 +930,95 @@ public class TrainTestExperiment {
         rootJob = root;
     }
 
+    /**
+     * Get the directory for job checkpoints.  Multi-process experiments need checkpoints, so they default to a
+     * directory in the cache directory.
+     */
+    private Path getJobCheckpointDirectory() {
+        if (checkpointDir == null && workerCount > 0 && cacheDir != null) {
+            return cacheDir.resolve("checkpoints");
+        } else {
+            return checkpointDir;
+        }
+    }
+
+    /**
+     * Run the jobs in worker processes.
+     */
+    private void runWorkerProcesses() {
+        Preconditions.checkState(specFile != null, "multi-process experiments must be loaded from a file");
+        Path ckptDir = getJobCheckpointDirectory();
+        Preconditions.checkState(ckptDir != null,
+                                 "multi-process experiments require a checkpoint or cache directory");
+        int threads = Math.max(getThreadCount() / workerCount, 1);
+        WorkerPool workers = new WorkerPool(this, ckptDir, threads);
+        try {
+            workers.run(allJobs);
+        } catch (IOException e) {
+            throw new EvaluationException("error communicating with worker processes", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EvaluationException("interrupted waiting for worker processes", e);
+        }
+    }
+
+    /**
+     * Set up the memory scheduler, if memory-aware scheduling is enabled.
+     */
+    private MemoryScheduler makeMemoryScheduler() {
+        if (memoryBudget == 0) {
+            return null;
+        }
+        long budget = memoryBudget;
+        if (budget < 0) {
+            budget = Runtime.getRuntime().maxMemory() + budget;
+            Preconditions.checkState(budget > 0, "memory budget reserves more than the maximum heap");
+        }
+        Path history = cacheDir != null ? cacheDir.resolve(MemoryScheduler.HISTORY_FILE_NAME) : null;
+        try {
+            logger.info("scheduling jobs within {}MiB of heap", budget >> 20);
+            return new MemoryScheduler(budget, getThreadCount(), history);
+        } catch (IOException e) {
+            throw new EvaluationException("error reading memory history " + history, e);
+        }
+    }
+
+    /**
+     * Order the algorithms to run on a data set.  With memory-aware scheduling, larger jobs go first so smaller
+     * ones can fill the remaining headroom; jobs on the same data set stay together, so shared components are
+     * reused from the component cache while they are still in memory.
+     */
+    private List<AlgorithmInstance> orderAlgorithms(DataSet ds) {
+        List<AlgorithmInstance> algos = new ArrayList<>(getAlgorithms());
+        if (memoryScheduler != null) {
+            algos.sort(Comparator.comparingLong((AlgorithmInstance ai) -> memoryScheduler.estimate(ds, ai))
+                                 .reversed());
+        }
+        return algos;
+    }
+
+    /**
+     * Replay a job's checkpoint into the experiment output.
+     * @return `true` if the job was completed in a previous run and its results restored.
+     */
+    boolean restoreCheckpoint(JobCheckpoint ckpt, DataSet ds, AlgorithmInstance ai) {
+        TableWriter global = outputLayout.prefixTable(globalOutput, ds, ai);
+        TableWriter user = null;
+        if (userOutputFile != null) {
+            user = outputLayout.prefixTable(userOutput, ds, ai);
+        }
+        try {
+            if (ckpt.replay(global, user)) {
+                logger.info("{} on {} already completed, using results from {}", ai, ds, ckpt.getFile());
+                return true;
+            } else {
+                return false;
+            }
+        } catch (IOException e) {
+            throw new EvaluationException("error reading checkpoint " + ckpt.getFile(), e);
+        }
+    }
+
     /**
      * Run the jobs in sequence.
      */
@@ -602,6 +1054,39 @@ public class TrainTestExperiment {
         }
     }
 
+    /**
+     * Parse a byte count with an optional binary suffix (e.g. `512M` or `8g`).
+     */
+    static long parseByteCount(String text) {
+        String str = text.trim();
+        if (str.isEmpty()) {
+            return 0;
+        }
+        int shift = 0;
+        switch (Character.toUpperCase(str.charAt(str.length() - 1))) {
+        case 'K':
+            shift = 10;
+            break;
+        case 'M':
+            shift = 20;
+            break;
+        case 'G':
+            shift = 30;
+            break;
+        case 'T':
+            shift = 40;
+            break;
+        }
+        if (shift > 0) {
+            str = str.substring(0, str.length() - 1).trim();
+        }
+        try {
+            return Long.parseLong(str) << shift;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid byte count " + text, e);
+        }
+    }
+
     /**
      * Load a train-test experiment from a YAML file.
      * @param file The file to load.
@@ -612,7 +1097,9 @@ public class TrainTestExperiment {
         ObjectMapper mapper = new ObjectMapper(factory);
         JsonNode node = mapper.readTree(file.toFile());
 
-        return fromJSON(node, file.toUri());
+        TrainTestExperiment exp = fromJSON(node, file.toUri());
+        exp.specFile = file.toAbsolutePath();
+        return exp;
     }
 
     /**
@@ -638,13 +1125,24 @@ public class TrainTestExperiment {
         if (cacheDir != null) {
             exp.setCacheDirectory(Paths.get(base.resolve(cacheDir)));
         }
+        String ckptDir = json.path("checkpoint_directory").asText(null);
+        if (ckptDir != null) {
+            exp.setCheckpointDirectory(Paths.get(base.resolve(ckptDir)));
+        }
         if (json.has("thread_count")) {
             exp.setThreadCount(json.get("thread_count").asInt(1));
         }
         exp.setParallelTasks(json.path("parallel_tasks").asInt(0));
+        exp.setMemoryBudget(parseByteCount(json.path("memory_budget").asText("0")));
+        exp.setWorkerCount(json.path("worker_count").asInt(0));
+        exp.setWorkerHeapSize(json.path("worker_heap").asText(null));
         if (json.has("share_model_components")) {
             exp.setShareModelComponents(json.get("share_model_components").asBoolean());
         }
+        exp.setSweepEvaluation(json.path("sweep_evaluation").asBoolean(true));
+        exp.setApproximateSweeps(json.path("approximate_sweeps").asBoolean(false));
+        exp.setLatencyStatistics(json.path("latency_statistics").asBoolean(false));
+        exp.setLatencyWarmup(json.path("latency_warmup").asInt(0));
         exp.setContinueAfterError(json.path("continue_after_error").asBoolean(false));
         if (!json.has("datasets")) {
             throw new IllegalArgumentException("no data sets specified");
@@ -0,0 +1,446 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.eval.traintest;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Throwables;
+import org.lenskit.util.io.StagedWrite;
+import org.lenskit.util.table.RowBuilder;
+import org.lenskit.util.table.writer.TableWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Runs experiment jobs in worker JVMs on the local machine.
+ *
+ * The coordinator and its workers communicate through a file queue in the checkpoint directory.  Each worker has
+ * an inbox directory; the coordinator assigns a job by writing its name, followed by the checkpoint names of the
+ * conditions to evaluate (one per line), to the next numbered `.job` file.  Jobs are named by their data set and
+ * (base) algorithm, so a worker finds a sweep job even when the coordinator restored some of its points from a
+ * previous run; the worker evaluates only the listed conditions.  The worker reports completion by writing the job's {@link JobCheckpoint} (or a `.failed` file with the error).  The
+ * coordinator replays each checkpoint into the experiment output as soon as it appears.  If a worker exits while
+ * it has a job, the job is reassigned (up to {@link #MAX_ATTEMPTS} times) and a replacement worker is started.
+ *
+ * @see TrainTestExperiment#setWorkerCount(int)
+ */
+class WorkerPool {
+    private static final Logger logger = LoggerFactory.getLogger(WorkerPool.class);
+    private static final long POLL_MILLIS = 250;
+    private static final long STOP_WAIT_SECONDS = 30;
+    static final int MAX_ATTEMPTS = 3;
+    static final String STOP_FILE = "stop";
+
+    private final TrainTestExperiment experiment;
+    private final Path checkpointDir;
+    private final Path queueDir;
+    private final int workerThreads;
+    private int workerSerial = 0;
+
+    /**
+     * Create a new worker pool.
+     * @param exp The experiment.
+     * @param ckptDir The checkpoint directory.
+     * @param threads The number of threads for each worker.
+     */
+    WorkerPool(TrainTestExperiment exp, Path ckptDir, int threads) {
+        experiment = exp;
+        checkpointDir = ckptDir;
+        queueDir = ckptDir.resolve("queue");
+        workerThreads = threads;
+    }
+
+    /**
+     * Get the name identifying a job in the work queue.
+     * @param job The job.
+     * @return The job's name.
+     */
+    static String jobName(ExperimentJob job) {
+        return JobCheckpoint.makeFileName(job.getDataSet(), job.getAlgorithm());
+    }
+
+    /**
+     * Get the name identifying a condition within a job.
+     * @param cond The condition.
+     * @return The condition's name.
+     */
+    static String conditionName(ExperimentJob.Condition cond) {
+        JobCheckpoint ckpt = cond.getCheckpoint();
+        if (ckpt == null) {
+            throw new IllegalStateException("condition " + cond.getAlgorithm() + " has no checkpoint");
+        }
+        return ckpt.getFile().getFileName().toString();
+    }
+
+    /**
+     * Make the assignment message for a job.
+     * @param job The job.
+     * @return The contents of the job's assignment file.
+     */
+    static String assignment(ExperimentJob job) {
+        StringBuilder sb = new StringBuilder(jobName(job));
+        for (ExperimentJob.Condition cond: job.getConditions()) {
+            sb.append('\n').append(conditionName(cond));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Resolve an assignment message into the job to run.
+     * @param jobs The jobs, by name.
+     * @param message The contents of an assignment file.
+     * @return The job, restricted to the assigned conditions.
+     * @throws EvaluationException if the assignment names an unknown job or condition.
+     */
+    static ExperimentJob resolveAssignment(Map<String, ExperimentJob> jobs, String message) {
+        String[] lines = message.split("\n");
+        ExperimentJob job = jobs.get(lines[0]);
+        if (job == null) {
+            throw new EvaluationException("unknown job " + lines[0]);
+        }
+        Map<String, ExperimentJob.Condition> conditions = new HashMap<>();
+        for (ExperimentJob.Condition cond: job.getConditions()) {
+            conditions.put(conditionName(cond), cond);
+        }
+        List<ExperimentJob.Condition> selected = new ArrayList<>();
+        for (int i = 1; i < lines.length; i++) {
+            ExperimentJob.Condition cond = conditions.get(lines[i]);
+            if (cond == null) {
+                throw new EvaluationException("unknown condition " + lines[i] + " of job " + lines[0]);
+            }
+            selected.add(cond);
+        }
+        if (selected.isEmpty() || selected.equals(job.getConditions())) {
+            return job;
+        } else {
+            return job.withConditions(selected);
+        }
+    }
+
+    /**
+     * Query whether a job has written the checkpoints for all its conditions.
+     */
+    private static boolean isComplete(ExperimentJob job) {
+        for (ExperimentJob.Condition cond: job.getConditions()) {
+            if (!cond.getCheckpoint().exists()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Run jobs in worker processes, returning when all jobs have completed or failed.
+     * @param jobs The jobs to run.
+     */
+    void run(List<ExperimentJob> jobs) throws IOException, InterruptedException {
+        clearQueue();
+        int nworkers = Math.min(experiment.getWorkerCount(), jobs.size());
+        int maxStarts = nworkers * MAX_ATTEMPTS + jobs.size();
+        Deque<ExperimentJob> pending = new ArrayDeque<>(jobs);
+        Map<ExperimentJob, Integer> attempts = new HashMap<>();
+        List<Worker> workers = new ArrayList<>();
+        int started = 0;
+        int finished = 0;
+        boolean clean = false;
+
+        try {
+            while (!pending.isEmpty() || !workers.isEmpty()) {
+                while (workers.size() < nworkers && !pending.isEmpty() && started < maxStarts) {
+                    workers.add(startWorker());
+                    started += 1;
+                }
+                if (workers.isEmpty()) {
+                    throw new EvaluationException(pending.size() + " jobs not run, worker processes keep failing");
+                }
+
+                Iterator<Worker> iter = workers.iterator();
+                while (iter.hasNext()) {
+                    Worker w = iter.next();
+                    // check liveness first, so results written just before exiting are seen
+                    boolean alive = w.process.isAlive();
+                    ExperimentJob job = w.current;
+                    if (job != null) {
+                        String error;
+                        if (isComplete(job)) {
+                            w.finishJob();
+                            finished += 1;
+                            for (ExperimentJob.Condition cond: job.getConditions()) {
+                                JobCheckpoint ckpt = cond.getCheckpoint();
+                                if (!experiment.restoreCheckpoint(ckpt, job.getDataSet(), cond.getAlgorithm())) {
+                                    throw new EvaluationException("worker " + w.id + " wrote unusable checkpoint "
+                                                                          + ckpt.getFile());
+                                }
+                            }
+                            logger.info("worker {} finished {} on {} ({} of {} jobs)",
+                                        w.id, job.getAlgorithm(), job.getDataSet(), finished, jobs.size());
+                        } else if ((error = w.readFailure()) != null) {
+                            w.finishJob();
+                            finished += 1;
+                            jobFailed(job, "worker " + w.id + " failed:\n" + error);
+                        } else if (!alive) {
+                            w.current = null;
+                            int n = attempts.merge(job, 1, Integer::sum);
+                            if (n < MAX_ATTEMPTS) {
+                                logger.warn("worker {} exited while running {} on {}, reassigning",
+                                            w.id, job.getAlgorithm(), job.getDataSet());
+                                pending.addFirst(job);
+                            } else {
+                                finished += 1;
+                                jobFailed(job, "workers exited " + n + " times while running job");
+                            }
+                        }
+                    }
+
+                    if (!alive) {
+                        logger.info("worker {} exited with status {}", w.id, w.process.exitValue());
+                        iter.remove();
+                    } else if (w.current == null) {
+                        if (!pending.isEmpty()) {
+                            w.assign(pending.removeFirst());
+                        } else {
+                            w.stop();
+                        }
+                    }
+                }
+
+                Thread.sleep(POLL_MILLIS);
+            }
+            clean = true;
+        } finally {
+            shutdown(workers, clean);
+        }
+    }
+
+    private void jobFailed(ExperimentJob job, String message) throws IOException {
+        logger.error("error evaluating {} on {}: {}", job.getAlgorithm(), job.getDataSet(), message);
+        for (ExperimentJob.Condition cond: job.getConditions()) {
+            TableWriter out = experiment.getOutputLayout().prefixTable(experiment.getGlobalOutput(),
+                                                                       job.getDataSet(), cond.getAlgorithm());
+            RowBuilder row = out.getLayout().newRowBuilder();
+            row.add("Succeeded", "N");
+            out.writeRow(row.buildList());
+        }
+        if (!experiment.getContinueAfterError()) {
+            throw new EvaluationException("error evaluating " + job.getAlgorithm() + " on " + job.getDataSet()
+                                                  + ": " + message);
+        }
+    }
+
+    private void shutdown(List<Worker> workers, boolean clean) throws InterruptedException {
+        for (Worker w: workers) {
+            if (clean) {
+                try {
+                    w.stop();
+                } catch (IOException e) {
+                    logger.warn("could not stop worker {}: {}", w.id, e.toString());
+                }
+            } else {
+                w.process.destroy();
+            }
+        }
+        for (Worker w: workers) {
+            if (!w.process.waitFor(STOP_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn("worker {} did not exit, killing", w.id);
+                w.process.destroyForcibly();
+            }
+        }
+    }
+
+    private void clearQueue() throws IOException {
+        if (Files.exists(queueDir)) {
+            // remove assignments left over from a previous run
+            try (Stream<Path> paths = Files.walk(queueDir)) {
+                paths.sorted(Comparator.reverseOrder())
+                     .forEach(p -> p.toFile().delete());
+            }
+        }
+        Files.createDirectories(queueDir);
+    }
+
+    private Worker startWorker() throws IOException {
+        workerSerial += 1;
+        String id = "w" + workerSerial;
+        Path inbox = queueDir.resolve(id);
+        Files.createDirectories(inbox);
+
+        List<String> cmd = new ArrayList<>();
+        cmd.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if (experiment.getWorkerHeapSize() != null) {
+            cmd.add("-Xmx" + experiment.getWorkerHeapSize());
+        }
+        for (String prop: System.getProperties().stringPropertyNames()) {
+            if (prop.startsWith("lenskit.") || prop.startsWith("logback.")) {
+                cmd.add("-D" + prop + "=" + System.getProperty(prop));
+            }
+        }
+        cmd.add("-cp");
+        cmd.add(workerClassPath());
+        cmd.add(ExperimentWorker.class.getName());
+        cmd.add(experiment.getSpecFile().toString());
+        cmd.add(checkpointDir.toAbsolutePath().toString());
+        cmd.add(inbox.toAbsolutePath().toString());
+        cmd.add(id);
+        cmd.add(Integer.toString(workerThreads));
+
+        logger.info("starting worker {}", id);
+        logger.debug("worker command: {}", cmd);
+        // standard input stays a pipe; workers exit when it is closed
+        Process proc = new ProcessBuilder(cmd)
+                .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        return new Worker(id, proc, inbox);
+    }
+
+    /**
+     * Compute the class path for workers: this JVM's class path plus any directories or jars added to the
+     * experiment's class loader.
+     */
+    private String workerClassPath() {
+        Set<String> entries = new LinkedHashSet<>();
+        entries.addAll(Arrays.asList(System.getProperty("java.class.path").split(File.pathSeparator)));
+        ClassLoader loader = experiment.getClassLoader();
+        while (loader != null) {
+            if (loader instanceof URLClassLoader) {
+                for (URL url: ((URLClassLoader) loader).getURLs()) {
+                    if (url.getProtocol().equals("file")) {
+                        try {
+                            entries.add(Paths.get(url.toURI()).toString());
+                        } catch (URISyntaxException e) {
+                            logger.warn("cannot pass class path entry {} to workers", url);
+                        }
+                    }
+                }
+            }
+            loader = loader.getParent();
+        }
+        return Joiner.on(File.pathSeparator).join(entries);
+    }
+
+    /**
+     * Coordinator-side state of a worker process.
+     */
+    private static class Worker {
+        final String id;
+        final Process process;
+        final Path inbox;
+        int sequence = 0;
+        ExperimentJob current;
+        boolean stopped;
+
+        Worker(String id, Process proc, Path inbox) {
+            this.id = id;
+            process = proc;
+            this.inbox = inbox;
+        }
+
+        void assign(ExperimentJob job) throws IOException {
+            logger.debug("assigning {} on {} to worker {}", job.getAlgorithm(), job.getDataSet(), id);
+            writeFile(inbox.resolve(sequence + ".job"), assignment(job));
+            current = job;
+        }
+
+        String readFailure() throws IOException {
+            Path file = inbox.resolve(sequence + ".failed");
+            if (Files.exists(file)) {
+                return new String(Files.readAllBytes(file), Charsets.UTF_8);
+            } else {
+                return null;
+            }
+        }
+
+        void finishJob() {
+            current = null;
+            sequence += 1;
+        }
+
+        void stop() throws IOException {
+            if (!stopped) {
+                writeFile(inbox.resolve(STOP_FILE), "");
+                stopped = true;
+            }
+        }
+    }
+
+    /**
+     * Worker-side view of the work queue.
+     */
+    static class Inbox {
+        private final Path directory;
+
+        Inbox(Path dir) {
+            directory = dir;
+        }
+
+        /**
+         * Run assigned jobs until the coordinator asks this worker to stop.
+         * @param jobs The jobs, by name.
+         * @param pool The pool in which to run jobs.
+         */
+        void process(Map<String, ExperimentJob> jobs, ForkJoinPool pool) throws IOException, InterruptedException {
+            int sequence = 0;
+            while (true) {
+                Path next = directory.resolve(sequence + ".job");
+                if (Files.exists(next)) {
+                    String message = new String(Files.readAllBytes(next), Charsets.UTF_8);
+                    try {
+                        pool.invoke(resolveAssignment(jobs, message));
+                    } catch (RuntimeException e) {
+                        writeFile(directory.resolve(sequence + ".failed"), Throwables.getStackTraceAsString(e));
+                    }
+                    sequence += 1;
+                } else if (Files.exists(directory.resolve(STOP_FILE))) {
+                    return;
+                } else {
+                    Thread.sleep(POLL_MILLIS);
+                }
+            }
+        }
+    }
+
+    private static void writeFile(Path file, String content) throws IOException {
+        try (StagedWrite stage = StagedWrite.begin(file)) {
+            try (OutputStream out = stage.openOutputStream()) {
+                out.write(content.getBytes(Charsets.UTF_8));
+            }
+            stage.commit();
+        }
+    }
+}
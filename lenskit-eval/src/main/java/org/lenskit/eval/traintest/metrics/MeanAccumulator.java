@@ -0,0 +1,85 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.eval.traintest.metrics;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe accumulator for the mean of per-user measurements.  Values are added to striped adders,
+ * so many threads can add measurements without contending on a shared lock; the mean is computed
+ * when it is requested.  Use this for metric contexts instead of synchronizing on a
+ * {@link org.apache.commons.math3.stat.descriptive.moment.Mean}.
+ *
+ * Because values from different threads may be summed in any order, the mean may differ in the last
+ * few bits between runs.
+ */
+@ThreadSafe
+public class MeanAccumulator {
+    private final DoubleAdder sum = new DoubleAdder();
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Add a value.
+     * @param v The value to add.
+     */
+    public void add(double v) {
+        sum.add(v);
+        count.increment();
+    }
+
+    /**
+     * Get the number of values added.
+     * @return The number of values added.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Get the sum of the values added.
+     * @return The sum of values.
+     */
+    public double getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * Get the mean of the values added.  This should be called once measurement is finished; values
+     * added concurrently with this call may or may not be included.
+     *
+     * @return The mean, or {@link Double#NaN} if no values have been added.
+     */
+    public double getMean() {
+        long n = count.sum();
+        if (n == 0) {
+            return Double.NaN;
+        } else {
+            return sum.sum() / n;
+        }
+    }
+}
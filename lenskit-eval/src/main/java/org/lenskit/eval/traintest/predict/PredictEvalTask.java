@@ -42,6 +42,7 @@ import org.lenskit.util.table.TableLayout;
 import org.lenskit.util.table.TableLayoutBuilder;
 import org.lenskit.util.table.writer.CSVWriter;
 import org.lenskit.util.table.writer.TableWriter;
+import org.lenskit.util.table.writer.TableWriters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -192,7 +193,7 @@ public class PredictEvalTask implements EvalTask {
                                 .build();
         try {
             logger.info("writing predictions to {}", outFile);
-            outputTable = CSVWriter.open(outFile.toFile(), layout, CompressionMode.AUTO);
+            outputTable = TableWriters.async(CSVWriter.open(outFile.toFile(), layout, CompressionMode.AUTO));
         } catch (IOException e) {
             throw new EvaluationException("error opening prediction output file", e);
         }
@@ -93,21 +93,40 @@ public abstract class ItemSelector {
         config.setScriptBaseClass(ItemSelectScript.class.getName());
         GroovyShell shell = new GroovyShell(config);
         Script script = shell.parse(expr);
-        return new GroovyItemSelector((ItemSelectScript) script, expr);
+        return new GroovyItemSelector((ItemSelectScript) script, expr, nativeSelector(expr.trim()));
+    }
+
+    /**
+     * Get a native implementation of a common selector expression.  These selectors avoid running
+     * (and synchronizing on) a Groovy script for each user, and return sorted array sets so that
+     * recommenders can compute effective candidate sets by merging.
+     *
+     * @param expr The selector expression.
+     * @return A native selector equivalent to {@code expr}, or `null` if there is none.
+     */
+    private static ItemSelector nativeSelector(String expr) {
+        switch (expr) {
+        case "allItems":
+            return new AllItemSelector();
+        case "user.trainItems":
+            return new UserItemSelector(false);
+        case "user.testItems":
+            return new UserItemSelector(true);
+        default:
+            return null;
+        }
     }
 
     public static ItemSelector allItems() {
-        return compileSelector("allItems");
+        return new AllItemSelector();
     }
 
     public static ItemSelector userTestItems() {
-        // FIXME Cache this selector
-        return compileSelector("user.testItems");
+        return new UserItemSelector(true);
     }
 
     public static ItemSelector userTrainItems() {
-        // FIXME Cache this selector
-        return compileSelector("user.trainItems");
+        return new UserItemSelector(false);
     }
 
     /**
@@ -178,10 +197,12 @@ public abstract class ItemSelector {
     public static class GroovyItemSelector extends ItemSelector {
         private final ItemSelectScript script;
         private final String source;
+        private final ItemSelector nativeSelector;
 
-        GroovyItemSelector(ItemSelectScript scr, String src) {
+        GroovyItemSelector(ItemSelectScript scr, String src, ItemSelector nsel) {
             script = scr;
             source = src;
+            nativeSelector = nsel;
         }
 
         /**
@@ -194,10 +215,15 @@ public abstract class ItemSelector {
 
         @SuppressWarnings("unchecked")
         @Override
-        public synchronized LongSet selectItems(LongSet universe, Recommender recommender, TestUser user) {
-            script.setup(universe, recommender, user);
-            Set<Long> set = (Set<Long>) script.run();
-            return LongUtils.asLongSet(set);
+        public LongSet selectItems(LongSet universe, Recommender recommender, TestUser user) {
+            if (nativeSelector != null) {
+                return nativeSelector.selectItems(universe, recommender, user);
+            }
+            synchronized (this) {
+                script.setup(universe, recommender, user);
+                Set<Long> set = (Set<Long>) script.run();
+                return LongUtils.asLongSet(set);
+            }
         }
 
         @Override
@@ -206,6 +232,43 @@ public abstract class ItemSelector {
         }
     }
 
+    /**
+     * Native selector for all items.  The universe is packed once by the evaluator, so this usually
+     * returns it unchanged.
+     */
+    private static class AllItemSelector extends ItemSelector {
+        @Override
+        public LongSet selectItems(LongSet universe, Recommender recommender, TestUser user) {
+            return LongUtils.packedSet(universe);
+        }
+
+        @Override
+        public String toString() {
+            return "ItemSelector{allItems}";
+        }
+    }
+
+    /**
+     * Native selector for the user's train or test items.
+     */
+    private static class UserItemSelector extends ItemSelector {
+        private final boolean test;
+
+        UserItemSelector(boolean test) {
+            this.test = test;
+        }
+
+        @Override
+        public LongSet selectItems(LongSet universe, Recommender recommender, TestUser user) {
+            return test ? user.getTestItems() : user.getTrainItems();
+        }
+
+        @Override
+        public String toString() {
+            return test ? "ItemSelector{user.testItems}" : "ItemSelector{user.trainItems}";
+        }
+    }
+
     private static class NullItemSelector extends ItemSelector {
         @Override
         public LongSet selectItems(LongSet universe, Recommender recommender, TestUser user) {
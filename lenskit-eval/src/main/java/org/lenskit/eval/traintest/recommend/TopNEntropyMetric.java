@@ -39,6 +39,8 @@ import org.lenskit.eval.traintest.metrics.TypedMetricResult;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * Metric that measures the entropy of the top N recommendations across all users.
@@ -91,21 +93,42 @@ public class TopNEntropyMetric extends ListOnlyTopNMetric<TopNEntropyMetric.Cont
         }
     }
 
+    /**
+     * Entropy context.  Each measuring thread counts recommendations in its own map, and the maps are
+     * merged when the entropy is computed, so measuring threads do not contend on a shared lock.
+     */
     public static class Context {
-        private Long2IntMap counts = new Long2IntOpenHashMap();
-        private int recCount = 0;
+        private final Queue<LocalCounts> allCounts = new ConcurrentLinkedQueue<>();
+        private final ThreadLocal<LocalCounts> localCounts = ThreadLocal.withInitial(() -> {
+            LocalCounts lc = new LocalCounts();
+            allCounts.add(lc);
+            return lc;
+        });
 
-        private synchronized void addUser(LongList recs) {
+        private void addUser(LongList recs) {
+            LocalCounts lc = localCounts.get();
             LongIterator iter = recs.iterator();
             while (iter.hasNext()) {
                 long item = iter.nextLong();
-                counts.put(item, counts.get(item) +1);
-                recCount +=1;
+                lc.counts.addTo(item, 1);
+                lc.recCount += 1;
             }
         }
 
+        /**
+         * Compute the entropy.  This must only be called once all users have been measured.
+         * @return The entropy result, or `null` if there were no recommendations.
+         */
         @Nullable
         public synchronized EntropyResult finish() {
+            Long2IntOpenHashMap counts = new Long2IntOpenHashMap();
+            int recCount = 0;
+            for (LocalCounts lc: allCounts) {
+                for (Long2IntMap.Entry e : lc.counts.long2IntEntrySet()) {
+                    counts.addTo(e.getLongKey(), e.getIntValue());
+                }
+                recCount += lc.recCount;
+            }
             if (recCount > 0) {
                 double entropy = 0;
                 for (Long2IntMap.Entry e : counts.long2IntEntrySet()) {
@@ -118,4 +141,9 @@ public class TopNEntropyMetric extends ListOnlyTopNMetric<TopNEntropyMetric.Cont
             }
         }
     }
+
+    private static class LocalCounts {
+        final Long2IntOpenHashMap counts = new Long2IntOpenHashMap();
+        int recCount = 0;
+    }
 }
@@ -25,12 +25,12 @@
 package org.lenskit.eval.traintest.recommend;
 
 import it.unimi.dsi.fastutil.longs.LongList;
-import org.apache.commons.math3.stat.descriptive.moment.Mean;
 import org.lenskit.api.Recommender;
 import org.lenskit.api.RecommenderEngine;
 import org.lenskit.eval.traintest.AlgorithmInstance;
 import org.lenskit.eval.traintest.DataSet;
 import org.lenskit.eval.traintest.TestUser;
+import org.lenskit.eval.traintest.metrics.MeanAccumulator;
 import org.lenskit.eval.traintest.metrics.MetricColumn;
 import org.lenskit.eval.traintest.metrics.MetricResult;
 import org.lenskit.eval.traintest.metrics.TypedMetricResult;
@@ -43,7 +43,7 @@ import javax.annotation.Nullable;
  *
  * This metric is registered with the type name `length`.
  */
-public class TopNLengthMetric extends ListOnlyTopNMetric<Mean> {
+public class TopNLengthMetric extends ListOnlyTopNMetric<MeanAccumulator> {
     /**
      * Construct a new length metric.
      */
@@ -53,24 +53,22 @@ public class TopNLengthMetric extends ListOnlyTopNMetric<Mean> {
 
     @Nonnull
     @Override
-    public MetricResult measureUser(Recommender rec, TestUser user, int targetLength, LongList recommendations, Mean context) {
+    public MetricResult measureUser(Recommender rec, TestUser user, int targetLength, LongList recommendations, MeanAccumulator context) {
         int n = recommendations.size();
-        synchronized (context) {
-            context.increment(n);
-        }
+        context.add(n);
         return new LengthResult(n);
     }
 
     @Nullable
     @Override
-    public Mean createContext(AlgorithmInstance algorithm, DataSet dataSet, RecommenderEngine engine) {
-        return new Mean();
+    public MeanAccumulator createContext(AlgorithmInstance algorithm, DataSet dataSet, RecommenderEngine engine) {
+        return new MeanAccumulator();
     }
 
     @Nonnull
     @Override
-    public MetricResult getAggregateMeasurements(Mean context) {
-        return new LengthResult(context.getResult());
+    public MetricResult getAggregateMeasurements(MeanAccumulator context) {
+        return new LengthResult(context.getMean());
     }
 
     public static class LengthResult extends TypedMetricResult {
@@ -29,12 +29,12 @@ import it.unimi.dsi.fastutil.longs.LongIterator;
 import it.unimi.dsi.fastutil.longs.LongList;
 import it.unimi.dsi.fastutil.longs.LongSet;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.math3.stat.descriptive.moment.Mean;
 import org.lenskit.api.Recommender;
 import org.lenskit.api.RecommenderEngine;
 import org.lenskit.eval.traintest.AlgorithmInstance;
 import org.lenskit.eval.traintest.DataSet;
 import org.lenskit.eval.traintest.TestUser;
+import org.lenskit.eval.traintest.metrics.MeanAccumulator;
 import org.lenskit.eval.traintest.metrics.MetricColumn;
 import org.lenskit.eval.traintest.metrics.MetricResult;
 import org.lenskit.eval.traintest.metrics.TypedMetricResult;
@@ -157,22 +157,22 @@ public class TopNMAPMetric extends ListOnlyTopNMetric<TopNMAPMetric.Context> {
         public final double map;
 
         public AggregateResult(Context accum) {
-            this.map = accum.allMean.getResult();
+            this.map = accum.allMean.getMean();
         }
     }
 
     public static class Context {
         private final LongSet universe;
         private final RecommenderEngine recommenderEngine;
-        private final Mean allMean = new Mean();
+        private final MeanAccumulator allMean = new MeanAccumulator();
 
         Context(LongSet universe, RecommenderEngine engine) {
             this.universe = universe;
             recommenderEngine = engine;
         }
 
-        synchronized void addUser(UserResult ur) {
-            allMean.increment(ur.avgPrecision);
+        void addUser(UserResult ur) {
+            allMean.add(ur.avgPrecision);
         }
     }
 }
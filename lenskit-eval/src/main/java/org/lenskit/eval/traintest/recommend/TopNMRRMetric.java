@@ -29,12 +29,12 @@ import it.unimi.dsi.fastutil.longs.LongIterator;
 import it.unimi.dsi.fastutil.longs.LongList;
 import it.unimi.dsi.fastutil.longs.LongSet;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.math3.stat.descriptive.moment.Mean;
 import org.lenskit.api.Recommender;
 import org.lenskit.api.RecommenderEngine;
 import org.lenskit.eval.traintest.AlgorithmInstance;
 import org.lenskit.eval.traintest.DataSet;
 import org.lenskit.eval.traintest.TestUser;
+import org.lenskit.eval.traintest.metrics.MeanAccumulator;
 import org.lenskit.eval.traintest.metrics.MetricColumn;
 import org.lenskit.eval.traintest.metrics.MetricResult;
 import org.lenskit.eval.traintest.metrics.TypedMetricResult;
@@ -149,20 +149,20 @@ public class TopNMRRMetric extends ListOnlyTopNMetric<TopNMRRMetric.Context> {
         public final double mrr;
 
         public AggregateResult(Context accum) {
-            this.mrr = accum.allMean.getResult();
+            this.mrr = accum.allMean.getMean();
         }
     }
 
     public static class Context {
         private final LongSet universe;
-        private final Mean allMean = new Mean();
+        private final MeanAccumulator allMean = new MeanAccumulator();
 
         Context(LongSet universe) {
             this.universe = universe;
         }
 
-        synchronized void addUser(UserResult ur) {
-            allMean.increment(ur.getRecipRank());
+        void addUser(UserResult ur) {
+            allMean.add(ur.getRecipRank());
         }
     }
 }
@@ -28,7 +28,6 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import it.unimi.dsi.fastutil.longs.*;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.math3.stat.descriptive.moment.Mean;
 import org.lenskit.api.Recommender;
 import org.lenskit.api.RecommenderEngine;
 import org.lenskit.data.entities.CommonAttributes;
@@ -38,6 +37,7 @@ import org.lenskit.eval.traintest.DataSet;
 import org.lenskit.eval.traintest.TestUser;
 import org.lenskit.eval.traintest.metrics.Discount;
 import org.lenskit.eval.traintest.metrics.Discounts;
+import org.lenskit.eval.traintest.metrics.MeanAccumulator;
 import org.lenskit.eval.traintest.metrics.MetricResult;
 import org.lenskit.util.collections.LongUtils;
 import org.slf4j.Logger;
@@ -53,7 +53,7 @@ import java.util.Collections;
  *
  * This metric is registered with the type name `ndcg`.
  */
-public class TopNNDCGMetric extends ListOnlyTopNMetric<Mean> {
+public class TopNNDCGMetric extends ListOnlyTopNMetric<MeanAccumulator> {
     private static final Logger logger = LoggerFactory.getLogger(TopNNDCGMetric.class);
     public static final String DEFAULT_COLUMN = "nDCG";
     private final String columnName;
@@ -108,19 +108,19 @@ public class TopNNDCGMetric extends ListOnlyTopNMetric<Mean> {
 
     @Nullable
     @Override
-    public Mean createContext(AlgorithmInstance algorithm, DataSet dataSet, RecommenderEngine engine) {
-        return new Mean();
+    public MeanAccumulator createContext(AlgorithmInstance algorithm, DataSet dataSet, RecommenderEngine engine) {
+        return new MeanAccumulator();
     }
 
     @Nonnull
     @Override
-    public MetricResult getAggregateMeasurements(Mean context) {
-        return MetricResult.singleton(columnName, context.getResult());
+    public MetricResult getAggregateMeasurements(MeanAccumulator context) {
+        return MetricResult.singleton(columnName, context.getMean());
     }
 
     @Nonnull
     @Override
-    public MetricResult measureUser(Recommender rec, TestUser user, int targetLength, LongList recommendations, Mean context) {
+    public MetricResult measureUser(Recommender rec, TestUser user, int targetLength, LongList recommendations, MeanAccumulator context) {
         if (recommendations == null) {
             return MetricResult.empty();
         }
@@ -147,9 +147,7 @@ public class TopNNDCGMetric extends ListOnlyTopNMetric<Mean> {
 
         double score = gain / idealGain;
 
-        synchronized (context) {
-            context.increment(score);
-        }
+        context.add(score);
         return MetricResult.singleton(columnName, score);
     }
 
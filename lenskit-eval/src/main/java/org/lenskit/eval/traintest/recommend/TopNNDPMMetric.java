@@ -30,12 +30,12 @@ import it.unimi.dsi.fastutil.longs.Long2DoubleFunction;
 import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
 import it.unimi.dsi.fastutil.longs.LongList;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.math3.stat.descriptive.moment.Mean;
 import org.lenskit.api.Recommender;
 import org.lenskit.api.RecommenderEngine;
 import org.lenskit.eval.traintest.AlgorithmInstance;
 import org.lenskit.eval.traintest.DataSet;
 import org.lenskit.eval.traintest.TestUser;
+import org.lenskit.eval.traintest.metrics.MeanAccumulator;
 import org.lenskit.eval.traintest.metrics.MetricResult;
 import org.lenskit.util.math.Scalars;
 
@@ -48,7 +48,7 @@ import java.util.Collections;
  * This metric is registered with the type name `ndpm`.
  * The paper used as a reference for this implementation is http://www2.cs.uregina.ca/~yyao/PAPERS/jasis_ndpm.pdf.
  */
-public class TopNNDPMMetric extends ListOnlyTopNMetric<Mean> {
+public class TopNNDPMMetric extends ListOnlyTopNMetric<MeanAccumulator> {
     public static final String DEFAULT_COLUMN = "TopN.nDPM";
 
     /**
@@ -69,19 +69,19 @@ public class TopNNDPMMetric extends ListOnlyTopNMetric<Mean> {
 
     @Nullable
     @Override
-    public Mean createContext(AlgorithmInstance algorithm, DataSet dataSet, RecommenderEngine engine) {
-        return new Mean();
+    public MeanAccumulator createContext(AlgorithmInstance algorithm, DataSet dataSet, RecommenderEngine engine) {
+        return new MeanAccumulator();
     }
 
     @Nonnull
     @Override
-    public MetricResult getAggregateMeasurements(Mean context) {
-        return MetricResult.singleton(DEFAULT_COLUMN, context.getResult());
+    public MetricResult getAggregateMeasurements(MeanAccumulator context) {
+        return MetricResult.singleton(DEFAULT_COLUMN, context.getMean());
     }
 
     @Nonnull
     @Override
-    public MetricResult measureUser(Recommender rec, TestUser user, int targetLength, LongList recommendations, Mean context) {
+    public MetricResult measureUser(Recommender rec, TestUser user, int targetLength, LongList recommendations, MeanAccumulator context) {
         if (recommendations == null) {
             return MetricResult.empty();
         }
@@ -96,9 +96,7 @@ public class TopNNDPMMetric extends ListOnlyTopNMetric<Mean> {
 
         double nDPM = dpm / normalizingFactor; // Normalized nDPM
 
-        synchronized (context) {
-            context.increment(nDPM);
-        }
+        context.add(nDPM);
 
         return MetricResult.singleton(DEFAULT_COLUMN, nDPM);
     }
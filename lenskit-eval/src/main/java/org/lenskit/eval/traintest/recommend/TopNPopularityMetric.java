@@ -26,7 +26,6 @@ package org.lenskit.eval.traintest.recommend;
 
 import it.unimi.dsi.fastutil.longs.LongIterator;
 import it.unimi.dsi.fastutil.longs.LongList;
-import org.apache.commons.math3.stat.descriptive.moment.Mean;
 import org.lenskit.LenskitRecommender;
 import org.lenskit.api.Recommender;
 import org.lenskit.api.RecommenderEngine;
@@ -34,6 +33,7 @@ import org.lenskit.data.ratings.RatingSummary;
 import org.lenskit.eval.traintest.AlgorithmInstance;
 import org.lenskit.eval.traintest.DataSet;
 import org.lenskit.eval.traintest.TestUser;
+import org.lenskit.eval.traintest.metrics.MeanAccumulator;
 import org.lenskit.eval.traintest.metrics.MetricColumn;
 import org.lenskit.eval.traintest.metrics.MetricResult;
 import org.lenskit.eval.traintest.metrics.TypedMetricResult;
@@ -89,7 +89,7 @@ public class TopNPopularityMetric extends ListOnlyTopNMetric<TopNPopularityMetri
     @Nonnull
     @Override
     public MetricResult getAggregateMeasurements(Context context) {
-        return new PopResult(context.mean.getResult());
+        return new PopResult(context.mean.getMean());
     }
 
     public static class PopResult extends TypedMetricResult {
@@ -102,13 +102,13 @@ public class TopNPopularityMetric extends ListOnlyTopNMetric<TopNPopularityMetri
     }
     
     public class Context {
-        final Mean mean = new Mean();
+        final MeanAccumulator mean = new MeanAccumulator();
 
         public Context() {
         }
 
-        private synchronized void addUser(double pop) {
-            mean.increment(pop);
+        private void addUser(double pop) {
+            mean.add(pop);
         }
     }
 }
@@ -34,6 +34,7 @@ import org.lenskit.api.RecommenderEngine;
 import org.lenskit.eval.traintest.AlgorithmInstance;
 import org.lenskit.eval.traintest.DataSet;
 import org.lenskit.eval.traintest.TestUser;
+import org.lenskit.eval.traintest.metrics.MeanAccumulator;
 import org.lenskit.eval.traintest.metrics.MetricColumn;
 import org.lenskit.eval.traintest.metrics.MetricResult;
 import org.lenskit.eval.traintest.metrics.TypedMetricResult;
@@ -154,24 +155,22 @@ public class TopNPrecisionRecallMetric extends ListOnlyTopNMetric<TopNPrecisionR
 
     public static class Context {
         final LongSet universe;
-        double totalPrecision = 0;
-        double totalRecall = 0;
-        int nusers = 0;
+        final MeanAccumulator precision = new MeanAccumulator();
+        final MeanAccumulator recall = new MeanAccumulator();
 
         public Context(LongSet items) {
             universe = items;
         }
 
-        private synchronized void addUser(double prec, double rec) {
-            totalPrecision += prec;
-            totalRecall += rec;
-            nusers += 1;
+        private void addUser(double prec, double rec) {
+            precision.add(prec);
+            recall.add(rec);
         }
 
         @Nullable
         public PresRecResult finish() {
-            if (nusers > 0) {
-                return new PresRecResult(totalPrecision / nusers, totalRecall / nusers);
+            if (precision.getCount() > 0) {
+                return new PresRecResult(precision.getMean(), recall.getMean());
             } else {
                 return null;
             }
@@ -0,0 +1,148 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.util.monitor;
+
+import com.google.common.base.Preconditions;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies with bounded relative error, for reporting percentiles over arbitrarily many
+ * measurements in constant space.  Values are recorded in log-linear buckets: values below 64 are exact, and
+ * larger values are kept to their 6 most significant bits, so reported percentiles are within about 3% of the
+ * true value.
+ *
+ * Recording is lock-free, so one histogram can be shared by several threads.
+ */
+@ThreadSafe
+public class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int LINEAR_COUNT = SUB_COUNT * 2;
+    private static final int BUCKET_COUNT = LINEAR_COUNT + (63 - SUB_BITS) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Record a value.
+     * @param value The value to record (typically nanoseconds).
+     */
+    public void record(long value) {
+        Preconditions.checkArgument(value >= 0, "cannot record negative latency");
+        counts.incrementAndGet(bucket(value));
+        total.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Add all values recorded in another histogram to this one.
+     * @param other The histogram to add.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long n = other.counts.get(i);
+            if (n > 0) {
+                counts.addAndGet(i, n);
+            }
+        }
+        total.add(other.total.sum());
+        sum.add(other.sum.sum());
+        max.accumulate(other.max.get());
+    }
+
+    /**
+     * Get the number of recorded values.
+     * @return The number of values recorded.
+     */
+    public long getCount() {
+        return total.sum();
+    }
+
+    /**
+     * Get the largest recorded value.
+     * @return The largest value, or 0 if no values have been recorded.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get the mean of the recorded values.
+     * @return The mean value, or {@link Double#NaN} if no values have been recorded.
+     */
+    public double getMean() {
+        long n = total.sum();
+        return n > 0 ? sum.sum() / (double) n : Double.NaN;
+    }
+
+    /**
+     * Get a percentile of the recorded values.
+     * @param pct The percentile, in the range [0,100].
+     * @return The smallest value (to the histogram's precision) that is at least `pct` percent of the recorded
+     * values, or 0 if no values have been recorded.
+     */
+    public long getPercentile(double pct) {
+        Preconditions.checkArgument(pct >= 0 && pct <= 100, "percentile out of range");
+        long n = total.sum();
+        if (n == 0) {
+            return 0;
+        }
+        long target = Math.max((long) Math.ceil(pct / 100 * n), 1);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(upperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    static int bucket(long value) {
+        if (value < LINEAR_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        int mantissa = (int) (value >>> shift);
+        return LINEAR_COUNT + (shift - 1) * SUB_COUNT + mantissa - SUB_COUNT;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < LINEAR_COUNT) {
+            return bucket;
+        }
+        int k = bucket - LINEAR_COUNT;
+        int shift = k / SUB_COUNT + 1;
+        long mantissa = k % SUB_COUNT + SUB_COUNT;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
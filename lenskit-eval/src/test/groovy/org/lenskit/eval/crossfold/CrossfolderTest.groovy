@@ -381,4 +381,87 @@ class CrossfolderTest {
             assertThat(Files.exists(test), equalTo(true))
         }
     }
+
+    @Test
+    public void testVirtualCFRun() {
+        cf.virtual = true
+        cf.execute()
+        def dss = cf.dataSets
+        assertThat(dss, hasSize(5))
+        def allUsers = new LongOpenHashSet()
+        for (ds in dss) {
+            def users = ds.testData.get().getEntityIds(CommonTypes.USER)
+            allUsers += users
+            assertThat(users, hasSize(20))
+            assertThat(ds.trainingData.get().getEntityIds(CommonTypes.USER), hasSize(100))
+            def dao = ds.testData.get()
+            for (user in users) {
+                assertThat(dao.query(CommonTypes.RATING)
+                              .withAttribute(CommonAttributes.USER_ID, user)
+                              .get(),
+                           hasSize(10))
+            }
+            def train = ds.trainingData.get().query(Rating.class).get()
+            assertThat(train.size() + dao.query(Rating.class).get().size(),
+                       equalTo(ratings.size()))
+            assertThat(ds.trainingData.preferenceDomain,
+                       equalTo(PreferenceDomain.fromString("[1,5]")))
+        }
+        assertThat(allUsers, hasSize(100))
+
+        // nothing should have been written
+        assertThat(tmp.root.list(), emptyArray())
+    }
+
+    @Test
+    public void testStreamingCFRun() {
+        cf.streaming = true
+        cf.outputFormat = OutputFormat.CSV_GZIP
+        cf.execute()
+        def dss = cf.dataSets
+        assertThat(dss, hasSize(5))
+        def allUsers = new LongOpenHashSet()
+        for (ds in dss) {
+            def users = ds.testData.get().getEntityIds(CommonTypes.USER)
+            allUsers += users
+            assertThat(users, hasSize(20))
+            assertThat(ds.trainingData.get().getEntityIds(CommonTypes.USER), hasSize(100))
+            def dao = ds.testData.get()
+            for (user in users) {
+                assertThat(dao.query(CommonTypes.RATING)
+                              .withAttribute(CommonAttributes.USER_ID, user)
+                              .get(),
+                           hasSize(10))
+            }
+            def train = ds.trainingData.get().query(Rating.class).get()
+            assertThat(train.size() + dao.query(Rating.class).get().size(),
+                       equalTo(ratings.size()))
+            assertThat(ds.trainingData.preferenceDomain,
+                       equalTo(PreferenceDomain.fromString("[1,5]")))
+        }
+        assertThat(allUsers, hasSize(100))
+
+        assertThat(tmp.root.toPath().resolve("items.txt").toFile(), existingFile())
+        assertThat(tmp.root.toPath().resolve("part01.train.csv.gz").toFile(), existingFile())
+        // the spill files should be cleaned up
+        assertThat(Files.exists(tmp.root.toPath().resolve(".spill")), equalTo(false))
+    }
+
+    @Test
+    public void testStreamingUserSample() {
+        cf.streaming = true
+        cf.method = CrossfoldMethods.sampleUsers(SortOrder.TIMESTAMP, HistoryPartitions.holdout(5), 5);
+        cf.execute()
+        def dss = cf.dataSets
+        assertThat(dss, hasSize(5))
+        def allUsers = new LongOpenHashSet()
+        for (ds in dss) {
+            def users = ds.testData.get().getEntityIds(CommonTypes.USER)
+            allUsers += users
+            assertThat(users, hasSize(5))
+            assertThat(ds.trainingData.get().getEntityIds(CommonTypes.USER), hasSize(100))
+            assertThat(ds.testData.get().getEntityIds(CommonTypes.RATING), hasSize(25))
+        }
+        assertThat(allUsers, hasSize(25))
+    }
 }
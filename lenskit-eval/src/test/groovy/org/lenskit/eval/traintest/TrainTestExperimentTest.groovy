@@ -115,6 +115,69 @@ class TrainTestExperimentTest {
         assertThat(result.column("Succeeded"), everyItem(equalTo('Y')))
     }
 
+    @Test
+    void testLatencyStatistics() {
+        List<DataSet> sets = crossfoldRatings()
+        experiment.addAlgorithm("Baseline") {
+            bind ItemScorer to ItemMeanRatingItemScorer
+        }
+        experiment.addDataSets(sets)
+        experiment.addTask(new PredictEvalTask())
+        experiment.latencyStatistics = true
+        def result = experiment.execute()
+        assertThat(result, hasSize(2))
+        assertThat(result.column("Succeeded"), everyItem(equalTo('Y')))
+        assertThat(result.column("Latency.P50"), everyItem(greaterThan(0.0d)))
+        assertThat(result.column("Latency.Max"), everyItem(greaterThanOrEqualTo(0.0d)))
+        assertThat(result.column("UsersPerSecond"), everyItem(greaterThan(0.0d)))
+        for (row in result) {
+            assertThat(row.value("Latency.P99") as double,
+                       lessThanOrEqualTo(row.value("Latency.Max") as double))
+        }
+    }
+
+    @Test
+    void testLatencyWarmupExcludesUsers() {
+        List<DataSet> sets = crossfoldRatings()
+        experiment.addAlgorithm("Baseline") {
+            bind ItemScorer to ItemMeanRatingItemScorer
+        }
+        experiment.addDataSets(sets)
+        experiment.addTask(new PredictEvalTask())
+        experiment.latencyStatistics = true
+        // more warmup users than test users, so nothing is recorded
+        experiment.latencyWarmup = 10
+        def result = experiment.execute()
+        assertThat(result.column("Succeeded"), everyItem(equalTo('Y')))
+        assertThat(result.column("Latency.P50"), everyItem(nullValue()))
+    }
+
+    @Test
+    void testSweepLatencyPerCondition() {
+        List<DataSet> sets = crossfoldRatings()
+        def cfg = folder.newFile("sweep.groovy")
+        cfg.text = '''import org.lenskit.api.ItemScorer
+import org.lenskit.knn.NeighborhoodSize
+import org.lenskit.knn.item.ItemItemScorer
+
+bind ItemScorer to ItemItemScorer
+sweep NeighborhoodSize, [1, 2, 0]
+'''
+        experiment.addAlgorithm("ItemItem", cfg.toPath())
+        experiment.addDataSets(sets)
+        experiment.addTask(new PredictEvalTask())
+        experiment.latencyStatistics = true
+        def result = experiment.execute()
+        assertThat(result, hasSize(6))
+        assertThat(result.column("Succeeded"), everyItem(equalTo('Y')))
+        // each value of the sweep is timed separately
+        for (part in result.column("Partition").toSet()) {
+            def means = result.filter("Partition", part).column("Latency.Mean")
+            assertThat(means, hasSize(3))
+            assertThat(means, everyItem(greaterThan(0.0d)))
+        }
+    }
+
     /**
      * This test attempts to reproduce <a href="https://github.com/lenskit/lenskit/issues/838">#838</a>.
      */
@@ -218,6 +281,134 @@ algorithm('A2') {
                    containsInAnyOrder('Y', 'Y', 'N', 'N'))
     }
 
+    @Test
+    void testResumeFromCheckpoint() {
+        List<DataSet> sets = crossfoldRatings()
+        def ckptDir = folder.root.toPath().resolve("checkpoints")
+        experiment.addAlgorithm("Baseline") {
+            bind ItemScorer to ItemMeanRatingItemScorer
+        }
+        experiment.addDataSets(sets)
+        experiment.checkpointDirectory = ckptDir
+        experiment.userOutputFile = folder.root.toPath().resolve("users.csv")
+        experiment.addTask(new PredictEvalTask())
+        def first = experiment.execute()
+        assertThat(first.column("Succeeded"), everyItem(equalTo('Y')))
+        assertThat(Files.list(ckptDir).count(), equalTo(2L))
+
+        // the unchanged algorithm is restored from its checkpoints; only the new one runs
+        def resumed = new TrainTestExperiment()
+        resumed.addAlgorithm("Baseline") {
+            bind ItemScorer to ItemMeanRatingItemScorer
+        }
+        resumed.addAlgorithm("GlobalMean") {
+            bind ItemScorer to GlobalMeanRatingItemScorer
+        }
+        resumed.addDataSets(sets)
+        resumed.checkpointDirectory = ckptDir
+        def userFile = folder.root.toPath().resolve("users-resumed.csv")
+        resumed.userOutputFile = userFile
+        resumed.addTask(new PredictEvalTask())
+        def result = resumed.execute()
+        assertThat(result, hasSize(4))
+        assertThat(result.column("Succeeded"), everyItem(equalTo('Y')))
+        assertThat(result.filter("Algorithm", "Baseline").column("RMSE.ByUser"),
+                   containsInAnyOrder(first.column("RMSE.ByUser").toArray()))
+        assertThat(Files.list(ckptDir).count(), equalTo(4L))
+
+        def csvP = CSVParser.parse(userFile.toFile(), Charsets.UTF_8, CSVFormat.DEFAULT.withFirstRecordAsHeader())
+        def users = csvP.iterator().toList()*.toMap()
+        assertThat(users*.Algorithm.toSet(), containsInAnyOrder("Baseline", "GlobalMean"))
+
+        // changing the configuration under the same name must re-run the algorithm
+        def changed = new TrainTestExperiment()
+        changed.addAlgorithm("Baseline") {
+            bind ItemScorer to ConstantItemScorer
+            set ConstantItemScorer.Value to 3.5
+        }
+        changed.addDataSets(sets)
+        changed.checkpointDirectory = ckptDir
+        changed.addTask(new PredictEvalTask())
+        def rerun = changed.execute()
+        assertThat(rerun, hasSize(2))
+        assertThat(rerun.column("Succeeded"), everyItem(equalTo('Y')))
+        for (rmse in rerun.column("RMSE.ByUser")) {
+            assertThat(rmse, not(isIn(first.column("RMSE.ByUser"))))
+        }
+        assertThat(Files.list(ckptDir).count(), equalTo(6L))
+    }
+
+    @Test
+    void testSweepNeighborhoodSize() {
+        List<DataSet> sets = crossfoldRatings()
+        def cfg = folder.newFile("sweep.groovy")
+        cfg.text = '''import org.lenskit.api.ItemScorer
+import org.lenskit.knn.NeighborhoodSize
+import org.lenskit.knn.item.ItemItemScorer
+
+bind ItemScorer to ItemItemScorer
+sweep NeighborhoodSize, [1, 2, 0]
+'''
+        experiment.addAlgorithm("ItemItem", cfg.toPath())
+        assertThat(experiment.algorithms, hasSize(1))
+        assertThat(experiment.algorithms[0].sweep.values as List, contains(1, 2, 0))
+        experiment.addDataSets(sets)
+        experiment.addTask(new PredictEvalTask())
+        def shared = experiment.execute()
+        assertThat(shared, hasSize(6))
+        assertThat(shared.column("Succeeded"), everyItem(equalTo('Y')))
+        assertThat(shared.column("NeighborhoodSize"), containsInAnyOrder(1, 1, 2, 2, 0, 0))
+
+        def separate = new TrainTestExperiment()
+        separate.addAlgorithm("ItemItem", cfg.toPath())
+        separate.addDataSets(sets)
+        separate.sweepEvaluation = false
+        separate.addTask(new PredictEvalTask())
+        def result = separate.execute()
+        assertThat(result, hasSize(6))
+        assertThat(result.column("Succeeded"), everyItem(equalTo('Y')))
+        // scoring from the shared model matches building each neighborhood size
+        for (size in [1, 2, 0]) {
+            assertThat(shared.filter("NeighborhoodSize", size).column("RMSE.ByUser"),
+                       containsInAnyOrder(result.filter("NeighborhoodSize", size).column("RMSE.ByUser").toArray()))
+        }
+    }
+
+    @Test
+    void testResumeSweepWithWorkers() {
+        crossfoldRatings()
+        def cfg = folder.newFile("sweep.groovy")
+        cfg.text = '''import org.lenskit.api.ItemScorer
+import org.lenskit.knn.NeighborhoodSize
+import org.lenskit.knn.item.ItemItemScorer
+
+bind ItemScorer to ItemItemScorer
+sweep NeighborhoodSize, [1, 2]
+'''
+        def spec = folder.newFile("experiment.yaml")
+        spec.text = '''datasets: [splits/datasets.yaml]
+algorithms: sweep.groovy
+checkpoint_directory: checkpoints
+tasks:
+- type: predict
+'''
+        def first = TrainTestExperiment.load(spec.toPath()).execute()
+        assertThat(first, hasSize(4))
+        assertThat(first.column("Succeeded"), everyItem(equalTo('Y')))
+
+        // extend the sweep, so the workers only need to evaluate the new point
+        cfg.text = cfg.text.replace('[1, 2]', '[1, 2, 0]')
+        spec.append('worker_count: 1\n')
+        def resumed = TrainTestExperiment.load(spec.toPath())
+        assertThat(resumed.workerCount, equalTo(1))
+        def result = resumed.execute()
+        assertThat(result, hasSize(6))
+        assertThat(result.column("Succeeded"), everyItem(equalTo('Y')))
+        assertThat(result.column("NeighborhoodSize"), containsInAnyOrder(1, 1, 2, 2, 0, 0))
+        assertThat(result.filter("NeighborhoodSize", 1).column("RMSE.ByUser"),
+                   containsInAnyOrder(first.filter("NeighborhoodSize", 1).column("RMSE.ByUser").toArray()))
+    }
+
     @Test
     void testSeparateTopN() {
         DataSet set = DataSet.newBuilder("test")
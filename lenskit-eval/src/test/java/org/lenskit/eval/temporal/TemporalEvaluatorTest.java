@@ -46,6 +46,7 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.LineNumberReader;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -115,4 +116,15 @@ public class TemporalEvaluatorTest {
             }
         }
     }
+
+    @Test
+    public void testSummaryOutput() throws IOException, RecommenderBuildException {
+        File summary = folder.newFile("summary.csv");
+        tempEval.setSummaryOutputFile(summary.toPath());
+        tempEval.execute();
+        List<String> lines = Files.readAllLines(summary.toPath());
+        assertThat(lines, hasSize(2));
+        assertThat(lines.get(0), startsWith("Ratings,Rebuilds,BuildTime,TARMSE,Latency.Mean"));
+        assertThat(lines.get(1), startsWith(RATING_COUNT + ","));
+    }
 }
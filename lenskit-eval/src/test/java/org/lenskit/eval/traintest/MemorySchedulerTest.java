@@ -0,0 +1,152 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.eval.traintest;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.lenskit.data.dao.file.StaticDataSource;
+
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class MemorySchedulerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DataSet dataSet;
+
+    @Before
+    public void createDataSet() {
+        dataSet = new DataSetBuilder("Wumpus")
+                .setTrain(new StaticDataSource("train"))
+                .setTest(new StaticDataSource("test"))
+                .build();
+    }
+
+    @Test
+    public void testDefaultEstimate() throws Exception {
+        MemoryScheduler sched = new MemoryScheduler(1000, 4, null);
+        AlgorithmInstance ai = new AlgorithmInstanceBuilder("Wombat").build();
+        assertThat(sched.estimate(dataSet, ai), equalTo(250L));
+    }
+
+    @Test
+    public void testDeclaredEstimate() throws Exception {
+        MemoryScheduler sched = new MemoryScheduler(1000, 4, null);
+        AlgorithmInstance ai = new AlgorithmInstanceBuilder("Wombat")
+                .setMemoryEstimate(600)
+                .build();
+        assertThat(ai.getMemoryEstimate(), equalTo(600L));
+        assertThat(sched.estimate(dataSet, ai), equalTo(600L));
+    }
+
+    @Test
+    public void testInheritEstimate() {
+        AlgorithmInstanceBuilder parent = new AlgorithmInstanceBuilder("Wombat").setMemoryEstimate(600);
+        AlgorithmInstanceBuilder kid = parent.extend();
+        assertThat(kid.build().getMemoryEstimate(), equalTo(600L));
+        kid.setMemoryEstimate(100);
+        assertThat(kid.build().getMemoryEstimate(), equalTo(100L));
+    }
+
+    @Test
+    public void testHistory() throws Exception {
+        Path file = folder.getRoot().toPath().resolve(MemoryScheduler.HISTORY_FILE_NAME);
+        AlgorithmInstance ai = new AlgorithmInstanceBuilder("Wombat").build();
+        MemoryScheduler sched = new MemoryScheduler(1000, 4, file);
+        sched.record(dataSet, ai, 300);
+        sched.record(dataSet, ai, 200);
+        assertThat(sched.estimate(dataSet, ai), equalTo(300L));
+        sched.saveHistory();
+
+        MemoryScheduler next = new MemoryScheduler(1000, 4, file);
+        assertThat(next.estimate(dataSet, ai), equalTo(300L));
+    }
+
+    @Test
+    public void testLargerOfDeclaredAndMeasured() throws Exception {
+        AlgorithmInstance ai = new AlgorithmInstanceBuilder("Wombat")
+                .setMemoryEstimate(600)
+                .build();
+        MemoryScheduler sched = new MemoryScheduler(1000, 4, null);
+        sched.record(dataSet, ai, 300);
+        assertThat(sched.estimate(dataSet, ai), equalTo(600L));
+        sched.record(dataSet, ai, 800);
+        assertThat(sched.estimate(dataSet, ai), equalTo(800L));
+    }
+
+    @Test
+    public void testIgnoreNonPositive() throws Exception {
+        AlgorithmInstance ai = new AlgorithmInstanceBuilder("Wombat").build();
+        MemoryScheduler sched = new MemoryScheduler(1000, 4, null);
+        sched.record(dataSet, ai, 0);
+        sched.record(dataSet, ai, -50);
+        assertThat(sched.estimate(dataSet, ai), equalTo(250L));
+    }
+
+    @Test
+    public void testAlwaysAdmitFirst() throws Exception {
+        MemoryScheduler sched = new MemoryScheduler(1000, 4, null);
+        long r = sched.acquire(5000);
+        assertThat(r, equalTo(1000L));
+        sched.release(r);
+    }
+
+    @Test
+    public void testWaitForHeadroom() throws Exception {
+        MemoryScheduler sched = new MemoryScheduler(1000, 4, null);
+        long first = sched.acquire(700);
+        CountDownLatch admitted = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            try {
+                long second = sched.acquire(500);
+                admitted.countDown();
+                sched.release(second);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        assertThat(admitted.await(100, TimeUnit.MILLISECONDS), equalTo(false));
+        sched.release(first);
+        assertThat(admitted.await(5, TimeUnit.SECONDS), equalTo(true));
+        thread.join();
+    }
+
+    @Test
+    public void testParseByteCount() {
+        assertThat(TrainTestExperiment.parseByteCount("0"), equalTo(0L));
+        assertThat(TrainTestExperiment.parseByteCount("4096"), equalTo(4096L));
+        assertThat(TrainTestExperiment.parseByteCount("512M"), equalTo(512L << 20));
+        assertThat(TrainTestExperiment.parseByteCount("8g"), equalTo(8L << 30));
+        assertThat(TrainTestExperiment.parseByteCount("-1G"), equalTo(-1L << 30));
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.eval.traintest;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class WorkerPoolTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testInboxStops() throws Exception {
+        Path inbox = folder.newFolder("w1").toPath();
+        Files.write(inbox.resolve(WorkerPool.STOP_FILE), new byte[0]);
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            new WorkerPool.Inbox(inbox).process(Collections.<String, ExperimentJob>emptyMap(), pool);
+        } finally {
+            pool.shutdown();
+        }
+        assertThat(Files.exists(inbox.resolve("0.failed")), equalTo(false));
+    }
+
+    @Test
+    public void testInboxReportsUnknownJob() throws Exception {
+        Path inbox = folder.newFolder("w1").toPath();
+        Files.write(inbox.resolve("0.job"), "wumpus.ckpt".getBytes(StandardCharsets.UTF_8));
+        Files.write(inbox.resolve(WorkerPool.STOP_FILE), new byte[0]);
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            new WorkerPool.Inbox(inbox).process(Collections.<String, ExperimentJob>emptyMap(), pool);
+        } finally {
+            pool.shutdown();
+        }
+        Path failed = inbox.resolve("0.failed");
+        assertThat(Files.exists(failed), equalTo(true));
+        assertThat(new String(Files.readAllBytes(failed), StandardCharsets.UTF_8),
+                   containsString("unknown job wumpus.ckpt"));
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.util.monitor;
+
+import org.junit.Test;
+
+import static org.grouplens.lenskit.util.test.ExtraMatchers.notANumber;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class LatencyHistogramTest {
+    @Test
+    public void testEmpty() {
+        LatencyHistogram hist = new LatencyHistogram();
+        assertThat(hist.getCount(), equalTo(0L));
+        assertThat(hist.getMax(), equalTo(0L));
+        assertThat(hist.getPercentile(50), equalTo(0L));
+        assertThat(hist.getMean(), notANumber());
+    }
+
+    @Test
+    public void testSmallValuesExact() {
+        LatencyHistogram hist = new LatencyHistogram();
+        for (int i = 1; i <= 50; i++) {
+            hist.record(i);
+        }
+        assertThat(hist.getCount(), equalTo(50L));
+        assertThat(hist.getMax(), equalTo(50L));
+        assertThat(hist.getPercentile(50), equalTo(25L));
+        assertThat(hist.getPercentile(100), equalTo(50L));
+        assertThat(hist.getMean(), closeTo(25.5, 1.0e-6));
+    }
+
+    @Test
+    public void testLargeValuesApproximate() {
+        LatencyHistogram hist = new LatencyHistogram();
+        for (long i = 1; i <= 10000; i++) {
+            hist.record(i * 1000);
+        }
+        assertThat((double) hist.getPercentile(50), closeTo(5.0e6, 5.0e6 * 0.04));
+        assertThat((double) hist.getPercentile(99), closeTo(9.9e6, 9.9e6 * 0.04));
+        assertThat(hist.getPercentile(100), equalTo(10000000L));
+    }
+
+    @Test
+    public void testBucketBounds() {
+        for (long v: new long[]{0, 1, 63, 64, 65, 1000, 123456789, Long.MAX_VALUE}) {
+            int b = LatencyHistogram.bucket(v);
+            assertThat(LatencyHistogram.upperBound(b), greaterThanOrEqualTo(v));
+            if (b > 0) {
+                assertThat(LatencyHistogram.upperBound(b - 1), lessThan(v));
+            }
+        }
+    }
+
+    @Test
+    public void testAdd() {
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        a.record(10);
+        b.record(20);
+        b.record(30);
+        a.add(b);
+        assertThat(a.getCount(), equalTo(3L));
+        assertThat(a.getMax(), equalTo(30L));
+        assertThat(a.getPercentile(50), equalTo(20L));
+    }
+}
@@ -50,6 +50,11 @@ class Crossfold extends LenskitTask implements DataSources, DataSetProvider {
     def Integer sampleSize
     def Integer partitionCount
     def String outputFormat
+    /**
+     * Whether to stream the input data instead of loading it into memory.  Only supported for user and
+     * item partitioning and sampling.
+     */
+    def boolean streaming = false
     final Property<String> dataSetName = project.objects.property(String)
     @Deprecated
     def boolean includeTimestamps = true
@@ -148,6 +153,9 @@ class Crossfold extends LenskitTask implements DataSources, DataSetProvider {
         if (outputFormat == 'gz') {
             args << '--gzip-output'
         }
+        if (streaming) {
+            args << '--streaming'
+        }
         args
     }
 
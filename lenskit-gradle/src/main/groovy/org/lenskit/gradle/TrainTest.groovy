@@ -57,6 +57,11 @@ class TrainTest extends LenskitTask implements GradleUtils {
      */
     final Property<Object> cacheDirectory = project.objects.property(Object)
 
+    /**
+     * The checkpoint directory for completed jobs.
+     */
+    final Property<Object> checkpointDirectory = project.objects.property(Object)
+
     /**
      * The thread count for the evaluator.
      */
@@ -67,11 +72,41 @@ class TrainTest extends LenskitTask implements GradleUtils {
      */
     final Property<Integer> parallelTasks = project.objects.property(Integer)
 
+    /**
+     * The heap budget for memory-aware job scheduling, in bytes or with a suffix (e.g. `'6G'`).
+     */
+    final Property<Object> memoryBudget = project.objects.property(Object)
+
+    /**
+     * The number of worker JVMs to run jobs in (0 to run jobs in the evaluator's JVM).
+     */
+    final Property<Integer> workerCount = project.objects.property(Integer)
+
+    /**
+     * The maximum heap size for worker JVMs (e.g. `'8g'`).
+     */
+    final Property<String> workerHeapSize = project.objects.property(String)
+
     /**
      * Configure whether the evaluator should share model components between algorithms.
      */
     final Property<Boolean> shareModelComponents = project.objects.property(Boolean)
 
+    /**
+     * Configure whether parameter sweeps are scored from a single shared model.
+     */
+    final Property<Boolean> sweepEvaluation = project.objects.property(Boolean)
+
+    /**
+     * Configure whether the evaluator reports per-user latency percentiles, throughput, and allocation.
+     */
+    final Property<Boolean> latencyStatistics = project.objects.property(Boolean)
+
+    /**
+     * The number of users per condition to exclude from latency statistics as warmup.
+     */
+    final Property<Integer> latencyWarmup = project.objects.property(Integer)
+
     /**
      * Configure whether the evaluation will continue after errors.
      */
@@ -89,11 +124,17 @@ class TrainTest extends LenskitTask implements GradleUtils {
     public TrainTest() {
         threadCount.set(project.extensions.getByType(LenskitExtension).threadCount)
         shareModelComponents.set(true)
+        sweepEvaluation.set(true)
+        latencyStatistics.set(false)
+        latencyWarmup.set(0)
         continueAfterError.set(false)
 
         parallelTasks.set project.provider({
             (project.findProperty('lenskit.parallelTasks') ?: '0') as Integer
         })
+        workerCount.set project.provider({
+            (project.findProperty('lenskit.workerCount') ?: '0') as Integer
+        })
         outputFile.set project.provider({
             "$project.buildDir/${name}.csv"
         })
@@ -230,9 +271,16 @@ class TrainTest extends LenskitTask implements GradleUtils {
         def json = [output_file           : makeUrl(outputFile.get(), specFile.get()),
                     user_output_file      : makeUrl(userOutputFile.getOrNull(), specFile.get()),
                     cache_directory       : makeUrl(cacheDirectory.getOrNull(), specFile.get()),
+                    checkpoint_directory  : makeUrl(checkpointDirectory.getOrNull(), specFile.get()),
                     thread_count          : threadCount.get(),
                     parallel_tasks        : parallelTasks.get(),
+                    memory_budget         : memoryBudget.getOrNull()?.toString(),
+                    worker_count          : workerCount.get(),
+                    worker_heap           : workerHeapSize.getOrNull(),
                     share_model_components: shareModelComponents.get(),
+                    sweep_evaluation      : sweepEvaluation.get(),
+                    latency_statistics    : latencyStatistics.get(),
+                    latency_warmup        : latencyWarmup.get(),
                     continue_after_error  : continueAfterError.get()]
         json.datasets = dataSets.collect {it.call()}
         json.algorithms = algorithms.collectEntries {k, v ->
@@ -24,12 +24,16 @@
  */
 package org.lenskit.knn.item;
 
+import it.unimi.dsi.fastutil.Arrays;
+import it.unimi.dsi.fastutil.doubles.DoubleArrays;
 import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
 import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrays;
 import it.unimi.dsi.fastutil.longs.LongIterator;
 import it.unimi.dsi.fastutil.longs.LongIterators;
 import org.lenskit.api.ResultMap;
 import org.lenskit.basic.AbstractItemScorer;
+import org.lenskit.basic.SweepItemScorer;
 import org.lenskit.data.ratings.RatingVectorPDAO;
 import org.lenskit.knn.MinNeighbors;
 import org.lenskit.knn.NeighborhoodSize;
@@ -37,14 +41,13 @@ import org.lenskit.knn.item.model.ItemItemModel;
 import org.lenskit.results.Results;
 import org.lenskit.transform.normalize.UserVectorNormalizer;
 import org.lenskit.util.InvertibleFunction;
-import org.lenskit.util.collections.Long2DoubleAccumulator;
-import org.lenskit.util.collections.TopNLong2DoubleAccumulator;
 import org.lenskit.util.keys.Long2DoubleSortedArrayMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
+import java.lang.annotation.Annotation;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -53,8 +56,11 @@ import java.util.Map;
 /**
  * Score items using an item-item CF model. User ratings are <b>not</b> supplied
  * as default preferences.
+ *
+ * This scorer can score with several {@linkplain NeighborhoodSize neighborhood sizes} at once; see
+ * {@link #scoreSweep(long, Collection, int[])}.
  */
-public class ItemItemScorer extends AbstractItemScorer {
+public class ItemItemScorer extends AbstractItemScorer implements SweepItemScorer {
     private static final Logger logger = LoggerFactory.getLogger(ItemItemScorer.class);
     protected final ItemItemModel model;
 
@@ -65,6 +71,7 @@ public class ItemItemScorer extends AbstractItemScorer {
     protected final NeighborhoodScorer scorer;
     private final int neighborhoodSize;
     private final int minNeighbors;
+    private final boolean sweepSupported;
 
     /**
      * Construct a new item-item scorer.
@@ -87,6 +94,7 @@ public class ItemItemScorer extends AbstractItemScorer {
         normalizer = norm;
         neighborhoodSize = nnbrs;
         minNeighbors = min;
+        sweepSupported = !overridesScoreItem(getClass());
         logger.debug("configured item-item scorer with scorer {}", scorer);
     }
 
@@ -122,6 +130,130 @@ public class ItemItemScorer extends AbstractItemScorer {
         return Results.newResultMap(results);
     }
 
+    @Nonnull
+    @Override
+    public Class<? extends Annotation> getSweepParameter() {
+        return NeighborhoodSize.class;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Sweeping is not supported by subclasses that override {@link #scoreItem(Long2DoubleMap, long,
+     * ItemItemScoreAccumulator)}, since the sweep does not score items through it.
+     */
+    @Override
+    public boolean isSweepSupported() {
+        return sweepSupported;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The user's ratings are fetched and normalized once, and each item's usable neighbors are sorted once; the
+     * {@link NeighborhoodScorer} then scores every neighborhood size from prefixes of the sorted neighbors.
+     * A size of 0 or less means to use all neighbors.  Sizes larger than the one this scorer was configured with
+     * are permitted, but neighborhoods are still limited by the size of the model.
+     */
+    @Nonnull
+    @Override
+    public List<Map<Long, Double>> scoreSweep(long user, @Nonnull Collection<Long> items, int[] sizes) {
+        logger.debug("scoring {} items for user {} with {} neighborhood sizes", items.size(), user, sizes.length);
+        List<Map<Long, Double>> results = new ArrayList<>(sizes.length);
+        ItemItemScoreAccumulator[] accums = new ItemItemScoreAccumulator[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            Long2DoubleMap map = new Long2DoubleOpenHashMap(items.size());
+            results.add(map);
+            accums[i] = ItemItemScoreAccumulator.basic(map);
+        }
+        scoreSweepItems(user, items, sizes, accums);
+        return results;
+    }
+
+    @Nonnull
+    @Override
+    public List<ResultMap> scoreSweepWithDetails(long user, @Nonnull Collection<Long> items, int[] sizes) {
+        logger.debug("scoring {} items for user {} with {} neighborhood sizes with details",
+                     items.size(), user, sizes.length);
+        List<List<ItemItemResult>> results = new ArrayList<>(sizes.length);
+        ItemItemScoreAccumulator[] accums = new ItemItemScoreAccumulator[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            List<ItemItemResult> list = new ArrayList<>(items.size());
+            results.add(list);
+            accums[i] = ItemItemScoreAccumulator.detailed(list);
+        }
+        scoreSweepItems(user, items, sizes, accums);
+
+        List<ResultMap> maps = new ArrayList<>(sizes.length);
+        for (List<ItemItemResult> list: results) {
+            maps.add(Results.newResultMap(list));
+        }
+        return maps;
+    }
+
+    /**
+     * Score items with several neighborhood sizes into accumulators.
+     * @param user The user.
+     * @param items The items to score.
+     * @param sizes The neighborhood sizes.
+     * @param accums The accumulators, one per size.
+     */
+    private void scoreSweepItems(long user, @Nonnull Collection<Long> items, int[] sizes,
+                                 ItemItemScoreAccumulator[] accums) {
+        Long2DoubleMap ratings = Long2DoubleSortedArrayMap.create(rvDAO.userRatingVector(user));
+        InvertibleFunction<Long2DoubleMap, Long2DoubleMap> transform = normalizer.makeTransformation(user, ratings);
+        Long2DoubleMap itemScores = transform.apply(ratings);
+
+        int[] lengths = new int[sizes.length];
+        LongIterator iter = LongIterators.asLongIterator(items.iterator());
+        while (iter.hasNext()) {
+            final long item = iter.nextLong();
+            Long2DoubleSortedArrayMap allNeighbors = Long2DoubleSortedArrayMap.create(model.getNeighbors(item));
+            Long2DoubleMap neighborhood = allNeighbors.subMap(itemScores.keySet());
+
+            int n = neighborhood.size();
+            long[] nbrs = new long[n];
+            double[] sims = new double[n];
+            int j = 0;
+            for (Long2DoubleMap.Entry e: neighborhood.long2DoubleEntrySet()) {
+                nbrs[j] = e.getLongKey();
+                sims[j] = e.getDoubleValue();
+                j++;
+            }
+            sortNeighbors(nbrs, sims);
+
+            for (int i = 0; i < sizes.length; i++) {
+                int len = sizes[i] > 0 ? Math.min(sizes[i], n) : n;
+                lengths[i] = len >= minNeighbors ? len : -1;
+            }
+            scorer.scorePrefixes(item, nbrs, sims, itemScores, lengths, accums);
+        }
+
+        for (ItemItemScoreAccumulator accum: accums) {
+            accum.applyReversedTransform(transform);
+        }
+    }
+
+    /**
+     * Sort neighbors in decreasing order of similarity.  Ties are broken by item ID, so truncated neighborhoods
+     * are the same whether an item is scored alone or in a sweep.
+     */
+    private static void sortNeighbors(long[] nbrs, double[] sims) {
+        Arrays.quickSort(0, nbrs.length,
+                         (i, j) -> {
+                             int c = Double.compare(sims[j], sims[i]);
+                             return c != 0 ? c : Long.compare(nbrs[i], nbrs[j]);
+                         },
+                         (i, j) -> {
+                             long tn = nbrs[i];
+                             nbrs[i] = nbrs[j];
+                             nbrs[j] = tn;
+                             double ts = sims[i];
+                             sims[i] = sims[j];
+                             sims[j] = ts;
+                         });
+    }
+
     /**
      * Score all items into an accumulator.
      * @param user The user.
@@ -149,15 +281,22 @@ public class ItemItemScorer extends AbstractItemScorer {
         Long2DoubleSortedArrayMap allNeighbors = Long2DoubleSortedArrayMap.create(model.getNeighbors(item));
         Long2DoubleMap neighborhood = allNeighbors.subMap(userData.keySet());
 
-        if (neighborhoodSize > 0) {
+        if (neighborhoodSize > 0 && neighborhood.size() > neighborhoodSize) {
             if (logger.isTraceEnabled()) {
                 logger.trace("truncating {} neighbors to {}", neighborhood.size(), neighborhoodSize);
             }
-            Long2DoubleAccumulator acc = new TopNLong2DoubleAccumulator(neighborhoodSize);
+            int n = neighborhood.size();
+            long[] nbrs = new long[n];
+            double[] sims = new double[n];
+            int j = 0;
             for (Long2DoubleMap.Entry e: neighborhood.long2DoubleEntrySet()) {
-                acc.put(e.getLongKey(), e.getDoubleValue());
+                nbrs[j] = e.getLongKey();
+                sims[j] = e.getDoubleValue();
+                j++;
             }
-            neighborhood = acc.finishMap();
+            sortNeighbors(nbrs, sims);
+            neighborhood = Long2DoubleSortedArrayMap.wrapUnsorted(LongArrays.copy(nbrs, 0, neighborhoodSize),
+                                                                  DoubleArrays.copy(sims, 0, neighborhoodSize));
         }
 
         assert neighborhoodSize <= 0 || neighborhood.size() <= neighborhoodSize;
@@ -170,4 +309,19 @@ public class ItemItemScorer extends AbstractItemScorer {
         }
         scorer.score(item, neighborhood, userData, accum);
     }
+
+    /**
+     * Query whether a scorer class overrides {@link #scoreItem(Long2DoubleMap, long, ItemItemScoreAccumulator)}.
+     */
+    private static boolean overridesScoreItem(Class<?> cls) {
+        for (Class<?> c = cls; c != null && c != ItemItemScorer.class; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod("scoreItem", Long2DoubleMap.class, long.class, ItemItemScoreAccumulator.class);
+                return true;
+            } catch (NoSuchMethodException e) {
+                /* not declared here, check the superclass */
+            }
+        }
+        return false;
+    }
 }
@@ -27,6 +27,7 @@ package org.lenskit.knn.item;
 import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
 import org.lenskit.inject.Shareable;
 import org.lenskit.similarity.VectorSimilarity;
+import org.lenskit.util.math.PackedVectors;
 import org.lenskit.util.parallel.MaybeThreadSafe;
 import org.lenskit.util.reflect.ClassQueries;
 
@@ -54,6 +55,20 @@ public class ItemVectorSimilarity implements ItemSimilarity, Serializable, Maybe
         return delegate.similarity(v1, v2);
     }
 
+    /**
+     * Compute the similarities between one item and several packed item vectors, using the delegate's
+     * {@linkplain VectorSimilarity#similarities(Long2DoubleMap, PackedVectors, int[]) batch computation}.
+     *
+     * @param v The item vector.
+     * @param vectors The packed vectors to compare with.
+     * @param rows The rows of {@code vectors} to compare with {@code v}.
+     * @return The similarities, parallel to {@code rows}.
+     * @since 3.0
+     */
+    public double[] similarities(Long2DoubleMap v, PackedVectors vectors, int[] rows) {
+        return delegate.similarities(v, vectors, rows);
+    }
+
     @Override
     public boolean isSparse() {
         return delegate.isSparse();
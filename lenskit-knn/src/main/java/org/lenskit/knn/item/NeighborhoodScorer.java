@@ -25,6 +25,7 @@
 package org.lenskit.knn.item;
 
 import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
 import org.grouplens.grapht.annotation.DefaultImplementation;
 
 /**
@@ -51,4 +52,31 @@ public interface NeighborhoodScorer {
      * @param accum     An accumulator to receive the score computed by this method.
      */
     void score(long item, Long2DoubleMap neighbors, Long2DoubleMap scores, ItemItemScoreAccumulator accum);
+
+    /**
+     * Compute scores from several prefixes of a neighborhood, for scoring with several neighborhood sizes at
+     * once.  The default implementation builds each prefix and passes it to
+     * {@link #score(long, Long2DoubleMap, Long2DoubleMap, ItemItemScoreAccumulator)}.
+     *
+     * @param item         The item ID to score.
+     * @param neighbors    The neighbor IDs, in decreasing order of similarity.
+     * @param similarities The neighbor similarities, parallel to `neighbors`.
+     * @param scores       A vector of item scores, with a score for every neighbor.
+     * @param lengths      The prefix lengths to score; a negative length means not to score that prefix.
+     * @param accums       The accumulators to receive the scores, parallel to `lengths`.
+     */
+    default void scorePrefixes(long item, long[] neighbors, double[] similarities, Long2DoubleMap scores,
+                               int[] lengths, ItemItemScoreAccumulator[] accums) {
+        for (int i = 0; i < lengths.length; i++) {
+            int n = lengths[i];
+            if (n < 0) {
+                continue;
+            }
+            Long2DoubleMap prefix = new Long2DoubleOpenHashMap(n);
+            for (int j = 0; j < n; j++) {
+                prefix.put(neighbors[j], similarities[j]);
+            }
+            score(item, prefix, scores, accums[i]);
+        }
+    }
 }
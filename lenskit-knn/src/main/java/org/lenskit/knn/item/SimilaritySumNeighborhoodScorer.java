@@ -47,6 +47,30 @@ public class SimilaritySumNeighborhoodScorer implements NeighborhoodScorer, Seri
         }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * This implementation computes prefix sums of the similarities in a single scan of the neighborhood.
+     */
+    @Override
+    public void scorePrefixes(long item, long[] neighbors, double[] similarities, Long2DoubleMap scores,
+                              int[] lengths, ItemItemScoreAccumulator[] accums) {
+        int max = 0;
+        for (int n: lengths) {
+            max = Math.max(max, n);
+        }
+        double[] sums = new double[max + 1];
+        for (int j = 0; j < max; j++) {
+            sums[j + 1] = sums[j] + similarities[j];
+        }
+        for (int i = 0; i < lengths.length; i++) {
+            int n = lengths[i];
+            if (n > 0) {
+                accums[i].add(item, sums[n], n, sums[n]);
+            }
+        }
+    }
+
     @Override
     public String toString() {
         return "[NeighborhoodScorer: SimilaritySum]";
@@ -48,6 +48,34 @@ public class WeightedAverageNeighborhoodScorer implements NeighborhoodScorer, Se
         }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * This implementation computes prefix sums of the weights and weighted scores, so all prefixes are scored
+     * in a single scan of the neighborhood.
+     */
+    @Override
+    public void scorePrefixes(long item, long[] neighbors, double[] similarities, Long2DoubleMap scores,
+                              int[] lengths, ItemItemScoreAccumulator[] accums) {
+        int max = 0;
+        for (int n: lengths) {
+            max = Math.max(max, n);
+        }
+        double[] weights = new double[max + 1];
+        double[] sums = new double[max + 1];
+        for (int j = 0; j < max; j++) {
+            double sim = similarities[j];
+            weights[j + 1] = weights[j] + Math.abs(sim);
+            sums[j + 1] = sums[j] + sim * scores.get(neighbors[j]);
+        }
+        for (int i = 0; i < lengths.length; i++) {
+            int n = lengths[i];
+            if (n >= 0 && weights[n] > 0) {
+                accums[i].add(item, sums[n] / weights[n], n, weights[n]);
+            }
+        }
+    }
+
     @Override
     public String toString() {
         return "[NeighborhoodScorer: WeightedAverage]";
@@ -25,6 +25,7 @@
 package org.lenskit.knn.item.model;
 
 import com.google.common.base.Preconditions;
+import it.unimi.dsi.fastutil.longs.Long2DoubleMaps;
 import it.unimi.dsi.fastutil.longs.Long2DoubleSortedMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.LongSortedSet;
@@ -34,6 +35,7 @@ import org.grouplens.grapht.annotation.DefaultProvider;
 import org.lenskit.inject.Shareable;
 import org.lenskit.inject.Transient;
 import org.lenskit.util.keys.SortedKeyIndex;
+import org.lenskit.util.math.PackedVectors;
 
 import javax.annotation.Nonnull;
 import java.io.Serializable;
@@ -53,14 +55,14 @@ import java.io.Serializable;
 @Shareable
 @Immutable
 public class ItemItemBuildContext implements Serializable {
-    private static final long serialVersionUID = 2L;
+    private static final long serialVersionUID = 3L;
 
     @Nonnull
     private
     SortedKeyIndex items;
     @Nonnull
     private
-    Long2DoubleSortedMap[] itemVectors;
+    PackedVectors itemVectors;
 
     @Nonnull
     private Long2ObjectMap<LongSortedSet> userItems;
@@ -76,7 +78,8 @@ public class ItemItemBuildContext implements Serializable {
                          @Nonnull Long2ObjectMap<LongSortedSet> userItems) {
         this.userItems = userItems;
         items = universe;
-        itemVectors = vectors;
+        itemVectors = PackedVectors.pack(vectors.length,
+                                         i -> vectors[i] != null ? vectors[i] : Long2DoubleMaps.EMPTY_MAP);
     }
 
     /**
@@ -101,7 +104,27 @@ public class ItemItemBuildContext implements Serializable {
     public Long2DoubleSortedMap itemVector(long item) {
         int idx = items.tryGetIndex(item);
         Preconditions.checkArgument(idx >= 0, "unknown item");
-        return itemVectors[idx];
+        return itemVectors.row(idx);
+    }
+
+    /**
+     * Get the position of an item in the packed item vectors.
+     *
+     * @param item The item to query.
+     * @return The item's row in {@link #getItemVectors()}, or a negative value if it is not a valid item.
+     */
+    int getItemIndex(long item) {
+        return items.tryGetIndex(item);
+    }
+
+    /**
+     * Get the packed item rating vectors, for batch similarity computations.
+     *
+     * @return The item vectors, with one row per item in sorted item order.
+     */
+    @Nonnull
+    PackedVectors getItemVectors() {
+        return itemVectors;
     }
 
     /**
@@ -24,22 +24,23 @@
  */
 package org.lenskit.knn.item.model;
 
+import it.unimi.dsi.fastutil.doubles.DoubleArrays;
 import it.unimi.dsi.fastutil.longs.*;
 import org.lenskit.data.ratings.RatingVectorPDAO;
 import org.lenskit.inject.Transient;
 import org.lenskit.knn.item.MinCommonUsers;
 import org.lenskit.transform.normalize.UserVectorNormalizer;
+import org.lenskit.transform.normalize.VectorTransformation;
 import org.lenskit.util.IdBox;
 import org.lenskit.util.collections.LongUtils;
 import org.lenskit.util.io.ObjectStream;
+import org.lenskit.util.keys.Long2DoubleSortedArrayMap;
 import org.lenskit.util.keys.SortedKeyIndex;
-import org.lenskit.util.math.Vectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
-import java.util.Iterator;
 
 /**
  * Provider that sets up an {@link ItemItemBuildContext}.
@@ -118,31 +119,39 @@ public class ItemItemBuildContextProvider implements Provider<ItemItemBuildConte
      */
     private void buildItemRatings(Long2ObjectMap<Long2DoubleMap> itemRatings,
                                   Long2ObjectMap<LongSortedSet> userItems) {
+        // buffers for normalizing each user's ratings in place
+        long[] keys = new long[0];
+        double[] values = new double[0];
         // initialize the transposed array to collect item vector data
         try (ObjectStream<IdBox<Long2DoubleMap>> stream = rvDAO.streamUsers()) {
             for (IdBox<Long2DoubleMap> user : stream) {
                 long uid = user.getId();
-                Long2DoubleMap ratings = user.getValue();
-                Long2DoubleMap normed = normalizer.makeTransformation(uid, ratings).apply(ratings);
-                assert normed != null;
-
-                Iterator<Long2DoubleMap.Entry> iter = Vectors.fastEntryIterator(normed);
-                while (iter.hasNext()) {
-                    Long2DoubleMap.Entry rating = iter.next();
-                    final long item = rating.getLongKey();
+                Long2DoubleSortedArrayMap ratings = Long2DoubleSortedArrayMap.create(user.getValue());
+                final int n = ratings.size();
+                keys = LongArrays.grow(keys, n);
+                values = DoubleArrays.grow(values, n);
+                for (int i = 0; i < n; i++) {
+                    keys[i] = ratings.getKeyByIndex(i);
+                    values[i] = ratings.getValueByIndex(i);
+                }
+                VectorTransformation.of(normalizer.makeTransformation(uid, ratings))
+                                    .applyInPlace(keys, values, 0, n);
+
+                for (int i = 0; i < n; i++) {
+                    final long item = keys[i];
                     // get the item's rating accumulator
                     Long2DoubleMap ivect = itemRatings.get(item);
                     if (ivect == null) {
                         ivect = new Long2DoubleOpenHashMap();
                         itemRatings.put(item, ivect);
                     }
-                    ivect.put(uid, rating.getDoubleValue());
+                    ivect.put(uid, values[i]);
                 }
 
                 // store the user's item set
                 // if the user only has 1 rating, they will never be for a neighborhood
-                if (normed.size() > 1) {
-                    userItems.put(uid, LongUtils.packedSet(normed.keySet()));
+                if (n > 1) {
+                    userItems.put(uid, LongUtils.packedSet(ratings.keySet()));
                 }
             }
         }
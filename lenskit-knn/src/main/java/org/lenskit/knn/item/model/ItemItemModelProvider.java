@@ -25,12 +25,14 @@
 package org.lenskit.knn.item.model;
 
 import com.google.common.collect.ImmutableSet;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.longs.*;
 import net.jcip.annotations.NotThreadSafe;
 import org.grouplens.lenskit.transform.threshold.Threshold;
 import org.lenskit.inject.Transient;
 import org.lenskit.knn.item.ItemSimilarity;
 import org.lenskit.knn.item.ItemSimilarityThreshold;
+import org.lenskit.knn.item.ItemVectorSimilarity;
 import org.lenskit.knn.item.MinCommonUsers;
 import org.lenskit.knn.item.ModelSize;
 import org.lenskit.util.IdBox;
@@ -147,6 +149,9 @@ public class ItemItemModelProvider implements Provider<ItemItemModel> {
                                                                   itemSimilarity.isSymmetric());
         Long2DoubleSortedMap vec1 = item.getValue();
         Long2DoubleMap row = new Long2DoubleOpenHashMap();
+        boolean batch = itemSimilarity instanceof ItemVectorSimilarity;
+        IntArrayList candidates = new IntArrayList();
+        LongArrayList candidateIds = new LongArrayList();
 
         while (itemIter.hasNext()) {
             long itemId2 = itemIter.nextLong();
@@ -157,6 +162,13 @@ public class ItemItemModelProvider implements Provider<ItemItemModel> {
                     continue;
                 }
 
+                if (batch) {
+                    // defer to a single pass over the packed item vectors
+                    candidates.add(buildContext.getItemIndex(itemId2));
+                    candidateIds.add(itemId2);
+                    continue;
+                }
+
                 double sim = itemSimilarity.similarity(itemId1, vec1, itemId2, vec2);
                 if (threshold.retain(sim)) {
                     row.put(itemId2, sim);
@@ -164,6 +176,16 @@ public class ItemItemModelProvider implements Provider<ItemItemModel> {
             }
         }
 
+        if (!candidates.isEmpty()) {
+            double[] sims = ((ItemVectorSimilarity) itemSimilarity).similarities(vec1, buildContext.getItemVectors(),
+                                                                                 candidates.toIntArray());
+            for (int i = 0; i < sims.length; i++) {
+                if (threshold.retain(sims[i])) {
+                    row.put(candidateIds.getLong(i), sims[i]);
+                }
+            }
+        }
+
         return IdBox.create(itemId1, row);
     }
 
@@ -33,9 +33,15 @@ import org.lenskit.api.ResultList;
 import org.lenskit.inject.Shareable;
 import org.lenskit.results.Results;
 import org.lenskit.util.collections.LongUtils;
+import org.lenskit.util.io.EncodedBy;
+import org.lenskit.util.io.ModelCodec;
+import org.lenskit.util.io.ModelCodecs;
 import org.lenskit.util.keys.SortedKeyIndex;
 
 import javax.annotation.Nonnull;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.List;
 import java.util.Map;
@@ -52,6 +58,7 @@ import java.util.Map;
  * @since 0.10
  */
 @DefaultProvider(ItemItemModelProvider.class)
+@EncodedBy(SimilarityMatrixModel.Codec.class)
 @Shareable
 public class SimilarityMatrixModel implements Serializable, ItemItemModel {
     private static final long serialVersionUID = 3L;
@@ -89,6 +96,11 @@ public class SimilarityMatrixModel implements Serializable, ItemItemModel {
         neighborhoods = neighbors.build();
     }
 
+    private SimilarityMatrixModel(SortedKeyIndex items, ImmutableList<Long2DoubleMap> nbrs) {
+        itemDomain = items;
+        neighborhoods = nbrs;
+    }
+
     @Override
     public LongSortedSet getItemUniverse() {
         return itemDomain.keySet();
@@ -118,4 +130,28 @@ public class SimilarityMatrixModel implements Serializable, ItemItemModel {
         }
         return val;
     }
+
+    /**
+     * Binary codec for similarity matrix models.
+     */
+    public static class Codec implements ModelCodec<SimilarityMatrixModel> {
+        @Override
+        public void write(SimilarityMatrixModel model, DataOutput out) throws IOException {
+            ModelCodecs.writeSortedKeyIndex(out, model.itemDomain);
+            for (Long2DoubleMap nbrs: model.neighborhoods) {
+                ModelCodecs.writeDoubleMap(out, nbrs);
+            }
+        }
+
+        @Override
+        public SimilarityMatrixModel read(DataInput in) throws IOException {
+            SortedKeyIndex items = ModelCodecs.readSortedKeyIndex(in);
+            int n = items.size();
+            ImmutableList.Builder<Long2DoubleMap> neighbors = ImmutableList.builder();
+            for (int i = 0; i < n; i++) {
+                neighbors.add(ModelCodecs.readDoubleMap(in));
+            }
+            return new SimilarityMatrixModel(items, neighbors.build());
+        }
+    }
 }
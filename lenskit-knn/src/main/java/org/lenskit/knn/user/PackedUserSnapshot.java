@@ -0,0 +1,256 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.knn.user;
+
+import com.google.common.base.Preconditions;
+import it.unimi.dsi.fastutil.longs.*;
+import org.grouplens.grapht.annotation.DefaultProvider;
+import org.lenskit.data.ratings.RatingVectorPDAO;
+import org.lenskit.inject.Shareable;
+import org.lenskit.inject.Transient;
+import org.lenskit.knn.ScoreNormalizer;
+import org.lenskit.knn.SimilarityNormalizer;
+import org.lenskit.transform.normalize.UserVectorNormalizer;
+import org.lenskit.transform.normalize.VectorTransformation;
+import org.lenskit.util.IdBox;
+import org.lenskit.util.io.ObjectStream;
+import org.lenskit.util.keys.Long2DoubleSortedArrayMap;
+import org.lenskit.util.keys.SortedKeyIndex;
+import org.lenskit.util.math.PackedVectors;
+
+import net.jcip.annotations.ThreadSafe;
+import javax.inject.Inject;
+import javax.inject.Provider;
+import java.io.Serializable;
+
+/**
+ * Packed form of a {@link UserSnapshot}, used by {@link PackedUserUserItemScorer}.  The user vectors are stored in
+ * compressed sparse row arrays, one for the score vectors and one for the similarity vectors (sharing their keys,
+ * and their values as well if both use the same normalizer), and the users who rated each item are stored as an
+ * inverted index of user positions.  Vectors returned by this class are views of the packed arrays, so they can be
+ * created without copying.
+ *
+ * @since 3.0
+ */
+@Shareable
+@ThreadSafe
+@DefaultProvider(PackedUserSnapshot.Builder.class)
+public class PackedUserSnapshot implements Serializable {
+    private static final long serialVersionUID = 2L;
+
+    private final SortedKeyIndex users;
+    private final PackedVectors scoreRows;
+    private final PackedVectors similarityRows;
+    private final SortedKeyIndex items;
+    private final int[] itemOffsets;
+    private final int[] itemUsers;
+
+    PackedUserSnapshot(SortedKeyIndex users, PackedVectors scores, PackedVectors sims,
+                       SortedKeyIndex items, int[] itemOffsets, int[] itemUsers) {
+        Preconditions.checkArgument(scores.size() == users.size(), "incorrectly sized score rows");
+        Preconditions.checkArgument(sims.size() == users.size(), "incorrectly sized similarity rows");
+        Preconditions.checkArgument(itemOffsets.length == items.size() + 1, "incorrectly sized item offsets");
+        this.users = users;
+        scoreRows = scores;
+        similarityRows = sims;
+        this.items = items;
+        this.itemOffsets = itemOffsets;
+        this.itemUsers = itemUsers;
+    }
+
+    /**
+     * Get the number of users in the snapshot.
+     * @return The number of users.
+     */
+    public int getUserCount() {
+        return users.size();
+    }
+
+    /**
+     * Get the index of users in the snapshot.
+     * @return The user index.
+     */
+    SortedKeyIndex getUserIndex() {
+        return users;
+    }
+
+    /**
+     * Get the position of a user.
+     * @param user The user ID.
+     * @return The user's position, or a negative value if the user is not in the snapshot.
+     */
+    public int getUserIndex(long user) {
+        return users.tryGetIndex(user);
+    }
+
+    /**
+     * Get the ID of the user at a position.
+     * @param idx The user position.
+     * @return The user ID.
+     */
+    public long getUserId(int idx) {
+        return users.getKey(idx);
+    }
+
+    /**
+     * Get a user vector normalized for score computations.
+     * @param idx The user position.
+     * @return The user's score vector, as a view of the packed rows.
+     */
+    public Long2DoubleSortedArrayMap getScoreVector(int idx) {
+        return scoreRows.row(idx);
+    }
+
+    /**
+     * Get a user vector normalized for similarity computations.
+     * @param idx The user position.
+     * @return The user's similarity vector, as a view of the packed rows.
+     */
+    public Long2DoubleSortedArrayMap getSimilarityVector(int idx) {
+        return similarityRows.row(idx);
+    }
+
+    /**
+     * Get the packed similarity vectors, for batch similarity computations.
+     * @return The similarity vectors, with one row per user position.
+     */
+    PackedVectors getSimilarityVectors() {
+        return similarityRows;
+    }
+
+    /**
+     * Get the position of an item in the inverted index.
+     * @param item The item ID.
+     * @return The item's position, or a negative value if no user in the snapshot has rated it.
+     */
+    public int getItemIndex(long item) {
+        return items.tryGetIndex(item);
+    }
+
+    /**
+     * Get the start of an item's users in {@link #getItemUser(int)}.
+     * @param itemIdx The item position.
+     * @return The offset of the item's first user.
+     */
+    public int getItemStart(int itemIdx) {
+        return itemOffsets[itemIdx];
+    }
+
+    /**
+     * Get the end of an item's users in {@link #getItemUser(int)}.
+     * @param itemIdx The item position.
+     * @return The offset just past the item's last user.
+     */
+    public int getItemEnd(int itemIdx) {
+        return itemOffsets[itemIdx + 1];
+    }
+
+    /**
+     * Get a user from the inverted index.
+     * @param offset The offset in the inverted index, between an item's start and end.
+     * @return The position of the user.
+     */
+    public int getItemUser(int offset) {
+        return itemUsers[offset];
+    }
+
+    /**
+     * Build a packed user snapshot from the rating data, normalizing the user vectors in place.
+     */
+    public static class Builder implements Provider<PackedUserSnapshot> {
+        private final RatingVectorPDAO rvDAO;
+        private final UserVectorNormalizer scoreNormalizer;
+        private final UserVectorNormalizer similarityNormalizer;
+
+        @Inject
+        public Builder(@Transient RatingVectorPDAO rvd,
+                       @Transient @ScoreNormalizer UserVectorNormalizer scoreNorm,
+                       @Transient @SimilarityNormalizer UserVectorNormalizer simNorm) {
+            rvDAO = rvd;
+            scoreNormalizer = scoreNorm;
+            similarityNormalizer = simNorm;
+        }
+
+        @Override
+        public PackedUserSnapshot get() {
+            Long2ObjectMap<Long2DoubleMap> vectors = new Long2ObjectOpenHashMap<>();
+            try (ObjectStream<IdBox<Long2DoubleMap>> stream = rvDAO.streamUsers()) {
+                for (IdBox<Long2DoubleMap> user : stream) {
+                    vectors.put(user.getId(), user.getValue());
+                }
+            }
+            SortedKeyIndex users = SortedKeyIndex.fromCollection(vectors.keySet());
+            final int n = users.size();
+            PackedVectors raw = PackedVectors.pack(n, i -> vectors.get(users.getKey(i)));
+            vectors.clear();
+
+            PackedVectors scores = normalize(users, raw, scoreNormalizer);
+            PackedVectors sims;
+            if (similarityNormalizer.equals(scoreNormalizer)) {
+                sims = scores;
+            } else {
+                sims = normalize(users, raw, similarityNormalizer);
+            }
+
+            // count the users for each item, then fill in the inverted index in user order
+            Long2IntMap counts = new Long2IntOpenHashMap();
+            for (long item: scores.getKeys()) {
+                counts.put(item, counts.get(item) + 1);
+            }
+            SortedKeyIndex items = SortedKeyIndex.fromCollection(counts.keySet());
+            int[] offsets = new int[items.size() + 1];
+            for (int j = 0; j < items.size(); j++) {
+                offsets[j + 1] = offsets[j] + counts.get(items.getKey(j));
+            }
+            int[] fill = new int[items.size()];
+            int[] itemUsers = new int[offsets[items.size()]];
+            for (int i = 0; i < n; i++) {
+                for (int k = scores.getRowStart(i); k < scores.getRowEnd(i); k++) {
+                    int j = items.getIndex(scores.getKeys()[k]);
+                    itemUsers[offsets[j] + fill[j]] = i;
+                    fill[j] += 1;
+                }
+            }
+
+            return new PackedUserSnapshot(users, scores, sims, items, offsets, itemUsers);
+        }
+
+        /**
+         * Normalize packed user vectors.  Each user's transformation is computed once from their raw vector and
+         * applied in place to a copy of the packed values, so no per-user vectors are allocated.
+         */
+        private static PackedVectors normalize(SortedKeyIndex users, PackedVectors raw,
+                                               UserVectorNormalizer normalizer) {
+            long[] keys = raw.getKeys();
+            double[] values = raw.getValues().clone();
+            for (int i = 0; i < raw.size(); i++) {
+                VectorTransformation xform =
+                        VectorTransformation.of(normalizer.makeTransformation(users.getKey(i), raw.row(i)));
+                xform.applyInPlace(keys, values, raw.getRowStart(i), raw.getRowEnd(i));
+            }
+            return raw.withValues(values);
+        }
+    }
+}
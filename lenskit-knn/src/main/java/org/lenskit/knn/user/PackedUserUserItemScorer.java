@@ -0,0 +1,277 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.knn.user;
+
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.*;
+import org.grouplens.lenskit.transform.threshold.Threshold;
+import org.lenskit.api.Result;
+import org.lenskit.api.ResultMap;
+import org.lenskit.basic.AbstractItemScorer;
+import org.lenskit.data.ratings.RatingVectorPDAO;
+import org.lenskit.knn.NeighborhoodSize;
+import org.lenskit.knn.SimilarityNormalizer;
+import org.lenskit.results.Results;
+import org.lenskit.transform.normalize.UserVectorNormalizer;
+import org.lenskit.util.InvertibleFunction;
+import org.lenskit.util.collections.LongUtils;
+import org.lenskit.util.keys.Long2DoubleSortedArrayMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+import java.util.*;
+
+/**
+ * Score items with user-user collaborative filtering over a {@link PackedUserSnapshot}.  This computes the same
+ * scores as {@link UserUserItemScorer} with a {@link SnapshotNeighborFinder}, but finds neighborhoods by walking the
+ * snapshot's inverted index for each target item, computing each candidate neighbor's similarity at most once, and
+ * selecting the top neighbors with a primitive heap.  User vectors are sorted array maps, so similarities built on
+ * {@link org.lenskit.util.math.Vectors#dotProduct(Long2DoubleMap, Long2DoubleMap)} use a merge join.
+ *
+ * The detailed results returned by this scorer are of type {@link UserUserResult}.
+ *
+ * @since 3.0
+ */
+public class PackedUserUserItemScorer extends AbstractItemScorer {
+    private static final Logger logger = LoggerFactory.getLogger(PackedUserUserItemScorer.class);
+
+    private final RatingVectorPDAO dao;
+    private final PackedUserSnapshot snapshot;
+    private final UserSimilarity similarity;
+    private final UserVectorNormalizer similarityNormalizer;
+    private final Threshold threshold;
+    private final UserVectorNormalizer normalizer;
+    private final UserNeighborhoodScorer neighborhoodScorer;
+    private final int neighborhoodSize;
+
+    @Inject
+    public PackedUserUserItemScorer(RatingVectorPDAO rvd, PackedUserSnapshot snap,
+                                    UserSimilarity sim,
+                                    @SimilarityNormalizer UserVectorNormalizer simNorm,
+                                    @UserSimilarityThreshold Threshold thresh,
+                                    UserVectorNormalizer norm,
+                                    UserNeighborhoodScorer scorer,
+                                    @NeighborhoodSize int nnbrs) {
+        dao = rvd;
+        snapshot = snap;
+        similarity = sim;
+        similarityNormalizer = simNorm;
+        threshold = thresh;
+        normalizer = norm;
+        neighborhoodScorer = scorer;
+        neighborhoodSize = nnbrs;
+    }
+
+    @Nonnull
+    @Override
+    public ResultMap scoreWithDetails(long user, @Nonnull Collection<Long> items) {
+        Long2DoubleMap history = dao.userRatingVector(user);
+
+        logger.debug("Predicting for {} items for user {} with {} events",
+                     items.size(), user, history.size());
+
+        Long2DoubleSortedArrayMap normed =
+                Long2DoubleSortedArrayMap.create(similarityNormalizer.makeTransformation(user, history)
+                                                                     .apply(history));
+        NeighborSearch search = new NeighborSearch(user, normed);
+
+        List<UserUserResult> rawResults = new ArrayList<>();
+        LongIterator iter = LongUtils.frozenSet(items).iterator();
+        while (iter.hasNext()) {
+            final long item = iter.nextLong();
+            UserUserResult score = neighborhoodScorer.score(item, search.findNeighbors(item));
+            if (score != null) {
+                if (logger.isTraceEnabled()) {
+                    logger.trace("result {}", score);
+                }
+                rawResults.add(score);
+            }
+        }
+
+        // de-normalize the results
+        InvertibleFunction<Long2DoubleMap, Long2DoubleMap> xform = normalizer.makeTransformation(user, history);
+        Long2DoubleMap itemScores = new Long2DoubleOpenHashMap(rawResults.size());
+        for (UserUserResult r: rawResults) {
+            itemScores.put(r.getId(), r.getScore());
+        }
+        itemScores = xform.unapply(itemScores);
+
+        List<Result> results = new ArrayList<>(rawResults.size());
+        for (UserUserResult r: rawResults) {
+            results.add(r.copyBuilder()
+                         .setScore(itemScores.get(r.getId()))
+                         .build());
+        }
+
+        return Results.newResultMap(results);
+    }
+
+    /**
+     * Check if a similarity is acceptable.
+     *
+     * @param sim The similarity to check.
+     * @return {@code false} if the similarity is NaN, infinite, or rejected by the threshold;
+     *         {@code true} otherwise.
+     */
+    private boolean acceptSimilarity(double sim) {
+        return !Double.isNaN(sim) && !Double.isInfinite(sim) && threshold.retain(sim);
+    }
+
+    /**
+     * Neighbor search state for a single user.  Similarities (NaN for rejected neighbors) and neighbor objects are
+     * memoized by user position, so each candidate is compared once no matter how many target items it rated.
+     */
+    private class NeighborSearch {
+        private final long user;
+        private final int self;
+        private final Long2DoubleSortedArrayMap userVector;
+        private final Int2DoubleOpenHashMap similarities = new Int2DoubleOpenHashMap();
+        private final Int2ObjectOpenHashMap<Neighbor> neighbors = new Int2ObjectOpenHashMap<>();
+        private int[] heap = new int[16];
+        private double[] heapSims = new double[16];
+
+        NeighborSearch(long user, Long2DoubleSortedArrayMap vec) {
+            this.user = user;
+            self = snapshot.getUserIndex(user);
+            userVector = vec;
+        }
+
+        double similarity(int nbr) {
+            if (similarities.containsKey(nbr)) {
+                return similarities.get(nbr);
+            }
+            double sim = similarity.similarity(user, userVector,
+                                               snapshot.getUserId(nbr), snapshot.getSimilarityVector(nbr));
+            if (!acceptSimilarity(sim)) {
+                sim = Double.NaN;
+            }
+            similarities.put(nbr, sim);
+            return sim;
+        }
+
+        /**
+         * Find the most similar users who have rated an item.
+         * @param item The item.
+         * @return The neighbors, in decreasing order of similarity.
+         */
+        List<Neighbor> findNeighbors(long item) {
+            int ii = snapshot.getItemIndex(item);
+            if (ii < 0 || userVector.isEmpty()) {
+                return Collections.emptyList();
+            }
+            int limit = neighborhoodSize < 0 ? Integer.MAX_VALUE : neighborhoodSize;
+            int size = 0;
+            for (int p = snapshot.getItemStart(ii), end = snapshot.getItemEnd(ii); p < end; p++) {
+                int nbr = snapshot.getItemUser(p);
+                if (nbr == self) {
+                    continue;
+                }
+                double sim = similarity(nbr);
+                if (Double.isNaN(sim)) {
+                    continue;
+                }
+                if (size < limit) {
+                    ensureCapacity(size + 1);
+                    heap[size] = nbr;
+                    heapSims[size] = sim;
+                    siftUp(size);
+                    size += 1;
+                } else if (size > 0 && sim > heapSims[0]) {
+                    heap[0] = nbr;
+                    heapSims[0] = sim;
+                    siftDown(0, size);
+                }
+            }
+
+            // pop the min-heap from the back of the list to get decreasing order
+            Neighbor[] result = new Neighbor[size];
+            for (int i = size - 1; i >= 0; i--) {
+                result[i] = neighbor(heap[0], heapSims[0]);
+                heap[0] = heap[i];
+                heapSims[0] = heapSims[i];
+                siftDown(0, i);
+            }
+            return Arrays.asList(result);
+        }
+
+        private Neighbor neighbor(int nbr, double sim) {
+            Neighbor n = neighbors.get(nbr);
+            if (n == null) {
+                n = new Neighbor(snapshot.getUserId(nbr), snapshot.getScoreVector(nbr), sim);
+                neighbors.put(nbr, n);
+            }
+            return n;
+        }
+
+        private void ensureCapacity(int n) {
+            if (n > heap.length) {
+                int cap = Math.max(n, heap.length * 2);
+                heap = Arrays.copyOf(heap, cap);
+                heapSims = Arrays.copyOf(heapSims, cap);
+            }
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (heapSims[parent] <= heapSims[i]) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i, int size) {
+            while (true) {
+                int left = 2 * i + 1;
+                if (left >= size) {
+                    break;
+                }
+                int least = left;
+                if (left + 1 < size && heapSims[left + 1] < heapSims[left]) {
+                    least = left + 1;
+                }
+                if (heapSims[i] <= heapSims[least]) {
+                    break;
+                }
+                swap(i, least);
+                i = least;
+            }
+        }
+
+        private void swap(int i, int j) {
+            int tn = heap[i];
+            heap[i] = heap[j];
+            heap[j] = tn;
+            double ts = heapSims[i];
+            heapSims[i] = heapSims[j];
+            heapSims[j] = ts;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.knn.user;
+
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleMaps;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.jcip.annotations.ThreadSafe;
+
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A neighborhood finder that reads neighbors from a precomputed {@link UserNeighborhoodModel}.  Users who are not
+ * in the model have no neighbors.
+ *
+ * @since 3.0
+ */
+@ThreadSafe
+public class PrecomputedNeighborFinder implements NeighborFinder {
+    private final UserNeighborhoodModel model;
+    private final PackedUserSnapshot snapshot;
+
+    @Inject
+    public PrecomputedNeighborFinder(UserNeighborhoodModel model, PackedUserSnapshot snap) {
+        this.model = model;
+        snapshot = snap;
+    }
+
+    @Override
+    public Iterable<Neighbor> getCandidateNeighbors(long user, LongSet items) {
+        Long2DoubleMap nbrs = model.getNeighbors(user);
+        List<Neighbor> neighbors = new ArrayList<>(nbrs.size());
+        for (Long2DoubleMap.Entry e: Long2DoubleMaps.fastIterable(nbrs)) {
+            int idx = snapshot.getUserIndex(e.getLongKey());
+            if (idx >= 0) {
+                neighbors.add(new Neighbor(e.getLongKey(), snapshot.getScoreVector(idx), e.getDoubleValue()));
+            }
+        }
+        return neighbors;
+    }
+}
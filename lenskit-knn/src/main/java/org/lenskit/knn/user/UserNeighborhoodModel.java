@@ -0,0 +1,151 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.knn.user;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleMaps;
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
+import org.grouplens.grapht.annotation.DefaultProvider;
+import org.lenskit.inject.Shareable;
+import org.lenskit.util.collections.LongUtils;
+import org.lenskit.util.io.EncodedBy;
+import org.lenskit.util.io.ModelCodec;
+import org.lenskit.util.io.ModelCodecs;
+import org.lenskit.util.keys.SortedKeyIndex;
+
+import javax.annotation.Nonnull;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Precomputed user neighborhoods, the user-user analogue of
+ * {@link org.lenskit.knn.item.model.SimilarityMatrixModel}.  Each user is mapped to their most similar users and
+ * the similarities to them.  {@link PrecomputedNeighborFinder} reads neighbors from this model instead of
+ * searching for them on each request.
+ *
+ * The similarities are computed on the similarity-normalized user vectors, and the neighbors are not updated as
+ * new ratings arrive; use {@link UserNeighborhoodModelProvider#refresh(UserNeighborhoodModel, java.util.Collection)}
+ * to recompute the neighborhoods of users whose profiles have changed.
+ *
+ * @since 3.0
+ */
+@DefaultProvider(UserNeighborhoodModelProvider.class)
+@EncodedBy(UserNeighborhoodModel.Codec.class)
+@Shareable
+public class UserNeighborhoodModel implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final SortedKeyIndex userDomain;
+    private final ImmutableList<Long2DoubleMap> neighborhoods;
+    private transient volatile String stringValue;
+
+    /**
+     * Construct a new user neighborhood model.
+     *
+     * @param nbrs The user neighborhoods, mapping each user to their neighbors' similarities.
+     */
+    public UserNeighborhoodModel(Map<Long,Long2DoubleMap> nbrs) {
+        userDomain = SortedKeyIndex.fromCollection(nbrs.keySet());
+        int n = userDomain.size();
+        ImmutableList.Builder<Long2DoubleMap> neighbors = ImmutableList.builder();
+        for (int i = 0; i < n; i++) {
+            neighbors.add(LongUtils.frozenMap(nbrs.get(userDomain.getKey(i))));
+        }
+        neighborhoods = neighbors.build();
+    }
+
+    UserNeighborhoodModel(SortedKeyIndex users, List<Long2DoubleMap> nbrs) {
+        Preconditions.checkArgument(users.size() == nbrs.size(), "incorrectly sized neighborhood list");
+        userDomain = users;
+        neighborhoods = ImmutableList.copyOf(nbrs);
+    }
+
+    /**
+     * Get the users in the model.
+     * @return The set of users with neighborhoods in the model.
+     */
+    public LongSortedSet getUserUniverse() {
+        return userDomain.keySet();
+    }
+
+    /**
+     * Get a user's neighbors.
+     * @param user The user ID.
+     * @return The user's neighbors and their similarities, or an empty map if the user is not in the model.
+     */
+    @Nonnull
+    public Long2DoubleMap getNeighbors(long user) {
+        int idx = userDomain.tryGetIndex(user);
+        if (idx < 0) {
+            return Long2DoubleMaps.EMPTY_MAP;
+        } else {
+            return neighborhoods.get(idx);
+        }
+    }
+
+    @Override
+    public String toString() {
+        String val = stringValue;
+        if (val == null) {
+            int nsims = 0;
+            for (Long2DoubleMap nbrs: neighborhoods) {
+                nsims += nbrs.size();
+            }
+            val = String.format("neighborhoods of %d similarities for %d users", nsims, neighborhoods.size());
+            stringValue = val;
+        }
+        return val;
+    }
+
+    /**
+     * Binary codec for user neighborhood models.
+     */
+    public static class Codec implements ModelCodec<UserNeighborhoodModel> {
+        @Override
+        public void write(UserNeighborhoodModel model, DataOutput out) throws IOException {
+            ModelCodecs.writeSortedKeyIndex(out, model.userDomain);
+            for (Long2DoubleMap nbrs: model.neighborhoods) {
+                ModelCodecs.writeDoubleMap(out, nbrs);
+            }
+        }
+
+        @Override
+        public UserNeighborhoodModel read(DataInput in) throws IOException {
+            SortedKeyIndex users = ModelCodecs.readSortedKeyIndex(in);
+            int n = users.size();
+            ImmutableList.Builder<Long2DoubleMap> neighbors = ImmutableList.builder();
+            for (int i = 0; i < n; i++) {
+                neighbors.add(ModelCodecs.readDoubleMap(in));
+            }
+            return new UserNeighborhoodModel(users, neighbors.build());
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.knn.user;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.longs.*;
+import net.jcip.annotations.NotThreadSafe;
+import org.grouplens.lenskit.transform.threshold.Threshold;
+import org.lenskit.inject.Transient;
+import org.lenskit.util.ProgressLogger;
+import org.lenskit.util.collections.Long2DoubleAccumulator;
+import org.lenskit.util.collections.TopNLong2DoubleAccumulator;
+import org.lenskit.util.collections.UnlimitedLong2DoubleAccumulator;
+import org.lenskit.util.keys.Long2DoubleSortedArrayMap;
+import org.lenskit.util.reflect.ClassQueries;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Provider;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.stream.IntStream;
+
+/**
+ * Build a {@link UserNeighborhoodModel} from a packed user snapshot.  Each user is compared with the users who share
+ * at least one rated item with them (or the {@linkplain CandidateNeighborCount top candidates} among those users),
+ * and the most similar users that pass the similarity threshold are kept.  Users are processed in parallel if the
+ * similarity function is thread-safe.
+ *
+ * @since 3.0
+ */
+@NotThreadSafe
+public class UserNeighborhoodModelProvider implements Provider<UserNeighborhoodModel> {
+    private static final Logger logger = LoggerFactory.getLogger(UserNeighborhoodModelProvider.class);
+
+    private final PackedUserSnapshot snapshot;
+    private final UserSimilarity similarity;
+    private final Threshold threshold;
+    private final int modelSize;
+    private final int candidateCount;
+
+    @Inject
+    public UserNeighborhoodModelProvider(@Transient PackedUserSnapshot snap,
+                                         @Transient UserSimilarity sim,
+                                         @Transient @UserSimilarityThreshold Threshold thresh,
+                                         @UserModelSize int size,
+                                         @CandidateNeighborCount int candidates) {
+        snapshot = snap;
+        similarity = sim;
+        threshold = thresh;
+        modelSize = size;
+        candidateCount = candidates;
+    }
+
+    @Override
+    public UserNeighborhoodModel get() {
+        final int n = snapshot.getUserCount();
+        logger.info("building user neighborhood model for {} users", n);
+        logger.debug("using similarity function {}", similarity);
+
+        ProgressLogger progress = ProgressLogger.create(logger)
+                                                .setCount(n)
+                                                .setLabel("user neighborhood build")
+                                                .setWindow(50)
+                                                .start();
+        Long2DoubleMap[] rows = new Long2DoubleMap[n];
+        ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(() -> new Scratch(n));
+        userStream(IntStream.range(0, n)).forEach(u -> {
+            rows[u] = computeRow(u, scratch.get(), null);
+            progress.advance();
+        });
+        progress.finish();
+        logger.info("built neighborhoods for {} users in {}", n, progress.elapsedTime());
+
+        return new UserNeighborhoodModel(snapshot.getUserIndex(), Arrays.asList(rows));
+    }
+
+    /**
+     * Refresh a model for users whose profiles have changed.  This provider's snapshot must reflect the current data.
+     * The neighborhoods of the changed users, and of users that are not in the old model, are recomputed; every other
+     * user's neighborhood has its similarities to those users replaced with fresh ones.  Users no longer in the
+     * snapshot are dropped.
+     *
+     * When the model is size-limited, a refreshed neighborhood that loses a changed user is not backfilled from the
+     * rest of the user base, so it may be smaller than the one a full rebuild would produce.
+     *
+     * @param model The model to refresh.
+     * @param changedUsers The users whose profiles have changed.
+     * @return The refreshed model.
+     */
+    public UserNeighborhoodModel refresh(UserNeighborhoodModel model, Collection<Long> changedUsers) {
+        final int n = snapshot.getUserCount();
+        LongSet changed = new LongOpenHashSet(changedUsers);
+        LongSortedSet known = model.getUserUniverse();
+        IntArrayList redo = new IntArrayList();
+        for (int u = 0; u < n; u++) {
+            long uid = snapshot.getUserId(u);
+            if (changed.contains(uid) || !known.contains(uid)) {
+                redo.add(u);
+            }
+        }
+        logger.info("refreshing neighborhoods of {} of {} users", redo.size(), n);
+
+        Long2DoubleMap[] rows = new Long2DoubleMap[n];
+        Long2DoubleMap[] freshSims = new Long2DoubleMap[n];
+        ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(() -> new Scratch(n));
+        userStream(Arrays.stream(redo.toIntArray())).forEach(u -> {
+            Long2DoubleMap sims = new Long2DoubleOpenHashMap();
+            rows[u] = computeRow(u, scratch.get(), sims);
+            freshSims[u] = sims;
+        });
+
+        // collect, for each remaining user, the recomputed users that are now similar to them
+        LongSet redoIds = new LongOpenHashSet(redo.size());
+        Long2ObjectMap<Long2DoubleMap> offers = new Long2ObjectOpenHashMap<>();
+        for (int u: redo) {
+            long uid = snapshot.getUserId(u);
+            redoIds.add(uid);
+            for (Long2DoubleMap.Entry e: Long2DoubleMaps.fastIterable(freshSims[u])) {
+                Long2DoubleMap offer = offers.get(e.getLongKey());
+                if (offer == null) {
+                    offer = new Long2DoubleOpenHashMap();
+                    offers.put(e.getLongKey(), offer);
+                }
+                offer.put(uid, e.getDoubleValue());
+            }
+        }
+
+        userStream(IntStream.range(0, n)).filter(v -> rows[v] == null).forEach(v -> {
+            long vid = snapshot.getUserId(v);
+            Long2DoubleAccumulator acc = newAccumulator();
+            for (Long2DoubleMap.Entry e: Long2DoubleMaps.fastIterable(model.getNeighbors(vid))) {
+                long nbr = e.getLongKey();
+                if (!redoIds.contains(nbr) && snapshot.getUserIndex(nbr) >= 0) {
+                    acc.put(nbr, e.getDoubleValue());
+                }
+            }
+            Long2DoubleMap offer = offers.get(vid);
+            if (offer != null) {
+                for (Long2DoubleMap.Entry e: Long2DoubleMaps.fastIterable(offer)) {
+                    double sim = e.getDoubleValue();
+                    if (!similarity.isSymmetric()) {
+                        sim = similarity(v, snapshot.getUserIndex(e.getLongKey()));
+                    }
+                    if (acceptSimilarity(sim)) {
+                        acc.put(e.getLongKey(), sim);
+                    }
+                }
+            }
+            rows[v] = acc.finishMap();
+        });
+
+        return new UserNeighborhoodModel(snapshot.getUserIndex(), Arrays.asList(rows));
+    }
+
+    private IntStream userStream(IntStream users) {
+        if (ClassQueries.isThreadSafe(similarity)) {
+            return users.parallel();
+        } else {
+            logger.warn("similarity {} is not thread-safe, disabling parallel build", similarity);
+            return users;
+        }
+    }
+
+    private Long2DoubleAccumulator newAccumulator() {
+        if (modelSize <= 0) {
+            return new UnlimitedLong2DoubleAccumulator();
+        } else {
+            return new TopNLong2DoubleAccumulator(modelSize);
+        }
+    }
+
+    private boolean acceptSimilarity(double sim) {
+        return !Double.isNaN(sim) && !Double.isInfinite(sim) && threshold.retain(sim);
+    }
+
+    private double similarity(int u, int v) {
+        return similarity.similarity(snapshot.getUserId(u), snapshot.getSimilarityVector(u),
+                                     snapshot.getUserId(v), snapshot.getSimilarityVector(v));
+    }
+
+    /**
+     * Compute a user's neighborhood.
+     * @param u The user's position in the snapshot.
+     * @param scratch The calling thread's scratch space.
+     * @param allSims A map to receive every accepted similarity, or `null`.
+     * @return The user's neighborhood.
+     */
+    private Long2DoubleMap computeRow(int u, Scratch scratch, @Nullable Long2DoubleMap allSims) {
+        int[] counts = scratch.counts;
+        IntArrayList touched = scratch.touched;
+
+        // count co-rated items with every user sharing an item, using the inverted index
+        Long2DoubleSortedArrayMap vec = snapshot.getScoreVector(u);
+        for (int j = 0; j < vec.size(); j++) {
+            int ii = snapshot.getItemIndex(vec.getKeyByIndex(j));
+            for (int p = snapshot.getItemStart(ii), end = snapshot.getItemEnd(ii); p < end; p++) {
+                int v = snapshot.getItemUser(p);
+                if (v != u) {
+                    if (counts[v] == 0) {
+                        touched.add(v);
+                    }
+                    counts[v] += 1;
+                }
+            }
+        }
+
+        int[] candidates = touched.toIntArray();
+        int ncands = candidates.length;
+        if (candidateCount > 0 && ncands > candidateCount) {
+            IntArrays.quickSort(candidates, (a, b) -> Integer.compare(counts[b], counts[a]));
+            ncands = candidateCount;
+        }
+        for (int v: touched) {
+            counts[v] = 0;
+        }
+        touched.clear();
+
+        double[] sims;
+        if (similarity instanceof UserVectorSimilarity) {
+            // compare with all candidates in one pass over the packed similarity vectors
+            sims = ((UserVectorSimilarity) similarity).similarities(snapshot.getSimilarityVector(u),
+                                                                     snapshot.getSimilarityVectors(),
+                                                                     Arrays.copyOf(candidates, ncands));
+        } else {
+            sims = new double[ncands];
+            for (int k = 0; k < ncands; k++) {
+                sims[k] = similarity(u, candidates[k]);
+            }
+        }
+
+        Long2DoubleAccumulator acc = newAccumulator();
+        for (int k = 0; k < ncands; k++) {
+            int v = candidates[k];
+            double sim = sims[k];
+            if (acceptSimilarity(sim)) {
+                long vid = snapshot.getUserId(v);
+                acc.put(vid, sim);
+                if (allSims != null) {
+                    allSims.put(vid, sim);
+                }
+            }
+        }
+        return acc.finishMap();
+    }
+
+    /**
+     * Per-thread scratch space for counting co-rated items.
+     */
+    private static class Scratch {
+        final int[] counts;
+        final IntArrayList touched = new IntArrayList();
+
+        Scratch(int n) {
+            counts = new int[n];
+        }
+    }
+}
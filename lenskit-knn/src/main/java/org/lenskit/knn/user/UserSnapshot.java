@@ -100,6 +100,14 @@ public class UserSnapshot implements Serializable {
         return normedVectors.get(idx);
     }
 
+    /**
+     * Get the index of users in this snapshot.
+     * @return The user index.
+     */
+    SortedKeyIndex getUserIndex() {
+        return users;
+    }
+
     public LongSet getItemUsers(long item) {
         return itemUserSets.get(item);
     }
@@ -81,7 +81,7 @@ public class UserUserItemScorer extends AbstractItemScorer {
         logger.debug("Predicting for {} items for user {} with {} events",
                      items.size(), user, history.size());
 
-        LongSortedSet itemSet = LongUtils.packedSet(items);
+        LongSortedSet itemSet = LongUtils.frozenSet(items);
         Long2ObjectMap<List<Neighbor>> neighborhoods =
                 findNeighbors(user, itemSet);
 
@@ -27,6 +27,9 @@ package org.lenskit.knn.user;
 import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
 import org.lenskit.inject.Shareable;
 import org.lenskit.similarity.VectorSimilarity;
+import org.lenskit.util.math.PackedVectors;
+import org.lenskit.util.parallel.MaybeThreadSafe;
+import org.lenskit.util.reflect.ClassQueries;
 
 import javax.inject.Inject;
 import java.io.Serializable;
@@ -38,7 +41,7 @@ import java.io.Serializable;
  * @since 0.11
  */
 @Shareable
-public class UserVectorSimilarity implements UserSimilarity, Serializable {
+public class UserVectorSimilarity implements UserSimilarity, Serializable, MaybeThreadSafe {
     private static final long serialVersionUID = 1L;
 
     private VectorSimilarity delegate;
@@ -53,6 +56,20 @@ public class UserVectorSimilarity implements UserSimilarity, Serializable {
         return delegate.similarity(v1, v2);
     }
 
+    /**
+     * Compute the similarities between one user and several packed user vectors, using the delegate's
+     * {@linkplain VectorSimilarity#similarities(Long2DoubleMap, PackedVectors, int[]) batch computation}.
+     *
+     * @param v The user vector.
+     * @param vectors The packed vectors to compare with.
+     * @param rows The rows of {@code vectors} to compare with {@code v}.
+     * @return The similarities, parallel to {@code rows}.
+     * @since 3.0
+     */
+    public double[] similarities(Long2DoubleMap v, PackedVectors vectors, int[] rows) {
+        return delegate.similarities(v, vectors, rows);
+    }
+
     @Override
     public boolean isSparse() {
         return delegate.isSparse();
@@ -63,6 +80,11 @@ public class UserVectorSimilarity implements UserSimilarity, Serializable {
         return delegate.isSymmetric();
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return ClassQueries.isThreadSafe(delegate);
+    }
+
     @Override
     public String toString() {
         return "{user similarity: " + delegate.toString() + "}";
@@ -106,4 +106,33 @@ public class SimilaritySumNeighborhoodScorerTest {
         assertThat(results, hasSize(1));
         assertThat(results.get(0).getScore(), closeTo(2.42));
     }
+
+    @Test
+    public void testScorePrefixes() {
+        long[] nbrs = {5, 7, 2};
+        double[] sims = {1.0, 0.92, 0.5};
+
+        Long2DoubleMap scores = new Long2DoubleOpenHashMap();
+        scores.put(2, 3.7);
+        scores.put(5, 1.2);
+        scores.put(7, 7.8);
+
+        int[] lengths = {1, 3, -1, 0};
+        List<List<ItemItemResult>> results = new ArrayList<>();
+        ItemItemScoreAccumulator[] accums = new ItemItemScoreAccumulator[lengths.length];
+        for (int i = 0; i < lengths.length; i++) {
+            List<ItemItemResult> list = new ArrayList<>();
+            results.add(list);
+            accums[i] = ItemItemScoreAccumulator.detailed(list);
+        }
+
+        scorer.scorePrefixes(42, nbrs, sims, scores, lengths, accums);
+        assertThat(results.get(0), hasSize(1));
+        assertThat(results.get(0).get(0).getScore(), closeTo(1.0));
+        assertThat(results.get(0).get(0).getNeighborhoodSize(), equalTo(1));
+        assertThat(results.get(1), hasSize(1));
+        assertThat(results.get(1).get(0).getScore(), closeTo(2.42));
+        assertThat(results.get(2), hasSize(0));
+        assertThat(results.get(3), hasSize(0));
+    }
 }
@@ -0,0 +1,67 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.knn.item.model;
+
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import org.junit.Test;
+import org.lenskit.util.io.CodecObjectOutputStream;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class SimilarityMatrixModelTest {
+    @Test
+    public void testCodecRoundTrip() throws IOException, ClassNotFoundException {
+        Map<Long, Long2DoubleMap> rows = new HashMap<>();
+        Long2DoubleMap r1 = new Long2DoubleOpenHashMap();
+        r1.put(2L, 0.5);
+        r1.put(3L, -0.25);
+        rows.put(1L, r1);
+        Long2DoubleMap r2 = new Long2DoubleOpenHashMap();
+        r2.put(1L, 0.5);
+        rows.put(2L, r2);
+        rows.put(3L, new Long2DoubleOpenHashMap());
+        SimilarityMatrixModel model = new SimilarityMatrixModel(rows);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new CodecObjectOutputStream(bytes)) {
+            out.writeObject(model);
+        }
+        SimilarityMatrixModel read;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            read = (SimilarityMatrixModel) in.readObject();
+        }
+
+        assertThat(read.getItemUniverse(), equalTo(model.getItemUniverse()));
+        for (long item: model.getItemUniverse()) {
+            assertThat(read.getNeighbors(item), equalTo(model.getNeighbors(item)));
+        }
+    }
+}
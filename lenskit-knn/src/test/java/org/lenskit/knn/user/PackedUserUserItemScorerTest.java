@@ -0,0 +1,135 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.knn.user;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.junit.Before;
+import org.junit.Test;
+import org.lenskit.LenskitConfiguration;
+import org.lenskit.LenskitRecommender;
+import org.lenskit.api.ItemScorer;
+import org.lenskit.api.Result;
+import org.lenskit.api.ResultMap;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.dao.file.StaticDataSource;
+import org.lenskit.data.ratings.Rating;
+import org.lenskit.data.ratings.RatingVectorPDAO;
+import org.lenskit.knn.NeighborhoodSize;
+import org.lenskit.transform.normalize.DefaultUserVectorNormalizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class PackedUserUserItemScorerTest {
+    private DataAccessObject dao;
+    private LongSet items;
+
+    @Before
+    public void createData() {
+        Random rng = new Random(42);
+        List<Rating> rs = new ArrayList<>();
+        items = new LongOpenHashSet();
+        for (long u = 1; u <= 40; u++) {
+            for (long i = 100; i < 125; i++) {
+                items.add(i);
+                if (rng.nextDouble() < 0.4) {
+                    // continuous ratings, so no two neighbors tie on similarity
+                    rs.add(Rating.create(u, i, 1 + 4 * rng.nextDouble()));
+                }
+            }
+        }
+        dao = StaticDataSource.fromList(rs).get();
+    }
+
+    private LenskitRecommender build(Class<? extends ItemScorer> scorer, int nnbrs) {
+        LenskitConfiguration config = new LenskitConfiguration();
+        config.bind(ItemScorer.class).to(scorer);
+        config.bind(NeighborFinder.class).to(SnapshotNeighborFinder.class);
+        config.set(NeighborhoodSize.class).to(nnbrs);
+        return LenskitRecommender.build(config, dao);
+    }
+
+    private void assertSameScores(int nnbrs) {
+        try (LenskitRecommender expected = build(UserUserItemScorer.class, nnbrs);
+             LenskitRecommender actual = build(PackedUserUserItemScorer.class, nnbrs)) {
+            assertThat(actual.getItemScorer(), instanceOf(PackedUserUserItemScorer.class));
+            for (long u = 1; u <= 41; u++) {
+                ResultMap exp = expected.getItemScorer().scoreWithDetails(u, items);
+                ResultMap act = actual.getItemScorer().scoreWithDetails(u, items);
+                assertThat(act.keySet(), equalTo(exp.keySet()));
+                for (Result r: exp) {
+                    Result ar = act.get(r.getId());
+                    assertThat(ar.getScore(), closeTo(r.getScore(), 1.0e-6));
+                    UserUserResult uur = ar.as(UserUserResult.class);
+                    assertThat(uur, notNullValue());
+                    assertThat(uur.getNeighborhoodSize(),
+                               equalTo(r.as(UserUserResult.class).getNeighborhoodSize()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesUnpackedScorer() {
+        assertSameScores(5);
+    }
+
+    @Test
+    public void testMatchesUnpackedScorerLargeNeighborhoods() {
+        assertSameScores(100);
+    }
+
+    @Test
+    public void testPackedSnapshot() {
+        try (LenskitRecommender rec = build(PackedUserUserItemScorer.class, 5)) {
+            PackedUserSnapshot packed = rec.get(PackedUserSnapshot.class);
+            UserSnapshot snap = new UserSnapshot.Builder(rec.get(RatingVectorPDAO.class),
+                                                         new DefaultUserVectorNormalizer(),
+                                                         new DefaultUserVectorNormalizer()).get();
+            assertThat(packed.getUserCount(), equalTo(40));
+            for (int i = 0; i < packed.getUserCount(); i++) {
+                long user = packed.getUserId(i);
+                assertThat(packed.getUserIndex(user), equalTo(i));
+                assertThat(packed.getScoreVector(i), equalTo(snap.getUserVector(user)));
+            }
+            for (long item: items) {
+                int ii = packed.getItemIndex(item);
+                LongSet users = new LongOpenHashSet();
+                if (ii >= 0) {
+                    for (int p = packed.getItemStart(ii); p < packed.getItemEnd(ii); p++) {
+                        users.add(packed.getUserId(packed.getItemUser(p)));
+                    }
+                }
+                LongSet expected = snap.getItemUsers(item);
+                assertThat(users, equalTo(expected == null ? new LongOpenHashSet() : expected));
+            }
+        }
+    }
+}
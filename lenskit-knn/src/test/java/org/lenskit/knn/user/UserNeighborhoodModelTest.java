@@ -0,0 +1,192 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.knn.user;
+
+import com.google.common.collect.Lists;
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.grouplens.lenskit.transform.threshold.AbsoluteThreshold;
+import org.junit.Before;
+import org.junit.Test;
+import org.lenskit.LenskitConfiguration;
+import org.lenskit.LenskitRecommender;
+import org.lenskit.api.ItemScorer;
+import org.lenskit.api.Result;
+import org.lenskit.api.ResultMap;
+import org.lenskit.data.dao.DataAccessObject;
+import org.lenskit.data.dao.file.StaticDataSource;
+import org.lenskit.data.ratings.Rating;
+import org.lenskit.data.ratings.StandardRatingVectorPDAO;
+import org.lenskit.similarity.CosineVectorSimilarity;
+import org.lenskit.transform.normalize.DefaultUserVectorNormalizer;
+import org.lenskit.transform.normalize.UserVectorNormalizer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class UserNeighborhoodModelTest {
+    private List<Rating> ratings;
+    private LongSet items;
+
+    @Before
+    public void createData() {
+        Random rng = new Random(42);
+        ratings = new ArrayList<>();
+        items = new LongOpenHashSet();
+        for (long u = 1; u <= 40; u++) {
+            for (long i = 100; i < 125; i++) {
+                items.add(i);
+                if (rng.nextDouble() < 0.4) {
+                    // continuous ratings, so no two neighbors tie on similarity
+                    ratings.add(Rating.create(u, i, 1 + 4 * rng.nextDouble()));
+                }
+            }
+        }
+    }
+
+    private static UserNeighborhoodModelProvider provider(List<Rating> rs, int size, int candidates) {
+        DataAccessObject dao = StaticDataSource.fromList(rs).get();
+        UserVectorNormalizer norm = new DefaultUserVectorNormalizer();
+        PackedUserSnapshot snap = new PackedUserSnapshot.Builder(new StandardRatingVectorPDAO(dao), norm, norm).get();
+        return new UserNeighborhoodModelProvider(snap,
+                                                 new UserVectorSimilarity(new CosineVectorSimilarity()),
+                                                 new AbsoluteThreshold(0),
+                                                 size, candidates);
+    }
+
+    private static void assertSameModel(UserNeighborhoodModel actual, UserNeighborhoodModel expected) {
+        assertThat(actual.getUserUniverse(), equalTo(expected.getUserUniverse()));
+        for (long user: expected.getUserUniverse()) {
+            Long2DoubleMap exp = expected.getNeighbors(user);
+            Long2DoubleMap act = actual.getNeighbors(user);
+            assertThat(act.keySet(), equalTo(exp.keySet()));
+            for (Long2DoubleMap.Entry e: exp.long2DoubleEntrySet()) {
+                assertThat(act.get(e.getLongKey()), closeTo(e.getDoubleValue(), 1.0e-10));
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesSnapshotNeighborFinder() {
+        DataAccessObject dao = StaticDataSource.fromList(ratings).get();
+        LenskitConfiguration base = new LenskitConfiguration();
+        base.bind(ItemScorer.class).to(UserUserItemScorer.class);
+        base.set(UserModelSize.class).to(0);
+        LenskitConfiguration snapshotConfig = new LenskitConfiguration(base);
+        snapshotConfig.bind(NeighborFinder.class).to(SnapshotNeighborFinder.class);
+        LenskitConfiguration modelConfig = new LenskitConfiguration(base);
+        modelConfig.bind(NeighborFinder.class).to(PrecomputedNeighborFinder.class);
+
+        try (LenskitRecommender expected = LenskitRecommender.build(snapshotConfig, dao);
+             LenskitRecommender actual = LenskitRecommender.build(modelConfig, dao)) {
+            assertThat(actual.get(UserNeighborhoodModel.class), notNullValue());
+            for (long u = 1; u <= 40; u++) {
+                ResultMap exp = expected.getItemScorer().scoreWithDetails(u, items);
+                ResultMap act = actual.getItemScorer().scoreWithDetails(u, items);
+                assertThat(act.keySet(), equalTo(exp.keySet()));
+                for (Result r: exp) {
+                    assertThat(act.get(r.getId()).getScore(), closeTo(r.getScore(), 1.0e-6));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testModelSizeKeepsMostSimilar() {
+        UserNeighborhoodModel full = provider(ratings, 0, 0).get();
+        UserNeighborhoodModel model = provider(ratings, 3, 0).get();
+        assertThat(model.getUserUniverse(), equalTo(full.getUserUniverse()));
+        for (long user: full.getUserUniverse()) {
+            Long2DoubleMap nbrs = model.getNeighbors(user);
+            Long2DoubleMap all = full.getNeighbors(user);
+            assertThat(nbrs.size(), equalTo(Math.min(3, all.size())));
+            List<Double> sims = new ArrayList<>(all.values());
+            Collections.sort(sims, Collections.reverseOrder());
+            for (Long2DoubleMap.Entry e: nbrs.long2DoubleEntrySet()) {
+                assertThat(all.get(e.getLongKey()), equalTo(e.getDoubleValue()));
+                assertThat(e.getDoubleValue(), greaterThanOrEqualTo(sims.get(nbrs.size() - 1)));
+            }
+        }
+    }
+
+    @Test
+    public void testCandidateCountBoundsComparisons() {
+        UserNeighborhoodModel full = provider(ratings, 0, 0).get();
+        UserNeighborhoodModel model = provider(ratings, 0, 2).get();
+        for (long user: full.getUserUniverse()) {
+            Long2DoubleMap nbrs = model.getNeighbors(user);
+            assertThat(nbrs.size(), lessThanOrEqualTo(2));
+            for (Long2DoubleMap.Entry e: nbrs.long2DoubleEntrySet()) {
+                assertThat(full.getNeighbors(user).get(e.getLongKey()), equalTo(e.getDoubleValue()));
+            }
+        }
+    }
+
+    @Test
+    public void testRefreshMatchesRebuild() {
+        UserNeighborhoodModel old = provider(ratings, 0, 0).get();
+
+        Random rng = new Random(7);
+        List<Rating> updated = new ArrayList<>();
+        for (Rating r: ratings) {
+            if (r.getUserId() == 3) {
+                updated.add(Rating.create(3, r.getItemId(), 1 + 4 * rng.nextDouble()));
+            } else if (r.getUserId() != 5) {
+                updated.add(r);
+            }
+        }
+        // user 41 is new, and user 5 has left
+        updated.add(Rating.create(41, 100, 4.0));
+        updated.add(Rating.create(41, 101, 2.5));
+
+        UserNeighborhoodModel refreshed = provider(updated, 0, 0).refresh(old, Lists.newArrayList(3L));
+        assertSameModel(refreshed, provider(updated, 0, 0).get());
+        assertThat(refreshed.getUserUniverse(), hasItem(41L));
+        assertThat(refreshed.getUserUniverse(), not(hasItem(5L)));
+    }
+
+    @Test
+    public void testCodecRoundTrip() throws Exception {
+        UserNeighborhoodModel model = provider(ratings, 5, 0).get();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        UserNeighborhoodModel.Codec codec = new UserNeighborhoodModel.Codec();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            codec.write(model, out);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        UserNeighborhoodModel read = codec.read(in);
+        assertSameModel(read, model);
+    }
+}
@@ -94,11 +94,22 @@ public class BiasedMFItemScorer extends AbstractItemScorer {
         return model;
     }
 
+    /**
+     * Compute the baseline (bias) scores for a user's items.
+     *
+     * @param user The user ID.
+     * @param items The items.
+     * @return The combined user-item bias for each item.
+     */
+    protected Long2DoubleMap computeBaselines(long user, @Nonnull Collection<Long> items) {
+        Long2DoubleMap baselines = biasModel.getItemBiases(LongUtils.frozenSet(items));
+        return Vectors.addScalar(baselines, biasModel.getIntercept() + biasModel.getUserBias(user));
+    }
+
     @Nonnull
     @Override
     public ResultMap scoreWithDetails(long user, @Nonnull Collection<Long> items) {
-        Long2DoubleMap baselines = biasModel.getItemBiases(LongUtils.packedSet(items));
-        baselines = Vectors.addScalar(baselines, biasModel.getIntercept() + biasModel.getUserBias(user));
+        Long2DoubleMap baselines = computeBaselines(user, items);
 
         RealVector uvec = getUserPreferenceVector(user);
         if (uvec == null) {
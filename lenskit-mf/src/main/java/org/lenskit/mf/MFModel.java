@@ -25,10 +25,14 @@
 package org.lenskit.mf;
 
 import com.google.common.base.Preconditions;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.linear.MatrixUtils;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.linear.RealVector;
 import org.lenskit.inject.Shareable;
+import org.lenskit.util.io.EncodedBy;
+import org.lenskit.util.io.ModelCodec;
+import org.lenskit.util.io.ModelCodecs;
 import org.lenskit.util.keys.KeyIndex;
 import org.lenskit.util.math.Vectors;
 
@@ -42,6 +46,7 @@ import java.io.*;
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
  */
 @Shareable
+@EncodedBy(MFModel.Codec.class)
 public class MFModel implements Serializable {
     private static final long serialVersionUID = 2L;
 
@@ -252,4 +257,54 @@ public class MFModel implements Serializable {
           .append(")");
         return sb.toString();
     }
+
+    /**
+     * Binary codec for matrix factorization models.  It only applies to {@link MFModel} itself;
+     * subclasses with additional state use default serialization.
+     */
+    public static class Codec implements ModelCodec<MFModel> {
+        @Override
+        public void write(MFModel model, DataOutput out) throws IOException {
+            out.writeInt(model.featureCount);
+            ModelCodecs.writeKeyIndex(out, model.userIndex);
+            ModelCodecs.writeKeyIndex(out, model.itemIndex);
+            writeMatrix(out, model.userMatrix);
+            writeMatrix(out, model.itemMatrix);
+        }
+
+        @Override
+        public MFModel read(DataInput in) throws IOException {
+            int nfeatures = in.readInt();
+            KeyIndex users = ModelCodecs.readKeyIndex(in);
+            KeyIndex items = ModelCodecs.readKeyIndex(in);
+            RealMatrix umat = readMatrix(in, users.size(), nfeatures);
+            RealMatrix imat = readMatrix(in, items.size(), nfeatures);
+            return new MFModel(umat, imat, users, items);
+        }
+
+        private static void writeMatrix(DataOutput out, RealMatrix mat) throws IOException {
+            int nrows = mat.getRowDimension();
+            int ncols = mat.getColumnDimension();
+            double[] data = new double[nrows * ncols];
+            for (int i = 0; i < nrows; i++) {
+                for (int j = 0; j < ncols; j++) {
+                    data[i * ncols + j] = mat.getEntry(i, j);
+                }
+            }
+            ModelCodecs.writeDoubles(out, data, data.length);
+        }
+
+        private static RealMatrix readMatrix(DataInput in, int nrows, int ncols) throws IOException {
+            double[] data = ModelCodecs.readDoubles(in);
+            if (data.length != nrows * ncols) {
+                throw new IOException("expected " + nrows * ncols + " matrix entries, found " + data.length);
+            }
+            double[][] rows = new double[nrows][];
+            for (int i = 0; i < nrows; i++) {
+                rows[i] = new double[ncols];
+                System.arraycopy(data, i * ncols, rows[i], 0, ncols);
+            }
+            return new Array2DRowRealMatrix(rows, false);
+        }
+    }
 }
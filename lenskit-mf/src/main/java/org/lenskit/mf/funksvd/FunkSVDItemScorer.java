@@ -24,8 +24,13 @@
  */
 package org.lenskit.mf.funksvd;
 
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongIterators;
 import org.apache.commons.math3.linear.RealVector;
 import org.grouplens.grapht.annotation.DefaultImplementation;
+import org.lenskit.basic.SweepItemScorer;
 import org.lenskit.bias.BiasModel;
 import org.lenskit.data.ratings.PreferenceDomain;
 import org.lenskit.mf.BiasedMFItemScorer;
@@ -34,13 +39,22 @@ import org.lenskit.mf.MFModel;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Do recommendations and predictions based on SVD matrix factorization.  This extends the {@link BiasedMFItemScorer}
  * to default to using a FunkSVD model, and to clamp predicted ratings to the range of valid ratings (if a preference
  * domain is configured).
+ *
+ * This scorer can score with several {@linkplain FeatureCount feature counts} at once, using the leading features
+ * of its model; see {@link #scoreSweep(long, Collection, int[])}.  Since the result only approximates models trained
+ * with each feature count, the sweep is {@linkplain #isSweepExact() not exact}.
  */
-public class FunkSVDItemScorer extends BiasedMFItemScorer {
+public class FunkSVDItemScorer extends BiasedMFItemScorer implements SweepItemScorer {
     private final PreferenceDomain domain;
 
     /**
@@ -74,6 +88,71 @@ public class FunkSVDItemScorer extends BiasedMFItemScorer {
         }
     }
 
+    @Nonnull
+    @Override
+    public Class<? extends Annotation> getSweepParameter() {
+        return FeatureCount.class;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Sweeps are approximate, as the trailing features of a model trained with more features differ slightly
+     * from those of a model trained with fewer.
+     *
+     * @return `false`.
+     */
+    @Override
+    public boolean isSweepExact() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Each item's score is accumulated one feature at a time, and recorded after the first *k* features for each
+     * requested count *k*.  Since FunkSVD trains features in order, this is the score from a model with *k*
+     * features, except that training the model with more features uses a slightly different estimate of the
+     * trailing features.  Counts that are non-positive or larger than the model's feature count use all features.
+     */
+    @Nonnull
+    @Override
+    public List<Map<Long, Double>> scoreSweep(long user, @Nonnull Collection<Long> items, int[] counts) {
+        List<Map<Long, Double>> results = new ArrayList<>(counts.length);
+        Long2DoubleMap[] maps = new Long2DoubleMap[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            maps[i] = new Long2DoubleOpenHashMap(items.size());
+            results.add(maps[i]);
+        }
+
+        RealVector uvec = getUserPreferenceVector(user);
+        if (uvec == null) {
+            return results;
+        }
+        Long2DoubleMap baselines = computeBaselines(user, items);
+        int nf = uvec.getDimension();
+        double[] scores = new double[nf + 1];
+
+        LongIterator iter = LongIterators.asLongIterator(items.iterator());
+        while (iter.hasNext()) {
+            long item = iter.nextLong();
+            RealVector ivec = getModel().getItemVector(item);
+            if (ivec == null) {
+                continue;
+            }
+            scores[0] = baselines.get(item);
+            for (int f = 0; f < nf; f++) {
+                double s = scores[f] + uvec.getEntry(f) * ivec.getEntry(f);
+                scores[f + 1] = domain != null ? domain.clampValue(s) : s;
+            }
+            for (int i = 0; i < counts.length; i++) {
+                int k = counts[i] > 0 ? Math.min(counts[i], nf) : nf;
+                maps[i].put(item, scores[k]);
+            }
+        }
+        return results;
+    }
+
     @Override
     public FunkSVDModel getModel() {
         return (FunkSVDModel) super.getModel();
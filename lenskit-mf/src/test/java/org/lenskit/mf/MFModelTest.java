@@ -0,0 +1,67 @@
+/*
+ * LensKit, an open-source toolkit for recommender systems.
+ * Copyright 2014-2017 LensKit contributors (see CONTRIBUTORS.md)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.lenskit.mf;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.junit.Test;
+import org.lenskit.util.io.CodecObjectOutputStream;
+import org.lenskit.util.keys.FrozenHashKeyIndex;
+import org.lenskit.util.keys.KeyIndex;
+import org.lenskit.util.keys.SortedKeyIndex;
+
+import java.io.*;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class MFModelTest {
+    @Test
+    public void testCodecRoundTrip() throws IOException, ClassNotFoundException {
+        KeyIndex users = FrozenHashKeyIndex.create(LongArrayList.wrap(new long[]{42, 7, 19}));
+        KeyIndex items = SortedKeyIndex.create(1, 2);
+        RealMatrix umat = MatrixUtils.createRealMatrix(new double[][]{{0.1, 0.2}, {0.3, -0.4}, {1.5, 0}});
+        RealMatrix imat = MatrixUtils.createRealMatrix(new double[][]{{-1, 2}, {0.25, 0.75}});
+        MFModel model = new MFModel(umat, imat, users, items);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new CodecObjectOutputStream(bytes)) {
+            out.writeObject(model);
+        }
+        MFModel read;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            read = (MFModel) in.readObject();
+        }
+
+        assertThat(read.getFeatureCount(), equalTo(2));
+        assertThat(read.getUserIndex().getKeyList(), equalTo(users.getKeyList()));
+        assertThat(read.getItemIndex().getKeyList(), equalTo(items.getKeyList()));
+        assertThat(read.getUserMatrix(), equalTo(umat));
+        assertThat(read.getItemMatrix(), equalTo(imat));
+        assertThat(read.getUserFeature(7, 1), equalTo(-0.4));
+        assertThat(read.getItemFeature(2, 0), equalTo(0.25));
+    }
+}
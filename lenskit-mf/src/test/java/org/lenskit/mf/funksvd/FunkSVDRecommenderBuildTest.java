@@ -126,4 +126,14 @@ public class FunkSVDRecommenderBuildTest {
                        sameInstance(rec2.get(FunkSVDModel.class)));
         }
     }
+
+    @Test
+    public void testSweepIsApproximate() throws RecommenderBuildException {
+        LenskitRecommenderEngine engine = makeEngine();
+        try (LenskitRecommender rec = engine.createRecommender(dao)) {
+            FunkSVDItemScorer scorer = (FunkSVDItemScorer) rec.getItemScorer();
+            assertThat(scorer.isSweepSupported(), equalTo(true));
+            assertThat(scorer.isSweepExact(), equalTo(false));
+        }
+    }
 }
@@ -65,7 +65,7 @@ public class KnownRatingRatingPredictor extends AbstractRatingPredictor {
         List<Rating> ratings = dao.query(Rating.class)
                                   .withAttribute(CommonAttributes.USER_ID, user)
                                   .get();
-        LongSortedSet wantedItems = LongUtils.packedSet(items);
+        LongSortedSet wantedItems = LongUtils.frozenSet(items);
         List<Result> results = new ArrayList<>();
         for (Rating r: ratings) {
             long item = r.getItemId();
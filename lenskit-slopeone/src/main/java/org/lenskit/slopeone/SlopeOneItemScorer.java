@@ -24,9 +24,6 @@
  */
 package org.lenskit.slopeone;
 
-import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
-import it.unimi.dsi.fastutil.longs.LongIterator;
-import it.unimi.dsi.fastutil.longs.LongIterators;
 import org.lenskit.api.ItemScorer;
 import org.lenskit.api.Result;
 import org.lenskit.api.ResultMap;
@@ -34,7 +31,9 @@ import org.lenskit.basic.AbstractItemScorer;
 import org.lenskit.data.ratings.PreferenceDomain;
 import org.lenskit.data.ratings.RatingVectorPDAO;
 import org.lenskit.results.Results;
-import org.lenskit.util.math.Vectors;
+import org.lenskit.util.collections.LongUtils;
+import org.lenskit.util.keys.Long2DoubleSortedArrayMap;
+import org.lenskit.util.keys.SortedKeyIndex;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -44,7 +43,8 @@ import java.util.Collection;
 import java.util.List;
 
 /**
- * An {@link ItemScorer} that implements the Slope One algorithm.
+ * An {@link ItemScorer} that implements the Slope One algorithm.  Each model row is merge-joined
+ * against the user's sorted ratings, rather than looking up each item pair separately.
  */
 public class SlopeOneItemScorer extends AbstractItemScorer {
     protected final RatingVectorPDAO dao;
@@ -63,31 +63,36 @@ public class SlopeOneItemScorer extends AbstractItemScorer {
     @Nonnull
     @Override
     public ResultMap scoreWithDetails(long user, @Nonnull Collection<Long> items) {
-        Long2DoubleMap ratings = dao.userRatingVector(user);
+        Long2DoubleSortedArrayMap ratings = Long2DoubleSortedArrayMap.create(dao.userRatingVector(user));
+        SortedKeyIndex targets = SortedKeyIndex.fromCollection(LongUtils.setDifference(LongUtils.frozenSet(items),
+                                                                                       ratings.keySet()));
+        final double[] totals = new double[targets.size()];
+        final int[] counts = new int[targets.size()];
 
+        model.visitPairs(targets, ratings, (t, dev, n, r) -> {
+            totals[t] += dev + r;
+            counts[t] += 1;
+        });
+
+        return makeResults(targets, totals, counts);
+    }
+
+    /**
+     * Make results from accumulated prediction totals.
+     * @param targets The target items.
+     * @param totals The prediction totals for each target.
+     * @param counts The prediction weight for each target.
+     * @return The result map.
+     */
+    ResultMap makeResults(SortedKeyIndex targets, double[] totals, int[] counts) {
         List<Result> results = new ArrayList<>();
-        LongIterator iter = LongIterators.asLongIterator(items.iterator());
-        while (iter.hasNext()) {
-            final long predicteeItem = iter.nextLong();
-            if (!ratings.containsKey(predicteeItem)) {
-                double total = 0;
-                int nitems = 0;
-                for (Long2DoubleMap.Entry e: Vectors.fastEntries(ratings)) {
-                    long currentItem = e.getLongKey();
-                    int nusers = model.getCoratings(predicteeItem, currentItem);
-                    if (nusers != 0) {
-                        double currentDev = model.getDeviation(predicteeItem, currentItem);
-                        total += currentDev + e.getDoubleValue();
-                        nitems++;
-                    }
-                }
-                if (nitems != 0) {
-                    double predValue = total / nitems;
-                    if (domain != null) {
-                        predValue = domain.clampValue(predValue);
-                    }
-                    results.add(Results.create(predicteeItem, predValue));
+        for (int i = targets.getLowerBound(); i < targets.getUpperBound(); i++) {
+            if (counts[i] != 0) {
+                double predValue = totals[i] / counts[i];
+                if (domain != null) {
+                    predValue = domain.clampValue(predValue);
                 }
+                results.add(Results.create(targets.getKey(i), predValue));
             }
         }
         return Results.newResultMap(results);
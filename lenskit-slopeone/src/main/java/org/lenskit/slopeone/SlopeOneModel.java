@@ -26,11 +26,20 @@ package org.lenskit.slopeone;
 
 import org.grouplens.grapht.annotation.DefaultProvider;
 import org.lenskit.inject.Shareable;
+import org.lenskit.util.io.EncodedBy;
+import org.lenskit.util.io.ModelCodec;
+import org.lenskit.util.io.ModelCodecs;
 import org.lenskit.util.keys.KeyedObject;
 import org.lenskit.util.keys.KeyedObjectMap;
+import org.lenskit.util.keys.Long2DoubleSortedArrayMap;
 import org.lenskit.util.keys.SortedKeyIndex;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A model for a {@link SlopeOneItemScorer} or {@link WeightedSlopeOneItemScorer}.
@@ -38,8 +47,14 @@ import java.io.Serializable;
  */
 @DefaultProvider(SlopeOneModelProvider.class)
 @Shareable
+@EncodedBy(SlopeOneModel.Codec.class)
 public class SlopeOneModel implements Serializable {
-    private static final long serialVersionUID = 2L;
+    private static final long serialVersionUID = 3L;
+
+    /**
+     * Ratio of index sizes above which joins binary-search the longer index instead of merging.
+     */
+    private static final int GALLOP_RATIO = 8;
 
     private final KeyedObjectMap<ModelRow> matrix;
 
@@ -87,21 +102,149 @@ public class SlopeOneModel implements Serializable {
         }
     }
 
-    static class ModelRow implements Serializable, KeyedObject {
-        private static final long serialVersionUID = 1L;
+    /**
+     * Visit the co-rated pairs between a set of target items and a user's ratings.  Rather than looking
+     * up each pair, this joins each relevant row of the model against the sorted target or rating keys:
+     * rows of similar length are merged, and when one side is much longer than the other, the shorter
+     * side's keys are binary-searched in the longer one, so a long row is not scanned for a few keys.
+     * Pairs that are not stored in the model, or that are stored with no co-rating users or an undefined
+     * deviation, are not visited.
+     *
+     * @param targets The target items.  These must not overlap the rated items.
+     * @param ratings The user's ratings.
+     * @param visitor The visitor to receive co-rated pairs.
+     */
+    void visitPairs(SortedKeyIndex targets, Long2DoubleSortedArrayMap ratings, PairVisitor visitor) {
+        final SortedKeyIndex rated = ratings.keySet().getIndex();
+        final int rlb = rated.getLowerBound();
+        final int tlb = targets.getLowerBound();
+        final int tub = targets.getUpperBound();
 
-        private final long item;
-        private final SortedKeyIndex items;
-        private final double[] deviations;
-        private final int[] coratings;
+        // rows for targets hold deviations from target to later rated items
+        for (int ti = tlb; ti < tub; ti++) {
+            ModelRow row = matrix.get(targets.getKey(ti));
+            if (row == null) {
+                continue;
+            }
+            final int target = ti;
+            join(row.items, rated, (ri, vi) -> {
+                int n = row.getCoratingsAt(ri);
+                double dev = row.getDeviationAt(ri);
+                if (n > 0 && !Double.isNaN(dev)) {
+                    visitor.visit(target, dev, n, ratings.getValueByIndex(vi - rlb));
+                }
+            });
+        }
 
-        ModelRow(long i, SortedKeyIndex is, double[] ds, int[] crs) {
-            assert ds.length == is.size();
-            assert crs.length == is.size();
+        // rows for rated items hold deviations from rated item to later targets
+        for (int vi = 0; vi < ratings.size(); vi++) {
+            ModelRow row = matrix.get(ratings.getKeyByIndex(vi));
+            if (row == null) {
+                continue;
+            }
+            final double rating = ratings.getValueByIndex(vi);
+            join(row.items, targets, (ri, ti) -> {
+                int n = row.getCoratingsAt(ri);
+                double dev = row.getDeviationAt(ri);
+                if (n > 0 && !Double.isNaN(dev)) {
+                    visitor.visit(ti, -dev, n, rating);
+                }
+            });
+        }
+    }
+
+    /**
+     * Find the keys two indexes have in common.
+     * @param left The first index.
+     * @param right The second index.
+     * @param consumer Receives the positions of each common key in {@code left} and {@code right}.
+     */
+    private static void join(SortedKeyIndex left, SortedKeyIndex right, IndexPairConsumer consumer) {
+        final int ln = left.size();
+        final int rn = right.size();
+        if ((long) rn * GALLOP_RATIO < ln) {
+            for (int j = right.getLowerBound(); j < right.getUpperBound(); j++) {
+                int i = left.tryGetIndex(right.getKey(j));
+                if (i >= 0) {
+                    consumer.accept(i, j);
+                }
+            }
+        } else if ((long) ln * GALLOP_RATIO < rn) {
+            for (int i = left.getLowerBound(); i < left.getUpperBound(); i++) {
+                int j = right.tryGetIndex(left.getKey(i));
+                if (j >= 0) {
+                    consumer.accept(i, j);
+                }
+            }
+        } else {
+            int i = left.getLowerBound(), j = right.getLowerBound();
+            final int lub = left.getUpperBound(), rub = right.getUpperBound();
+            while (i < lub && j < rub) {
+                long lk = left.getKey(i);
+                long rk = right.getKey(j);
+                if (lk < rk) {
+                    i++;
+                } else if (lk > rk) {
+                    j++;
+                } else {
+                    consumer.accept(i, j);
+                    i++;
+                    j++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Receives pairs of positions from {@link #join(SortedKeyIndex, SortedKeyIndex, IndexPairConsumer)}.
+     */
+    private interface IndexPairConsumer {
+        void accept(int left, int right);
+    }
+
+    /**
+     * Receives co-rated pairs from {@link #visitPairs(SortedKeyIndex, Long2DoubleSortedArrayMap, PairVisitor)}.
+     */
+    interface PairVisitor {
+        /**
+         * Visit a pair.
+         * @param target The index of the target item in the target key index.
+         * @param deviation The deviation from the target item to the rated item.
+         * @param coratings The number of users who rated both items.
+         * @param rating The user's rating of the rated item.
+         */
+        void visit(int target, double deviation, int coratings, double rating);
+    }
+
+    /**
+     * A row of the model, storing deviations from one item to the items after it.
+     */
+    abstract static class ModelRow implements Serializable, KeyedObject {
+        private static final long serialVersionUID = 2L;
+
+        final long item;
+        final SortedKeyIndex items;
+
+        ModelRow(long i, SortedKeyIndex is) {
             item = i;
             items = is;
-            deviations = ds;
-            coratings = crs;
+        }
+
+        /**
+         * Create a model row.
+         * @param i The row item.
+         * @param is The index of items after the row item.
+         * @param ds The deviations.
+         * @param crs The co-rating counts.
+         * @param compact Whether to store the row in compact form.
+         * @return The model row.
+         */
+        static ModelRow create(long i, SortedKeyIndex is, double[] ds, int[] crs, boolean compact) {
+            if (compact) {
+                return new CompactRow(i, is, ds, crs);
+            } else {
+                return new FullRow(i, is, ds, crs);
+            }
         }
 
         @Override
@@ -109,10 +252,25 @@ public class SlopeOneModel implements Serializable {
             return item;
         }
 
+        int size() {
+            return items.size();
+        }
+
+        abstract double getDeviationAt(int idx);
+
+        abstract int getCoratingsAt(int idx);
+
+        /**
+         * Write this row's deviations and counts in its own storage format.
+         * @param out The output.
+         * @throws IOException if there is an I/O error.
+         */
+        abstract void writeData(DataOutput out) throws IOException;
+
         double getDeviation(long item) {
             int idx = items.tryGetIndex(item);
             if (idx >= 0) {
-                return deviations[idx];
+                return getDeviationAt(idx);
             } else {
                 return Double.NaN;
             }
@@ -121,10 +279,173 @@ public class SlopeOneModel implements Serializable {
         int getCoratings(long item) {
             int idx = items.tryGetIndex(item);
             if (idx >= 0) {
-                return coratings[idx];
+                return getCoratingsAt(idx);
             } else {
                 return 0;
             }
         }
     }
+
+    /**
+     * A model row storing double-precision deviations and integer counts.
+     */
+    static class FullRow extends ModelRow {
+        private static final long serialVersionUID = 1L;
+
+        private final double[] deviations;
+        private final int[] coratings;
+
+        FullRow(long i, SortedKeyIndex is, double[] ds, int[] crs) {
+            super(i, is);
+            assert ds.length == is.size();
+            assert crs.length == is.size();
+            deviations = ds;
+            coratings = crs;
+        }
+
+        @Override
+        double getDeviationAt(int idx) {
+            return deviations[idx];
+        }
+
+        @Override
+        int getCoratingsAt(int idx) {
+            return coratings[idx];
+        }
+
+        @Override
+        void writeData(DataOutput out) throws IOException {
+            ModelCodecs.writeDoubles(out, deviations, deviations.length);
+            ModelCodecs.writeInts(out, coratings, coratings.length);
+        }
+
+        static FullRow readData(long i, SortedKeyIndex is, DataInput in) throws IOException {
+            double[] ds = ModelCodecs.readDoubles(in);
+            int[] crs = ModelCodecs.readInts(in);
+            if (ds.length != is.size() || crs.length != is.size()) {
+                throw new IOException("inconsistent slope-one row for item " + i);
+            }
+            return new FullRow(i, is, ds, crs);
+        }
+    }
+
+    /**
+     * A model row storing single-precision deviations, and counts packed into the fewest bytes that
+     * hold the row's largest count.
+     */
+    static class CompactRow extends ModelRow {
+        private static final long serialVersionUID = 1L;
+
+        private final float[] deviations;
+        private final int countWidth;
+        private final byte[] coratings;
+
+        CompactRow(long i, SortedKeyIndex is, double[] ds, int[] crs) {
+            super(i, is);
+            int n = is.size();
+            assert ds.length == n;
+            assert crs.length == n;
+            deviations = new float[n];
+            int max = 0;
+            for (int j = 0; j < n; j++) {
+                deviations[j] = (float) ds[j];
+                max = Math.max(max, crs[j]);
+            }
+            countWidth = byteWidth(max);
+            coratings = new byte[n * countWidth];
+            for (int j = 0; j < n; j++) {
+                int v = crs[j];
+                for (int b = countWidth - 1; b >= 0; b--) {
+                    coratings[j * countWidth + b] = (byte) v;
+                    v >>>= 8;
+                }
+            }
+        }
+
+        private CompactRow(long i, SortedKeyIndex is, float[] ds, int width, byte[] crs) {
+            super(i, is);
+            deviations = ds;
+            countWidth = width;
+            coratings = crs;
+        }
+
+        private static int byteWidth(int max) {
+            if (max < (1 << 8)) {
+                return 1;
+            } else if (max < (1 << 16)) {
+                return 2;
+            } else if (max < (1 << 24)) {
+                return 3;
+            } else {
+                return 4;
+            }
+        }
+
+        @Override
+        double getDeviationAt(int idx) {
+            return deviations[idx];
+        }
+
+        @Override
+        int getCoratingsAt(int idx) {
+            int v = 0;
+            int base = idx * countWidth;
+            for (int b = 0; b < countWidth; b++) {
+                v = (v << 8) | (coratings[base + b] & 0xFF);
+            }
+            return v;
+        }
+
+        @Override
+        void writeData(DataOutput out) throws IOException {
+            ModelCodecs.writeFloats(out, deviations, deviations.length);
+            out.writeByte(countWidth);
+            out.writeInt(coratings.length);
+            out.write(coratings);
+        }
+
+        static CompactRow readData(long i, SortedKeyIndex is, DataInput in) throws IOException {
+            float[] ds = ModelCodecs.readFloats(in);
+            int width = in.readByte();
+            byte[] crs = new byte[in.readInt()];
+            in.readFully(crs);
+            if (ds.length != is.size() || width < 1 || width > 4 || crs.length != is.size() * width) {
+                throw new IOException("inconsistent slope-one row for item " + i);
+            }
+            return new CompactRow(i, is, ds, width, crs);
+        }
+    }
+
+    /**
+     * Binary codec for slope-one models.
+     */
+    public static class Codec implements ModelCodec<SlopeOneModel> {
+        @Override
+        public void write(SlopeOneModel model, DataOutput out) throws IOException {
+            out.writeInt(model.matrix.size());
+            for (ModelRow row: model.matrix) {
+                out.writeLong(row.item);
+                out.writeBoolean(row instanceof CompactRow);
+                ModelCodecs.writeSortedKeyIndex(out, row.items);
+                row.writeData(out);
+            }
+        }
+
+        @Override
+        public SlopeOneModel read(DataInput in) throws IOException {
+            int n = in.readInt();
+            List<ModelRow> rows = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                long item = in.readLong();
+                boolean compact = in.readBoolean();
+                SortedKeyIndex items = ModelCodecs.readSortedKeyIndex(in);
+                if (compact) {
+                    rows.add(CompactRow.readData(item, items, in));
+                } else {
+                    rows.add(FullRow.readData(item, items, in));
+                }
+            }
+            return new SlopeOneModel(KeyedObjectMap.create(rows));
+        }
+    }
 }
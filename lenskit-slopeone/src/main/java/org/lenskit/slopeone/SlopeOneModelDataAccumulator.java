@@ -116,7 +116,7 @@ public class SlopeOneModelDataAccumulator {
                 counts[i] = coratings;
             }
 
-            builder.add(new SlopeOneModel.ModelRow(e.getKey(), idx, deviations, counts));
+            builder.add(new SlopeOneModel.FullRow(e.getKey(), idx, deviations, counts));
         }
 
         workMatrix = null;
@@ -24,32 +24,63 @@
  */
 package org.lenskit.slopeone;
 
+import it.unimi.dsi.fastutil.ints.IntArrays;
 import it.unimi.dsi.fastutil.longs.Long2DoubleSortedMap;
+import it.unimi.dsi.fastutil.longs.LongBidirectionalIterator;
 import it.unimi.dsi.fastutil.longs.LongIterator;
 import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
 import org.lenskit.inject.Transient;
 import org.lenskit.knn.item.model.ItemItemBuildContext;
+import org.lenskit.util.ProgressLogger;
+import org.lenskit.util.keys.KeyedObjectMap;
+import org.lenskit.util.keys.SortedKeyIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
+import java.util.Arrays;
+import java.util.stream.IntStream;
 
 /**
  * Pre-computes the deviations and number of mutual rating users for every pair
  * of items and stores the results in a {@code DeviationMatrix} and
  * {@code CoratingMatrix}. These matrices are later used by a
  * {@code SlopeOneItemScorer}.
+ *
+ * The model is built in parallel, one row (first item of each pair) at a time.  Each row is computed
+ * by scanning the users who rated its item and the items those users rated after it, so only co-rated
+ * pairs are visited.  Users are scanned in increasing order, so deviation sums are accumulated in the
+ * same order regardless of thread scheduling and match the serial {@link SlopeOneModelDataAccumulator}.
+ *
+ * Pairs with fewer than {@link MinCoratings} co-rating users are pruned from the model, and rows are
+ * stored in reduced precision if {@link CompactDeviations} is set.
  */
 public class SlopeOneModelProvider implements Provider<SlopeOneModel> {
-    private final SlopeOneModelDataAccumulator accumulator;
+    private static final Logger logger = LoggerFactory.getLogger(SlopeOneModelProvider.class);
+
+    private final double damping;
+    private final int minCoratings;
+    private final boolean compact;
 
     private final ItemItemBuildContext buildContext;
 
-    @Inject
     public SlopeOneModelProvider(@Transient ItemItemBuildContext context,
                                  @DeviationDamping double damping) {
+        this(context, damping, 1, false);
+    }
+
+    @Inject
+    public SlopeOneModelProvider(@Transient ItemItemBuildContext context,
+                                 @DeviationDamping double damping,
+                                 @MinCoratings int minCoratings,
+                                 @CompactDeviations boolean compact) {
 
         buildContext = context;
-        accumulator = new SlopeOneModelDataAccumulator(damping, context.getItems());
+        this.damping = damping;
+        this.minCoratings = minCoratings;
+        this.compact = compact;
     }
 
     /**
@@ -57,6 +88,39 @@ public class SlopeOneModelProvider implements Provider<SlopeOneModel> {
      */
     @Override
     public SlopeOneModel get() {
+        SortedKeyIndex items = SortedKeyIndex.fromCollection(buildContext.getItems());
+        final int n = items.size();
+        logger.info("building slope-one model for {} items", n);
+
+        ProgressLogger progress = ProgressLogger.create(logger)
+                                                .setCount(n)
+                                                .setLabel("slope-one model build")
+                                                .setWindow(50)
+                                                .start();
+
+        SlopeOneModel.ModelRow[] rows = new SlopeOneModel.ModelRow[n];
+        ThreadLocal<RowBuffer> buffers = ThreadLocal.withInitial(() -> new RowBuffer(n));
+        IntStream.range(0, n)
+                 .parallel()
+                 .forEach(i -> {
+                     rows[i] = buffers.get().buildRow(items, i);
+                     progress.advance();
+                 });
+
+        progress.finish();
+        logger.info("built slope-one model in {}", progress.elapsedTime());
+        return new SlopeOneModel(KeyedObjectMap.create(Arrays.asList(rows)));
+    }
+
+    /**
+     * Build the model with the serial, all-pairs accumulator.  This is much slower than
+     * {@link #get()}, and is retained for verifying the parallel build.
+     *
+     * @return The model.
+     */
+    SlopeOneModel buildSerial() {
+        SlopeOneModelDataAccumulator accumulator =
+                new SlopeOneModelDataAccumulator(damping, buildContext.getItems());
         LongSet items = buildContext.getItems();
         LongIterator outer = items.iterator();
         while (outer.hasNext()) {
@@ -73,4 +137,73 @@ public class SlopeOneModelProvider implements Provider<SlopeOneModel> {
         }
         return new SlopeOneModel(accumulator.buildMatrix());
     }
+
+    /**
+     * Per-thread primitive buffers for accumulating one row of the model.
+     */
+    private class RowBuffer {
+        private final double[] sums;
+        private final int[] counts;
+        private final int[] touched;
+
+        RowBuffer(int n) {
+            sums = new double[n];
+            counts = new int[n];
+            touched = new int[n];
+        }
+
+        /**
+         * Compute the row for the item at a particular index.  The buffers are left cleared.
+         */
+        SlopeOneModel.ModelRow buildRow(SortedKeyIndex items, int idx) {
+            final long item1 = items.getKey(idx);
+            Long2DoubleSortedMap vec1 = buildContext.itemVector(item1);
+            int ntouched = 0;
+
+            LongIterator users = vec1.keySet().iterator();
+            while (users.hasNext()) {
+                final long user = users.nextLong();
+                final double r1 = vec1.get(user);
+                LongSortedSet userItems = buildContext.getUserItems(user);
+                // iterate the user's items after item1
+                LongBidirectionalIterator iter = userItems.iterator(item1);
+                while (iter.hasNext()) {
+                    final long item2 = iter.nextLong();
+                    int j = items.tryGetIndex(item2);
+                    if (j < 0) {
+                        continue;
+                    }
+                    if (counts[j] == 0) {
+                        touched[ntouched++] = j;
+                    }
+                    counts[j] += 1;
+                    sums[j] += r1 - buildContext.itemVector(item2).get(user);
+                }
+            }
+
+            IntArrays.quickSort(touched, 0, ntouched);
+            long[] keys = new long[ntouched];
+            double[] devs = new double[ntouched];
+            int[] crs = new int[ntouched];
+            int nkept = 0;
+            for (int k = 0; k < ntouched; k++) {
+                int j = touched[k];
+                if (counts[j] >= minCoratings) {
+                    keys[nkept] = items.getKey(j);
+                    devs[nkept] = sums[j] / (counts[j] + damping);
+                    crs[nkept] = counts[j];
+                    nkept++;
+                }
+                sums[j] = 0;
+                counts[j] = 0;
+            }
+            if (nkept < ntouched) {
+                devs = Arrays.copyOf(devs, nkept);
+                crs = Arrays.copyOf(crs, nkept);
+            }
+
+            return SlopeOneModel.ModelRow.create(item1, SortedKeyIndex.wrap(keys, nkept),
+                                                 devs, crs, compact);
+        }
+    }
 }
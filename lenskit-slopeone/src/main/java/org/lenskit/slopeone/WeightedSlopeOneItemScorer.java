@@ -24,23 +24,18 @@
  */
 package org.lenskit.slopeone;
 
-import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
-import it.unimi.dsi.fastutil.longs.LongIterator;
-import it.unimi.dsi.fastutil.longs.LongIterators;
 import org.lenskit.api.ItemScorer;
-import org.lenskit.api.Result;
 import org.lenskit.api.ResultMap;
 import org.lenskit.data.ratings.PreferenceDomain;
 import org.lenskit.data.ratings.RatingVectorPDAO;
-import org.lenskit.results.Results;
-import org.lenskit.util.math.Vectors;
+import org.lenskit.util.collections.LongUtils;
+import org.lenskit.util.keys.Long2DoubleSortedArrayMap;
+import org.lenskit.util.keys.SortedKeyIndex;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
 
 /**
  * An {@link ItemScorer} that implements a weighted Slope One algorithm.
@@ -55,33 +50,17 @@ public class WeightedSlopeOneItemScorer extends SlopeOneItemScorer {
     @Nonnull
     @Override
     public ResultMap scoreWithDetails(long user, @Nonnull Collection<Long> items) {
-        Long2DoubleMap ratings = dao.userRatingVector(user);
+        Long2DoubleSortedArrayMap ratings = Long2DoubleSortedArrayMap.create(dao.userRatingVector(user));
+        SortedKeyIndex targets = SortedKeyIndex.fromCollection(LongUtils.setDifference(LongUtils.frozenSet(items),
+                                                                                       ratings.keySet()));
+        final double[] totals = new double[targets.size()];
+        final int[] counts = new int[targets.size()];
 
-        List<Result> results = new ArrayList<>();
-        LongIterator iter = LongIterators.asLongIterator(items.iterator());
-        while (iter.hasNext()) {
-            final long predicteeItem = iter.nextLong();
-            if (!ratings.containsKey(predicteeItem)) {
-                double total = 0;
-                int nitems = 0;
-                for (Long2DoubleMap.Entry e: Vectors.fastEntries(ratings)) {
-                    long currentItem = e.getLongKey();
-                    double currentDev = model.getDeviation(predicteeItem, currentItem);
-                    if (!Double.isNaN(currentDev)) {
-                        int weight = model.getCoratings(predicteeItem, currentItem);
-                        total += (currentDev + e.getDoubleValue()) * weight;
-                        nitems += weight;
-                    }
-                }
-                if (nitems != 0) {
-                    double predValue = total / nitems;
-                    if (domain != null) {
-                        predValue = domain.clampValue(predValue);
-                    }
-                    results.add(Results.create(predicteeItem, predValue));
-                }
-            }
-        }
-        return Results.newResultMap(results);
+        model.visitPairs(targets, ratings, (t, dev, n, r) -> {
+            totals[t] += (dev + r) * n;
+            counts[t] += n;
+        });
+
+        return makeResults(targets, totals, counts);
     }
 }
@@ -38,6 +38,8 @@ import org.lenskit.data.ratings.Rating;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
@@ -90,6 +92,43 @@ public class SlopeOneItemScorerTest {
         }
     }
 
+    @Test
+    public void testCompactMatchesFull() throws RecommenderBuildException {
+        Random rng = new Random(42);
+        List<Rating> rs = new ArrayList<>();
+        List<Long> items = new ArrayList<>();
+        for (long item = 1; item <= 40; item++) {
+            items.add(item);
+        }
+        for (long user = 1; user <= 100; user++) {
+            for (long item = 1; item <= 40; item++) {
+                if (rng.nextDouble() < 0.3) {
+                    rs.add(Rating.create(user, item, rng.nextInt(10) * 0.5 + 0.5));
+                }
+            }
+        }
+        DataAccessObject dao = StaticDataSource.fromList(rs).get();
+
+        for (Class<? extends ItemScorer> scorer: new Class[]{SlopeOneItemScorer.class, WeightedSlopeOneItemScorer.class}) {
+            LenskitConfiguration config = new LenskitConfiguration();
+            config.bind(ItemScorer.class).to(scorer);
+            config.set(MinCoratings.class).to(5);
+            LenskitConfiguration compactConfig = new LenskitConfiguration(config);
+            compactConfig.set(CompactDeviations.class).to(true);
+            try (Recommender full = LenskitRecommender.build(config, dao);
+                 Recommender compact = LenskitRecommender.build(compactConfig, dao)) {
+                for (long user = 1; user <= 100; user++) {
+                    Map<Long, Double> expected = full.getItemScorer().score(user, items);
+                    Map<Long, Double> actual = compact.getItemScorer().score(user, items);
+                    assertThat(actual.keySet(), equalTo(expected.keySet()));
+                    for (Map.Entry<Long, Double> e: expected.entrySet()) {
+                        assertEquals(e.getValue(), actual.get(e.getKey()), 1.0e-4);
+                    }
+                }
+            }
+        }
+    }
+
     @Test
     public void testPredict2() throws RecommenderBuildException {
         List<Rating> rs = new ArrayList<>();
@@ -30,26 +30,186 @@ import org.lenskit.data.dao.file.StaticDataSource;
 import org.lenskit.data.ratings.Rating;
 import org.lenskit.data.ratings.RatingVectorPDAO;
 import org.lenskit.data.ratings.StandardRatingVectorPDAO;
+import org.lenskit.knn.item.model.ItemItemBuildContext;
 import org.lenskit.knn.item.model.ItemItemBuildContextProvider;
 import org.lenskit.transform.normalize.DefaultUserVectorNormalizer;
+import org.lenskit.util.io.CodecObjectOutputStream;
+import org.lenskit.util.keys.Long2DoubleSortedArrayMap;
+import org.lenskit.util.keys.SortedKeyIndex;
 
+import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class SlopeOneModelProviderTest {
 
     public static final double EPSILON = 1.0e-6;
 
-    private SlopeOneModel getModel(List<Rating> ratings) {
+    private SlopeOneModelProvider getProvider(List<Rating> ratings, double damping) {
         StaticDataSource source = StaticDataSource.fromList(ratings);
         DataAccessObject dao = source.get();
         RatingVectorPDAO rvDAO = new StandardRatingVectorPDAO(dao);
         ItemItemBuildContextProvider contextFactory = new ItemItemBuildContextProvider(
                 rvDAO, new DefaultUserVectorNormalizer());
-        SlopeOneModelProvider provider = new SlopeOneModelProvider(contextFactory.get(), 0);
-        return provider.get();
+        return new SlopeOneModelProvider(contextFactory.get(), damping);
+    }
+
+    private SlopeOneModel getModel(List<Rating> ratings) {
+        return getProvider(ratings, 0).get();
+    }
+
+    @Test
+    public void testParallelMatchesSerial() {
+        Random rng = new Random(42);
+        List<Rating> rs = new ArrayList<>();
+        for (long user = 1; user <= 100; user++) {
+            for (long item = 1; item <= 40; item++) {
+                if (rng.nextDouble() < 0.3) {
+                    rs.add(Rating.create(user, item, rng.nextInt(10) * 0.5 + 0.5));
+                }
+            }
+        }
+
+        SlopeOneModelProvider provider = getProvider(rs, 2);
+        SlopeOneModel parallel = provider.get();
+        SlopeOneModel serial = provider.buildSerial();
+        for (long i1 = 1; i1 <= 40; i1++) {
+            for (long i2 = 1; i2 <= 40; i2++) {
+                assertEquals(serial.getCoratings(i1, i2), parallel.getCoratings(i1, i2));
+                assertEquals(Double.doubleToLongBits(serial.getDeviation(i1, i2)),
+                             Double.doubleToLongBits(parallel.getDeviation(i1, i2)));
+            }
+        }
+    }
+
+    @Test
+    public void testVisitPairsMatchesLookups() {
+        Random rng = new Random(42);
+        List<Rating> rs = new ArrayList<>();
+        for (long user = 1; user <= 200; user++) {
+            for (long item = 1; item <= 100; item++) {
+                if (rng.nextDouble() < 0.3) {
+                    rs.add(Rating.create(user, item, rng.nextInt(10) * 0.5 + 0.5));
+                }
+            }
+        }
+        SlopeOneModel model = getModel(rs);
+
+        // one rating against many targets and many ratings against one target exercise the binary-search
+        // joins; similar sizes exercise the merge
+        int[][] shapes = {{1, 99}, {99, 1}, {30, 40}};
+        for (int[] shape: shapes) {
+            long[] rated = new long[shape[0]];
+            double[] values = new double[shape[0]];
+            for (int i = 0; i < shape[0]; i++) {
+                rated[i] = i + 1;
+                values[i] = (i % 5) + 1;
+            }
+            long[] targetKeys = new long[shape[1]];
+            for (int i = 0; i < shape[1]; i++) {
+                targetKeys[i] = shape[0] + i + 1;
+            }
+            Long2DoubleSortedArrayMap ratings = Long2DoubleSortedArrayMap.wrapUnsorted(rated, values);
+            SortedKeyIndex targets = SortedKeyIndex.create(targetKeys);
+
+            double[] totals = new double[targets.size()];
+            int[] counts = new int[targets.size()];
+            model.visitPairs(targets, ratings, (t, dev, n, r) -> {
+                totals[t] += dev + r;
+                counts[t] += 1;
+            });
+
+            for (int t = 0; t < targets.size(); t++) {
+                double total = 0;
+                int count = 0;
+                for (int i = 0; i < rated.length; i++) {
+                    long target = targets.getKey(t);
+                    if (model.getCoratings(target, rated[i]) > 0) {
+                        total += model.getDeviation(target, rated[i]) + ratings.get(rated[i]);
+                        count += 1;
+                    }
+                }
+                assertEquals(count, counts[t]);
+                assertEquals(total, totals[t], EPSILON);
+            }
+        }
+    }
+
+    @Test
+    public void testPruneAndCompact() {
+        Random rng = new Random(42);
+        List<Rating> rs = new ArrayList<>();
+        for (long user = 1; user <= 100; user++) {
+            for (long item = 1; item <= 40; item++) {
+                if (rng.nextDouble() < 0.3) {
+                    rs.add(Rating.create(user, item, rng.nextInt(10) * 0.5 + 0.5));
+                }
+            }
+        }
+
+        StaticDataSource source = StaticDataSource.fromList(rs);
+        RatingVectorPDAO rvDAO = new StandardRatingVectorPDAO(source.get());
+        ItemItemBuildContextProvider contextFactory = new ItemItemBuildContextProvider(
+                rvDAO, new DefaultUserVectorNormalizer());
+        ItemItemBuildContext context = contextFactory.get();
+        SlopeOneModel full = new SlopeOneModelProvider(context, 0).get();
+        SlopeOneModel pruned = new SlopeOneModelProvider(context, 0, 10, true).get();
+        for (long i1 = 1; i1 <= 40; i1++) {
+            for (long i2 = 1; i2 <= 40; i2++) {
+                int n = full.getCoratings(i1, i2);
+                if (n >= 10) {
+                    assertEquals(n, pruned.getCoratings(i1, i2));
+                    assertEquals(full.getDeviation(i1, i2), pruned.getDeviation(i1, i2), EPSILON);
+                } else if (i1 != i2) {
+                    assertEquals(0, pruned.getCoratings(i1, i2));
+                    assertTrue(Double.isNaN(pruned.getDeviation(i1, i2)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCodecRoundTrip() throws IOException, ClassNotFoundException {
+        Random rng = new Random(42);
+        List<Rating> rs = new ArrayList<>();
+        for (long user = 1; user <= 100; user++) {
+            for (long item = 1; item <= 40; item++) {
+                if (rng.nextDouble() < 0.3) {
+                    rs.add(Rating.create(user, item, rng.nextInt(10) * 0.5 + 0.5));
+                }
+            }
+        }
+
+        StaticDataSource source = StaticDataSource.fromList(rs);
+        RatingVectorPDAO rvDAO = new StandardRatingVectorPDAO(source.get());
+        ItemItemBuildContextProvider contextFactory = new ItemItemBuildContextProvider(
+                rvDAO, new DefaultUserVectorNormalizer());
+        ItemItemBuildContext context = contextFactory.get();
+        for (boolean compact: new boolean[]{false, true}) {
+            SlopeOneModel model = new SlopeOneModelProvider(context, 0, 1, compact).get();
+            SlopeOneModel read = roundTrip(model);
+            for (long i1 = 1; i1 <= 40; i1++) {
+                for (long i2 = 1; i2 <= 40; i2++) {
+                    assertEquals(model.getCoratings(i1, i2), read.getCoratings(i1, i2));
+                    assertEquals(Double.doubleToLongBits(model.getDeviation(i1, i2)),
+                                 Double.doubleToLongBits(read.getDeviation(i1, i2)));
+                }
+            }
+        }
+    }
+
+    private static SlopeOneModel roundTrip(SlopeOneModel model) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new CodecObjectOutputStream(bytes)) {
+            out.writeObject(model);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (SlopeOneModel) in.readObject();
+        }
     }
 
     @Test